@@ -0,0 +1,31 @@
+package com.romanmayer.analyzer.benchmark;
+
+import com.romanmayer.analyzer.dao.CountryDaoImpl;
+import org.hibernate.SessionFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * SessionFactories for benchmarks: a fresh in-memory H2 database per trial, so the worldbank file is never
+ * touched and no trial sees the writes of another one. Close the SessionFactory at the end of the trial, only
+ * one at a time can use the second-level cache.
+ */
+public class BenchmarkDatabase {
+
+    public static SessionFactory inMemorySessionFactory() {
+        return inMemorySessionFactory(true);
+    }
+
+    public static SessionFactory inMemorySessionFactory(boolean secondLevelCache) {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("hibernate.cache.use_second_level_cache", String.valueOf(secondLevelCache));
+        settings.put("hibernate.cache.use_query_cache", String.valueOf(secondLevelCache));
+        settings.put("hibernate.connection.url", "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        settings.put("hibernate.hbm2ddl.auto", "create");
+        settings.put("hibernate.show_sql", "false");
+        return CountryDaoImpl.buildSessionFactory(settings);
+    }
+
+}
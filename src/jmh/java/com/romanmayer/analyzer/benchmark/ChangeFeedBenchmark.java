@@ -0,0 +1,91 @@
+package com.romanmayer.analyzer.benchmark;
+
+import com.romanmayer.analyzer.feed.ChangeFeed;
+import com.romanmayer.analyzer.feed.CountryChange;
+import com.romanmayer.analyzer.feed.ExportView;
+import com.romanmayer.analyzer.feed.RankingView;
+import com.romanmayer.analyzer.feed.StatisticsView;
+import com.romanmayer.analyzer.model.Country;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishing updates on a {@link ChangeFeed} with a ranking and a statistics view subscribed, optionally also an
+ * export view. The export view writes the whole file per batch, so it is the slow subscriber: once it is a whole
+ * ring behind, the publisher waits for it. The report of the feed, printed after each trial, shows these waits
+ * and the lag of every subscriber.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChangeFeedBenchmark {
+
+    @Param({"100000"})
+    private int rows;
+
+    @Param({"64", "4096"})
+    private int capacity;
+
+    @Param({"false", "true"})
+    private boolean export;
+
+    private List<Country> countries;
+    private ChangeFeed feed;
+    private Path exportFile;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        countries = SyntheticCountries.generate(rows);
+        random = new Random(SyntheticCountries.DEFAULT_SEED);
+        feed = new ChangeFeed(capacity);
+        List<Country> copies = CountryChange.copiesOf(countries);
+        feed.subscribe("rankings", new RankingView(), copies);
+        feed.subscribe("statistics", new StatisticsView(), copies);
+        if (export) {
+            exportFile = Files.createTempFile("countries", ".csv");
+            feed.subscribe("export", new ExportView(exportFile), copies);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        // before the close, which unsubscribes the views
+        System.out.println();
+        System.out.print(feed.getReport());
+        feed.close();
+        if (exportFile != null) {
+            Files.deleteIfExists(exportFile);
+        }
+    }
+
+    @Benchmark
+    public long publishUpdate() {
+        Country country = countries.get(random.nextInt(rows));
+        country.setInternetUsers(BigDecimal.valueOf(random.nextInt(10_000_000), 5));
+        return feed.publish(CountryChange.updated(country));
+    }
+
+}
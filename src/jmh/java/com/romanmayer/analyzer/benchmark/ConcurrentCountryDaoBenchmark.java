@@ -0,0 +1,128 @@
+package com.romanmayer.analyzer.benchmark;
+
+import com.romanmayer.analyzer.dao.ConcurrentCountryDao;
+import com.romanmayer.analyzer.dao.CountryDaoImpl;
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.Country.CountryBuilder;
+import com.romanmayer.analyzer.model.IndicatorSummary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-threaded stress of {@link ConcurrentCountryDao}.
+ *
+ * The findByCode and summarize benchmarks only read. Run them with an increasing number of threads, e.g.
+ * {@code ./gradlew jmh -PjmhInclude=ConcurrentCountryDao -PjmhThreads=4}, to see the read throughput scale
+ * with the cores. The readWhileWriting group runs three readers next to one writer. A reader that sees a
+ * torn update fails the benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentCountryDaoBenchmark {
+
+    private static final int LOOKUP_CODES = 1024;
+
+    @Param({"1000", "100000"})
+    private int rows;
+
+    private CountryDaoImpl delegate;
+    private ConcurrentCountryDao countryDao;
+    private String[] lookupCodes;
+
+    @State(Scope.Thread)
+    public static class Reader {
+
+        private int nextLookup;
+
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+
+        private boolean toggle;
+
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Country> countries = SyntheticCountries.generate(rows);
+        delegate = new CountryDaoImpl(BenchmarkDatabase.inMemorySessionFactory(), countries);
+        // the writer measures the update in memory, not a commit per update
+        delegate.enableWriteBehind(10_000, 1_000);
+        countryDao = new ConcurrentCountryDao(delegate);
+
+        Random random = new Random(SyntheticCountries.DEFAULT_SEED);
+        lookupCodes = new String[LOOKUP_CODES];
+        for (int i = 0; i < LOOKUP_CODES; i++) {
+            lookupCodes[i] = countries.get(random.nextInt(rows)).getCode();
+        }
+        countryDao.create(new CountryBuilder("ZZZ", "Updated")
+                .withInternetUsers(BigDecimal.ONE)
+                .withLiteracyRate(BigDecimal.ONE)
+                .build());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        delegate.close();
+    }
+
+    @Benchmark
+    public Country findByCode(Reader reader) {
+        return lookup(reader);
+    }
+
+    @Benchmark
+    public IndicatorSummary summarize() {
+        return countryDao.summarize();
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(3)
+    public Country read(Reader reader) {
+        return lookup(reader);
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(1)
+    public void write(Writer writer) {
+        Country country = countryDao.findByCode("ZZZ");
+        writer.toggle = !writer.toggle;
+        country.setInternetUsers(writer.toggle ? BigDecimal.TEN : BigDecimal.ONE);
+        countryDao.update(country);
+    }
+
+    private Country lookup(Reader reader) {
+        String code = lookupCodes[reader.nextLookup++ & (LOOKUP_CODES - 1)];
+        Country country = countryDao.findByCode(code);
+        if (country == null || !country.getCode().equals(code)) {
+            throw new IllegalStateException("Inconsistent snapshot for " + code);
+        }
+        return country;
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.romanmayer.analyzer.benchmark;
+
+import com.romanmayer.analyzer.analytics.ColumnSet;
+import com.romanmayer.analyzer.analytics.CorrelationEngine;
+import com.romanmayer.analyzer.analytics.CorrelationMatrix;
+import com.romanmayer.analyzer.model.LinearRegression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Correlation matrices over synthetic columns with 5% missing values, see {@link SyntheticColumns#generate}.
+ * 50 indicators of 1M rows take 400 MB, so run the larger settings with a big enough heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class CorrelationEngineBenchmark {
+
+    @Param({"100000", "1000000"})
+    private int rows;
+
+    @Param({"10", "50"})
+    private int indicators;
+
+    // 1 thread is the sequential engine
+    @Param({"1", "4"})
+    private int threads;
+
+    private ColumnSet columns;
+    private CorrelationEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        columns = SyntheticColumns.generate(rows, indicators, SyntheticCountries.DEFAULT_SEED);
+        engine = threads == 1 ? new CorrelationEngine(Integer.MAX_VALUE, 1)
+                : new CorrelationEngine(CorrelationEngine.DEFAULT_THRESHOLD, threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    public CorrelationMatrix pearson() {
+        return engine.pearson(columns);
+    }
+
+    @Benchmark
+    public CorrelationMatrix spearman() {
+        return engine.spearman(columns);
+    }
+
+    @Benchmark
+    public LinearRegression regression() {
+        return engine.regression(columns, columns.name(0), columns.name(1));
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.romanmayer.analyzer.benchmark;
+
+import com.romanmayer.analyzer.dao.CountryDaoImpl;
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.Country.CountryBuilder;
+import com.romanmayer.analyzer.model.IndicatorSummary;
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups, statistics and mutations of {@link CountryDaoImpl} on generated datasets.
+ *
+ * The generated countries only live in memory. The mutations write to an in-memory H2 database, using codes
+ * that the generator never produces.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CountryDaoBenchmark {
+
+    private static final int LOOKUP_CODES = 1024;
+
+    @Param({"1000", "100000", "10000000"})
+    private int rows;
+
+    private SessionFactory sessionFactory;
+    private CountryDaoImpl countryDao;
+    private String[] lookupCodes;
+    private int nextLookup;
+    private Country updatedCountry;
+    private boolean toggle;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Country> countries = SyntheticCountries.generate(rows);
+        sessionFactory = BenchmarkDatabase.inMemorySessionFactory();
+        countryDao = new CountryDaoImpl(sessionFactory, countries);
+
+        Random random = new Random(SyntheticCountries.DEFAULT_SEED);
+        lookupCodes = new String[LOOKUP_CODES];
+        for (int i = 0; i < LOOKUP_CODES; i++) {
+            lookupCodes[i] = countries.get(random.nextInt(rows)).getCode();
+        }
+
+        updatedCountry = new CountryBuilder("ZZZ", "Updated")
+                .withInternetUsers(BigDecimal.ONE)
+                .withLiteracyRate(BigDecimal.ONE)
+                .build();
+        countryDao.create(updatedCountry);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public Country findByCode() {
+        return countryDao.findByCode(lookupCodes[nextLookup++ & (LOOKUP_CODES - 1)]);
+    }
+
+    @Benchmark
+    public Country countryWithMinInternetUsers() {
+        return countryDao.countryWithMinInternetUsers();
+    }
+
+    @Benchmark
+    public Country countryWithMaxInternetUsers() {
+        return countryDao.countryWithMaxInternetUsers();
+    }
+
+    @Benchmark
+    public Country countryWithMinLiteracyRate() {
+        return countryDao.countryWithMinLiteracyRate();
+    }
+
+    @Benchmark
+    public Country countryWithMaxLiteracyRate() {
+        return countryDao.countryWithMaxLiteracyRate();
+    }
+
+    @Benchmark
+    public Double getCorrelationCoefficient() {
+        return countryDao.getCorrelationCoefficient();
+    }
+
+    @Benchmark
+    public IndicatorSummary summarize() {
+        return countryDao.summarize();
+    }
+
+    @Benchmark
+    public void update() {
+        toggle = !toggle;
+        updatedCountry.setInternetUsers(toggle ? BigDecimal.TEN : BigDecimal.ONE);
+        countryDao.update(updatedCountry);
+    }
+
+    @Benchmark
+    public void createAndDelete() {
+        Country country = new CountryBuilder("ZZY", "Created")
+                .withInternetUsers(BigDecimal.ONE)
+                .withLiteracyRate(BigDecimal.ONE)
+                .build();
+        countryDao.create(country);
+        countryDao.delete(country);
+    }
+
+}
@@ -0,0 +1,163 @@
+package com.romanmayer.analyzer.benchmark;
+
+import com.romanmayer.analyzer.dao.CountryDaoImpl;
+import com.romanmayer.analyzer.dao.DatabaseSettings;
+import com.romanmayer.analyzer.dao.DatabaseSettings.DatabaseSettingsBuilder;
+import com.romanmayer.analyzer.model.Country;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The DAO operations that reach the database, for each connection provider and H2 configuration.
+ *
+ * Every trial works on a fresh file database in a temporary directory, filled with synthetic countries. The
+ * second-level cache is off, so every operation is a round-trip. The config parameter names the setup:
+ * <ul>
+ * <li>builtin: the connection provider of Hibernate, as before the pool</li>
+ * <li>pooled: HikariCP with the settings of hibernate.cfg.xml</li>
+ * <li>pooled-cache64m: plus a 64 MB page cache</li>
+ * <li>pooled-compress: plus compressed pages</li>
+ * <li>pooled-writeDelay0: plus writing every commit to the file at once</li>
+ * <li>inMemory: an in-memory copy, written back when the trial ends</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DatabaseBenchmark {
+
+    private static final int LOOKUP_CODES = 1024;
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"builtin", "pooled", "pooled-cache64m", "pooled-compress", "pooled-writeDelay0", "inMemory"})
+    private String config;
+
+    @Param({"10000"})
+    private int rows;
+
+    private Path directory;
+    private SessionFactory sessionFactory;
+    private CountryDaoImpl countryDao;
+    private String[] lookupCodes;
+    private int nextLookup;
+    private Country updated;
+    private boolean toggle;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("database-benchmark");
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("hibernate.connection.url",
+                "jdbc:h2:" + directory.resolve("worldbank") + ";DB_CLOSE_ON_EXIT=FALSE");
+        settings.put("hibernate.hbm2ddl.auto", "create");
+        settings.put("hibernate.cache.use_second_level_cache", "false");
+        settings.put("hibernate.cache.use_query_cache", "false");
+        fill(settings);
+
+        DatabaseSettingsBuilder database = new DatabaseSettingsBuilder();
+        switch (config) {
+            case "builtin":
+                settings.put("hibernate.connection.provider_class",
+                        "org.hibernate.engine.jdbc.connections.internal.DriverManagerConnectionProviderImpl");
+                break;
+            case "pooled-cache64m":
+                database.withCacheSizeKb(64 * 1024);
+                break;
+            case "pooled-compress":
+                database.withCompress(true);
+                break;
+            case "pooled-writeDelay0":
+                database.withWriteDelayMillis(0);
+                break;
+            case "inMemory":
+                database.withInMemory(0);
+                break;
+        }
+        settings.put("hibernate.hbm2ddl.auto", "validate");
+        sessionFactory = CountryDaoImpl.buildSessionFactory(database.build(), settings);
+        countryDao = new CountryDaoImpl(sessionFactory);
+
+        List<Country> countries = SyntheticCountries.generate(rows);
+        Random random = new Random(SyntheticCountries.DEFAULT_SEED);
+        lookupCodes = new String[LOOKUP_CODES];
+        for (int i = 0; i < LOOKUP_CODES; i++) {
+            lookupCodes[i] = countries.get(random.nextInt(rows)).getCode();
+        }
+        updated = countries.get(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        countryDao.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Country findByCode() {
+        return countryDao.findByCode(lookupCodes[nextLookup++ & (LOOKUP_CODES - 1)]);
+    }
+
+    @Benchmark
+    public List<Country> page() {
+        return countryDao.page(lookupCodes[nextLookup++ & (LOOKUP_CODES - 1)], PAGE_SIZE);
+    }
+
+    @Benchmark
+    public void update() {
+        toggle = !toggle;
+        updated.setInternetUsers(toggle ? BigDecimal.TEN : BigDecimal.ONE);
+        countryDao.update(updated);
+    }
+
+    /**
+     * Creates the schema and the countries with a SessionFactory of its own, closed before the measured one
+     * opens the file.
+     */
+    private void fill(Map<String, Object> settings) {
+        SessionFactory filler = CountryDaoImpl.buildSessionFactory(new DatabaseSettingsBuilder().build(), settings);
+        Session session = filler.openSession();
+        session.beginTransaction();
+        List<Country> countries = SyntheticCountries.generate(rows);
+        for (int i = 0; i < countries.size(); i++) {
+            session.save(countries.get(i));
+            if ((i + 1) % 500 == 0) {
+                session.flush();
+                session.clear();
+            }
+        }
+        session.getTransaction().commit();
+        session.close();
+        filler.close();
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.romanmayer.analyzer.benchmark;
+
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.FixedPoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The fixed-point values of {@link Country} against the BigDecimal code they replace: parsing user input,
+ * formatting a table cell and summing a column. Run with the GC profiler to see the allocations per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FixedPointBenchmark {
+
+    private static final int ROWS = 1000;
+
+    private String input = "84.2";
+    private List<Country> countries;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        countries = SyntheticCountries.generate(ROWS);
+    }
+
+    @Benchmark
+    public BigDecimal parseBigDecimal() {
+        return new BigDecimal(Double.parseDouble(input));
+    }
+
+    @Benchmark
+    public long parseFixedPoint() {
+        return FixedPoint.parse(input);
+    }
+
+    @Benchmark
+    public String formatBigDecimal() {
+        return countries.get(0).getInternetUsers().setScale(2, RoundingMode.HALF_UP).toString();
+    }
+
+    @Benchmark
+    public String formatFixedPoint() {
+        return FixedPoint.format(countries.get(0).getInternetUsersFixedPoint(), 2);
+    }
+
+    @Benchmark
+    public BigDecimal sumBigDecimal() {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (Country country : countries) {
+            BigDecimal value = country.getInternetUsers();
+            if (value != null) {
+                sum = sum.add(value);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long sumFixedPoint() {
+        long sum = 0;
+        for (Country country : countries) {
+            long value = country.getInternetUsersFixedPoint();
+            if (!FixedPoint.isNull(value)) {
+                sum += value;
+            }
+        }
+        return sum;
+    }
+
+}
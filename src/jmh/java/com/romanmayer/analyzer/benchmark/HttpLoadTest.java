@@ -0,0 +1,169 @@
+package com.romanmayer.analyzer.benchmark;
+
+import com.romanmayer.analyzer.dao.ConcurrentCountryDao;
+import com.romanmayer.analyzer.dao.CountryDaoImpl;
+import com.romanmayer.analyzer.http.CountryHttpServer;
+import com.romanmayer.analyzer.model.Country;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop load test of {@link CountryHttpServer}: every client thread sends its next request as soon as
+ * the last one is answered, over a kept-alive connection, and records the latency. Reports the throughput and
+ * the median and 99th percentile latency.
+ *
+ * Without a URL it starts a server on a free port over synthetic countries in an in-memory database. Run it
+ * with {@code ./gradlew loadTest -PloadTestArgs="--threads 16 --seconds 30"}, arguments:
+ * {@code [--url http://host:port] [--threads n] [--seconds n] [--rows n]}.
+ */
+public class HttpLoadTest {
+
+    private static final int LOOKUP_CODES = 1024;
+
+    public static void main(String[] args) throws Exception {
+        String url = null;
+        int threads = 8;
+        int seconds = 10;
+        int rows = 100_000;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--url":
+                    url = args[i + 1];
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--seconds":
+                    seconds = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--rows":
+                    rows = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + args[i]);
+            }
+        }
+
+        List<Country> countries = SyntheticCountries.generate(rows);
+        CountryDaoImpl delegate = null;
+        CountryHttpServer server = null;
+        if (url == null) {
+            delegate = new CountryDaoImpl(BenchmarkDatabase.inMemorySessionFactory(), countries);
+            server = new CountryHttpServer(new ConcurrentCountryDao(delegate), 0,
+                    2 * Runtime.getRuntime().availableProcessors());
+            server.start();
+            url = "http://localhost:" + server.getPort();
+        }
+
+        Random random = new Random(SyntheticCountries.DEFAULT_SEED);
+        String[] lookupCodes = new String[LOOKUP_CODES];
+        for (int i = 0; i < LOOKUP_CODES; i++) {
+            lookupCodes[i] = countries.get(random.nextInt(rows)).getCode();
+        }
+
+        System.out.printf("%d client threads for %d s against %s%n", threads, seconds, url);
+        long[][] latencies = run(url, lookupCodes, threads, TimeUnit.SECONDS.toNanos(seconds));
+        report(latencies, seconds);
+
+        if (server != null) {
+            server.stop();
+            delegate.close();
+        }
+    }
+
+    private static long[][] run(String url, String[] lookupCodes, int threads, long durationNanos)
+            throws InterruptedException {
+        long[][] latencies = new long[threads][];
+        Thread[] clients = new Thread[threads];
+        long end = System.nanoTime() + durationNanos;
+        for (int t = 0; t < threads; t++) {
+            int client = t;
+            clients[t] = new Thread(() -> latencies[client] = requests(url, lookupCodes, client, end),
+                    "load-test-" + t);
+            clients[t].start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        return latencies;
+    }
+
+    /**
+     * Sends nine lookups for every statistics or ranking request until {@code end}, returns the latencies.
+     */
+    private static long[] requests(String url, String[] lookupCodes, int client, long end) {
+        long[] latencies = new long[1024];
+        int count = 0;
+        byte[] buffer = new byte[8192];
+        for (int i = client; System.nanoTime() < end; i++) {
+            String path;
+            switch (i % 10) {
+                case 0:
+                    path = "/statistics";
+                    break;
+                case 5:
+                    path = "/rankings/internet_users?k=10";
+                    break;
+                default:
+                    path = "/countries/" + lookupCodes[i & (LOOKUP_CODES - 1)];
+            }
+            long start = System.nanoTime();
+            try {
+                get(new URL(url + path), buffer);
+            } catch (IOException ioe) {
+                throw new IllegalStateException("GET " + path + " failed", ioe);
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = System.nanoTime() - start;
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    private static void get(URL url, byte[] buffer) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        int status = connection.getResponseCode();
+        if (status != 200) {
+            throw new IOException("status " + status);
+        }
+        // reading the body to its end returns the connection to the keep-alive cache
+        try (InputStream in = connection.getInputStream()) {
+            while (in.read(buffer) >= 0) {
+                // discard
+            }
+        }
+    }
+
+    private static void report(long[][] latencies, int seconds) {
+        int total = 0;
+        for (long[] client : latencies) {
+            total += client.length;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (long[] client : latencies) {
+            System.arraycopy(client, 0, all, offset, client.length);
+            offset += client.length;
+        }
+        Arrays.sort(all);
+        System.out.printf("%d requests, %.0f requests/s%n", total, (double) total / seconds);
+        if (total > 0) {
+            System.out.printf("latency p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                    percentile(all, 0.50), percentile(all, 0.99), all[total - 1] / 1e6);
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.romanmayer.analyzer.benchmark;
+
+import com.romanmayer.analyzer.dao.NameIndex;
+import com.romanmayer.analyzer.model.Country;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches of the {@link NameIndex} by prefix, substring and with typos, compared with scanning every name, which
+ * is what listing all countries amounts to. The synthetic names all start with the same word and differ in a
+ * number, which is about the worst case for the typos, since most names are only a few edits apart.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NameSearchBenchmark {
+
+    @Param({"10000", "1000000"})
+    private int rows;
+
+    private List<Country> countries;
+    private NameIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        countries = SyntheticCountries.generate(rows);
+        index = new NameIndex();
+        for (Country country : countries) {
+            index.put(country);
+        }
+    }
+
+    @Benchmark
+    public List<Country> prefix() {
+        return index.search("Country 12", NameIndex.DEFAULT_LIMIT);
+    }
+
+    @Benchmark
+    public List<Country> substring() {
+        return index.search("ntry 99", NameIndex.DEFAULT_LIMIT);
+    }
+
+    @Benchmark
+    public List<Country> typo() {
+        return index.search("Countyr 1234", NameIndex.DEFAULT_LIMIT);
+    }
+
+    @Benchmark
+    public List<Country> noMatch() {
+        return index.search("Atlantis", NameIndex.DEFAULT_LIMIT);
+    }
+
+    /**
+     * Renaming a country updates the trie and the 3-letter sequences.
+     */
+    @Benchmark
+    public NameIndex rename() {
+        Country country = countries.get(rows / 2);
+        country.setName(country.getName().endsWith("*") ? "Country " + rows / 2 : country.getName() + "*");
+        index.put(country);
+        return index;
+    }
+
+    @Benchmark
+    public int scan() {
+        int found = 0;
+        for (Country country : countries) {
+            if (country.getName().toLowerCase(Locale.ROOT).contains("ntry 99")) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.romanmayer.analyzer.benchmark;
+
+import com.romanmayer.analyzer.dao.ObservationCube;
+import com.romanmayer.analyzer.model.YearExtremes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries over decades of synthetic World Bank style data: 217 countries, 60 years and a number of indicators,
+ * 5% of the values missing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObservationCubeBenchmark {
+
+    private static final int COUNTRIES = 217;
+    private static final int FIRST_YEAR = 1960;
+    private static final int YEARS = 60;
+
+    @Param({"10", "1000"})
+    private int indicators;
+
+    private ObservationCube cube;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cube = generate(COUNTRIES, FIRST_YEAR, YEARS, indicators, SyntheticCountries.DEFAULT_SEED);
+    }
+
+    @Benchmark
+    public YearExtremes extremes() {
+        return cube.extremes(indicator(0), FIRST_YEAR + YEARS / 2);
+    }
+
+    @Benchmark
+    public Map<String, Double> trends() {
+        return cube.trends(indicator(0), FIRST_YEAR, FIRST_YEAR + YEARS - 1);
+    }
+
+    @Benchmark
+    public double correlationInYear() {
+        return cube.correlation(indicator(0), indicator(1), FIRST_YEAR + YEARS / 2);
+    }
+
+    @Benchmark
+    public double correlationOverAllYears() {
+        return cube.correlation(indicator(0), indicator(1));
+    }
+
+    /**
+     * Every indicator grows linearly per country with noise; the second one follows the first.
+     */
+    public static ObservationCube generate(int countries, int firstYear, int years, int indicators, long seed) {
+        Random random = new Random(seed);
+        ObservationCube cube = new ObservationCube();
+        cube.reserveYears(firstYear, firstYear + years - 1);
+        for (int country = 0; country < countries; country++) {
+            String code = SyntheticCountries.code(country, 3);
+            for (int indicator = 0; indicator < indicators; indicator++) {
+                double start = random.nextDouble() * 50;
+                double slope = random.nextDouble();
+                for (int year = 0; year < years; year++) {
+                    if (random.nextInt(20) == 0) {
+                        continue;
+                    }
+                    double value = start + slope * year + random.nextGaussian();
+                    cube.put(code, indicator(indicator), firstYear + year,
+                            indicator == 1 ? cube.value(code, indicator(0), firstYear + year) * 2 + value : value);
+                }
+            }
+        }
+        return cube;
+    }
+
+    private static String indicator(int i) {
+        return "SYN.IND." + i;
+    }
+
+}
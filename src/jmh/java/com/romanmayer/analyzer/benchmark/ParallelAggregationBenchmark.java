@@ -0,0 +1,65 @@
+package com.romanmayer.analyzer.benchmark;
+
+import com.romanmayer.analyzer.dao.CountrySnapshot;
+import com.romanmayer.analyzer.dao.ParallelAggregation;
+import com.romanmayer.analyzer.dao.StatisticsAccumulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The statistics scan over a {@link CountrySnapshot}, on the calling thread and split into ranges on a
+ * {@link ParallelAggregation}. The speed-up depends on the cores, so compare the two on the machine the
+ * threshold is chosen for.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelAggregationBenchmark {
+
+    @Param({"100000", "1000000"})
+    private int rows;
+
+    @Param({"100000"})
+    private int threshold;
+
+    private CountrySnapshot snapshot;
+    private ParallelAggregation parallelAggregation;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        snapshot = new CountrySnapshot(SyntheticCountries.generate(rows));
+        parallelAggregation = new ParallelAggregation(threshold, Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        parallelAggregation.shutdown();
+    }
+
+    @Benchmark
+    public StatisticsAccumulator sequential() {
+        return snapshot.accumulate(new StatisticsAccumulator());
+    }
+
+    @Benchmark
+    public StatisticsAccumulator parallel() {
+        return parallelAggregation.aggregate(snapshot);
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.romanmayer.analyzer.benchmark;
+
+import com.romanmayer.analyzer.dao.CountrySnapshot;
+import com.romanmayer.analyzer.dao.ParallelAggregation;
+import com.romanmayer.analyzer.dao.QuantileSketch;
+import com.romanmayer.analyzer.model.Histogram;
+import com.romanmayer.analyzer.model.Indicator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and querying a {@link QuantileSketch} of one indicator, compared with sorting a copy of the values
+ * for every query. Adding a value is what a create costs; a rebuild after an update or delete costs a build,
+ * or a parallel build if a {@link ParallelAggregation} is enabled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuantileSketchBenchmark {
+
+    @Param({"1000000"})
+    private int rows;
+
+    @Param({"50", "200", "1000"})
+    private int k;
+
+    private CountrySnapshot snapshot;
+    private QuantileSketch sketch;
+    private ParallelAggregation parallelAggregation;
+    private double value;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        snapshot = new CountrySnapshot(SyntheticCountries.generate(rows));
+        sketch = build();
+        parallelAggregation = new ParallelAggregation();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        parallelAggregation.shutdown();
+    }
+
+    @Benchmark
+    public QuantileSketch build() {
+        return snapshot.sketch(new QuantileSketch(k), Indicator.INTERNET_USERS, 0, snapshot.wordCount());
+    }
+
+    @Benchmark
+    public QuantileSketch parallelBuild() {
+        return parallelAggregation.sketch(snapshot, Indicator.INTERNET_USERS, k);
+    }
+
+    @Benchmark
+    public QuantileSketch add() {
+        value = value >= 100 ? 0 : value + 0.37;
+        sketch.add(value);
+        return sketch;
+    }
+
+    @Benchmark
+    public double median() {
+        return sketch.quantile(0.5);
+    }
+
+    /**
+     * The first query after a change also sorts the sketch.
+     */
+    @Benchmark
+    public double addThenMedian() {
+        add();
+        return sketch.quantile(0.5);
+    }
+
+    @Benchmark
+    public Histogram histogram() {
+        return sketch.histogram(20);
+    }
+
+    @Benchmark
+    public double sortedMedian() {
+        double[] values = new double[snapshot.size()];
+        int count = 0;
+        for (int row = 0; row < snapshot.size(); row++) {
+            if (snapshot.hasValue(Indicator.INTERNET_USERS, row)) {
+                values[count++] = snapshot.value(Indicator.INTERNET_USERS, row);
+            }
+        }
+        Arrays.sort(values, 0, count);
+        return values[(count - 1) / 2];
+    }
+
+}
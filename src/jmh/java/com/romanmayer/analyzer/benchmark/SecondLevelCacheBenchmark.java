@@ -0,0 +1,122 @@
+package com.romanmayer.analyzer.benchmark;
+
+import com.romanmayer.analyzer.dao.CountryDaoImpl;
+import com.romanmayer.analyzer.model.Country;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Database round-trips of DAOs that share a SessionFactory, with and without the second-level cache.
+ *
+ * Every operation builds a new CountryDaoImpl, like a restarted component or a second DAO instance would.
+ * The statements counter reports the JDBC statements per operation: with the cache they drop to zero once the
+ * countries and the queries are cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecondLevelCacheBenchmark {
+
+    private static final int LOOKUP_CODES = 1024;
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"1000", "10000"})
+    private int rows;
+
+    @Param({"true", "false"})
+    private boolean secondLevelCache;
+
+    private SessionFactory sessionFactory;
+    private String[] lookupCodes;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RoundTrips {
+
+        public long statements;
+        private int nextLookup;
+
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sessionFactory = BenchmarkDatabase.inMemorySessionFactory(secondLevelCache);
+        List<Country> countries = SyntheticCountries.generate(rows);
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        for (int i = 0; i < countries.size(); i++) {
+            session.save(countries.get(i));
+            if ((i + 1) % 500 == 0) {
+                session.flush();
+                session.clear();
+            }
+        }
+        session.getTransaction().commit();
+        session.close();
+        // the saves filled the entity cache, start from a cold one like after a restart
+        sessionFactory.getCache().evictAllRegions();
+        sessionFactory.getStatistics().setStatisticsEnabled(true);
+
+        Random random = new Random(SyntheticCountries.DEFAULT_SEED);
+        lookupCodes = new String[LOOKUP_CODES];
+        for (int i = 0; i < LOOKUP_CODES; i++) {
+            lookupCodes[i] = countries.get(random.nextInt(rows)).getCode();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public List<Country> loadAllWithNewDao(RoundTrips roundTrips) {
+        long before = statements();
+        List<Country> countries = new CountryDaoImpl(sessionFactory).getCountries();
+        roundTrips.statements += statements() - before;
+        return countries;
+    }
+
+    @Benchmark
+    public Country findByCodeWithNewDao(RoundTrips roundTrips) {
+        long before = statements();
+        Country country = new CountryDaoImpl(sessionFactory)
+                .findByCode(lookupCodes[roundTrips.nextLookup++ & (LOOKUP_CODES - 1)]);
+        roundTrips.statements += statements() - before;
+        return country;
+    }
+
+    @Benchmark
+    public List<Country> firstPageWithNewDao(RoundTrips roundTrips) {
+        long before = statements();
+        List<Country> page = new CountryDaoImpl(sessionFactory).page(null, PAGE_SIZE);
+        roundTrips.statements += statements() - before;
+        return page;
+    }
+
+    private long statements() {
+        return sessionFactory.getStatistics().getPrepareStatementCount();
+    }
+
+}
@@ -0,0 +1,131 @@
+package com.romanmayer.analyzer.benchmark;
+
+import com.romanmayer.analyzer.dao.CountryDaoImpl;
+import com.romanmayer.analyzer.dao.DatasetVersion;
+import com.romanmayer.analyzer.dao.SnapshotFile;
+import com.romanmayer.analyzer.model.Country;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and writing the snapshot file of synthetic countries, and a DAO that restores them from the file
+ * compared with one that fetches them through Hibernate. Both DAOs also build their indexes and statistics.
+ *
+ * The database only holds as many countries as there are codes of three letters, so the DAOs get fewer rows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SnapshotFileBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class FileState {
+
+        @Param({"10000", "1000000"})
+        private int rows;
+
+        private Path directory;
+        private SnapshotFile snapshotFile;
+        private List<Country> countries;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            countries = SyntheticCountries.generate(rows);
+            directory = Files.createTempDirectory("snapshot-benchmark");
+            snapshotFile = new SnapshotFile(directory.resolve("countries.snapshot"));
+            snapshotFile.write(countries, 1);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(snapshotFile.getPath());
+            Files.deleteIfExists(directory);
+        }
+
+    }
+
+    @State(Scope.Benchmark)
+    public static class DatabaseState {
+
+        @Param({"10000"})
+        private int databaseRows;
+
+        private Path directory;
+        private SnapshotFile snapshotFile;
+        private SessionFactory sessionFactory;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            List<Country> countries = SyntheticCountries.generate(databaseRows);
+            // without the second-level cache, which would answer the fetch after the first one
+            sessionFactory = BenchmarkDatabase.inMemorySessionFactory(false);
+            StatelessSession statelessSession = sessionFactory.openStatelessSession();
+            statelessSession.beginTransaction();
+            countries.forEach(statelessSession::insert);
+            statelessSession.getTransaction().commit();
+            statelessSession.close();
+            Session session = sessionFactory.openSession();
+            long datasetVersion = session.doReturningWork(DatasetVersion::read);
+            session.close();
+
+            directory = Files.createTempDirectory("snapshot-benchmark");
+            snapshotFile = new SnapshotFile(directory.resolve("countries.snapshot"));
+            snapshotFile.write(countries, datasetVersion);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            sessionFactory.close();
+            Files.deleteIfExists(snapshotFile.getPath());
+            Files.deleteIfExists(directory);
+        }
+
+    }
+
+    @Benchmark
+    public List<Country> read(FileState state) throws IOException {
+        return state.snapshotFile.readCountries();
+    }
+
+    @Benchmark
+    public void write(FileState state) throws IOException {
+        state.snapshotFile.write(state.countries, 1);
+    }
+
+    @Benchmark
+    public List<Country> restoreDao(DatabaseState state) {
+        CountryDaoImpl countryDao = new CountryDaoImpl(state.sessionFactory);
+        if (!countryDao.useSnapshot(state.snapshotFile.getPath())) {
+            throw new IllegalStateException("The snapshot is stale");
+        }
+        return countryDao.getCountries();
+    }
+
+    @Benchmark
+    public List<Country> fetchDao(DatabaseState state) {
+        return new CountryDaoImpl(state.sessionFactory).getCountries();
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.romanmayer.analyzer.benchmark;
+
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.utility.TableBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of the country listing. The 10M rows dataset is left out: its table alone would not fit in the
+ * heap of a benchmark fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableBuilderBenchmark {
+
+    @Param({"1000", "100000"})
+    private int rows;
+
+    // measures the rendering alone, not the cost of a destination
+    private static final Writer DISCARDING_WRITER = new Writer() {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void write(String str) {
+        }
+
+        @Override
+        public void write(int c) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private TableBuilder tableBuilder;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tableBuilder = new TableBuilder();
+        tableBuilder.addRow("Country", "Code  ", "Internet Users   ", "Literacy");
+        tableBuilder.addRow("-----------------------------------", "-----", "-----------------", "--------");
+        for (Country country : SyntheticCountries.generate(rows)) {
+            tableBuilder.addRow(country.getName(), country.getCode(), format(country.getInternetUsers()),
+                    format(country.getAdultLiteracyRate()));
+        }
+    }
+
+    @Benchmark
+    public String toStringTable() {
+        return tableBuilder.toString();
+    }
+
+    @Benchmark
+    public void writeToWriter() throws IOException {
+        tableBuilder.writeTo(DISCARDING_WRITER);
+    }
+
+    private static String format(BigDecimal value) {
+        return value == null ? "--" : value.setScale(2, RoundingMode.HALF_UP).toString();
+    }
+
+}
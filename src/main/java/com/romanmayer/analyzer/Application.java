@@ -1,13 +1,257 @@
 package com.romanmayer.analyzer;
 
+import com.romanmayer.analyzer.analytics.CorrelationEngine;
+import com.romanmayer.analyzer.controller.BatchRunner;
 import com.romanmayer.analyzer.controller.Prompter;
+import com.romanmayer.analyzer.dao.ConcurrentCountryDao;
+import com.romanmayer.analyzer.dao.CountryDao;
 import com.romanmayer.analyzer.dao.CountryDaoImpl;
+import com.romanmayer.analyzer.dao.InstrumentedCountryDao;
+import com.romanmayer.analyzer.dao.ObservationDaoImpl;
+import com.romanmayer.analyzer.dao.ParallelAggregation;
+import com.romanmayer.analyzer.dao.QuantileSketch;
+import com.romanmayer.analyzer.feed.ChangeFeed;
+import com.romanmayer.analyzer.feed.ExportView;
+import com.romanmayer.analyzer.http.CountryHttpServer;
+import com.romanmayer.analyzer.metrics.AnalyzerMetrics;
+import com.romanmayer.analyzer.metrics.DaoMetrics;
+import com.romanmayer.analyzer.metrics.SqlLogging;
+import com.romanmayer.analyzer.metrics.StartupMetrics;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
 
 public class Application {
 
+    // -Danalyzer.parallel.threshold=<rows> switches the statistics to the parallel scan
+    private static final String PARALLEL_THRESHOLD = "analyzer.parallel.threshold";
+    private static final String PARALLEL_POOL_SIZE = "analyzer.parallel.poolSize";
+    // -Danalyzer.writeBehind.maxPending=<codes> queues mutations and writes them in batches
+    private static final String WRITE_BEHIND_MAX_PENDING = "analyzer.writeBehind.maxPending";
+    private static final String WRITE_BEHIND_MAX_DELAY = "analyzer.writeBehind.maxDelayMillis";
+    // -Danalyzer.http.threads=<threads> sizes the request pool of --http
+    private static final String HTTP_THREADS = "analyzer.http.threads";
+    // -Danalyzer.sql.log=true logs every SQL statement to stderr, also switchable over JMX
+    private static final String SQL_LOG = "analyzer.sql.log";
+    // -Danalyzer.metrics.dumpSeconds=<seconds> prints the metrics report to stderr periodically
+    private static final String METRICS_DUMP_SECONDS = "analyzer.metrics.dumpSeconds";
+    // -Danalyzer.sketch.k=<k> sets the accuracy of the quantile sketches, the rank error is below 1% at 200
+    private static final String SKETCH_K = "analyzer.sketch.k";
+    // -Danalyzer.snapshot.file=<path> restores the countries from a snapshot file if it is current
+    private static final String SNAPSHOT_FILE = "analyzer.snapshot.file";
+    // -Danalyzer.export.file=<path> keeps a CSV export of the countries up to date from the change feed
+    private static final String EXPORT_FILE = "analyzer.export.file";
+    // -Danalyzer.feed.capacity=<changes> sets how far a subscriber of the change feed may lag behind
+    private static final String FEED_CAPACITY = "analyzer.feed.capacity";
+
     public static void main(String[] args) {
-        Prompter prompter = new Prompter(new CountryDaoImpl());
+        SqlLogging.setEnabled(Boolean.getBoolean(SQL_LOG));
+        if (args.length > 1 && args[0].equals("--import")) {
+            importCountries(Paths.get(args[1]));
+            return;
+        }
+
+        if (args.length > 1 && args[0].equals("--import-observations")) {
+            importObservations(Paths.get(args[1]));
+            return;
+        }
+
+        if (args.length > 0 && args[0].equals("--batch")) {
+            runBatch(args.length > 1 && !args[1].equals("-") ? Paths.get(args[1]) : null);
+            return;
+        }
+
+        if (args.length > 0 && args[0].equals("--http")) {
+            int port = CountryHttpServer.DEFAULT_PORT;
+            if (args.length > 1) {
+                try {
+                    port = Integer.parseInt(args[1]);
+                } catch (NumberFormatException nfe) {
+                    System.err.printf("Usage: --http [port], the port %s is not a number%n", args[1]);
+                    System.exit(1);
+                }
+            }
+            serveHttp(port);
+            return;
+        }
+
+        // show the menu right away, Hibernate and the country cache start up in the background
+        StartupMetrics startupMetrics = new StartupMetrics();
+        CountryDaoImpl countryDao = CountryDaoImpl.warmUpAsync(startupMetrics, snapshotFile());
+        countryDao.setParallelAggregation(parallelAggregation());
+        countryDao.setQuantileSketchK(sketchK());
+        if (System.getProperty(WRITE_BEHIND_MAX_PENDING) != null) {
+            countryDao.enableWriteBehind(Integer.getInteger(WRITE_BEHIND_MAX_PENDING),
+                    Long.getLong(WRITE_BEHIND_MAX_DELAY, 1000L));
+        }
+        // the export needs the countries, which are still loading, so it is subscribed in the background too
+        CompletableFuture.runAsync(() -> subscribeExport(countryDao));
+        // writes queued mutations and closes the database, which does not close itself on exit
+        Runtime.getRuntime().addShutdownHook(new Thread(countryDao::close, "country-dao-shutdown"));
+        DaoMetrics daoMetrics = new DaoMetrics();
+        Prompter prompter = new Prompter(new InstrumentedCountryDao(countryDao, daoMetrics), startupMetrics,
+                analyzerMetrics(daoMetrics, countryDao));
         prompter.mainPrompter();
     }
 
+    private static void importCountries(Path file) {
+        CountryDaoImpl countryDao = new CountryDaoImpl();
+        try {
+            Prompter.printImportResult(countryDao.importCountries(file));
+        } catch (IOException ioe) {
+            System.out.printf("The import failed: %s%n", ioe.getMessage());
+            System.exit(1);
+        } finally {
+            countryDao.getSessionFactory().close();
+        }
+    }
+
+    /**
+     * Imports per-year values of any indicators, served by --http under /observations.
+     */
+    private static void importObservations(Path file) {
+        CountryDaoImpl countryDao = new CountryDaoImpl();
+        try {
+            Prompter.printImportResult(new ObservationDaoImpl(countryDao.getSessionFactory()).importObservations(file));
+        } catch (IOException ioe) {
+            System.out.printf("The import failed: %s%n", ioe.getMessage());
+            System.exit(1);
+        } finally {
+            countryDao.getSessionFactory().close();
+        }
+    }
+
+    /**
+     * Runs the commands of the file, or of stdin without one, and exits with 1 if any of them failed.
+     */
+    private static void runBatch(Path file) {
+        CountryDaoImpl countryDao = new CountryDaoImpl();
+        if (snapshotFile() != null) {
+            countryDao.useSnapshot(snapshotFile());
+        }
+        countryDao.setParallelAggregation(parallelAggregation());
+        countryDao.setQuantileSketchK(sketchK());
+        // queue every mutation until the end of the batch, which writes all of them in one transaction or none
+        countryDao.enableWriteBehind(Integer.MAX_VALUE, Long.MAX_VALUE, true);
+        subscribeExport(countryDao);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        boolean succeeded;
+        try (BufferedReader in = file != null ? Files.newBufferedReader(file, StandardCharsets.UTF_8)
+                : new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+            succeeded = new BatchRunner(countryDao, out).run(in);
+        } catch (IOException ioe) {
+            System.err.printf("The batch failed: %s%n", ioe.getMessage());
+            succeeded = false;
+        }
+        try {
+            countryDao.close();
+        } catch (RuntimeException e) {
+            System.err.printf("Closing the database failed: %s%n", e.getMessage());
+            succeeded = false;
+        }
+        System.exit(succeeded ? 0 : 1);
+    }
+
+    private static void serveHttp(int port) {
+        CountryDaoImpl countryDao = new CountryDaoImpl();
+        if (snapshotFile() != null) {
+            countryDao.useSnapshot(snapshotFile());
+        }
+        countryDao.setQuantileSketchK(sketchK());
+        countryDao.setParallelAggregation(parallelAggregation());
+        if (System.getProperty(WRITE_BEHIND_MAX_PENDING) != null) {
+            countryDao.enableWriteBehind(Integer.getInteger(WRITE_BEHIND_MAX_PENDING),
+                    Long.getLong(WRITE_BEHIND_MAX_DELAY, 1000L));
+        }
+        subscribeExport(countryDao);
+        // shut down with the countryDao
+        countryDao.setCorrelationEngine(correlationEngine());
+        ConcurrentCountryDao concurrentDao = new ConcurrentCountryDao(countryDao);
+        DaoMetrics daoMetrics = new DaoMetrics();
+        CountryDao instrumentedDao = new InstrumentedCountryDao(concurrentDao, daoMetrics);
+        analyzerMetrics(daoMetrics, countryDao);
+        int threads = Integer.getInteger(HTTP_THREADS, 2 * Runtime.getRuntime().availableProcessors());
+        try {
+            CountryHttpServer server = new CountryHttpServer(instrumentedDao, port, threads);
+            server.setObservationDao(new ObservationDaoImpl(countryDao.getSessionFactory()));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop();
+                countryDao.close();
+            }, "country-http-shutdown"));
+            server.start();
+            System.out.printf("Serving the countries on http://localhost:%d/countries%n", server.getPort());
+        } catch (IOException ioe) {
+            System.out.printf("The server could not start: %s%n", ioe.getMessage());
+            countryDao.close();
+            System.exit(1);
+        }
+    }
+
+    private static AnalyzerMetrics analyzerMetrics(DaoMetrics daoMetrics, CountryDaoImpl countryDao) {
+        AnalyzerMetrics analyzerMetrics = new AnalyzerMetrics(daoMetrics, countryDao);
+        analyzerMetrics.register();
+        Long dumpSeconds = Long.getLong(METRICS_DUMP_SECONDS);
+        if (dumpSeconds != null) {
+            analyzerMetrics.dumpPeriodically(dumpSeconds, System.err);
+        }
+        return analyzerMetrics;
+    }
+
+    /**
+     * Subscribes an export view to the change feed if an export file is configured.
+     */
+    private static void subscribeExport(CountryDaoImpl countryDao) {
+        String exportFile = System.getProperty(EXPORT_FILE);
+        if (exportFile == null) {
+            return;
+        }
+        try {
+            countryDao.enableChangeFeed(feedCapacity());
+            countryDao.subscribe("export", new ExportView(Paths.get(exportFile)));
+        } catch (RuntimeException e) {
+            System.err.printf("The export %s is not kept up to date: %s%n", exportFile, e.getMessage());
+        }
+    }
+
+    private static int feedCapacity() {
+        return Integer.getInteger(FEED_CAPACITY, ChangeFeed.DEFAULT_CAPACITY);
+    }
+
+    private static int sketchK() {
+        return Integer.getInteger(SKETCH_K, QuantileSketch.DEFAULT_K);
+    }
+
+    private static Path snapshotFile() {
+        String snapshotFile = System.getProperty(SNAPSHOT_FILE);
+        return snapshotFile == null ? null : Paths.get(snapshotFile);
+    }
+
+    /**
+     * The correlation engine, parallel from the same threshold and pool size as the statistics.
+     */
+    private static CorrelationEngine correlationEngine() {
+        String threshold = System.getProperty(PARALLEL_THRESHOLD);
+        int poolSize = Integer.getInteger(PARALLEL_POOL_SIZE, Runtime.getRuntime().availableProcessors());
+        return new CorrelationEngine(threshold != null ? Integer.parseInt(threshold)
+                : CorrelationEngine.DEFAULT_THRESHOLD, poolSize);
+    }
+
+    private static ParallelAggregation parallelAggregation() {
+        String threshold = System.getProperty(PARALLEL_THRESHOLD);
+        if (threshold == null) {
+            return null;
+        }
+        int poolSize = Integer.getInteger(PARALLEL_POOL_SIZE, Runtime.getRuntime().availableProcessors());
+        return new ParallelAggregation(Integer.parseInt(threshold), poolSize);
+    }
+
 }
@@ -0,0 +1,68 @@
+package com.romanmayer.analyzer.analytics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Named numeric columns with the same number of rows, NaN marking a missing value. The arrays are not copied,
+ * so a column set over the arrays of an {@code ObservationCube} costs nothing, but must not be used while the
+ * arrays change.
+ */
+public class ColumnSet {
+
+    private final int rows;
+    private final List<String> names = new ArrayList<>();
+    private final List<double[]> columns = new ArrayList<>();
+
+    public ColumnSet(int rows) {
+        if (rows < 0) {
+            throw new IllegalArgumentException("The number of rows must not be negative, not " + rows);
+        }
+        this.rows = rows;
+    }
+
+    /**
+     * Adds a column. Only the first {@link #rows()} values are read, the array may be longer.
+     */
+    public ColumnSet add(String name, double[] values) {
+        if (values.length < rows) {
+            throw new IllegalArgumentException(String.format("The column %s has %d rows, not %d",
+                    name, values.length, rows));
+        }
+        if (names.contains(name)) {
+            throw new IllegalArgumentException("There is already a column " + name);
+        }
+        names.add(name);
+        columns.add(values);
+        return this;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int size() {
+        return columns.size();
+    }
+
+    public List<String> names() {
+        return Collections.unmodifiableList(names);
+    }
+
+    public String name(int column) {
+        return names.get(column);
+    }
+
+    public double[] column(int column) {
+        return columns.get(column);
+    }
+
+    /**
+     * The index of the column, or -1 if there is none of that name.
+     */
+    public int indexOf(String name) {
+        return names.indexOf(name);
+    }
+
+}
@@ -0,0 +1,297 @@
+package com.romanmayer.analyzer.analytics;
+
+import com.romanmayer.analyzer.model.LinearRegression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Pearson and Spearman correlation matrices and simple linear regressions over the columns of a
+ * {@link ColumnSet}, every pair over the rows that have both values.
+ *
+ * The Pearson matrix takes one pass over the rows, in blocks that are summed for every pair while they are in
+ * the cache. Column sets with at least threshold rows are split into row ranges that are summed on a
+ * {@link ForkJoinPool} and merged, like {@code ParallelAggregation} does for the country statistics.
+ */
+public class CorrelationEngine {
+
+    public static final int DEFAULT_THRESHOLD = 100_000;
+
+    private final int threshold;
+    private final ForkJoinPool pool;
+
+    public CorrelationEngine() {
+        this(DEFAULT_THRESHOLD, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threshold minimum number of rows of a column set (and of each forked range) to sum in parallel
+     * @param poolSize  number of worker threads
+     */
+    public CorrelationEngine(int threshold, int poolSize) {
+        if (threshold < PairMoments.BLOCK_ROWS) {
+            throw new IllegalArgumentException(String.format("The threshold must be at least %d rows, not %d",
+                    PairMoments.BLOCK_ROWS, threshold));
+        }
+        this.threshold = threshold;
+        this.pool = new ForkJoinPool(poolSize);
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public int getPoolSize() {
+        return pool.getParallelism();
+    }
+
+    public CorrelationMatrix pearson(ColumnSet columns) {
+        double[] shifts = shifts(columns);
+        PairMoments moments;
+        if (columns.rows() < threshold) {
+            moments = new PairMoments(columns.size()).accumulate(columns, shifts, 0, columns.rows());
+        } else {
+            moments = pool.invoke(new MomentsTask(columns, shifts, 0, columns.rows()));
+        }
+        return moments.toMatrix(columns.names(), shifts);
+    }
+
+    /**
+     * The rank correlations, ties getting the mean of their ranks.
+     *
+     * Every column is sorted once and the Pearson matrix of its ranks is taken. That is exact for the pairs
+     * whose columns miss the same rows. The other pairs are ranked again over the rows they share, by walking
+     * the sort order of each column and skipping the rows the other one misses.
+     */
+    public CorrelationMatrix spearman(ColumnSet columns) {
+        int size = columns.size();
+        int rows = columns.rows();
+        List<ForkJoinTask<int[]>> sorts = new ArrayList<>();
+        for (int column = 0; column < size; column++) {
+            double[] values = columns.column(column);
+            sorts.add(pool.submit(() -> order(values, rows)));
+        }
+        int[][] orders = new int[size][];
+        long[][] missing = new long[size][];
+        ColumnSet ranks = new ColumnSet(rows);
+        for (int column = 0; column < size; column++) {
+            orders[column] = sorts.get(column).join();
+            missing[column] = missingRows(columns.column(column), rows);
+            ranks.add(columns.name(column), ranks(columns.column(column), orders[column], null, rows));
+        }
+
+        CorrelationMatrix matrix = pearson(ranks);
+        List<ForkJoinTask<?>> pairs = new ArrayList<>();
+        for (int x = 0; x < size; x++) {
+            for (int y = x + 1; y < size; y++) {
+                if (!Arrays.equals(missing[x], missing[y])) {
+                    int pairX = x;
+                    int pairY = y;
+                    pairs.add(pool.submit(() -> matrix.setPair(pairX, pairY,
+                            rankPair(columns, orders, missing, pairX, pairY))));
+                }
+            }
+        }
+        for (ForkJoinTask<?> pair : pairs) {
+            pair.join();
+        }
+        return matrix;
+    }
+
+    /**
+     * The least-squares line of column y on column x, or null if less than two rows have both values.
+     */
+    public LinearRegression regression(ColumnSet columns, String x, String y) {
+        int indexX = columns.indexOf(x);
+        int indexY = columns.indexOf(y);
+        if (indexX < 0 || indexY < 0) {
+            throw new IllegalArgumentException(String.format("There is no column %s", indexX < 0 ? x : y));
+        }
+        ColumnSet pair = new ColumnSet(columns.rows())
+                .add(x, columns.column(indexX));
+        if (indexX != indexY) {
+            pair.add(y, columns.column(indexY));
+        }
+        return pearson(pair).regression(x, y);
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * The first value of every column, close enough to the mean to keep the shifted sums small without a
+     * pass of its own.
+     */
+    private static double[] shifts(ColumnSet columns) {
+        double[] shifts = new double[columns.size()];
+        for (int column = 0; column < columns.size(); column++) {
+            double[] values = columns.column(column);
+            for (int row = 0; row < columns.rows(); row++) {
+                if (!Double.isNaN(values[row])) {
+                    shifts[column] = values[row];
+                    break;
+                }
+            }
+        }
+        return shifts;
+    }
+
+    /**
+     * The rows that have a value, ordered by the value.
+     */
+    static int[] order(double[] values, int rows) {
+        double[] sorted = new double[rows];
+        int count = 0;
+        for (int row = 0; row < rows; row++) {
+            if (!Double.isNaN(values[row])) {
+                sorted[count++] = values[row];
+            }
+        }
+        Arrays.sort(sorted, 0, count);
+        // the position of the value in the sorted values and the row in one long, which sorts without boxing
+        long[] keys = new long[count];
+        for (int row = 0, key = 0; row < rows; row++) {
+            if (!Double.isNaN(values[row])) {
+                keys[key++] = (long) firstIndexOf(sorted, count, values[row]) << 32 | row;
+            }
+        }
+        Arrays.sort(keys);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /**
+     * The ranks from 1 of the values in the order, leaving out the rows set in {@code skipped} if that is not
+     * null. Ties get the mean of their ranks, the other rows NaN.
+     */
+    static double[] ranks(double[] values, int[] order, long[] skipped, int rows) {
+        double[] ranks = new double[rows];
+        Arrays.fill(ranks, Double.NaN);
+        int ranked = 0;
+        // the position in the order of the first row of the current run of equal values
+        int runStart = -1;
+        for (int i = 0; i < order.length; i++) {
+            int row = order[i];
+            if (isSet(skipped, row)) {
+                continue;
+            }
+            if (runStart >= 0 && values[row] != values[order[runStart]]) {
+                assignRun(ranks, order, skipped, runStart, i, ranked);
+                runStart = -1;
+            }
+            if (runStart < 0) {
+                runStart = i;
+            }
+            ranked++;
+        }
+        if (runStart >= 0) {
+            assignRun(ranks, order, skipped, runStart, order.length, ranked);
+        }
+        return ranks;
+    }
+
+    /**
+     * Gives the rows of a run of equal values, from {@code from} to {@code to} in the order, their mean rank.
+     * {@code rankAfter} is the number of rows ranked up to and including the run.
+     */
+    private static void assignRun(double[] ranks, int[] order, long[] skipped, int from, int to, int rankAfter) {
+        int runLength = 0;
+        for (int i = from; i < to; i++) {
+            if (!isSet(skipped, order[i])) {
+                runLength++;
+            }
+        }
+        double meanRank = rankAfter - (runLength - 1) / 2.0;
+        for (int i = from; i < to; i++) {
+            if (!isSet(skipped, order[i])) {
+                ranks[order[i]] = meanRank;
+            }
+        }
+    }
+
+    private static boolean isSet(long[] bitmap, int row) {
+        return bitmap != null && (bitmap[row >>> 6] & (1L << row)) != 0;
+    }
+
+    private static int firstIndexOf(double[] sorted, int count, double value) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static long[] missingRows(double[] values, int rows) {
+        long[] missing = new long[(rows + 63) >>> 6];
+        for (int row = 0; row < rows; row++) {
+            if (Double.isNaN(values[row])) {
+                missing[row >>> 6] |= 1L << row;
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * The Pearson correlation of the ranks of two columns over the rows that have both values.
+     */
+    private static CorrelationMatrix rankPair(ColumnSet columns, int[][] orders, long[][] missing, int x, int y) {
+        int rows = columns.rows();
+        ColumnSet ranks = new ColumnSet(rows)
+                .add(columns.name(x), ranks(columns.column(x), orders[x], missing[y], rows))
+                .add(columns.name(y), ranks(columns.column(y), orders[y], missing[x], rows));
+        int missingEither = 0;
+        for (int word = 0; word < missing[x].length; word++) {
+            missingEither += Long.bitCount(missing[x][word] | missing[y][word]);
+        }
+        // the mean rank is known, which makes it the best shift
+        double meanRank = (rows - missingEither + 1) / 2.0;
+        double[] shifts = {meanRank, meanRank};
+        return new PairMoments(2).accumulate(ranks, shifts, 0, rows).toMatrix(ranks.names(), shifts);
+    }
+
+    private class MomentsTask extends RecursiveTask<PairMoments> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ColumnSet columns;
+        private final double[] shifts;
+        private final int fromRow;
+        private final int toRow;
+
+        private MomentsTask(ColumnSet columns, double[] shifts, int fromRow, int toRow) {
+            this.columns = columns;
+            this.shifts = shifts;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        protected PairMoments compute() {
+            if (toRow - fromRow < 2 * threshold) {
+                return new PairMoments(columns.size()).accumulate(columns, shifts, fromRow, toRow);
+            }
+            // split on a block boundary, so that no block is cut in two
+            int middle = fromRow + ((toRow - fromRow) / 2 / PairMoments.BLOCK_ROWS) * PairMoments.BLOCK_ROWS;
+            MomentsTask left = new MomentsTask(columns, shifts, fromRow, middle);
+            MomentsTask right = new MomentsTask(columns, shifts, middle, toRow);
+            right.fork();
+            return left.compute().merge(right.join());
+        }
+
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.romanmayer.analyzer.analytics;
+
+import com.romanmayer.analyzer.model.LinearRegression;
+import com.romanmayer.utility.TableBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The pairwise correlations of a {@link ColumnSet}. Every pair is computed over the rows that have both values,
+ * so the entries of one matrix may be based on different rows.
+ *
+ * Besides the coefficients the matrix keeps the means, the sums of squared deviations and the co-moment of
+ * every pair, which is all a simple linear regression of one column on another needs.
+ */
+public class CorrelationMatrix {
+
+    private final List<String> names;
+    private final int size;
+    // indexed by x * size + y; counts and coMoments are symmetric, means and m2 belong to x over the rows of (x, y)
+    private final long[] counts;
+    private final double[] means;
+    private final double[] m2;
+    private final double[] coMoments;
+
+    CorrelationMatrix(List<String> names) {
+        this.names = Collections.unmodifiableList(new ArrayList<>(names));
+        this.size = names.size();
+        this.counts = new long[size * size];
+        this.means = new double[size * size];
+        this.m2 = new double[size * size];
+        this.coMoments = new double[size * size];
+    }
+
+    void set(int x, int y, long count, double meanX, double meanY, double m2X, double m2Y, double coMoment) {
+        counts[x * size + y] = count;
+        counts[y * size + x] = count;
+        means[x * size + y] = meanX;
+        means[y * size + x] = meanY;
+        m2[x * size + y] = m2X;
+        m2[y * size + x] = m2Y;
+        coMoments[x * size + y] = coMoment;
+        coMoments[y * size + x] = coMoment;
+    }
+
+    /**
+     * Copies the pair of a two-column matrix into the cells of x and y.
+     */
+    void setPair(int x, int y, CorrelationMatrix pair) {
+        set(x, y, pair.counts[1], pair.means[1], pair.means[2], pair.m2[1], pair.m2[2], pair.coMoments[1]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public List<String> names() {
+        return names;
+    }
+
+    /**
+     * The number of rows that have values in both columns.
+     */
+    public long count(int x, int y) {
+        return counts[x * size + y];
+    }
+
+    /**
+     * The correlation coefficient, or NaN if less than two rows have both values or a column is constant on them.
+     */
+    public double correlation(int x, int y) {
+        int cell = x * size + y;
+        if (counts[cell] < 2) {
+            return Double.NaN;
+        }
+        double denominator = Math.sqrt(m2[cell] * m2[y * size + x]);
+        if (denominator == 0) {
+            return Double.NaN;
+        }
+        // rounding may push a perfect correlation just past 1
+        return Math.max(-1, Math.min(1, coMoments[cell] / denominator));
+    }
+
+    public double correlation(String x, String y) {
+        return correlation(indexOf(x), indexOf(y));
+    }
+
+    /**
+     * The least-squares line of column y on column x, or null if less than two rows have both values or x is
+     * constant on them.
+     */
+    public LinearRegression regression(int x, int y) {
+        int cell = x * size + y;
+        if (counts[cell] < 2 || m2[cell] == 0) {
+            return null;
+        }
+        double slope = coMoments[cell] / m2[cell];
+        double intercept = means[y * size + x] - slope * means[cell];
+        double correlation = correlation(x, y);
+        // a constant y lies on the line exactly
+        double rSquared = Double.isNaN(correlation) ? 1 : correlation * correlation;
+        return new LinearRegression(names.get(x), names.get(y), counts[cell], slope, intercept, rSquared);
+    }
+
+    public LinearRegression regression(String x, String y) {
+        return regression(indexOf(x), indexOf(y));
+    }
+
+    private int indexOf(String name) {
+        int index = names.indexOf(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("There is no column " + name);
+        }
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        TableBuilder tableBuilder = new TableBuilder();
+        String[] header = new String[size + 1];
+        header[0] = "";
+        for (int y = 0; y < size; y++) {
+            header[y + 1] = names.get(y);
+        }
+        tableBuilder.addRow(header);
+        for (int x = 0; x < size; x++) {
+            String[] row = new String[size + 1];
+            row[0] = names.get(x);
+            for (int y = 0; y < size; y++) {
+                double correlation = correlation(x, y);
+                row[y + 1] = Double.isNaN(correlation) ? "--" : String.format("%.4f", correlation);
+            }
+            tableBuilder.addRow(row);
+        }
+        return tableBuilder.toString();
+    }
+
+}
@@ -0,0 +1,195 @@
+package com.romanmayer.analyzer.analytics;
+
+import java.util.List;
+
+/**
+ * Sums over the rows of every pair of columns that have both values, accumulated block by block.
+ *
+ * The values are shifted by a value of their column before they are summed, so that the sums of squares stay
+ * small enough for the co-moments not to cancel out. Accumulators of disjoint row ranges are combined with
+ * {@link #merge}.
+ */
+class PairMoments {
+
+    // 512 rows of every column are 4 KB each, so a block of 50 columns stays in the L2 cache
+    static final int BLOCK_ROWS = 512;
+
+    private final int size;
+    // indexed by x * size + y with x <= y, the diagonal holds the column on its own
+    private final long[] counts;
+    private final double[] sumX;
+    private final double[] sumY;
+    private final double[] sumXX;
+    private final double[] sumYY;
+    private final double[] sumXY;
+
+    PairMoments(int size) {
+        this.size = size;
+        this.counts = new long[size * size];
+        this.sumX = new double[size * size];
+        this.sumY = new double[size * size];
+        this.sumXX = new double[size * size];
+        this.sumYY = new double[size * size];
+        this.sumXY = new double[size * size];
+    }
+
+    /**
+     * Adds the rows {@code fromRow} (inclusive) to {@code toRow} (exclusive).
+     *
+     * Each block of rows is shifted into a scratch buffer once, with 0 for a missing value and a bitmap of the
+     * rows that have one. A missing value then adds nothing to the co-moment of a pair, which is a plain dot
+     * product, and the sums of one column only need to drop the few rows that the other column misses.
+     */
+    PairMoments accumulate(ColumnSet columns, double[] shifts, int fromRow, int toRow) {
+        double[][] block = new double[size][BLOCK_ROWS];
+        long[][] present = new long[size][BLOCK_ROWS >>> 6];
+        int[] blockCounts = new int[size];
+        double[] blockSums = new double[size];
+        double[] blockSquares = new double[size];
+        for (int start = fromRow; start < toRow; start += BLOCK_ROWS) {
+            int length = Math.min(BLOCK_ROWS, toRow - start);
+            int words = (length + 63) >>> 6;
+            for (int column = 0; column < size; column++) {
+                double[] values = columns.column(column);
+                double[] shifted = block[column];
+                long[] bits = present[column];
+                double shift = shifts[column];
+                int count = 0;
+                double sum = 0;
+                double squares = 0;
+                for (int word = 0; word < words; word++) {
+                    int offset = word << 6;
+                    int end = Math.min(64, length - offset);
+                    long wordBits = 0;
+                    for (int bit = 0; bit < end; bit++) {
+                        double value = values[start + offset + bit];
+                        if (value == value) {
+                            value -= shift;
+                            wordBits |= 1L << bit;
+                            sum += value;
+                            squares += value * value;
+                        } else {
+                            value = 0;
+                        }
+                        shifted[offset + bit] = value;
+                    }
+                    bits[word] = wordBits;
+                    count += Long.bitCount(wordBits);
+                }
+                blockCounts[column] = count;
+                blockSums[column] = sum;
+                blockSquares[column] = squares;
+            }
+
+            for (int x = 0; x < size; x++) {
+                if (blockCounts[x] == 0) {
+                    continue;
+                }
+                int diagonal = x * size + x;
+                counts[diagonal] += blockCounts[x];
+                sumX[diagonal] += blockSums[x];
+                sumXX[diagonal] += blockSquares[x];
+                for (int y = x + 1; y < size; y++) {
+                    if (blockCounts[y] == 0) {
+                        continue;
+                    }
+                    int cell = x * size + y;
+                    long shared = length;
+                    double sx = blockSums[x];
+                    double sxx = blockSquares[x];
+                    double sy = blockSums[y];
+                    double syy = blockSquares[y];
+                    if (blockCounts[x] != length || blockCounts[y] != length) {
+                        shared = 0;
+                        for (int word = 0; word < words; word++) {
+                            long presentX = present[x][word];
+                            long presentY = present[y][word];
+                            shared += Long.bitCount(presentX & presentY);
+                            for (long onlyX = presentX & ~presentY; onlyX != 0; onlyX &= onlyX - 1) {
+                                double value = block[x][(word << 6) + Long.numberOfTrailingZeros(onlyX)];
+                                sx -= value;
+                                sxx -= value * value;
+                            }
+                            for (long onlyY = presentY & ~presentX; onlyY != 0; onlyY &= onlyY - 1) {
+                                double value = block[y][(word << 6) + Long.numberOfTrailingZeros(onlyY)];
+                                sy -= value;
+                                syy -= value * value;
+                            }
+                        }
+                    }
+                    counts[cell] += shared;
+                    sumX[cell] += sx;
+                    sumY[cell] += sy;
+                    sumXX[cell] += sxx;
+                    sumYY[cell] += syy;
+                    sumXY[cell] += dot(block[x], block[y], length);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds the sums of another accumulator, which must have the same columns and shifts.
+     */
+    PairMoments merge(PairMoments other) {
+        for (int cell = 0; cell < counts.length; cell++) {
+            counts[cell] += other.counts[cell];
+            sumX[cell] += other.sumX[cell];
+            sumY[cell] += other.sumY[cell];
+            sumXX[cell] += other.sumXX[cell];
+            sumYY[cell] += other.sumYY[cell];
+            sumXY[cell] += other.sumXY[cell];
+        }
+        return this;
+    }
+
+    CorrelationMatrix toMatrix(List<String> names, double[] shifts) {
+        CorrelationMatrix matrix = new CorrelationMatrix(names);
+        for (int x = 0; x < size; x++) {
+            int diagonal = x * size + x;
+            long count = counts[diagonal];
+            if (count > 0) {
+                double mean = shifts[x] + sumX[diagonal] / count;
+                double m2 = Math.max(0, sumXX[diagonal] - sumX[diagonal] * sumX[diagonal] / count);
+                matrix.set(x, x, count, mean, mean, m2, m2, m2);
+            }
+            for (int y = x + 1; y < size; y++) {
+                int cell = x * size + y;
+                count = counts[cell];
+                if (count == 0) {
+                    continue;
+                }
+                matrix.set(x, y, count,
+                        shifts[x] + sumX[cell] / count,
+                        shifts[y] + sumY[cell] / count,
+                        Math.max(0, sumXX[cell] - sumX[cell] * sumX[cell] / count),
+                        Math.max(0, sumYY[cell] - sumY[cell] * sumY[cell] / count),
+                        sumXY[cell] - sumX[cell] * sumY[cell] / count);
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Four independent sums, so that the additions do not wait for each other.
+     */
+    private static double dot(double[] x, double[] y, int length) {
+        double sum0 = 0;
+        double sum1 = 0;
+        double sum2 = 0;
+        double sum3 = 0;
+        int row = 0;
+        for (; row + 3 < length; row += 4) {
+            sum0 += x[row] * y[row];
+            sum1 += x[row + 1] * y[row + 1];
+            sum2 += x[row + 2] * y[row + 2];
+            sum3 += x[row + 3] * y[row + 3];
+        }
+        for (; row < length; row++) {
+            sum0 += x[row] * y[row];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+}
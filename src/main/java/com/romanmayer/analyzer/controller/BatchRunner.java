@@ -0,0 +1,318 @@
+package com.romanmayer.analyzer.controller;
+
+import com.romanmayer.analyzer.dao.CountryDao;
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.Country.CountryBuilder;
+import com.romanmayer.analyzer.model.CountryCsv;
+import com.romanmayer.analyzer.model.CountryJson;
+import com.romanmayer.analyzer.model.FixedPoint;
+import com.romanmayer.analyzer.model.IndicatorSummary;
+import com.romanmayer.utility.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Runs the operations of the {@link Prompter} from a stream of commands, one per line, without any prompts.
+ *
+ * <pre>
+ * get CODE
+ * set CODE [name=NAME] [internetUsers=X] [adultLiteracyRate=Y]
+ * add CODE name=NAME [internetUsers=X] [adultLiteracyRate=Y]
+ * delete CODE
+ * stats
+ * export csv|json [FILE]
+ * </pre>
+ *
+ * Values with spaces are quoted with double quotes, e.g. {@code name="United States"}, and an empty value or
+ * {@code null} clears an indicator. Empty lines and lines starting with # are skipped.
+ *
+ * Every command prints one line of JSON with its line number and either its result or an error; a failed
+ * command does not stop the batch. An export without a file prints the CSV or the JSON array instead, followed
+ * by its result line. The mutations are written with one {@link CountryDao#flush()} at the end, so the DAO
+ * should queue them all or nothing, see
+ * {@link com.romanmayer.analyzer.dao.CountryDaoImpl#enableWriteBehind(int, long, boolean)}. The last line tells
+ * whether they were written.
+ */
+public class BatchRunner {
+
+    private final CountryDao countryDao;
+    private final Writer out;
+    private int commands;
+    private int mutations;
+    private int errors;
+
+    public BatchRunner(CountryDao countryDao, Writer out) {
+        this.countryDao = countryDao;
+        this.out = out;
+    }
+
+    /**
+     * @return whether every command succeeded and the mutations were written
+     */
+    public boolean run(BufferedReader in) throws IOException {
+        long start = System.nanoTime();
+        int lineNumber = 0;
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            lineNumber++;
+            if (line.trim().isEmpty() || line.trim().startsWith("#")) {
+                continue;
+            }
+            commands++;
+            JsonWriter result = new JsonWriter().beginObject().name("line").value(lineNumber);
+            try {
+                execute(tokenize(line), result);
+            } catch (IllegalArgumentException | NoSuchElementException e) {
+                errors++;
+                result.name("error").value(e.getMessage());
+            } catch (IOException ioe) {
+                // e.g. an export to a directory that does not exist, the message alone may be just the path
+                errors++;
+                result.name("error").value(ioe.toString());
+            }
+            out.write(result.endObject().toString());
+            out.write('\n');
+            // the lines so far are out even if a later command or the flush of the DAO fails
+            out.flush();
+        }
+
+        JsonWriter summary = new JsonWriter().beginObject();
+        boolean written = true;
+        try {
+            countryDao.flush();
+        } catch (RuntimeException e) {
+            written = false;
+            summary.name("error").value("The changes were not written: " + e.getMessage());
+        }
+        summary.name("commands").value(commands)
+                .name("errors").value(errors)
+                .name("mutations").value(mutations)
+                .name("written").value(written)
+                .name("millis").value((System.nanoTime() - start) / 1_000_000);
+        out.write(summary.endObject().toString());
+        out.write('\n');
+        out.flush();
+        return written && errors == 0;
+    }
+
+    private void execute(List<String> tokens, JsonWriter result) throws IOException {
+        String command = tokens.get(0).toLowerCase();
+        result.name("command").value(command);
+        // every result is computed before its name is written, so a failed command only adds the error
+        Country country;
+        switch (command) {
+            case "get":
+                expectArguments(tokens, 2, 2);
+                country = existingCountry(tokens.get(1));
+                CountryJson.writeCountry(result.name("country"), country);
+                break;
+            case "set":
+                expectArguments(tokens, 3, 5);
+                country = setCountry(tokens);
+                CountryJson.writeCountry(result.name("country"), country);
+                break;
+            case "add":
+                expectArguments(tokens, 3, 5);
+                country = addCountry(tokens);
+                CountryJson.writeCountry(result.name("country"), country);
+                break;
+            case "delete":
+                expectArguments(tokens, 2, 2);
+                country = existingCountry(tokens.get(1));
+                countryDao.delete(country);
+                mutations++;
+                result.name("code").value(country.getCode());
+                break;
+            case "stats":
+                expectArguments(tokens, 1, 1);
+                IndicatorSummary summary = countryDao.summarize();
+                CountryJson.writeSummary(result.name("statistics"), summary);
+                break;
+            case "export":
+                expectArguments(tokens, 2, 3);
+                export(tokens.get(1).toLowerCase(), tokens.size() > 2 ? tokens.get(2) : null, result);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command " + tokens.get(0)
+                        + ", expected get, set, add, delete, stats or export");
+        }
+    }
+
+    private Country setCountry(List<String> tokens) {
+        Country country = existingCountry(tokens.get(1));
+        Map<String, String> values = values(tokens);
+        // parse every value before the country is changed, so a wrong one leaves it as it was
+        String name = values.containsKey("name") ? name(values.get("name")) : country.getName();
+        long internetUsers = values.containsKey("internetUsers")
+                ? indicator(values, "internetUsers") : country.getInternetUsersFixedPoint();
+        long adultLiteracyRate = values.containsKey("adultLiteracyRate")
+                ? indicator(values, "adultLiteracyRate") : country.getAdultLiteracyRateFixedPoint();
+        country.setName(name);
+        country.setInternetUsersFixedPoint(internetUsers);
+        country.setAdultLiteracyRateFixedPoint(adultLiteracyRate);
+        countryDao.update(country);
+        mutations++;
+        return country;
+    }
+
+    private Country addCountry(List<String> tokens) {
+        String code = tokens.get(1).toUpperCase();
+        if (!code.matches("[A-Z]{3}")) {
+            throw new IllegalArgumentException("The code must have 3 letters: " + tokens.get(1));
+        }
+        if (countryDao.findByCode(code) != null) {
+            throw new IllegalArgumentException("A country with code " + code + " exists already");
+        }
+        Map<String, String> values = values(tokens);
+        if (!values.containsKey("name")) {
+            throw new IllegalArgumentException("A new country needs a name");
+        }
+        Country country = new CountryBuilder(code, name(values.get("name")))
+                .withInternetUsersFixedPoint(indicator(values, "internetUsers"))
+                .withLiteracyRateFixedPoint(indicator(values, "adultLiteracyRate"))
+                .build();
+        countryDao.create(country);
+        mutations++;
+        return country;
+    }
+
+    private void export(String format, String file, JsonWriter result) throws IOException {
+        if (!format.equals("csv") && !format.equals("json")) {
+            throw new IllegalArgumentException("Unknown export format " + format + ", expected csv or json");
+        }
+        // the in-memory countries, since a query of the database would write the queued mutations first
+        List<Country> countries = new ArrayList<>(countryDao.getCountries());
+        countries.sort(Comparator.comparing(Country::getCode));
+        if (file == null) {
+            writeExport(format, countries, out);
+        } else {
+            try (Writer writer = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+                writeExport(format, countries, writer);
+            }
+            result.name("file").value(file);
+        }
+        result.name("rows").value(countries.size());
+    }
+
+    private static void writeExport(String format, List<Country> countries, Writer writer) throws IOException {
+        if (format.equals("csv")) {
+            CountryCsv.writeCountries(writer, countries);
+            return;
+        }
+        // one line, so the output of the batch stays one JSON value per line
+        writer.write('[');
+        for (int i = 0; i < countries.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(CountryJson.writeCountry(new JsonWriter(), countries.get(i)).toString());
+        }
+        writer.write("]\n");
+    }
+
+    private Country existingCountry(String code) {
+        Country country = countryDao.findByCode(code.toUpperCase());
+        if (country == null) {
+            throw new NoSuchElementException("No country with code " + code.toUpperCase());
+        }
+        return country;
+    }
+
+    private static void expectArguments(List<String> tokens, int min, int max) {
+        if (tokens.size() < min || tokens.size() > max) {
+            throw new IllegalArgumentException(String.format("%s takes %d to %d arguments, not %d",
+                    tokens.get(0), min - 1, max - 1, tokens.size() - 1));
+        }
+    }
+
+    /**
+     * The name=value arguments after the code.
+     */
+    private static Map<String, String> values(List<String> tokens) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String token : tokens.subList(2, tokens.size())) {
+            int equals = token.indexOf('=');
+            String key = equals < 0 ? token : token.substring(0, equals);
+            if (equals < 0 || !(key.equals("name") || key.equals("internetUsers")
+                    || key.equals("adultLiteracyRate"))) {
+                throw new IllegalArgumentException("Expected name=, internetUsers= or adultLiteracyRate=, not "
+                        + token);
+            }
+            values.put(key, token.substring(equals + 1));
+        }
+        return values;
+    }
+
+    private static String name(String name) {
+        String trimmed = name.trim();
+        if (trimmed.isEmpty() || trimmed.length() > 32) {
+            throw new IllegalArgumentException("The name must have 1 to 32 characters");
+        }
+        return trimmed;
+    }
+
+    private static long indicator(Map<String, String> values, String name) {
+        String value = values.get(name);
+        if (value == null || value.trim().isEmpty() || value.trim().equals("null")) {
+            return FixedPoint.NULL;
+        }
+        try {
+            return FixedPoint.parse(value.trim());
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException(name + " is not a number: " + value);
+        }
+    }
+
+    /**
+     * Splits a command at whitespace outside double quotes. Two double quotes in a quoted value are one.
+     */
+    private static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean quoted = false;
+        boolean inToken = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    token.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    token.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+                inToken = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inToken) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                token.append(c);
+                inToken = true;
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("A quote is not closed");
+        }
+        if (inToken) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+}
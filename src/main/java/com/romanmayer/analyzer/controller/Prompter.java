@@ -1,26 +1,52 @@
 package com.romanmayer.analyzer.controller;
 
 import com.romanmayer.analyzer.dao.CountryDao;
+import com.romanmayer.analyzer.importer.ImportResult;
+import com.romanmayer.analyzer.metrics.AnalyzerMetrics;
+import com.romanmayer.analyzer.metrics.StartupMetrics;
 import com.romanmayer.analyzer.model.Country;
 import com.romanmayer.analyzer.model.Country.CountryBuilder;
+import com.romanmayer.analyzer.model.FixedPoint;
+import com.romanmayer.analyzer.model.Indicator;
+import com.romanmayer.analyzer.model.IndicatorSummary;
 import com.romanmayer.utility.TableBuilder;
+import com.romanmayer.utility.TableWriter;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class Prompter {
 
+    private static final int PAGE_SIZE = 100;
+    private static final int QUIT = 9;
+    private static final int SUGGESTIONS = 5;
+
     private CountryDao countryDao;
     private BufferedReader bufferedReader;
     private Map<Integer, String> menu;
+    private StartupMetrics startupMetrics;
+    private AnalyzerMetrics analyzerMetrics;
 
     public Prompter(CountryDao countryDao) {
+        this(countryDao, new StartupMetrics(), null);
+    }
+
+    /**
+     * @param analyzerMetrics shown by the metrics menu item, may be null if the DAO is not instrumented
+     */
+    public Prompter(CountryDao countryDao, StartupMetrics startupMetrics, AnalyzerMetrics analyzerMetrics) {
         this.countryDao = countryDao;
+        this.startupMetrics = startupMetrics;
+        this.analyzerMetrics = analyzerMetrics;
         bufferedReader = new BufferedReader(new InputStreamReader(System.in));
         menu = new HashMap<>();
         menu.put(1, "View all countries");
@@ -29,7 +55,9 @@ public class Prompter {
         menu.put(4, "Edit a country");
         menu.put(5, "Add a country");
         menu.put(6, "Delete a country");
-        menu.put(7, "Quit");
+        menu.put(7, "Import countries from a CSV file");
+        menu.put(8, "View metrics");
+        menu.put(QUIT, "Quit");
     }
 
     private int promptForMenuChoice() throws IOException {
@@ -37,6 +65,7 @@ public class Prompter {
         for (Map.Entry<Integer, String> menuItem : menu.entrySet()) {
             System.out.printf("%s: %s%n", menuItem.getKey(), menuItem.getValue());
         }
+        startupMetrics.markFirstPrompt();
         int choice = -1;
         try {
             choice = Integer.parseInt(bufferedReader.readLine());
@@ -71,15 +100,48 @@ public class Prompter {
                         deleteCountry();
                         break;
                     case 7:
+                        importCountries();
+                        break;
+                    case 8:
+                        viewMetrics();
+                        break;
+                    case QUIT:
+                        System.out.printf("%nStartup: menu after %sms, Hibernate after %sms, country cache after %sms%n",
+                                startupMetrics.getTimeToFirstPrompt(), startupMetrics.getTimeToSessionFactory(),
+                                startupMetrics.getTimeToCacheReady());
                         System.out.println("\nGoodbye!");
                         System.exit(0);
                     default:
-                        System.out.println("Please try again. Pick a number between 1 and 6.\n");
+                        System.out.printf("Please try again. Pick a number between 1 and %s.%n%n", menu.size());
                 }
             } catch (IOException ioe) {
                 System.out.println(ioe.getMessage());
             }
-        } while (choice != 7);
+        } while (choice != QUIT);
+    }
+
+    private void viewMetrics() {
+        if (analyzerMetrics == null) {
+            System.out.println("No metrics are recorded.");
+            return;
+        }
+        System.out.printf("%n%s", analyzerMetrics.getReport());
+    }
+
+    private void importCountries() throws IOException {
+        System.out.print("Please enter the path of the CSV file (code,name,internetUsers,adultLiteracyRate): ");
+        String file = bufferedReader.readLine();
+        if (file == null || file.trim().isEmpty()) {
+            return;
+        }
+        printImportResult(countryDao.importCountries(Paths.get(file.trim())));
+    }
+
+    public static void printImportResult(ImportResult result) {
+        System.out.printf("%s%n", result);
+        for (String rejection : result.getRejections()) {
+            System.out.printf("  rejected %s%n", rejection);
+        }
     }
 
     private void deleteCountry() {
@@ -88,10 +150,15 @@ public class Prompter {
 
     private void addCountry() {
         Country country = new CountryBuilder(promptForNewCountryCode(), promptForName())
-                .withInternetUsers(promptForInternetUsers())
-                .withLiteracyRate(promptForAdultLiteracyRate())
+                .withInternetUsersFixedPoint(promptForInternetUsers())
+                .withLiteracyRateFixedPoint(promptForAdultLiteracyRate())
                 .build();
-        countryDao.create(country);
+        try {
+            countryDao.create(country);
+        } catch (IllegalArgumentException iae) {
+            // someone else added the code in the meantime
+            System.out.println(iae.getMessage());
+        }
     }
 
     private String promptForNewCountryCode() {
@@ -103,6 +170,10 @@ public class Prompter {
             } catch (IOException ioe) {
                 System.out.println(ioe.getMessage());
             }
+            if (code != null && code.length() == 3 && countryDao.findByCode(code) != null) {
+                System.out.printf("A country with code %s exists already.%n", code);
+                code = null;
+            }
         } while (code == null || code.length() != 3);
         return code;
     }
@@ -111,8 +182,8 @@ public class Prompter {
         Country updatedCountry = promptForExistingCountryCode();
 
         updatedCountry.setName(promptForName());
-        updatedCountry.setInternetUsers(promptForInternetUsers());
-        updatedCountry.setAdultLiteracyRate(promptForAdultLiteracyRate());
+        updatedCountry.setInternetUsersFixedPoint(promptForInternetUsers());
+        updatedCountry.setAdultLiteracyRateFixedPoint(promptForAdultLiteracyRate());
 
         countryDao.update(updatedCountry);
         System.out.println("Updating finished.");
@@ -131,35 +202,34 @@ public class Prompter {
         return newName;
     }
 
-    private BigDecimal promptForInternetUsers() {
-        BigDecimal newInternetUsers = null;
+    private long promptForInternetUsers() {
+        long newInternetUsers = FixedPoint.NULL;
         do {
             System.out.printf("Please enter a new value for internetUsers: ");
             try {
-                //TODO:RM what if I pass an invalid value into the BigDecimal constructor?
-                newInternetUsers = new BigDecimal(Double.parseDouble(bufferedReader.readLine()));
+                // parsed digit by digit, so 84.2 is stored as 84.2 and not as the closest double
+                newInternetUsers = FixedPoint.parse(bufferedReader.readLine());
             } catch (IOException ioe) {
                 System.out.println(ioe.getMessage());
             } catch (NumberFormatException nfe) {
                 System.out.println(nfe.getMessage());
             }
-        } while (newInternetUsers == null);
+        } while (FixedPoint.isNull(newInternetUsers));
         return newInternetUsers;
     }
 
-    private BigDecimal promptForAdultLiteracyRate() {
-        BigDecimal adultLiteracyRate = null;
+    private long promptForAdultLiteracyRate() {
+        long adultLiteracyRate = FixedPoint.NULL;
         do {
             System.out.printf("Please enter a new value for adultLiteracyRate: ");
             try {
-                //TODO:RM what if I pass an invalid value into the BigDecimal constructor?
-                adultLiteracyRate = new BigDecimal(Double.parseDouble(bufferedReader.readLine()));
+                adultLiteracyRate = FixedPoint.parse(bufferedReader.readLine());
             } catch (IOException ioe) {
                 System.out.println(ioe.getMessage());
             } catch (NumberFormatException nfe) {
                 System.out.println(nfe.getMessage());
             }
-        } while (adultLiteracyRate == null);
+        } while (FixedPoint.isNull(adultLiteracyRate));
         return adultLiteracyRate;
     }
 
@@ -174,17 +244,16 @@ public class Prompter {
     }
 
     private Country promptForExistingCountryCode() {
-        String code;
+        String input;
         Country country = null;
 
         do {
             try {
-                System.out.print("Please put in the 3-letter country code: ");
-                code = bufferedReader.readLine().replaceAll("\\s","").toUpperCase();
-                country = countryDao.findByCode(code);
+                System.out.print("Please put in the 3-letter country code or the name: ");
+                input = bufferedReader.readLine();
+                country = countryDao.findByCode(input.replaceAll("\\s","").toUpperCase());
                 if (country == null) {
-                    viewAllCountries();
-                    System.out.print("Country not found. Please enter a valid 3-letter code from the above list.");
+                    country = chooseSuggestion(input);
                 }
             } catch (IOException ioe) {
                 System.out.println(ioe.getMessage());
@@ -194,64 +263,105 @@ public class Prompter {
         return country;
     }
 
+    /**
+     * The country whose name is the input, or null after listing the closest names.
+     */
+    private Country chooseSuggestion(String input) {
+        List<Country> suggestions = input.trim().isEmpty()
+                ? Collections.emptyList() : countryDao.searchByName(input, SUGGESTIONS);
+        for (Country suggestion : suggestions) {
+            if (suggestion.getName().trim().equalsIgnoreCase(input.trim())) {
+                return suggestion;
+            }
+        }
+        if (suggestions.isEmpty()) {
+            System.out.printf("Country not found. Please enter a valid 3-letter code, option 1 lists them all.%n");
+            return null;
+        }
+        System.out.printf("Country not found. Did you mean:%n");
+        for (Country suggestion : suggestions) {
+            System.out.printf("  %s  %s%n", suggestion.getCode(), suggestion.getName());
+        }
+        return null;
+    }
+
     private void viewStatistics() {
+        IndicatorSummary summary = countryDao.summarize();
+        if (summary.isEmpty()) {
+            System.out.printf("%nThere is no country with values for both indicators.%n%n");
+            return;
+        }
+
         TableBuilder tableBuilder = new TableBuilder();
         tableBuilder.addRow("Country", "Code ", "Internet Users   ", "Literacy", "Why");
         tableBuilder.addRow("-----------------------------------", "-----", "-----------------", "--------", "-----");
-
-        Country countryWithMinInternetUsers = countryDao.countryWithMinInternetUsers();
-        addCurrentCountryToTableBuilderWithReason(tableBuilder, countryWithMinInternetUsers, "min(Internet Users)");
-
-        Country countryWithMaxInternetUsers = countryDao.countryWithMaxInternetUsers();
-        addCurrentCountryToTableBuilderWithReason(tableBuilder, countryWithMaxInternetUsers, "max(Internet Users)");
-
-        Country countryWithMinLiteracyRate = countryDao.countryWithMinLiteracyRate();
-        addCurrentCountryToTableBuilderWithReason(tableBuilder, countryWithMinLiteracyRate, "min(Literacy Rate)");
-
-        Country countryWithMaxLiteracyRate = countryDao.countryWithMaxLiteracyRate();
-        addCurrentCountryToTableBuilderWithReason(tableBuilder, countryWithMaxLiteracyRate, "max(Literacy Rate)");
-
+        addCurrentCountryToTableBuilderWithReason(tableBuilder, summary.getCountryWithMinInternetUsers(), "min(Internet Users)");
+        addCurrentCountryToTableBuilderWithReason(tableBuilder, summary.getCountryWithMaxInternetUsers(), "max(Internet Users)");
+        addCurrentCountryToTableBuilderWithReason(tableBuilder, summary.getCountryWithMinLiteracyRate(), "min(Literacy Rate)");
+        addCurrentCountryToTableBuilderWithReason(tableBuilder, summary.getCountryWithMaxLiteracyRate(), "max(Literacy Rate)");
         System.out.println(tableBuilder.toString());
 
-        System.out.printf("This is the correlation coefficient between #internetUsers and #adultLiteracyRate: %s%n%n",
-                countryDao.getCorrelationCoefficient());
+        System.out.printf("Mean of #internetUsers: %.2f (variance %.2f), mean of #adultLiteracyRate: %.2f (variance %.2f), over %s countries%n",
+                summary.getMeanInternetUsers(), summary.getVarianceInternetUsers(),
+                summary.getMeanLiteracyRate(), summary.getVarianceLiteracyRate(), summary.getCount());
+        System.out.printf("This is the correlation coefficient between #internetUsers and #adultLiteracyRate: %s%n",
+                summary.getCorrelationCoefficient());
+        for (Indicator indicator : Indicator.values()) {
+            System.out.printf("%s over all countries with a value: p10 %.2f, median %.2f, p90 %.2f (approximate)%n",
+                    indicator.getLabel(), countryDao.quantile(indicator, 0.1), countryDao.quantile(indicator, 0.5),
+                    countryDao.quantile(indicator, 0.9));
+        }
+        System.out.printf("%n");
     }
 
-    private void viewAllCountries() {
+    private void viewAllCountries() throws IOException {
         System.out.printf("%n%nThese are all countries in the database:%n%n");
-        TableBuilder tableBuilder = new TableBuilder();
-        tableBuilder.addRow("Country", "Code  ", "Internet Users   ", "Literacy");
-        tableBuilder.addRow("-----------------------------------", "-----", "-----------------", "--------");
-        for (Country country : countryDao.getCountries()) {
-            addCurrentCountryToTableBuilder(tableBuilder, country);
+        // stream the rows instead of buffering the whole table, the widths fit every value of the columns
+        Writer writer = new BufferedWriter(new OutputStreamWriter(System.out));
+        TableWriter tableWriter = new TableWriter(writer, 35, 6, 17, 8);
+        tableWriter.writeRow("Country", "Code  ", "Internet Users   ", "Literacy");
+        tableWriter.writeRow("-----------------------------------", "-----", "-----------------", "--------");
+        // page through the database, so only one page of countries is held at a time
+        List<Country> page = countryDao.page(null, PAGE_SIZE);
+        while (!page.isEmpty()) {
+            for (Country country : page) {
+                tableWriter.writeRow(countryCells(country));
+            }
+            tableWriter.flush();
+            page = countryDao.page(page.get(page.size() - 1).getCode(), PAGE_SIZE);
         }
-        System.out.println(tableBuilder.toString());
+        writer.write(System.lineSeparator());
+        tableWriter.flush();
     }
 
     private void addCurrentCountryToTableBuilder(TableBuilder tableBuilder, Country country) {
+        tableBuilder.addRow(countryCells(country));
+    }
+
+    private String[] countryCells(Country country) {
         String name = country.getName();
         String code = country.getCode();
         String internetUsers;
-        if (country.getInternetUsers() == null) {
+        if (FixedPoint.isNull(country.getInternetUsersFixedPoint())) {
             internetUsers = "--";
         } else {
-            internetUsers = country.getInternetUsers().setScale(2, RoundingMode.HALF_UP).toString();
+            internetUsers = FixedPoint.format(country.getInternetUsersFixedPoint(), 2);
         }
 
         String adultLiteracyRate;
-        if (country.getAdultLiteracyRate() == null) {
+        if (FixedPoint.isNull(country.getAdultLiteracyRateFixedPoint())) {
             adultLiteracyRate = "--";
         } else {
-            adultLiteracyRate = country.getAdultLiteracyRate().setScale(2, RoundingMode.HALF_UP).toString();
+            adultLiteracyRate = FixedPoint.format(country.getAdultLiteracyRateFixedPoint(), 2);
         }
-        tableBuilder.addRow(name, code, internetUsers, adultLiteracyRate);
+        return new String[]{name, code, internetUsers, adultLiteracyRate};
     }
 
     private void addCurrentCountryToTableBuilderWithReason(TableBuilder tableBuilder, Country country, String reason) {
         String name = country.getName();
         String code = country.getCode();
-        String internetUsers = country.getInternetUsers().setScale(2, RoundingMode.HALF_UP).toString();
-        String adultLiteracyRate = country.getAdultLiteracyRate().setScale(2, RoundingMode.HALF_UP).toString();
+        String internetUsers = FixedPoint.format(country.getInternetUsersFixedPoint(), 2);
+        String adultLiteracyRate = FixedPoint.format(country.getAdultLiteracyRateFixedPoint(), 2);
 
         tableBuilder.addRow(name, code, internetUsers, adultLiteracyRate, reason);
     }
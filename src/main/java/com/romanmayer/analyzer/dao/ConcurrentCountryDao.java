@@ -0,0 +1,241 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.analytics.CorrelationMatrix;
+import com.romanmayer.analyzer.importer.ImportResult;
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.Country.CountryBuilder;
+import com.romanmayer.analyzer.model.Histogram;
+import com.romanmayer.analyzer.model.Indicator;
+import com.romanmayer.analyzer.model.IndicatorSummary;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * A CountryDao that can be shared by several threads, e.g. the request threads of the HTTP server.
+ *
+ * The queries are answered by the in-memory structures of the delegate, a {@link CountryDaoImpl}: its snapshot,
+ * indexes and running statistics, so a summary or a ranking needs no scan. Queries share a read lock and run at
+ * the same time, apart from the ones the delegate serialises itself: the summary, the correlations and a
+ * quantile, which may rebuild a sketch. Mutations take the write lock, so a query sees the countries before or
+ * after a mutation, never in between. A mutation holds the write lock while the delegate writes the database;
+ * with write-behind that is only the time to queue it.
+ *
+ * The delegate is handed copies and replaces a country rather than changing it, so the countries in memory are
+ * never changed once a query returned them. {@link #findByCode} returns a fresh copy that may be edited and
+ * passed to {@link #update}, but {@link #updateByCode} and {@link #deleteByCode} find and change a country under
+ * one write lock, so no other mutation comes in between. The countries returned by the other queries must not be
+ * changed.
+ */
+public class ConcurrentCountryDao implements CountryDao {
+
+    private final CountryDao delegate;
+    private final Lock readLock;
+    private final Lock writeLock;
+    private volatile boolean loaded;
+
+    public ConcurrentCountryDao(CountryDao delegate) {
+        this.delegate = delegate;
+        ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        this.readLock = lock.readLock();
+        this.writeLock = lock.writeLock();
+    }
+
+    @Override
+    public List<Country> getCountries() {
+        return read(() -> Collections.unmodifiableList(new ArrayList<>(delegate.getCountries())));
+    }
+
+    @Override
+    public List<Country> page(String afterCode, int limit) {
+        return delegate.page(afterCode, limit);
+    }
+
+    @Override
+    public Stream<Country> streamCountries() {
+        return delegate.streamCountries();
+    }
+
+    @Override
+    public Country findByCode(String code) {
+        return read(() -> {
+            Country country = delegate.findByCode(code);
+            return country == null ? null : copyOf(country);
+        });
+    }
+
+    @Override
+    public Country countryWithMinInternetUsers() {
+        return countryOf(summarize().getCountryWithMinInternetUsers());
+    }
+
+    @Override
+    public Country countryWithMaxInternetUsers() {
+        return countryOf(summarize().getCountryWithMaxInternetUsers());
+    }
+
+    @Override
+    public Country countryWithMinLiteracyRate() {
+        return countryOf(summarize().getCountryWithMinLiteracyRate());
+    }
+
+    @Override
+    public Country countryWithMaxLiteracyRate() {
+        return countryOf(summarize().getCountryWithMaxLiteracyRate());
+    }
+
+    @Override
+    public Double getCorrelationCoefficient() {
+        return summarize().getCorrelationCoefficient();
+    }
+
+    @Override
+    public IndicatorSummary summarize() {
+        return read(delegate::summarize);
+    }
+
+    @Override
+    public List<Country> countriesInRange(Indicator indicator, double from, double to) {
+        return read(() -> delegate.countriesInRange(indicator, from, to));
+    }
+
+    @Override
+    public List<Country> topCountries(Indicator indicator, int k) {
+        return read(() -> delegate.topCountries(indicator, k));
+    }
+
+    @Override
+    public List<Country> bottomCountries(Indicator indicator, int k) {
+        return read(() -> delegate.bottomCountries(indicator, k));
+    }
+
+    @Override
+    public List<Country> searchByName(String query, int limit) {
+        return read(() -> delegate.searchByName(query, limit));
+    }
+
+    @Override
+    public double quantile(Indicator indicator, double fraction) {
+        return read(() -> delegate.quantile(indicator, fraction));
+    }
+
+    @Override
+    public Histogram histogram(Indicator indicator, int buckets) {
+        return read(() -> delegate.histogram(indicator, buckets));
+    }
+
+    @Override
+    public CorrelationMatrix correlations() {
+        return read(delegate::correlations);
+    }
+
+    @Override
+    public CorrelationMatrix rankCorrelations() {
+        return read(delegate::rankCorrelations);
+    }
+
+    @Override
+    public void update(Country country) {
+        write(() -> delegate.update(copyOf(country)));
+    }
+
+    @Override
+    public void create(Country country) {
+        write(() -> delegate.create(copyOf(country)));
+    }
+
+    @Override
+    public void delete(Country country) {
+        write(() -> delegate.delete(country));
+    }
+
+    @Override
+    public Country updateByCode(String code, Consumer<Country> change) {
+        return write(() -> copyOf(delegate.updateByCode(code, change)));
+    }
+
+    @Override
+    public void deleteByCode(String code) {
+        write(() -> delegate.deleteByCode(code));
+    }
+
+    @Override
+    public void flush() {
+        delegate.flush();
+    }
+
+    @Override
+    public ImportResult importCountries(Path file) throws IOException {
+        ensureLoaded();
+        writeLock.lock();
+        try {
+            return delegate.importCountries(file);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private <T> T read(Supplier<T> query) {
+        ensureLoaded();
+        readLock.lock();
+        try {
+            return query.get();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private void write(Runnable mutation) {
+        write(() -> {
+            mutation.run();
+            return null;
+        });
+    }
+
+    private <T> T write(Supplier<T> mutation) {
+        ensureLoaded();
+        writeLock.lock();
+        try {
+            return mutation.get();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // the delegate answers from memory once it loaded the countries, instead of asking the database
+    private void ensureLoaded() {
+        if (!loaded) {
+            writeLock.lock();
+            try {
+                delegate.getCountries();
+                loaded = true;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    private static Country countryOf(Country country) {
+        if (country == null) {
+            throw new NoSuchElementException("No country has values for both indicators");
+        }
+        return country;
+    }
+
+    private static Country copyOf(Country country) {
+        return new CountryBuilder(country.getCode(), country.getName())
+                .withInternetUsersFixedPoint(country.getInternetUsersFixedPoint())
+                .withLiteracyRateFixedPoint(country.getAdultLiteracyRateFixedPoint())
+                .build();
+    }
+
+}
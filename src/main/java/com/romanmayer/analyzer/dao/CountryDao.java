@@ -1,22 +1,46 @@
 package com.romanmayer.analyzer.dao;
 
+import com.romanmayer.analyzer.analytics.CorrelationMatrix;
+import com.romanmayer.analyzer.importer.ImportResult;
 import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.Histogram;
+import com.romanmayer.analyzer.model.Indicator;
+import com.romanmayer.analyzer.model.IndicatorSummary;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Created by romanmayer on 04/04/2017.
  */
 public interface CountryDao {
     List<Country> getCountries();
+    List<Country> page(String afterCode, int limit);
+    Stream<Country> streamCountries();
     Country findByCode(String code);
     Country countryWithMinInternetUsers();
     Country countryWithMaxInternetUsers();
     Country countryWithMinLiteracyRate();
     Country countryWithMaxLiteracyRate();
     Double getCorrelationCoefficient();
+    IndicatorSummary summarize();
+    List<Country> countriesInRange(Indicator indicator, double from, double to);
+    List<Country> topCountries(Indicator indicator, int k);
+    List<Country> bottomCountries(Indicator indicator, int k);
+    List<Country> searchByName(String query, int limit);
+    double quantile(Indicator indicator, double fraction);
+    Histogram histogram(Indicator indicator, int buckets);
+    CorrelationMatrix correlations();
+    CorrelationMatrix rankCorrelations();
     void update(Country country);
     void create(Country country);
     void delete(Country country);
+    Country updateByCode(String code, Consumer<Country> change);
+    void deleteByCode(String code);
+    void flush();
+    ImportResult importCountries(Path file) throws IOException;
 
 }
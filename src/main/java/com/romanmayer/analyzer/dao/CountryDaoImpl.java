@@ -1,44 +1,431 @@
 package com.romanmayer.analyzer.dao;
 
+import com.romanmayer.analyzer.analytics.CorrelationEngine;
+import com.romanmayer.analyzer.analytics.CorrelationMatrix;
+import com.romanmayer.analyzer.feed.ChangeFeed;
+import com.romanmayer.analyzer.feed.ChangeListener;
+import com.romanmayer.analyzer.feed.CountryChange;
+import com.romanmayer.analyzer.importer.CountryImporter;
+import com.romanmayer.analyzer.importer.ImportResult;
 import com.romanmayer.analyzer.model.Country;
-import org.apache.commons.math3.stat.correlation.PearsonsCorrelation;
+import com.romanmayer.analyzer.model.Histogram;
+import com.romanmayer.analyzer.model.Indicator;
+import com.romanmayer.analyzer.model.IndicatorSummary;
+import com.romanmayer.analyzer.metrics.StartupMetrics;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
 import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.SessionFactoryBuilder;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Environment;
+import org.hibernate.jdbc.ReturningWork;
 import org.hibernate.service.ServiceRegistry;
 
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
-import java.math.BigDecimal;
-import java.util.Comparator;
+import javax.persistence.criteria.Root;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class CountryDaoImpl implements CountryDao {
 
+    private static final int SCROLL_FETCH_SIZE = 500;
+
     // Hold a reusable reference to a SessionFactory (since we need only one)
-    private final SessionFactory sessionFactory = buildSessionFactory();
-    private List<Country> countries;
+    // may still be under construction on a background thread, see warmUpAsync()
+    private final CompletableFuture<SessionFactory> sessionFactory;
+    // false until the countries are needed in memory, see ensureLoaded()
+    private volatile boolean loaded;
+    // the countries in memory, one row per country, and a columnar copy of their values for the statistics
+    private CountrySnapshot snapshot;
+    // hash index on the code and sorted indexes on the indicators
+    private CountryIndex index;
+    // statistics kept up to date on every mutation
+    private RunningStatistics statistics;
+    // quantile sketches, rebuilt by a query after a value changed
+    private RunningQuantiles quantiles;
+    private int quantileSketchK = QuantileSketch.DEFAULT_K;
+    // null as long as the statistics are computed on the calling thread
+    private ParallelAggregation parallelAggregation;
+    // created with the first correlation matrix unless set, see setCorrelationEngine()
+    private CorrelationEngine correlationEngine;
+    // null as long as every mutation is written to the database right away
+    private volatile WriteBehindQueue writeBehind;
+    // null as long as nobody subscribed to the mutations, see subscribe()
+    private volatile ChangeFeed changeFeed;
+    // null as long as the countries are always fetched from the database, see useSnapshot()
+    private volatile SnapshotFile snapshotFile;
+    // the DatasetVersion of the snapshot file on disk, -1 if unknown
+    private long snapshotVersion = -1;
+    // lookups answered from memory and from the database
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
 
     public CountryDaoImpl() {
-        countries = fetchAllCountries();
+        this(buildSessionFactory());
+    }
+
+    /**
+     * The countries are only fetched when something needs all of them in memory, like the statistics. Listings
+     * page through the database instead.
+     */
+    public CountryDaoImpl(SessionFactory sessionFactory) {
+        this(CompletableFuture.completedFuture(sessionFactory));
+    }
+
+    private CountryDaoImpl(CompletableFuture<SessionFactory> sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    /**
+     * Uses the given countries instead of fetching them from the database, e.g. to benchmark against a
+     * generated dataset. The countries are not written to the database.
+     */
+    public CountryDaoImpl(SessionFactory sessionFactory, List<Country> countries) {
+        this.sessionFactory = CompletableFuture.completedFuture(sessionFactory);
+        load(countries);
+    }
+
+    /**
+     * Returns at once and builds the SessionFactory and then the in-memory countries on a background thread.
+     *
+     * Calls that only need the database, like paging or a single lookup, wait for the SessionFactory alone.
+     * Calls that need the countries in memory, and mutations, wait until they are loaded.
+     */
+    public static CountryDaoImpl warmUpAsync(StartupMetrics startupMetrics) {
+        return warmUpAsync(startupMetrics, null);
+    }
+
+    /**
+     * Like {@link #warmUpAsync(StartupMetrics)}, but restores the countries from the snapshot file first if it is
+     * current, see {@link #useSnapshot(Path)}. Restoring needs no SessionFactory, so the countries are ready
+     * long before it is.
+     */
+    public static CountryDaoImpl warmUpAsync(StartupMetrics startupMetrics, Path snapshotFile) {
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "country-dao-warm-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletableFuture<SessionFactory> sessionFactory = new CompletableFuture<>();
+        CountryDaoImpl countryDao = new CountryDaoImpl(sessionFactory);
+        executor.execute(() -> {
+            try {
+                if (snapshotFile != null && countryDao.useSnapshot(snapshotFile)) {
+                    startupMetrics.markCacheReady();
+                }
+                SessionFactory built = buildSessionFactory();
+                startupMetrics.markSessionFactoryReady();
+                sessionFactory.complete(built);
+                countryDao.ensureLoaded();
+                startupMetrics.markCacheReady();
+            } catch (RuntimeException e) {
+                // callers see the failure when they wait for the SessionFactory
+                sessionFactory.completeExceptionally(e);
+            } finally {
+                executor.shutdown();
+            }
+        });
+        return countryDao;
+    }
+
+    public SessionFactory getSessionFactory() {
+        return sessionFactory.join();
+    }
+
+    // synchronized, so a caller waits for a load that is already running on the warm-up thread
+    private synchronized void ensureLoaded() {
+        if (!loaded) {
+            load(fetchAllCountries());
+        }
+    }
+
+    /**
+     * Restores the countries from the snapshot file if it was written at the current {@link DatasetVersion} and
+     * number of countries of the database, and writes them to the file on {@link #close()} if they changed.
+     * The database is only asked for these two numbers, with plain JDBC if the SessionFactory is not built yet.
+     *
+     * @return whether the countries were restored; false if the file is missing, stale or damaged, or the
+     * countries are loaded already
+     */
+    public synchronized boolean useSnapshot(Path file) {
+        SnapshotFile snapshot = new SnapshotFile(file);
+        this.snapshotFile = snapshot;
+        if (loaded) {
+            return false;
+        }
+        try {
+            SnapshotFile.Header header = snapshot.readHeader();
+            if (header == null) {
+                return false;
+            }
+            boolean current = withConnection(connection -> DatasetVersion.read(connection) == header.getDatasetVersion()
+                    && DatasetVersion.countRows(connection) == header.getRows());
+            if (!current) {
+                return false;
+            }
+            load(snapshot.readCountries());
+            snapshotVersion = header.getDatasetVersion();
+            return true;
+        } catch (IOException | SQLException e) {
+            System.err.printf("The snapshot %s could not be restored: %s%n", file, e.getMessage());
+            return false;
+        }
     }
 
-    private SessionFactory buildSessionFactory() {
+    private <T> T withConnection(ReturningWork<T> work) throws SQLException {
+        if (sessionFactory.isDone() && !sessionFactory.isCompletedExceptionally()) {
+            Session session = getSessionFactory().openSession();
+            try {
+                return session.doReturningWork(work);
+            } finally {
+                session.close();
+            }
+        }
+        // the same database the SessionFactory will connect to, without bootstrapping Hibernate
+        try (Connection connection = DatabaseSettings.fromSystemProperties().openConfiguredConnection()) {
+            return work.execute(connection);
+        }
+    }
+
+    /**
+     * Writes the countries to the snapshot file, unless it was written or restored at the current version.
+     */
+    private void writeSnapshot() {
+        SnapshotFile snapshot = snapshotFile;
+        if (snapshot == null || !loaded) {
+            return;
+        }
+        try {
+            long version = withConnection(DatasetVersion::read);
+            if (version == snapshotVersion && Files.exists(snapshot.getPath())) {
+                return;
+            }
+            snapshot.write(this.snapshot.countries(), version);
+            snapshotVersion = version;
+        } catch (IOException | SQLException | RuntimeException e) {
+            System.err.printf("The snapshot %s could not be written: %s%n", snapshot.getPath(), e.getMessage());
+        }
+    }
+
+    private void load(List<Country> countries) {
+        snapshot = new CountrySnapshot(countries);
+        index = new CountryIndex(countries);
+        statistics = new RunningStatistics(snapshot);
+        quantiles = new RunningQuantiles(quantileSketchK);
+        // set last, since other threads take it as the sign that everything is loaded
+        loaded = true;
+    }
+
+    public static SessionFactory buildSessionFactory() {
+        return buildSessionFactory(Collections.emptyMap());
+    }
+
+    /**
+     * Builds a SessionFactory from hibernate.cfg.xml, with the given settings overriding the ones in the file and
+     * the database tuned by the {@link DatabaseSettings} in the system properties.
+     */
+    public static SessionFactory buildSessionFactory(Map<String, Object> settings) {
+        return buildSessionFactory(DatabaseSettings.fromSystemProperties(), settings);
+    }
+
+    public static SessionFactory buildSessionFactory(DatabaseSettings database, Map<String, Object> settings) {
+        StandardServiceRegistryBuilder builder = new StandardServiceRegistryBuilder().configure().applySettings(settings);
+        // the settings the registry will see: hibernate properties, then hibernate.cfg.xml, then the overrides
+        Map<Object, Object> configured = new HashMap<>(Environment.getProperties());
+        Map<?, ?> fromFile = builder.getAggregatedCfgXml().getConfigurationValues();
+        configured.putAll(fromFile);
+        configured.putAll(settings);
+        String url = (String) configured.get(AvailableSettings.URL);
+        Map<String, Object> tuned = database.toHibernateSettings(url);
+        InMemoryDatabase inMemoryDatabase = null;
+        if (database.isInMemory()) {
+            inMemoryDatabase = InMemoryDatabase.load(database.withOptions(url),
+                    (String) configured.get(AvailableSettings.USER), (String) configured.get(AvailableSettings.PASS));
+            tuned.put(AvailableSettings.URL, inMemoryDatabase.getUrl());
+            if (database.getCheckpointSeconds() > 0) {
+                inMemoryDatabase.checkpointEvery(database.getCheckpointSeconds());
+            }
+        }
+
         // Create a StandardServiceRegistry
-        final ServiceRegistry registry = new StandardServiceRegistryBuilder().configure().build();
-        return new MetadataSources(registry).buildMetadata().buildSessionFactory();
+        final ServiceRegistry registry = builder.applySettings(tuned).build();
+        SessionFactoryBuilder sessionFactoryBuilder = new MetadataSources(registry).buildMetadata()
+                .getSessionFactoryBuilder();
+        if (inMemoryDatabase != null) {
+            // the last checkpoint is written when the SessionFactory is closed
+            sessionFactoryBuilder.addSessionFactoryObservers(inMemoryDatabase);
+        }
+        SessionFactory sessionFactory = sessionFactoryBuilder.build();
+        // the change counter of the snapshot files, see useSnapshot()
+        Session session = sessionFactory.openSession();
+        session.doWork(DatasetVersion::create);
+        session.close();
+        return sessionFactory;
+    }
+
+    /**
+     * Sets the accuracy of the quantile sketches, see {@link QuantileSketch#QuantileSketch(int)}.
+     */
+    public synchronized void setQuantileSketchK(int k) {
+        RunningQuantiles resized = new RunningQuantiles(k);
+        quantileSketchK = k;
+        if (quantiles != null) {
+            quantiles = resized;
+        }
+    }
+
+    /**
+     * Switches the scans behind the statistics and the quantile sketches to a parallel scan, or back to the
+     * sequential one if {@code parallelAggregation} is null.
+     */
+    public void setParallelAggregation(ParallelAggregation parallelAggregation) {
+        if (this.parallelAggregation != null) {
+            this.parallelAggregation.shutdown();
+        }
+        this.parallelAggregation = parallelAggregation;
+    }
+
+    /**
+     * Computes the correlation matrices with the given engine, e.g. a parallel one, instead of a sequential one.
+     * The engine is shut down with the DAO.
+     */
+    public synchronized void setCorrelationEngine(CorrelationEngine correlationEngine) {
+        if (this.correlationEngine != null) {
+            this.correlationEngine.shutdown();
+        }
+        this.correlationEngine = correlationEngine;
+    }
+
+    /**
+     * Queues mutations instead of writing each one in its own transaction. The queue is flushed when it holds
+     * {@code maxPending} codes, every {@code maxDelayMillis}, on {@link #flush()} and on shutdown. Reads see
+     * the queued mutations, since the in-memory countries are updated right away. A mutation the database
+     * rejects is undone in memory by reloading its country.
+     */
+    public void enableWriteBehind(int maxPending, long maxDelayMillis) {
+        enableWriteBehind(maxPending, maxDelayMillis, false);
+    }
+
+    /**
+     * Queues mutations like {@link #enableWriteBehind(int, long)}, but if {@code allOrNothing} a flush the
+     * database rejects writes none of its mutations, undoes all of them in memory and throws, see
+     * {@link WriteBehindQueue}.
+     */
+    public synchronized void enableWriteBehind(int maxPending, long maxDelayMillis, boolean allOrNothing) {
+        if (writeBehind != null) {
+            writeBehind.close();
+        }
+        WriteBehindQueue queue = new WriteBehindQueue(this::getSessionFactory, maxPending, maxDelayMillis,
+                allOrNothing);
+        queue.setRejectionListener(codes -> restore(queue, codes));
+        writeBehind = queue;
+    }
+
+    /**
+     * Publishes every mutation on a {@link ChangeFeed} of the given capacity, replacing the feed in use. Its
+     * subscribers are closed after they handled the changes so far.
+     *
+     * A mutation is published once the database has it, or with write-behind once it is queued, and before the
+     * lock of the DAO is released, which keeps the changes in the order of the mutations and the start of a new
+     * subscriber consistent. A queued mutation the database rejects is followed by a change back to its row. So while the slowest subscriber is a whole feed behind, every call of this DAO waits
+     * for it; the capacity should hold the largest burst of mutations the subscribers lag behind.
+     */
+    public synchronized ChangeFeed enableChangeFeed(int capacity) {
+        if (changeFeed != null) {
+            changeFeed.close();
+        }
+        changeFeed = new ChangeFeed(capacity);
+        return changeFeed;
     }
 
+    /**
+     * Hands the current countries to the listener and every mutation from now on, on a thread of its own. The
+     * change feed is enabled with the default capacity if it is not yet. The listener must not call this DAO: a
+     * mutation that waits for the listener to make room in the feed holds the lock of the DAO.
+     */
+    public synchronized ChangeFeed.Subscription subscribe(String name, ChangeListener listener) {
+        if (changeFeed == null) {
+            enableChangeFeed(ChangeFeed.DEFAULT_CAPACITY);
+        }
+        // the listener starts from the in-memory countries, which are ahead of the database with write-behind
+        ensureLoaded();
+        return changeFeed.subscribe(name, listener, CountryChange.copiesOf(snapshot.countries()));
+    }
+
+    /**
+     * The change feed, null if it is not enabled.
+     */
+    public ChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    /**
+     * Writes the queued mutations, the snapshot file if one is used, and closes the SessionFactory, which
+     * closes the database. Registered as a shutdown hook by the application, so queued mutations survive the
+     * end of the JVM.
+     */
+    public synchronized void close() {
+        if (changeFeed != null) {
+            changeFeed.close();
+            changeFeed = null;
+        }
+        if (writeBehind != null) {
+            writeBehind.close();
+            writeBehind = null;
+        }
+        if (correlationEngine != null) {
+            correlationEngine.shutdown();
+            correlationEngine = null;
+        }
+        SessionFactory factory = getSessionFactory();
+        if (factory.isOpen()) {
+            writeSnapshot();
+            factory.close();
+        }
+    }
+
+    @Override
+    public void flush() {
+        WriteBehindQueue queue = writeBehind;
+        if (queue != null) {
+            queue.flush();
+        }
+    }
+
+    /**
+     * The countries in memory, as a read-only view that is valid until the next mutation.
+     */
     public List<Country> getCountries() {
-        return countries;
+        ensureLoaded();
+        return snapshot.countries();
     }
 
     private List<Country> fetchAllCountries() {
 
         // Open a session
-        Session session = sessionFactory.openSession();
+        Session session = getSessionFactory().openSession();
 
         // UPDATED: Create CriteriaBuilder
         CriteriaBuilder builder = session.getCriteriaBuilder();
@@ -50,7 +437,8 @@ public class CountryDaoImpl implements CountryDao {
         criteria.from(Country.class);
 
         // UPDATED: Execute query
-        List<Country> countries = session.createQuery(criteria).getResultList();
+        // cacheable: a second DAO on the same SessionFactory gets the countries from the second-level cache
+        List<Country> countries = session.createQuery(criteria).setCacheable(true).getResultList();
 
         // Close the session
         session.close();
@@ -58,99 +446,439 @@ public class CountryDaoImpl implements CountryDao {
         return countries;
     }
 
+    @Override
+    public List<Country> page(String afterCode, int limit) {
+        // queries of the database must see the queued mutations
+        flush();
+        Session session = getSessionFactory().openSession();
+        CriteriaBuilder builder = session.getCriteriaBuilder();
+        CriteriaQuery<Country> criteria = builder.createQuery(Country.class);
+        Root<Country> root = criteria.from(Country.class);
+        if (afterCode != null) {
+            // keyset pagination: continue after the last code of the previous page instead of skipping rows
+            criteria.where(builder.greaterThan(root.get("code"), afterCode));
+        }
+        criteria.orderBy(builder.asc(root.get("code")));
+        List<Country> page = session.createQuery(criteria)
+                .setMaxResults(limit)
+                .setCacheable(true)
+                .getResultList();
+        session.close();
+        return page;
+    }
+
+    @Override
+    public Stream<Country> streamCountries() {
+        flush();
+        // a stateless session does not keep the scrolled countries in a persistence context
+        StatelessSession session = getSessionFactory().openStatelessSession();
+        ScrollableResults results = session.createQuery("from Country order by code")
+                .setFetchSize(SCROLL_FETCH_SIZE)
+                .scroll(ScrollMode.FORWARD_ONLY);
+        Spliterator<Country> spliterator = new Spliterators.AbstractSpliterator<Country>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Country> action) {
+                if (!results.next()) {
+                    return false;
+                }
+                action.accept((Country) results.get(0));
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            results.close();
+            session.close();
+        });
+    }
+
     @Override
     public Country findByCode(String code) {
-        return countries.stream().filter(country -> country.getCode().equals(code)).findFirst().orElse(null);
+        if (!loaded) {
+            cacheMisses.increment();
+            // no need to load every country for a single one
+            Session session = getSessionFactory().openSession();
+            Country country = session.get(Country.class, code);
+            session.close();
+            return country;
+        }
+        cacheHits.increment();
+        return index.findByCode(code);
+    }
+
+    private boolean exists(String code) {
+        if (loaded) {
+            return index.findByCode(code) != null;
+        }
+        Session session = getSessionFactory().openSession();
+        try {
+            return session.get(Country.class, code) != null;
+        } finally {
+            session.close();
+        }
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
     }
 
-    private List<Country> notNullCountries() {
-        return countries.stream()
-                .filter(country -> country.getInternetUsers() != null && country.getAdultLiteracyRate() != null)
-                .collect(Collectors.toList());
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    public void resetCacheCounters() {
+        cacheHits.reset();
+        cacheMisses.reset();
+    }
+
+    @Override
+    public List<Country> countriesInRange(Indicator indicator, double from, double to) {
+        ensureLoaded();
+        return index.sortedBy(indicator).range(from, to);
+    }
+
+    @Override
+    public List<Country> topCountries(Indicator indicator, int k) {
+        ensureLoaded();
+        return index.sortedBy(indicator).top(k);
+    }
+
+    @Override
+    public List<Country> bottomCountries(Indicator indicator, int k) {
+        ensureLoaded();
+        return index.sortedBy(indicator).bottom(k);
+    }
+
+    @Override
+    public List<Country> searchByName(String query, int limit) {
+        ensureLoaded();
+        return index.names().search(query, limit);
     }
 
     @Override
     public Country countryWithMinInternetUsers() {
-        return notNullCountries().stream()
-                .min(Comparator.comparingDouble(country -> country.getInternetUsers().doubleValue()))
-                .get();
+        return countryOf(summarize().getCountryWithMinInternetUsers());
     }
 
     @Override
     public Country countryWithMaxInternetUsers() {
-        return notNullCountries().stream()
-                .max(Comparator.comparingDouble(country -> country.getInternetUsers().doubleValue()))
-                .get();
+        return countryOf(summarize().getCountryWithMaxInternetUsers());
     }
 
     @Override
     public Country countryWithMinLiteracyRate() {
-        return notNullCountries().stream()
-                .min(Comparator.comparingDouble(country -> country.getAdultLiteracyRate().doubleValue()))
-                .get();
+        return countryOf(summarize().getCountryWithMinLiteracyRate());
     }
 
     @Override
     public Country countryWithMaxLiteracyRate() {
-        return notNullCountries().stream()
-                .max(Comparator.comparingDouble(country -> country.getAdultLiteracyRate().doubleValue()))
-                .get();
+        return countryOf(summarize().getCountryWithMaxLiteracyRate());
     }
 
     @Override
     public Double getCorrelationCoefficient() {
-        double[] internetUsers = notNullCountries().stream()
-                .map(Country::getInternetUsers)
-                .mapToDouble(BigDecimal::doubleValue)
-                .toArray();
+        return summarize().getCorrelationCoefficient();
+    }
 
-        double[] adultLiteracyRate = notNullCountries().stream()
-                .map(Country::getAdultLiteracyRate)
-                .mapToDouble(BigDecimal::doubleValue)
-                .toArray();
+    /**
+     * Reads the statistics that are kept up to date by every mutation, without a scan.
+     */
+    @Override
+    public synchronized IndicatorSummary summarize() {
+        ensureLoaded();
+        return statistics.toSummary();
+    }
 
-        PearsonsCorrelation pearsonsCorrelation = new PearsonsCorrelation();
-        return pearsonsCorrelation.correlation(internetUsers, adultLiteracyRate);
+    /**
+     * Computes the statistics with a full scan of the countries, in parallel if enabled. The result matches
+     * {@link #summarize()}, apart from rounding and from which country is reported for a tied min or max.
+     */
+    public synchronized IndicatorSummary summarizeFromScratch() {
+        ensureLoaded();
+        if (parallelAggregation != null) {
+            return parallelAggregation.aggregate(snapshot).toSummary(snapshot);
+        }
+        return snapshot.accumulate(new StatisticsAccumulator()).toSummary(snapshot);
     }
 
+    /**
+     * Answered by the quantile sketch of the indicator, so the value is approximate apart from the min and the
+     * max, see {@link QuantileSketch}.
+     */
     @Override
-    public void update(Country updatedCountry) {
-        // update countries object in the DAO
-        int countryIndex = countries.indexOf(findByCode(updatedCountry.getCode()));
-        countries.set(countryIndex, updatedCountry);
+    public synchronized double quantile(Indicator indicator, double fraction) {
+        ensureLoaded();
+        return quantiles.sketch(snapshot, indicator, parallelAggregation).quantile(fraction);
+    }
 
-        // update database
-        Session session = sessionFactory.openSession();
-        session.beginTransaction();
-        session.update(updatedCountry);
-        session.getTransaction().commit();
-        session.close();
+    /**
+     * Estimated from the quantile sketch of the indicator, like {@link #quantile}.
+     */
+    @Override
+    public synchronized Histogram histogram(Indicator indicator, int buckets) {
+        ensureLoaded();
+        return quantiles.sketch(snapshot, indicator, parallelAggregation).histogram(buckets);
     }
 
+    /**
+     * The Pearson correlations of the indicators, every pair over the countries that have both values. Computed
+     * by a scan of the countries, see {@link CorrelationEngine}.
+     */
     @Override
-    public void create(Country newCountry) {
-        // update countries object in the DAO
-        countries.add(newCountry);
+    public synchronized CorrelationMatrix correlations() {
+        ensureLoaded();
+        return correlationEngine().pearson(snapshot.columns());
+    }
 
-        // update database
-        Session session = sessionFactory.openSession();
-        session.beginTransaction();
-        session.save(newCountry);
-        session.getTransaction().commit();
-        session.close();
+    /**
+     * The Spearman rank correlations of the indicators, like {@link #correlations()}.
+     */
+    @Override
+    public synchronized CorrelationMatrix rankCorrelations() {
+        ensureLoaded();
+        return correlationEngine().spearman(snapshot.columns());
+    }
+
+    public synchronized long getQuantileSketchRebuilds() {
+        return quantiles == null ? 0 : quantiles.getRebuilds();
+    }
+
+    public synchronized long getStatisticsRebaselines() {
+        return statistics == null ? 0 : statistics.getRebaselines();
+    }
+
+    private CorrelationEngine correlationEngine() {
+        if (correlationEngine == null) {
+            correlationEngine = new CorrelationEngine(Integer.MAX_VALUE, 1);
+        }
+        return correlationEngine;
+    }
+
+    private Country countryOf(Country country) {
+        if (country == null) {
+            throw new NoSuchElementException("No country has values for both indicators");
+        }
+        return country;
     }
 
+    /**
+     * Without write-behind the database is written first and the countries in memory only change once it has
+     * the change, so a change the database refuses leaves no trace in memory.
+     */
     @Override
-    public void delete(Country country) {
-        // remove country from countries object in the DAO
-        countries.remove(country);
+    public synchronized void update(Country updatedCountry) {
+        if (writeBehind != null) {
+            // a queued mutation is only visible through the in-memory countries
+            ensureLoaded();
+            putInMemory(updatedCountry);
+            writeBehind.update(updatedCountry);
+            publish(CountryChange.updated(updatedCountry));
+            return;
+        }
 
-        // delete from database
-        Session session = sessionFactory.openSession();
-        session.beginTransaction();
-        session.delete(country);
-        session.getTransaction().commit();
-        session.close();
+        try {
+            writeToDatabase(session -> session.update(updatedCountry));
+        } catch (RuntimeException e) {
+            if (loaded && index.findByCode(updatedCountry.getCode()) == updatedCountry) {
+                // edited in place, like the Prompter does, so memory has the refused values already
+                reload(updatedCountry.getCode());
+            }
+            throw e;
+        }
+        if (loaded) {
+            putInMemory(updatedCountry);
+        }
+        // only once the database has the change, so a subscriber never sees one the database refused
+        publish(CountryChange.updated(updatedCountry));
+    }
+
+    /**
+     * @throws IllegalArgumentException if a country with the code exists already
+     */
+    @Override
+    public synchronized void create(Country newCountry) {
+        if (writeBehind != null) {
+            // a queued mutation is only visible through the in-memory countries
+            ensureLoaded();
+        }
+        // checked under the lock of the writers, and before a queued create that would fail every flush
+        if (exists(newCountry.getCode())) {
+            throw new IllegalArgumentException("A country with code " + newCountry.getCode() + " exists already");
+        }
+        if (writeBehind != null) {
+            putInMemory(newCountry);
+            writeBehind.create(newCountry);
+            publish(CountryChange.created(newCountry));
+            return;
+        }
+
+        writeToDatabase(session -> session.save(newCountry));
+        if (loaded) {
+            putInMemory(newCountry);
+        }
+        publish(CountryChange.created(newCountry));
+    }
+
+    @Override
+    public synchronized void delete(Country country) {
+        if (writeBehind != null) {
+            // a queued mutation is only visible through the in-memory countries
+            ensureLoaded();
+            removeFromMemory(country.getCode());
+            writeBehind.delete(country);
+            publish(CountryChange.deleted(country));
+            return;
+        }
+
+        writeToDatabase(session -> session.delete(country));
+        if (loaded) {
+            removeFromMemory(country.getCode());
+        }
+        publish(CountryChange.deleted(country));
+    }
+
+    /**
+     * Applies the change to a copy of the country of the code and updates it, all under the lock of the writers,
+     * so a concurrent delete cannot come in between.
+     *
+     * @return the updated country
+     * @throws NoSuchElementException if there is no country with the code
+     */
+    @Override
+    public synchronized Country updateByCode(String code, Consumer<Country> change) {
+        Country country = CountryChange.copyOf(existing(code));
+        change.accept(country);
+        update(country);
+        return country;
+    }
+
+    /**
+     * @throws NoSuchElementException if there is no country with the code
+     */
+    @Override
+    public synchronized void deleteByCode(String code) {
+        delete(existing(code));
+    }
+
+    private Country existing(String code) {
+        if (writeBehind != null) {
+            // a queued create or delete is only visible through the in-memory countries
+            ensureLoaded();
+        }
+        Country country = findByCode(code);
+        if (country == null) {
+            throw new NoSuchElementException("No country with code " + code);
+        }
+        return country;
+    }
+
+    /**
+     * Writes one mutation and the next {@link DatasetVersion} in one transaction.
+     */
+    private void writeToDatabase(Consumer<Session> mutation) {
+        Session session = getSessionFactory().openSession();
+        try {
+            session.beginTransaction();
+            mutation.accept(session);
+            session.doWork(DatasetVersion::increment);
+            session.getTransaction().commit();
+        } catch (RuntimeException e) {
+            if (session.getTransaction().isActive()) {
+                session.getTransaction().rollback();
+            }
+            throw e;
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Replaces the country of the code in memory with the row of the database, or removes it if there is none.
+     *
+     * @return the country in the database, null if there is none
+     */
+    private Country reload(String code) {
+        // the second-level cache may still hold the refused values
+        getSessionFactory().getCache().evictEntity(Country.class, code);
+        Session session = getSessionFactory().openSession();
+        Country stored;
+        try {
+            stored = session.get(Country.class, code);
+        } finally {
+            session.close();
+        }
+        if (stored == null) {
+            removeFromMemory(code);
+        } else {
+            putInMemory(stored);
+        }
+        return stored;
+    }
+
+    /**
+     * Puts the rows of the database back into memory for the codes whose queued mutations it rejected, unless a
+     * newer mutation of a code is still queued, and publishes the change back to the row, since the rejected
+     * mutation was published when it was queued.
+     */
+    private synchronized void restore(WriteBehindQueue queue, List<String> codes) {
+        for (String code : codes) {
+            if (!loaded || queue.isQueued(code)) {
+                continue;
+            }
+            Country dropped = index.findByCode(code);
+            Country stored = reload(code);
+            if (stored != null) {
+                publish(dropped == null ? CountryChange.created(stored) : CountryChange.updated(stored));
+            } else if (dropped != null) {
+                publish(CountryChange.deleted(dropped));
+            }
+        }
+    }
+
+    // the old values leave the statistics before the snapshot changes, see RunningStatistics
+    private void putInMemory(Country country) {
+        String code = country.getCode();
+        statistics.remove(snapshot, code);
+        quantiles.remove(snapshot, code);
+        snapshot.update(country);
+        statistics.add(snapshot, code);
+        quantiles.add(snapshot, code);
+        index.put(country);
+        statistics.rebaselineIfDrifting(snapshot, parallelAggregation);
+    }
+
+    private void removeFromMemory(String code) {
+        Country country = index.findByCode(code);
+        if (country == null) {
+            return;
+        }
+        statistics.remove(snapshot, code);
+        quantiles.remove(snapshot, code);
+        snapshot.remove(country);
+        index.remove(country);
+        statistics.rebaselineIfDrifting(snapshot, parallelAggregation);
+    }
+
+    @Override
+    public synchronized ImportResult importCountries(Path file) throws IOException {
+        flush();
+        ImportResult result = new CountryImporter(getSessionFactory()).importFrom(file);
+        // the import writes with plain JDBC, so Hibernate cannot keep the second-level cache up to date
+        getSessionFactory().getCache().evictEntityRegion(Country.class);
+        getSessionFactory().getCache().evictQueryRegions();
+        // the import bypasses the in-memory countries, so reload them if they are loaded
+        if (loaded) {
+            load(fetchAllCountries());
+            publish(CountryChange.reloaded(snapshot.countries()));
+        }
+        return result;
+    }
+
+    private void publish(CountryChange change) {
+        ChangeFeed feed = changeFeed;
+        if (feed != null) {
+            feed.publish(change);
+        }
     }
 
 }
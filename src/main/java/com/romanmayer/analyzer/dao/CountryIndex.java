@@ -0,0 +1,59 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.Indicator;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lookup structures over the countries of the DAO: a hash index on the code, a sorted index per indicator and a
+ * name index for searches.
+ */
+public class CountryIndex {
+
+    private final Map<String, Country> countriesByCode;
+    private final Map<Indicator, SortedIndex> sortedIndexes = new EnumMap<>(Indicator.class);
+    private final NameIndex nameIndex = new NameIndex();
+
+    public CountryIndex(Collection<Country> countries) {
+        countriesByCode = new HashMap<>(Math.max(16, countries.size() * 2));
+        for (Indicator indicator : Indicator.values()) {
+            sortedIndexes.put(indicator, new SortedIndex(indicator));
+        }
+        for (Country country : countries) {
+            put(country);
+        }
+    }
+
+    public Country findByCode(String code) {
+        return countriesByCode.get(code);
+    }
+
+    public SortedIndex sortedBy(Indicator indicator) {
+        return sortedIndexes.get(indicator);
+    }
+
+    public NameIndex names() {
+        return nameIndex;
+    }
+
+    public void put(Country country) {
+        countriesByCode.put(country.getCode(), country);
+        for (SortedIndex sortedIndex : sortedIndexes.values()) {
+            sortedIndex.put(country);
+        }
+        nameIndex.put(country);
+    }
+
+    public void remove(Country country) {
+        countriesByCode.remove(country.getCode());
+        for (SortedIndex sortedIndex : sortedIndexes.values()) {
+            sortedIndex.remove(country.getCode());
+        }
+        nameIndex.remove(country.getCode());
+    }
+
+}
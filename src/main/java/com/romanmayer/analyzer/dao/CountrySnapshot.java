@@ -0,0 +1,255 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.analytics.ColumnSet;
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.FixedPoint;
+import com.romanmayer.analyzer.model.Indicator;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columnar copy of the indicator values of all countries.
+ *
+ * Every country owns one row. The indicator values are kept in parallel double arrays, a set bit in the null
+ * bitmaps marks a missing value and the code dictionary maps a country code to its row. Rows are kept dense:
+ * removing a country moves the last row into the gap, so the order of the rows is not the order of insertion.
+ */
+public class CountrySnapshot {
+
+    private static final int MIN_CAPACITY = 64;
+
+    private final Map<String, Integer> rowsByCode;
+    private Country[] countries;
+    private double[] internetUsers;
+    private double[] adultLiteracyRate;
+    private long[] internetUsersNulls;
+    private long[] adultLiteracyRateNulls;
+    private int size;
+
+    public CountrySnapshot(Collection<Country> countries) {
+        int capacity = Math.max(MIN_CAPACITY, countries.size());
+        this.rowsByCode = new HashMap<>(capacity * 2);
+        this.countries = new Country[capacity];
+        this.internetUsers = new double[capacity];
+        this.adultLiteracyRate = new double[capacity];
+        this.internetUsersNulls = new long[words(capacity)];
+        this.adultLiteracyRateNulls = new long[words(capacity)];
+        for (Country country : countries) {
+            add(country);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Country country(int row) {
+        return countries[row];
+    }
+
+    /**
+     * The countries in row order, as a read-only view that is valid until the next add or remove.
+     */
+    public List<Country> countries() {
+        return Collections.unmodifiableList(Arrays.asList(countries).subList(0, size));
+    }
+
+    public int rowOf(String code) {
+        Integer row = rowsByCode.get(code);
+        return row == null ? -1 : row;
+    }
+
+    public double internetUsers(int row) {
+        return internetUsers[row];
+    }
+
+    public double adultLiteracyRate(int row) {
+        return adultLiteracyRate[row];
+    }
+
+    public boolean hasInternetUsers(int row) {
+        return !isSet(internetUsersNulls, row);
+    }
+
+    public boolean hasAdultLiteracyRate(int row) {
+        return !isSet(adultLiteracyRateNulls, row);
+    }
+
+    public void add(Country country) {
+        if (rowsByCode.containsKey(country.getCode())) {
+            update(country);
+            return;
+        }
+        ensureCapacity(size + 1);
+        int row = size++;
+        rowsByCode.put(country.getCode(), row);
+        write(row, country);
+    }
+
+    public void update(Country country) {
+        Integer row = rowsByCode.get(country.getCode());
+        if (row == null) {
+            add(country);
+            return;
+        }
+        write(row, country);
+    }
+
+    public void remove(Country country) {
+        Integer row = rowsByCode.remove(country.getCode());
+        if (row == null) {
+            return;
+        }
+        int last = --size;
+        if (row != last) {
+            // keep the rows dense by moving the last row into the gap
+            countries[row] = countries[last];
+            internetUsers[row] = internetUsers[last];
+            adultLiteracyRate[row] = adultLiteracyRate[last];
+            setBit(internetUsersNulls, row, isSet(internetUsersNulls, last));
+            setBit(adultLiteracyRateNulls, row, isSet(adultLiteracyRateNulls, last));
+            rowsByCode.put(countries[row].getCode(), row);
+        }
+        countries[last] = null;
+        setBit(internetUsersNulls, last, false);
+        setBit(adultLiteracyRateNulls, last, false);
+    }
+
+    /**
+     * Returns the bits of the rows {@code 64 * word} to {@code 64 * word + 63} that have a value for both
+     * indicators. Aggregates walk these words instead of testing every row on its own.
+     */
+    public long completeRows(int word) {
+        long complete = ~(internetUsersNulls[word] | adultLiteracyRateNulls[word]);
+        int remaining = size - (word << 6);
+        return remaining >= 64 ? complete : complete & ((1L << remaining) - 1);
+    }
+
+    public int wordCount() {
+        return words(size);
+    }
+
+    /**
+     * Returns the bits of the rows {@code 64 * word} to {@code 64 * word + 63} that have a value for the
+     * indicator.
+     */
+    public long rowsWithValue(Indicator indicator, int word) {
+        long present = ~nulls(indicator)[word];
+        int remaining = size - (word << 6);
+        return remaining >= 64 ? present : present & ((1L << remaining) - 1);
+    }
+
+    public boolean hasValue(Indicator indicator, int row) {
+        return !isSet(nulls(indicator), row);
+    }
+
+    public double value(Indicator indicator, int row) {
+        return indicator == Indicator.INTERNET_USERS ? internetUsers[row] : adultLiteracyRate[row];
+    }
+
+    /**
+     * Adds the values of the indicator in the bitmap words {@code fromWord} (inclusive) to {@code toWord}
+     * (exclusive) to the sketch, so that disjoint word ranges can be sketched by different threads.
+     */
+    public QuantileSketch sketch(QuantileSketch sketch, Indicator indicator, int fromWord, int toWord) {
+        double[] column = indicator == Indicator.INTERNET_USERS ? internetUsers : adultLiteracyRate;
+        for (int word = fromWord; word < toWord; word++) {
+            for (long bits = rowsWithValue(indicator, word); bits != 0; bits &= bits - 1) {
+                sketch.add(column[(word << 6) + Long.numberOfTrailingZeros(bits)]);
+            }
+        }
+        return sketch;
+    }
+
+    /**
+     * Feeds every row that has values for both indicators into the accumulator, in one pass.
+     */
+    public StatisticsAccumulator accumulate(StatisticsAccumulator accumulator) {
+        return accumulate(accumulator, 0, wordCount());
+    }
+
+    /**
+     * Feeds the complete rows of the bitmap words {@code fromWord} (inclusive) to {@code toWord} (exclusive)
+     * into the accumulator, so that disjoint word ranges can be aggregated by different threads.
+     */
+    public StatisticsAccumulator accumulate(StatisticsAccumulator accumulator, int fromWord, int toWord) {
+        for (int word = fromWord; word < toWord; word++) {
+            for (long bits = completeRows(word); bits != 0; bits &= bits - 1) {
+                int row = (word << 6) + Long.numberOfTrailingZeros(bits);
+                accumulator.accept(row, internetUsers[row], adultLiteracyRate[row]);
+            }
+        }
+        return accumulator;
+    }
+
+    /**
+     * A copy of the indicator values as columns named after the indicators, with NaN for missing values.
+     */
+    public ColumnSet columns() {
+        return new ColumnSet(size)
+                .add(Indicator.INTERNET_USERS.getLabel(), withNaN(internetUsers, internetUsersNulls))
+                .add(Indicator.ADULT_LITERACY_RATE.getLabel(), withNaN(adultLiteracyRate, adultLiteracyRateNulls));
+    }
+
+    private double[] withNaN(double[] column, long[] nulls) {
+        double[] values = Arrays.copyOf(column, size);
+        for (int row = 0; row < size; row++) {
+            if (isSet(nulls, row)) {
+                values[row] = Double.NaN;
+            }
+        }
+        return values;
+    }
+
+    private void write(int row, Country country) {
+        long internetUsersValue = country.getInternetUsersFixedPoint();
+        long adultLiteracyRateValue = country.getAdultLiteracyRateFixedPoint();
+        countries[row] = country;
+        internetUsers[row] = toDouble(internetUsersValue);
+        adultLiteracyRate[row] = toDouble(adultLiteracyRateValue);
+        setBit(internetUsersNulls, row, FixedPoint.isNull(internetUsersValue));
+        setBit(adultLiteracyRateNulls, row, FixedPoint.isNull(adultLiteracyRateValue));
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= countries.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, countries.length + (countries.length >> 1));
+        countries = Arrays.copyOf(countries, newCapacity);
+        internetUsers = Arrays.copyOf(internetUsers, newCapacity);
+        adultLiteracyRate = Arrays.copyOf(adultLiteracyRate, newCapacity);
+        internetUsersNulls = Arrays.copyOf(internetUsersNulls, words(newCapacity));
+        adultLiteracyRateNulls = Arrays.copyOf(adultLiteracyRateNulls, words(newCapacity));
+    }
+
+    private long[] nulls(Indicator indicator) {
+        return indicator == Indicator.INTERNET_USERS ? internetUsersNulls : adultLiteracyRateNulls;
+    }
+
+    private static double toDouble(long value) {
+        return FixedPoint.isNull(value) ? 0 : FixedPoint.toDouble(value);
+    }
+
+    private static int words(int rows) {
+        return (rows + 63) >>> 6;
+    }
+
+    private static boolean isSet(long[] bitmap, int row) {
+        return (bitmap[row >>> 6] & (1L << row)) != 0;
+    }
+
+    private static void setBit(long[] bitmap, int row, boolean value) {
+        if (value) {
+            bitmap[row >>> 6] |= 1L << row;
+        } else {
+            bitmap[row >>> 6] &= ~(1L << row);
+        }
+    }
+
+}
@@ -0,0 +1,235 @@
+package com.romanmayer.analyzer.dao;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tuning of the connection pool and of the H2 database, on top of hibernate.cfg.xml.
+ *
+ * Unset values keep the defaults of the pool and of H2. The H2 options are appended to the configured URL, so
+ * they also apply to a database that is kept in memory.
+ */
+public class DatabaseSettings {
+
+    private static final String CONFIGURATION_RESOURCE = "/hibernate.cfg.xml";
+
+    // -Danalyzer.db.poolSize=<connections> and the timeouts of the connection pool, in milliseconds
+    public static final String POOL_SIZE = "analyzer.db.poolSize";
+    public static final String CONNECTION_TIMEOUT = "analyzer.db.connectionTimeoutMillis";
+    public static final String IDLE_TIMEOUT = "analyzer.db.idleTimeoutMillis";
+    // -Danalyzer.db.cacheSize=<KB> is the page cache of H2
+    public static final String CACHE_SIZE = "analyzer.db.cacheSize";
+    // -Danalyzer.db.writeDelay=<ms> is the delay before H2 writes committed changes to the file
+    public static final String WRITE_DELAY = "analyzer.db.writeDelay";
+    public static final String COMPRESS = "analyzer.db.compress";
+    // -Danalyzer.db.mode=<MySQL|PostgreSQL|...> is the compatibility mode of H2
+    public static final String MODE = "analyzer.db.mode";
+    // -Danalyzer.db.inMemory=true works on an in-memory copy, written back every checkpointSeconds and on exit
+    public static final String IN_MEMORY = "analyzer.db.inMemory";
+    public static final String CHECKPOINT_SECONDS = "analyzer.db.checkpointSeconds";
+
+    private static final long DEFAULT_CHECKPOINT_SECONDS = 60;
+
+    private final Integer poolSize;
+    private final Long connectionTimeoutMillis;
+    private final Long idleTimeoutMillis;
+    private final Integer cacheSizeKb;
+    private final Integer writeDelayMillis;
+    private final boolean compress;
+    private final String mode;
+    private final boolean inMemory;
+    private final long checkpointSeconds;
+
+    public DatabaseSettings(DatabaseSettingsBuilder builder) {
+        this.poolSize = builder.poolSize;
+        this.connectionTimeoutMillis = builder.connectionTimeoutMillis;
+        this.idleTimeoutMillis = builder.idleTimeoutMillis;
+        this.cacheSizeKb = builder.cacheSizeKb;
+        this.writeDelayMillis = builder.writeDelayMillis;
+        this.compress = builder.compress;
+        this.mode = builder.mode;
+        this.inMemory = builder.inMemory;
+        this.checkpointSeconds = builder.checkpointSeconds;
+    }
+
+    public static DatabaseSettings fromSystemProperties() {
+        DatabaseSettingsBuilder builder = new DatabaseSettingsBuilder()
+                .withPoolSize(Integer.getInteger(POOL_SIZE))
+                .withConnectionTimeoutMillis(Long.getLong(CONNECTION_TIMEOUT))
+                .withIdleTimeoutMillis(Long.getLong(IDLE_TIMEOUT))
+                .withCacheSizeKb(Integer.getInteger(CACHE_SIZE))
+                .withWriteDelayMillis(Integer.getInteger(WRITE_DELAY))
+                .withCompress(Boolean.getBoolean(COMPRESS))
+                .withMode(System.getProperty(MODE));
+        if (Boolean.getBoolean(IN_MEMORY)) {
+            builder.withInMemory(Long.getLong(CHECKPOINT_SECONDS, DEFAULT_CHECKPOINT_SECONDS));
+        }
+        return builder.build();
+    }
+
+    public boolean isInMemory() {
+        return inMemory;
+    }
+
+    public long getCheckpointSeconds() {
+        return checkpointSeconds;
+    }
+
+    /**
+     * The Hibernate settings for the pool and the URL, which is the configured one with the H2 options.
+     */
+    public Map<String, Object> toHibernateSettings(String configuredUrl) {
+        Map<String, Object> settings = new HashMap<>();
+        if (poolSize != null) {
+            settings.put("hibernate.hikari.maximumPoolSize", String.valueOf(poolSize));
+        }
+        if (connectionTimeoutMillis != null) {
+            settings.put("hibernate.hikari.connectionTimeout", String.valueOf(connectionTimeoutMillis));
+        }
+        if (idleTimeoutMillis != null) {
+            settings.put("hibernate.hikari.idleTimeout", String.valueOf(idleTimeoutMillis));
+        }
+        String url = withOptions(configuredUrl);
+        if (!url.equals(configuredUrl)) {
+            settings.put("hibernate.connection.url", url);
+        }
+        return settings;
+    }
+
+    /**
+     * Appends the H2 options to the URL.
+     */
+    public String withOptions(String url) {
+        StringBuilder options = new StringBuilder(url);
+        if (cacheSizeKb != null) {
+            options.append(";CACHE_SIZE=").append(cacheSizeKb);
+        }
+        if (writeDelayMillis != null) {
+            options.append(";WRITE_DELAY=").append(writeDelayMillis);
+        }
+        if (compress) {
+            options.append(";COMPRESS=TRUE");
+        }
+        if (mode != null) {
+            options.append(";MODE=").append(mode);
+        }
+        return options.toString();
+    }
+
+    /**
+     * A plain JDBC connection to the database of hibernate.cfg.xml, with the H2 options. The file is read with a
+     * DOM parser, since bootstrapping Hibernate just for the URL takes half a second.
+     */
+    public Connection openConfiguredConnection() throws SQLException {
+        Map<String, String> properties = new HashMap<>();
+        try (InputStream configuration = DatabaseSettings.class.getResourceAsStream(CONFIGURATION_RESOURCE)) {
+            if (configuration == null) {
+                throw new SQLException(CONFIGURATION_RESOURCE + " is not on the classpath");
+            }
+            NodeList nodes = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(configuration)
+                    .getElementsByTagName("property");
+            for (int i = 0; i < nodes.getLength(); i++) {
+                Element property = (Element) nodes.item(i);
+                String name = property.getAttribute("name");
+                properties.put(name.startsWith("hibernate.") ? name.substring("hibernate.".length()) : name,
+                        property.getTextContent().trim());
+            }
+        } catch (IOException | ParserConfigurationException | SAXException e) {
+            throw new SQLException(CONFIGURATION_RESOURCE + " could not be read", e);
+        }
+        String url = properties.get("connection.url");
+        if (url == null) {
+            throw new SQLException(CONFIGURATION_RESOURCE + " has no connection.url");
+        }
+        return DriverManager.getConnection(withOptions(url), properties.get("connection.username"),
+                properties.get("connection.password"));
+    }
+
+    @Override
+    public String toString() {
+        return "DatabaseSettings{" +
+                "poolSize=" + poolSize +
+                ", connectionTimeoutMillis=" + connectionTimeoutMillis +
+                ", idleTimeoutMillis=" + idleTimeoutMillis +
+                ", cacheSizeKb=" + cacheSizeKb +
+                ", writeDelayMillis=" + writeDelayMillis +
+                ", compress=" + compress +
+                ", mode='" + mode + '\'' +
+                ", inMemory=" + inMemory +
+                ", checkpointSeconds=" + checkpointSeconds +
+                '}';
+    }
+
+    public static class DatabaseSettingsBuilder {
+        private Integer poolSize;
+        private Long connectionTimeoutMillis;
+        private Long idleTimeoutMillis;
+        private Integer cacheSizeKb;
+        private Integer writeDelayMillis;
+        private boolean compress;
+        private String mode;
+        private boolean inMemory;
+        private long checkpointSeconds;
+
+        public DatabaseSettingsBuilder withPoolSize(Integer poolSize) {
+            this.poolSize = poolSize;
+            return this;
+        }
+
+        public DatabaseSettingsBuilder withConnectionTimeoutMillis(Long connectionTimeoutMillis) {
+            this.connectionTimeoutMillis = connectionTimeoutMillis;
+            return this;
+        }
+
+        public DatabaseSettingsBuilder withIdleTimeoutMillis(Long idleTimeoutMillis) {
+            this.idleTimeoutMillis = idleTimeoutMillis;
+            return this;
+        }
+
+        public DatabaseSettingsBuilder withCacheSizeKb(Integer cacheSizeKb) {
+            this.cacheSizeKb = cacheSizeKb;
+            return this;
+        }
+
+        public DatabaseSettingsBuilder withWriteDelayMillis(Integer writeDelayMillis) {
+            this.writeDelayMillis = writeDelayMillis;
+            return this;
+        }
+
+        public DatabaseSettingsBuilder withCompress(boolean compress) {
+            this.compress = compress;
+            return this;
+        }
+
+        public DatabaseSettingsBuilder withMode(String mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        /**
+         * Keeps the database in memory and writes it back to the file every {@code checkpointSeconds}, or
+         * only on close if it is 0.
+         */
+        public DatabaseSettingsBuilder withInMemory(long checkpointSeconds) {
+            this.inMemory = true;
+            this.checkpointSeconds = checkpointSeconds;
+            return this;
+        }
+
+        public DatabaseSettings build() {
+            return new DatabaseSettings(this);
+        }
+    }
+
+}
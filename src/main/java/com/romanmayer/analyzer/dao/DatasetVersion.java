@@ -0,0 +1,79 @@
+package com.romanmayer.analyzer.dao;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A change counter of the countries in the database, so that a {@link SnapshotFile} can tell with two cheap
+ * queries whether it is still current.
+ *
+ * Every write of the application increments the counter in the transaction of the write. Writes that bypass the
+ * application, e.g. from the H2 console, are not counted and are only noticed if they change the number of
+ * countries.
+ */
+public final class DatasetVersion {
+
+    private static final String NAME = "Country";
+
+    private DatasetVersion() {
+    }
+
+    /**
+     * Creates the counter if the database has none yet. Commits, since H2 commits the DDL anyway.
+     */
+    public static void create(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS DatasetVersion "
+                    + "(name VARCHAR(32) PRIMARY KEY, version BIGINT NOT NULL)");
+            statement.execute("INSERT INTO DatasetVersion SELECT '" + NAME + "', 0 FROM DUAL "
+                    + "WHERE NOT EXISTS (SELECT 1 FROM DatasetVersion WHERE name = '" + NAME + "')");
+        }
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+    }
+
+    /**
+     * Increments the counter, as part of the transaction of the connection.
+     */
+    public static void increment(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("UPDATE DatasetVersion SET version = version + 1 WHERE name = '" + NAME + "'");
+        }
+    }
+
+    /**
+     * The counter, or -1 if the database has none.
+     */
+    public static long read(Connection connection) throws SQLException {
+        try (ResultSet tables = connection.getMetaData().getTables(null, null, "DATASETVERSION", null)) {
+            if (!tables.next()) {
+                return -1;
+            }
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(
+                     "SELECT version FROM DatasetVersion WHERE name = '" + NAME + "'")) {
+            return result.next() ? result.getLong(1) : -1;
+        }
+    }
+
+    /**
+     * The number of countries, or -1 if the database has no country table.
+     */
+    public static long countRows(Connection connection) throws SQLException {
+        try (ResultSet tables = connection.getMetaData().getTables(null, null, "COUNTRY", null)) {
+            if (!tables.next()) {
+                return -1;
+            }
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM Country")) {
+            result.next();
+            return result.getLong(1);
+        }
+    }
+
+}
@@ -0,0 +1,182 @@
+package com.romanmayer.analyzer.dao;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.SessionFactoryObserver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-memory copy of an H2 file database, written back to the file at checkpoints.
+ *
+ * The copy is loaded with SCRIPT and RUNSCRIPT. A checkpoint scripts the copy into a new file database next to
+ * the original and then moves it over the original, so a crash during a checkpoint leaves the last one intact.
+ * Changes since the last checkpoint are lost on a crash. Checkpoints run periodically and when the
+ * SessionFactory that uses the copy is closed.
+ */
+public class InMemoryDatabase implements SessionFactoryObserver {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String FILE_PREFIX = "jdbc:h2:";
+    private static final String MV_STORE_SUFFIX = ".mv.db";
+
+    private final String path;
+    private final String options;
+    private final String user;
+    private final String password;
+    private final String memoryUrl;
+    private final Connection memoryConnection;
+    private ScheduledExecutorService checkpoints;
+    private byte[] lastScript;
+
+    private InMemoryDatabase(String fileUrl, String user, String password) throws SQLException {
+        if (!fileUrl.startsWith(FILE_PREFIX) || fileUrl.startsWith(FILE_PREFIX + "mem:")) {
+            throw new IllegalArgumentException("Not an H2 file database: " + fileUrl);
+        }
+        int semicolon = fileUrl.indexOf(';');
+        String location = semicolon < 0 ? fileUrl.substring(FILE_PREFIX.length())
+                : fileUrl.substring(FILE_PREFIX.length(), semicolon);
+        this.path = location.startsWith("file:") ? location.substring("file:".length()) : location;
+        this.options = semicolon < 0 ? "" : fileUrl.substring(semicolon);
+        this.user = user;
+        this.password = password;
+        this.memoryUrl = FILE_PREFIX + "mem:" + UUID.randomUUID() + options + ";DB_CLOSE_DELAY=-1";
+        // keeps the copy open between the sessions
+        this.memoryConnection = DriverManager.getConnection(memoryUrl, user, password);
+    }
+
+    /**
+     * Copies the file database behind {@code fileUrl} into memory. Use {@link #getUrl()} to connect to the copy.
+     */
+    public static InMemoryDatabase load(String fileUrl, String user, String password) {
+        try {
+            InMemoryDatabase database = new InMemoryDatabase(fileUrl, user, password);
+            database.copyIn(fileUrl);
+            return database;
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException("The database could not be loaded into memory", e);
+        }
+    }
+
+    public String getUrl() {
+        return memoryUrl;
+    }
+
+    /**
+     * Writes the copy back every {@code seconds} seconds, from a daemon thread.
+     */
+    public synchronized void checkpointEvery(long seconds) {
+        checkpoints = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "database-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkpoints.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (RuntimeException e) {
+                System.err.printf("The checkpoint failed: %s%n", e.getMessage());
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Writes the copy back to the file, unless nothing changed since the last checkpoint.
+     */
+    public synchronized void checkpoint() {
+        try {
+            Path script = Files.createTempFile("checkpoint", ".sql");
+            try {
+                execute(memoryConnection, "SCRIPT TO " + quote(script));
+                byte[] content = Files.readAllBytes(script);
+                if (Arrays.equals(content, lastScript)) {
+                    return;
+                }
+                String checkpointPath = path + ".checkpoint";
+                Path checkpointFile = Paths.get(checkpointPath + MV_STORE_SUFFIX);
+                Files.deleteIfExists(checkpointFile);
+                try (Connection connection = DriverManager.getConnection(FILE_PREFIX + checkpointPath + options,
+                        user, password)) {
+                    execute(connection, "RUNSCRIPT FROM " + quote(script));
+                    execute(connection, "SHUTDOWN");
+                }
+                Files.move(checkpointFile, Paths.get(path + MV_STORE_SUFFIX), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                lastScript = content;
+            } finally {
+                Files.deleteIfExists(script);
+            }
+        } catch (SQLException sqle) {
+            throw new IllegalStateException("The checkpoint failed", sqle);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Stops the periodic checkpoints, writes a last one and drops the copy.
+     */
+    public synchronized void close() {
+        if (checkpoints != null) {
+            checkpoints.shutdownNow();
+            checkpoints = null;
+        }
+        try {
+            checkpoint();
+        } finally {
+            try {
+                execute(memoryConnection, "SHUTDOWN");
+                memoryConnection.close();
+            } catch (SQLException sqle) {
+                // the copy is gone with the JVM anyway
+            }
+        }
+    }
+
+    @Override
+    public void sessionFactoryCreated(SessionFactory factory) {
+    }
+
+    @Override
+    public void sessionFactoryClosed(SessionFactory factory) {
+        close();
+    }
+
+    private void copyIn(String fileUrl) throws SQLException, IOException {
+        Path script = Files.createTempFile("load", ".sql");
+        try {
+            try (Connection connection = DriverManager.getConnection(fileUrl, user, password)) {
+                execute(connection, "SCRIPT TO " + quote(script));
+            }
+            execute(memoryConnection, "RUNSCRIPT FROM " + quote(script));
+            lastScript = Files.readAllBytes(script);
+        } finally {
+            Files.deleteIfExists(script);
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static String quote(Path file) {
+        return "'" + file.toAbsolutePath().toString().replace("'", "''") + "'";
+    }
+
+}
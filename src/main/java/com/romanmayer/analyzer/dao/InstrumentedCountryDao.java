@@ -0,0 +1,326 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.analytics.CorrelationMatrix;
+import com.romanmayer.analyzer.importer.ImportResult;
+import com.romanmayer.analyzer.metrics.DaoMetrics;
+import com.romanmayer.analyzer.metrics.LatencyHistogram;
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.Histogram;
+import com.romanmayer.analyzer.model.Indicator;
+import com.romanmayer.analyzer.model.IndicatorSummary;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Counts the calls of every CountryDao method and records their latency in {@link DaoMetrics}. Failed calls
+ * are recorded too. A stream is timed from the call until it is closed.
+ */
+public class InstrumentedCountryDao implements CountryDao {
+
+    private final CountryDao delegate;
+    private final LatencyHistogram getCountries;
+    private final LatencyHistogram page;
+    private final LatencyHistogram streamCountries;
+    private final LatencyHistogram findByCode;
+    private final LatencyHistogram countryWithMinInternetUsers;
+    private final LatencyHistogram countryWithMaxInternetUsers;
+    private final LatencyHistogram countryWithMinLiteracyRate;
+    private final LatencyHistogram countryWithMaxLiteracyRate;
+    private final LatencyHistogram getCorrelationCoefficient;
+    private final LatencyHistogram summarize;
+    private final LatencyHistogram countriesInRange;
+    private final LatencyHistogram topCountries;
+    private final LatencyHistogram bottomCountries;
+    private final LatencyHistogram searchByName;
+    private final LatencyHistogram quantile;
+    private final LatencyHistogram histogram;
+    private final LatencyHistogram correlations;
+    private final LatencyHistogram rankCorrelations;
+    private final LatencyHistogram update;
+    private final LatencyHistogram create;
+    private final LatencyHistogram delete;
+    private final LatencyHistogram updateByCode;
+    private final LatencyHistogram deleteByCode;
+    private final LatencyHistogram flush;
+    private final LatencyHistogram importCountries;
+
+    public InstrumentedCountryDao(CountryDao delegate, DaoMetrics metrics) {
+        this.delegate = delegate;
+        this.getCountries = metrics.histogram("getCountries");
+        this.page = metrics.histogram("page");
+        this.streamCountries = metrics.histogram("streamCountries");
+        this.findByCode = metrics.histogram("findByCode");
+        this.countryWithMinInternetUsers = metrics.histogram("countryWithMinInternetUsers");
+        this.countryWithMaxInternetUsers = metrics.histogram("countryWithMaxInternetUsers");
+        this.countryWithMinLiteracyRate = metrics.histogram("countryWithMinLiteracyRate");
+        this.countryWithMaxLiteracyRate = metrics.histogram("countryWithMaxLiteracyRate");
+        this.getCorrelationCoefficient = metrics.histogram("getCorrelationCoefficient");
+        this.summarize = metrics.histogram("summarize");
+        this.countriesInRange = metrics.histogram("countriesInRange");
+        this.topCountries = metrics.histogram("topCountries");
+        this.bottomCountries = metrics.histogram("bottomCountries");
+        this.searchByName = metrics.histogram("searchByName");
+        this.quantile = metrics.histogram("quantile");
+        this.histogram = metrics.histogram("histogram");
+        this.correlations = metrics.histogram("correlations");
+        this.rankCorrelations = metrics.histogram("rankCorrelations");
+        this.update = metrics.histogram("update");
+        this.create = metrics.histogram("create");
+        this.delete = metrics.histogram("delete");
+        this.updateByCode = metrics.histogram("updateByCode");
+        this.deleteByCode = metrics.histogram("deleteByCode");
+        this.flush = metrics.histogram("flush");
+        this.importCountries = metrics.histogram("importCountries");
+    }
+
+    @Override
+    public List<Country> getCountries() {
+        long start = System.nanoTime();
+        try {
+            return delegate.getCountries();
+        } finally {
+            getCountries.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public List<Country> page(String afterCode, int limit) {
+        long start = System.nanoTime();
+        try {
+            return delegate.page(afterCode, limit);
+        } finally {
+            page.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Stream<Country> streamCountries() {
+        long start = System.nanoTime();
+        return delegate.streamCountries().onClose(() -> streamCountries.record(System.nanoTime() - start));
+    }
+
+    @Override
+    public Country findByCode(String code) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findByCode(code);
+        } finally {
+            findByCode.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Country countryWithMinInternetUsers() {
+        long start = System.nanoTime();
+        try {
+            return delegate.countryWithMinInternetUsers();
+        } finally {
+            countryWithMinInternetUsers.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Country countryWithMaxInternetUsers() {
+        long start = System.nanoTime();
+        try {
+            return delegate.countryWithMaxInternetUsers();
+        } finally {
+            countryWithMaxInternetUsers.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Country countryWithMinLiteracyRate() {
+        long start = System.nanoTime();
+        try {
+            return delegate.countryWithMinLiteracyRate();
+        } finally {
+            countryWithMinLiteracyRate.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Country countryWithMaxLiteracyRate() {
+        long start = System.nanoTime();
+        try {
+            return delegate.countryWithMaxLiteracyRate();
+        } finally {
+            countryWithMaxLiteracyRate.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Double getCorrelationCoefficient() {
+        long start = System.nanoTime();
+        try {
+            return delegate.getCorrelationCoefficient();
+        } finally {
+            getCorrelationCoefficient.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public IndicatorSummary summarize() {
+        long start = System.nanoTime();
+        try {
+            return delegate.summarize();
+        } finally {
+            summarize.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public List<Country> countriesInRange(Indicator indicator, double from, double to) {
+        long start = System.nanoTime();
+        try {
+            return delegate.countriesInRange(indicator, from, to);
+        } finally {
+            countriesInRange.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public List<Country> topCountries(Indicator indicator, int k) {
+        long start = System.nanoTime();
+        try {
+            return delegate.topCountries(indicator, k);
+        } finally {
+            topCountries.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public List<Country> bottomCountries(Indicator indicator, int k) {
+        long start = System.nanoTime();
+        try {
+            return delegate.bottomCountries(indicator, k);
+        } finally {
+            bottomCountries.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public List<Country> searchByName(String query, int limit) {
+        long start = System.nanoTime();
+        try {
+            return delegate.searchByName(query, limit);
+        } finally {
+            searchByName.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public double quantile(Indicator indicator, double fraction) {
+        long start = System.nanoTime();
+        try {
+            return delegate.quantile(indicator, fraction);
+        } finally {
+            quantile.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Histogram histogram(Indicator indicator, int buckets) {
+        long start = System.nanoTime();
+        try {
+            return delegate.histogram(indicator, buckets);
+        } finally {
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public CorrelationMatrix correlations() {
+        long start = System.nanoTime();
+        try {
+            return delegate.correlations();
+        } finally {
+            correlations.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public CorrelationMatrix rankCorrelations() {
+        long start = System.nanoTime();
+        try {
+            return delegate.rankCorrelations();
+        } finally {
+            rankCorrelations.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void update(Country country) {
+        long start = System.nanoTime();
+        try {
+            delegate.update(country);
+        } finally {
+            update.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void create(Country country) {
+        long start = System.nanoTime();
+        try {
+            delegate.create(country);
+        } finally {
+            create.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void delete(Country country) {
+        long start = System.nanoTime();
+        try {
+            delegate.delete(country);
+        } finally {
+            delete.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Country updateByCode(String code, Consumer<Country> change) {
+        long start = System.nanoTime();
+        try {
+            return delegate.updateByCode(code, change);
+        } finally {
+            updateByCode.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void deleteByCode(String code) {
+        long start = System.nanoTime();
+        try {
+            delegate.deleteByCode(code);
+        } finally {
+            deleteByCode.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void flush() {
+        long start = System.nanoTime();
+        try {
+            delegate.flush();
+        } finally {
+            flush.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public ImportResult importCountries(Path file) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return delegate.importCountries(file);
+        } finally {
+            importCountries.record(System.nanoTime() - start);
+        }
+    }
+
+}
@@ -0,0 +1,477 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.model.Country;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Finds countries by a part of their name, ranked from the best match down:
+ *
+ * <ol>
+ * <li>the code, if the query is one</li>
+ * <li>names that start with the query, then names with a word that starts with it, in alphabetical order</li>
+ * <li>names that contain the query elsewhere, if it has at least 3 letters</li>
+ * <li>names or words within 1 edit of the query (2 from 8 letters on), an edit being an inserted, deleted,
+ * replaced or two swapped letters; the closest first</li>
+ * </ol>
+ *
+ * Names are compared in lower case, without accents and with every run of other characters than letters and
+ * digits as one space. The names and each of their tails from a word on are kept in a trie, which answers the
+ * prefixes by walking down and the typos by walking it with a row of edit distances per node, skipping the
+ * branches that are too far off already. Substrings come from an index of the 3-letter sequences of the names.
+ *
+ * Like {@link SortedIndex}, the indexed name is remembered by the code, because a country may already have been
+ * renamed in place when it is put again.
+ */
+public class NameIndex {
+
+    public static final int DEFAULT_LIMIT = 10;
+
+    private static final int NGRAM = 3;
+    // a substring search looks at no more candidates, so a common sequence like "and" stays fast
+    private static final int MAX_SUBSTRING_CANDIDATES = 20_000;
+    private static final Comparator<Entry> BY_NAME = Comparator.comparing((Entry entry) -> entry.name)
+            .thenComparing(entry -> entry.country.getCode());
+
+    private final Map<String, Entry> entriesByCode = new HashMap<>();
+    private final Node root = new Node();
+    // the entries by id and, per 3-letter sequence, the ids of the names that contain it
+    private Entry[] entriesById = new Entry[64];
+    private int nextId;
+    private Map<String, IntList> postings = new HashMap<>();
+    // ids that were removed but are still in the postings
+    private int removedIds;
+
+    private static class Entry {
+
+        private final Country country;
+        private final String name;
+        private final int id;
+
+        private Entry(Country country, String name, int id) {
+            this.country = country;
+            this.name = name;
+            this.id = id;
+        }
+
+    }
+
+    public void put(Country country) {
+        remove(country.getCode());
+        if (country.getName() == null) {
+            return;
+        }
+        String name = normalize(country.getName());
+        Entry entry = new Entry(country, name, nextId++);
+        entriesByCode.put(country.getCode(), entry);
+        if (entry.id == entriesById.length) {
+            entriesById = Arrays.copyOf(entriesById, entriesById.length * 2);
+        }
+        entriesById[entry.id] = entry;
+        addPostings(entry);
+        for (int start : wordStarts(name)) {
+            root.insert(name, start, country.getCode(), start == 0);
+        }
+    }
+
+    public void remove(String code) {
+        Entry entry = entriesByCode.remove(code);
+        if (entry == null) {
+            return;
+        }
+        entriesById[entry.id] = null;
+        for (int start : wordStarts(entry.name)) {
+            root.remove(entry.name, start, code, start == 0);
+        }
+        // the postings are cleaned up in bulk once they hold as many removed ids as live ones
+        if (++removedIds > entriesByCode.size() && removedIds > 1024) {
+            rebuildPostings();
+        }
+    }
+
+    public int size() {
+        return entriesByCode.size();
+    }
+
+    /**
+     * At most {@code limit} countries whose code or name matches the query, the best matches first.
+     */
+    public List<Country> search(String query, int limit) {
+        Map<String, Entry> matches = new LinkedHashMap<>();
+        String name = normalize(query);
+        if (limit <= 0 || name.isEmpty()) {
+            return new ArrayList<>();
+        }
+        // not in the default locale, a Turkish one would turn "ita" into "İTA"
+        Entry byCode = entriesByCode.get(query.replaceAll("\\s", "").toUpperCase(Locale.ROOT));
+        if (byCode != null) {
+            matches.put(byCode.country.getCode(), byCode);
+        }
+        Node node = root.find(name);
+        if (node != null) {
+            node.collect(entriesByCode, matches, limit, true);
+            node.collect(entriesByCode, matches, limit, false);
+        }
+        if (matches.size() < limit && name.length() >= NGRAM) {
+            addSubstringMatches(name, matches, limit);
+        }
+        if (matches.size() < limit) {
+            addTypoMatches(name, matches, limit);
+        }
+        List<Country> countries = new ArrayList<>(matches.size());
+        for (Entry entry : matches.values()) {
+            countries.add(entry.country);
+        }
+        return countries;
+    }
+
+    private void addSubstringMatches(String name, Map<String, Entry> matches, int limit) {
+        // the rarest sequence of the query has the fewest candidates
+        IntList rarest = null;
+        for (int start = 0; start + NGRAM <= name.length(); start++) {
+            IntList ids = postings.get(name.substring(start, start + NGRAM));
+            if (ids == null) {
+                return;
+            }
+            if (rarest == null || ids.size < rarest.size) {
+                rarest = ids;
+            }
+        }
+        List<Entry> found = new ArrayList<>();
+        int candidates = Math.min(rarest.size, MAX_SUBSTRING_CANDIDATES);
+        for (int i = 0; i < candidates && found.size() < limit - matches.size(); i++) {
+            Entry entry = entriesById[rarest.values[i]];
+            if (entry != null && !matches.containsKey(entry.country.getCode()) && entry.name.contains(name)) {
+                found.add(entry);
+            }
+        }
+        found.sort(Comparator.comparingInt((Entry entry) -> entry.name.indexOf(name)).thenComparing(BY_NAME));
+        for (Entry entry : found) {
+            matches.put(entry.country.getCode(), entry);
+        }
+    }
+
+    private void addTypoMatches(String name, Map<String, Entry> matches, int limit) {
+        int maxEdits = name.length() < 4 ? 0 : name.length() < 8 ? 1 : 2;
+        int[] firstRow = new int[name.length() + 1];
+        for (int i = 0; i < firstRow.length; i++) {
+            firstRow[i] = i;
+        }
+        // one edit at a time, since a walk that allows two visits far more of the trie
+        for (int edits = 1; edits <= maxEdits && matches.size() < limit; edits++) {
+            Map<String, Integer> distances = new HashMap<>();
+            root.searchTypos(name, edits, firstRow, null, (char) 0, distances);
+            List<Entry> found = new ArrayList<>();
+            for (Map.Entry<String, Integer> distance : distances.entrySet()) {
+                if (distance.getValue() == edits && !matches.containsKey(distance.getKey())) {
+                    found.add(entriesByCode.get(distance.getKey()));
+                }
+            }
+            found.sort(BY_NAME);
+            for (Entry entry : found.subList(0, Math.min(found.size(), limit - matches.size()))) {
+                matches.put(entry.country.getCode(), entry);
+            }
+        }
+    }
+
+    private void addPostings(Entry entry) {
+        for (int start = 0; start + NGRAM <= entry.name.length(); start++) {
+            String ngram = entry.name.substring(start, start + NGRAM);
+            // a sequence that occurs twice, like "ana" in "ghana and canada", is listed once
+            if (entry.name.indexOf(ngram) == start) {
+                postings.computeIfAbsent(ngram, key -> new IntList()).add(entry.id);
+            }
+        }
+    }
+
+    private void rebuildPostings() {
+        Entry[] live = new Entry[Math.max(64, entriesByCode.size() * 2)];
+        postings = new HashMap<>();
+        nextId = 0;
+        for (Entry entry : entriesById) {
+            if (entry == null) {
+                continue;
+            }
+            Entry renumbered = new Entry(entry.country, entry.name, nextId++);
+            live[renumbered.id] = renumbered;
+            entriesByCode.put(entry.country.getCode(), renumbered);
+            addPostings(renumbered);
+        }
+        entriesById = live;
+        removedIds = 0;
+    }
+
+    /**
+     * Lower case, without accents, and every run of other characters than letters and digits as one space.
+     */
+    static String normalize(String text) {
+        String decomposed = Normalizer.isNormalized(text, Normalizer.Form.NFD) ? text
+                : Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder normalized = new StringBuilder(decomposed.length());
+        boolean space = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (space && normalized.length() > 0) {
+                    normalized.append(' ');
+                }
+                normalized.append(Character.toLowerCase(c));
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return normalized.toString();
+    }
+
+    private static int[] wordStarts(String name) {
+        int words = 1;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) == ' ') {
+                words++;
+            }
+        }
+        int[] starts = new int[words];
+        int word = 1;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) == ' ') {
+                starts[word++] = i + 1;
+            }
+        }
+        return starts;
+    }
+
+    private static class IntList {
+
+        private int[] values = new int[4];
+        private int size;
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+    }
+
+    /**
+     * A node of the trie. The children are kept sorted by their letter, so a walk visits the names in
+     * alphabetical order. The codes of the names that end here are kept apart from those of the tails of names,
+     * and every node counts both below it, so a walk can skip a branch that has nothing of the kind it wants.
+     */
+    private static class Node {
+
+        private static final char[] NO_LETTERS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private static final String[] NO_CODES = new String[0];
+
+        private char[] letters = NO_LETTERS;
+        private Node[] children = NO_CHILDREN;
+        private int childCount;
+        private String[] nameCodes = NO_CODES;
+        private int nameCodeCount;
+        private String[] tailCodes = NO_CODES;
+        private int tailCodeCount;
+        private int namesBelow;
+        private int tailsBelow;
+
+        private Node find(String text) {
+            Node node = this;
+            for (int i = 0; i < text.length() && node != null; i++) {
+                node = node.child(text.charAt(i));
+            }
+            return node;
+        }
+
+        private void insert(String text, int from, String code, boolean name) {
+            Node node = this;
+            node.count(name, 1);
+            for (int i = from; i < text.length(); i++) {
+                char letter = text.charAt(i);
+                Node child = node.child(letter);
+                if (child == null) {
+                    child = node.addChild(letter);
+                }
+                node = child;
+                node.count(name, 1);
+            }
+            if (name) {
+                node.nameCodes = append(node.nameCodes, node.nameCodeCount++, code);
+            } else {
+                node.tailCodes = append(node.tailCodes, node.tailCodeCount++, code);
+            }
+        }
+
+        private void remove(String text, int from, String code, boolean name) {
+            Node[] path = new Node[text.length() - from + 1];
+            path[0] = this;
+            for (int i = from; i < text.length(); i++) {
+                path[i - from + 1] = path[i - from].child(text.charAt(i));
+                if (path[i - from + 1] == null) {
+                    return;
+                }
+            }
+            Node node = path[path.length - 1];
+            boolean removed = name ? node.removeNameCode(code) : node.removeTailCode(code);
+            if (!removed) {
+                return;
+            }
+            for (int depth = path.length - 1; depth >= 0; depth--) {
+                path[depth].count(name, -1);
+                if (depth > 0 && path[depth].namesBelow == 0 && path[depth].tailsBelow == 0) {
+                    path[depth - 1].removeChild(text.charAt(from + depth - 1));
+                }
+            }
+        }
+
+        /**
+         * Adds the entries of the names, or of the tails, that end at or below this node in alphabetical order,
+         * until there are {@code limit} matches.
+         */
+        private void collect(Map<String, Entry> entries, Map<String, Entry> matches, int limit, boolean names) {
+            if (matches.size() >= limit || (names ? namesBelow : tailsBelow) == 0) {
+                return;
+            }
+            String[] codes = names ? nameCodes : tailCodes;
+            int count = names ? nameCodeCount : tailCodeCount;
+            for (int i = 0; i < count && matches.size() < limit; i++) {
+                if (!matches.containsKey(codes[i])) {
+                    matches.put(codes[i], entries.get(codes[i]));
+                }
+            }
+            for (int i = 0; i < childCount && matches.size() < limit; i++) {
+                children[i].collect(entries, matches, limit, names);
+            }
+        }
+
+        /**
+         * Walks the trie with the edit distances between the query and the path to each node, and records the
+         * codes that end within {@code maxEdits} of the query with their smallest distance. The distances allow
+         * swapping two neighbouring letters as one edit.
+         */
+        private void searchTypos(String query, int maxEdits, int[] row, int[] rowBefore, char letter,
+                                 Map<String, Integer> distances) {
+            int distance = row[query.length()];
+            if (distance <= maxEdits) {
+                record(nameCodes, nameCodeCount, distance, distances);
+                record(tailCodes, tailCodeCount, distance, distances);
+            }
+            for (int c = 0; c < childCount; c++) {
+                char next = letters[c];
+                int[] nextRow = new int[row.length];
+                nextRow[0] = row[0] + 1;
+                int min = nextRow[0];
+                for (int i = 1; i < row.length; i++) {
+                    char wanted = query.charAt(i - 1);
+                    int cost = Math.min(Math.min(nextRow[i - 1] + 1, row[i] + 1),
+                            row[i - 1] + (wanted == next ? 0 : 1));
+                    if (rowBefore != null && i > 1 && wanted == letter && query.charAt(i - 2) == next) {
+                        cost = Math.min(cost, rowBefore[i - 2] + 1);
+                    }
+                    nextRow[i] = cost;
+                    min = Math.min(min, cost);
+                }
+                // every later distance on this branch is at least the smallest one of the row
+                if (min <= maxEdits) {
+                    children[c].searchTypos(query, maxEdits, nextRow, row, next, distances);
+                }
+            }
+        }
+
+        private static void record(String[] codes, int count, int distance, Map<String, Integer> distances) {
+            for (int i = 0; i < count; i++) {
+                distances.merge(codes[i], distance, Math::min);
+            }
+        }
+
+        private void count(boolean name, int delta) {
+            if (name) {
+                namesBelow += delta;
+            } else {
+                tailsBelow += delta;
+            }
+        }
+
+        private Node child(char letter) {
+            int index = Arrays.binarySearch(letters, 0, childCount, letter);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node addChild(char letter) {
+            int index = -Arrays.binarySearch(letters, 0, childCount, letter) - 1;
+            if (childCount == letters.length) {
+                int capacity = Math.max(2, childCount * 2);
+                letters = Arrays.copyOf(letters, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(letters, index, letters, index + 1, childCount - index);
+            System.arraycopy(children, index, children, index + 1, childCount - index);
+            Node child = new Node();
+            letters[index] = letter;
+            children[index] = child;
+            childCount++;
+            return child;
+        }
+
+        private void removeChild(char letter) {
+            int index = Arrays.binarySearch(letters, 0, childCount, letter);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(letters, index + 1, letters, index, childCount - index - 1);
+            System.arraycopy(children, index + 1, children, index, childCount - index - 1);
+            children[--childCount] = null;
+        }
+
+        private boolean removeNameCode(String code) {
+            int index = indexOf(nameCodes, nameCodeCount, code);
+            if (index < 0) {
+                return false;
+            }
+            nameCodes[index] = nameCodes[--nameCodeCount];
+            nameCodes[nameCodeCount] = null;
+            return true;
+        }
+
+        private boolean removeTailCode(String code) {
+            int index = indexOf(tailCodes, tailCodeCount, code);
+            if (index < 0) {
+                return false;
+            }
+            tailCodes[index] = tailCodes[--tailCodeCount];
+            tailCodes[tailCodeCount] = null;
+            return true;
+        }
+
+        private static int indexOf(String[] codes, int count, String code) {
+            for (int i = 0; i < count; i++) {
+                if (codes[i].equals(code)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static String[] append(String[] codes, int count, String code) {
+            if (count == codes.length) {
+                codes = Arrays.copyOf(codes, Math.max(1, count * 2));
+            }
+            codes[count] = code;
+            return codes;
+        }
+
+    }
+
+}
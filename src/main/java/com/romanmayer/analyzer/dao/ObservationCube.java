@@ -0,0 +1,324 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.analytics.ColumnSet;
+import com.romanmayer.analyzer.model.Observation;
+import com.romanmayer.analyzer.model.YearExtremes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The observations of all indicators in memory, one double array per indicator instead of an object per value.
+ *
+ * Countries get an ordinal in order of appearance. The array of an indicator holds the years of the first
+ * country, then those of the second and so on, so the cell of a country and a year is
+ * {@code ordinal * yearCount + (year - firstYear)} and a time series is contiguous. NaN marks a missing value.
+ * 50 years of 200 countries take 80 KB per indicator.
+ */
+public class ObservationCube {
+
+    private static final int MIN_COUNTRIES = 64;
+
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<String> countryCodes = new ArrayList<>();
+    // insertion order, so that the indicators are listed as they were loaded
+    private final Map<String, double[]> valuesByIndicator = new LinkedHashMap<>();
+    private int countryCapacity = MIN_COUNTRIES;
+    private int firstYear;
+    private int yearCount;
+
+    public ObservationCube() {
+    }
+
+    public ObservationCube(Iterable<Observation> observations) {
+        for (Observation observation : observations) {
+            put(observation);
+        }
+    }
+
+    public int getFirstYear() {
+        return firstYear;
+    }
+
+    public int getLastYear() {
+        return firstYear + yearCount - 1;
+    }
+
+    public int countryCount() {
+        return countryCodes.size();
+    }
+
+    public List<String> countryCodes() {
+        return Collections.unmodifiableList(countryCodes);
+    }
+
+    public Set<String> indicatorCodes() {
+        return Collections.unmodifiableSet(valuesByIndicator.keySet());
+    }
+
+    public void put(Observation observation) {
+        put(observation.getCountryCode(), observation.getIndicatorCode(), observation.getYear(),
+                observation.getValue());
+    }
+
+    public void put(String countryCode, String indicatorCode, int year, double value) {
+        ensureYear(year);
+        int ordinal = ordinalOf(countryCode);
+        values(indicatorCode)[ordinal * yearCount + year - firstYear] = value;
+    }
+
+    public void remove(String countryCode, String indicatorCode, int year) {
+        double[] values = valuesByIndicator.get(indicatorCode);
+        Integer ordinal = ordinals.get(countryCode);
+        if (values != null && ordinal != null && hasYear(year)) {
+            values[ordinal * yearCount + year - firstYear] = Double.NaN;
+        }
+    }
+
+    /**
+     * The value, or NaN if there is none.
+     */
+    public double value(String countryCode, String indicatorCode, int year) {
+        double[] values = valuesByIndicator.get(indicatorCode);
+        Integer ordinal = ordinals.get(countryCode);
+        if (values == null || ordinal == null || !hasYear(year)) {
+            return Double.NaN;
+        }
+        return values[ordinal * yearCount + year - firstYear];
+    }
+
+    /**
+     * The values of one country from {@code fromYear} to {@code toYear}, both inclusive, NaN where missing.
+     */
+    public double[] series(String countryCode, String indicatorCode, int fromYear, int toYear) {
+        double[] series = new double[Math.max(0, toYear - fromYear + 1)];
+        Arrays.fill(series, Double.NaN);
+        double[] values = valuesByIndicator.get(indicatorCode);
+        Integer ordinal = ordinals.get(countryCode);
+        if (values == null || ordinal == null) {
+            return series;
+        }
+        int from = Math.max(fromYear, firstYear);
+        int to = Math.min(toYear, getLastYear());
+        if (from <= to) {
+            System.arraycopy(values, ordinal * yearCount + from - firstYear, series, from - fromYear, to - from + 1);
+        }
+        return series;
+    }
+
+    /**
+     * The countries with the lowest and highest value in the year, or null if no country has one. Ties go to
+     * the country loaded first.
+     */
+    public YearExtremes extremes(String indicatorCode, int year) {
+        double[] values = valuesByIndicator.get(indicatorCode);
+        if (values == null || !hasYear(year)) {
+            return null;
+        }
+        int min = -1;
+        int max = -1;
+        for (int ordinal = 0, cell = year - firstYear; ordinal < countryCodes.size(); ordinal++, cell += yearCount) {
+            double value = values[cell];
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            if (min < 0 || value < values[min * yearCount + year - firstYear]) {
+                min = ordinal;
+            }
+            if (max < 0 || value > values[max * yearCount + year - firstYear]) {
+                max = ordinal;
+            }
+        }
+        if (min < 0) {
+            return null;
+        }
+        return new YearExtremes(indicatorCode, year,
+                countryCodes.get(min), values[min * yearCount + year - firstYear],
+                countryCodes.get(max), values[max * yearCount + year - firstYear]);
+    }
+
+    /**
+     * The least-squares slope of the values of a country from {@code fromYear} to {@code toYear}, in units of
+     * the indicator per year, over the years that have a value. NaN if there are less than two.
+     */
+    public double trend(String countryCode, String indicatorCode, int fromYear, int toYear) {
+        double[] series = series(countryCode, indicatorCode, fromYear, toYear);
+        int count = 0;
+        double sumX = 0;
+        double sumY = 0;
+        for (int i = 0; i < series.length; i++) {
+            if (!Double.isNaN(series[i])) {
+                count++;
+                sumX += i;
+                sumY += series[i];
+            }
+        }
+        if (count < 2) {
+            return Double.NaN;
+        }
+        double meanX = sumX / count;
+        double meanY = sumY / count;
+        double sumXX = 0;
+        double sumXY = 0;
+        for (int i = 0; i < series.length; i++) {
+            if (!Double.isNaN(series[i])) {
+                sumXX += (i - meanX) * (i - meanX);
+                sumXY += (i - meanX) * (series[i] - meanY);
+            }
+        }
+        return sumXY / sumXX;
+    }
+
+    /**
+     * The slope of every country from {@code fromYear} to {@code toYear}, by country code, leaving out the
+     * countries with less than two values.
+     */
+    public Map<String, Double> trends(String indicatorCode, int fromYear, int toYear) {
+        Map<String, Double> trends = new LinkedHashMap<>();
+        for (String countryCode : countryCodes) {
+            double trend = trend(countryCode, indicatorCode, fromYear, toYear);
+            if (!Double.isNaN(trend)) {
+                trends.put(countryCode, trend);
+            }
+        }
+        return trends;
+    }
+
+    /**
+     * Pearson correlation between two indicators over the countries that have both values in the year, or NaN
+     * if there are less than two.
+     */
+    public double correlation(String indicatorCodeX, String indicatorCodeY, int year) {
+        if (!hasYear(year)) {
+            return Double.NaN;
+        }
+        return correlation(indicatorCodeX, indicatorCodeY, year - firstYear, year - firstYear);
+    }
+
+    /**
+     * Pearson correlation between two indicators over every country and year that has both values.
+     */
+    public double correlation(String indicatorCodeX, String indicatorCodeY) {
+        return correlation(indicatorCodeX, indicatorCodeY, 0, yearCount - 1);
+    }
+
+    private double correlation(String indicatorCodeX, String indicatorCodeY, int fromYearIndex, int toYearIndex) {
+        double[] x = valuesByIndicator.get(indicatorCodeX);
+        double[] y = valuesByIndicator.get(indicatorCodeY);
+        if (x == null || y == null) {
+            return Double.NaN;
+        }
+        // Welford, so that large values over decades do not cancel out
+        int count = 0;
+        double meanX = 0;
+        double meanY = 0;
+        double m2X = 0;
+        double m2Y = 0;
+        double coMoment = 0;
+        for (int ordinal = 0; ordinal < countryCodes.size(); ordinal++) {
+            for (int cell = ordinal * yearCount + fromYearIndex; cell <= ordinal * yearCount + toYearIndex; cell++) {
+                if (Double.isNaN(x[cell]) || Double.isNaN(y[cell])) {
+                    continue;
+                }
+                count++;
+                double dx = x[cell] - meanX;
+                meanX += dx / count;
+                double dy = y[cell] - meanY;
+                meanY += dy / count;
+                m2X += dx * (x[cell] - meanX);
+                m2Y += dy * (y[cell] - meanY);
+                coMoment += dx * (y[cell] - meanY);
+            }
+        }
+        return count < 2 ? Double.NaN : coMoment / Math.sqrt(m2X * m2Y);
+    }
+
+    /**
+     * Every indicator as a column with one row per country and year, for the
+     * {@link com.romanmayer.analyzer.analytics.CorrelationEngine}. The columns are the arrays of the cube
+     * itself, so they are only valid until the next change.
+     */
+    public ColumnSet columns() {
+        ColumnSet columns = new ColumnSet(countryCodes.size() * yearCount);
+        for (Map.Entry<String, double[]> entry : valuesByIndicator.entrySet()) {
+            columns.add(entry.getKey(), entry.getValue());
+        }
+        return columns;
+    }
+
+    private boolean hasYear(int year) {
+        return yearCount > 0 && year >= firstYear && year < firstYear + yearCount;
+    }
+
+    private int ordinalOf(String countryCode) {
+        Integer ordinal = ordinals.get(countryCode);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        if (countryCodes.size() == countryCapacity) {
+            // the countries are the outer dimension, so more of them only append to every array
+            countryCapacity += countryCapacity >> 1;
+            for (Map.Entry<String, double[]> entry : valuesByIndicator.entrySet()) {
+                entry.setValue(grow(entry.getValue(), countryCapacity * yearCount));
+            }
+        }
+        ordinals.put(countryCode, countryCodes.size());
+        countryCodes.add(countryCode);
+        return countryCodes.size() - 1;
+    }
+
+    private double[] values(String indicatorCode) {
+        return valuesByIndicator.computeIfAbsent(indicatorCode, code -> {
+            double[] values = new double[countryCapacity * yearCount];
+            Arrays.fill(values, Double.NaN);
+            return values;
+        });
+    }
+
+    /**
+     * Widens the year range to the given years at once, e.g. before a load, instead of year by year.
+     */
+    public void reserveYears(int fromYear, int toYear) {
+        ensureYear(fromYear);
+        ensureYear(toYear);
+    }
+
+    /**
+     * Widens the year range to the given year. Every array is laid out anew, which is rare: the years of a
+     * dataset are mostly known after the first few observations.
+     */
+    private void ensureYear(int year) {
+        if (hasYear(year)) {
+            return;
+        }
+        int newFirstYear = yearCount == 0 ? year : Math.min(firstYear, year);
+        int newLastYear = yearCount == 0 ? year : Math.max(getLastYear(), year);
+        int newYearCount = newLastYear - newFirstYear + 1;
+        for (Map.Entry<String, double[]> entry : valuesByIndicator.entrySet()) {
+            double[] values = entry.getValue();
+            double[] widened = new double[countryCapacity * newYearCount];
+            Arrays.fill(widened, Double.NaN);
+            for (int ordinal = 0; ordinal < countryCodes.size(); ordinal++) {
+                System.arraycopy(values, ordinal * yearCount, widened,
+                        ordinal * newYearCount + firstYear - newFirstYear, yearCount);
+            }
+            entry.setValue(widened);
+        }
+        firstYear = newFirstYear;
+        yearCount = newYearCount;
+    }
+
+    private static double[] grow(double[] values, int length) {
+        int oldLength = values.length;
+        double[] grown = Arrays.copyOf(values, length);
+        Arrays.fill(grown, oldLength, length, Double.NaN);
+        return grown;
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.importer.ImportResult;
+import com.romanmayer.analyzer.model.Observation;
+import com.romanmayer.analyzer.model.ObservationKey;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The per-year values of any number of indicators.
+ */
+public interface ObservationDao {
+    ObservationCube getCube();
+    List<Observation> findByCountry(String countryCode);
+    void save(Collection<Observation> observations);
+    void delete(ObservationKey key);
+    ImportResult importObservations(Path file) throws IOException;
+}
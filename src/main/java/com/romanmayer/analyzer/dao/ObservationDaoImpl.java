@@ -0,0 +1,180 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.importer.CountryImporter;
+import com.romanmayer.analyzer.importer.ImportResult;
+import com.romanmayer.analyzer.importer.ObservationCsvParser;
+import com.romanmayer.analyzer.model.Observation;
+import com.romanmayer.analyzer.model.ObservationKey;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class ObservationDaoImpl implements ObservationDao {
+
+    private static final int SCROLL_FETCH_SIZE = 1000;
+    private static final int MAX_REPORTED_REJECTIONS = 20;
+
+    private final SessionFactory sessionFactory;
+    // null until the first query, then kept up to date by save and delete
+    private ObservationCube cube;
+
+    public ObservationDaoImpl(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    /**
+     * The observations in memory, loaded on first use. Queries on the cube must not run at the same time as
+     * {@link #save} or {@link #delete}.
+     */
+    @Override
+    public synchronized ObservationCube getCube() {
+        if (cube == null) {
+            cube = loadCube();
+        }
+        return cube;
+    }
+
+    @Override
+    public List<Observation> findByCountry(String countryCode) {
+        Session session = sessionFactory.openSession();
+        List<Observation> observations = session
+                .createQuery("from Observation where key.countryCode = :countryCode " +
+                        "order by key.indicatorCode, key.year", Observation.class)
+                .setParameter("countryCode", countryCode)
+                .getResultList();
+        session.close();
+        return observations;
+    }
+
+    /**
+     * Inserts or replaces the observations in one transaction, in JDBC batches.
+     */
+    @Override
+    public synchronized void save(Collection<Observation> observations) {
+        int batchSize = CountryImporter.configuredBatchSize(sessionFactory);
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            int pending = 0;
+            for (Observation observation : observations) {
+                session.merge(observation);
+                if (++pending == batchSize) {
+                    session.flush();
+                    session.clear();
+                    pending = 0;
+                }
+            }
+            session.getTransaction().commit();
+        } catch (RuntimeException e) {
+            if (session.getTransaction().isActive()) {
+                session.getTransaction().rollback();
+            }
+            throw e;
+        } finally {
+            session.close();
+        }
+        if (cube != null) {
+            for (Observation observation : observations) {
+                cube.put(observation);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void delete(ObservationKey key) {
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        Observation observation = session.get(Observation.class, key);
+        if (observation != null) {
+            session.delete(observation);
+        }
+        session.getTransaction().commit();
+        session.close();
+        if (cube != null) {
+            cube.remove(key.getCountryCode(), key.getIndicatorCode(), key.getYear());
+        }
+    }
+
+    /**
+     * Imports a CSV file of observations, see {@link ObservationCsvParser}, with one {@link #save} per batch of
+     * lines. Missing values are skipped, not rejected.
+     */
+    @Override
+    public ImportResult importObservations(Path file) throws IOException {
+        long start = System.currentTimeMillis();
+        int batchSize = CountryImporter.configuredBatchSize(sessionFactory);
+        ObservationCsvParser parser = new ObservationCsvParser();
+        List<String> rejections = new ArrayList<>();
+        long importedRows = 0;
+        long rejectedRows = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            List<Observation> batch = new ArrayList<>(batchSize);
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty() || (lineNumber == 1 && parser.isHeader(line))) {
+                    continue;
+                }
+                Observation observation;
+                try {
+                    observation = parser.parse(line);
+                } catch (IllegalArgumentException iae) {
+                    rejectedRows++;
+                    if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+                        rejections.add("line " + lineNumber + ": " + iae.getMessage());
+                    }
+                    continue;
+                }
+                if (observation != null) {
+                    batch.add(observation);
+                }
+                if (batch.size() == batchSize) {
+                    save(batch);
+                    importedRows += batch.size();
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                save(batch);
+                importedRows += batch.size();
+            }
+        }
+        return new ImportResult(importedRows, rejectedRows, rejections, System.currentTimeMillis() - start);
+    }
+
+    private ObservationCube loadCube() {
+        ObservationCube loaded = new ObservationCube();
+        // stateless, so the observations are not kept as objects next to the cube
+        StatelessSession session = sessionFactory.openStatelessSession();
+        Object[] years = (Object[]) session
+                .createQuery("select min(key.year), max(key.year) from Observation")
+                .uniqueResult();
+        if (years[0] != null) {
+            loaded.reserveYears((Integer) years[0], (Integer) years[1]);
+        }
+        try (ScrollableResults results = session
+                .createQuery("from Observation")
+                .setFetchSize(SCROLL_FETCH_SIZE)
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+            while (results.next()) {
+                loaded.put((Observation) results.get(0));
+            }
+        } finally {
+            session.close();
+        }
+        return loaded;
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.model.Indicator;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Splits the statistics scan over a {@link CountrySnapshot} into row ranges that are aggregated on a
+ * {@link ForkJoinPool} and merged with {@link StatisticsAccumulator#merge}. Quantile sketches of an indicator
+ * are built the same way and merged with {@link QuantileSketch#merge}.
+ *
+ * Snapshots with less rows than the threshold are aggregated on the calling thread, since forking costs more
+ * than it saves on small inputs.
+ */
+public class ParallelAggregation {
+
+    public static final int DEFAULT_THRESHOLD = 100_000;
+
+    private final int threshold;
+    private final ForkJoinPool pool;
+
+    public ParallelAggregation() {
+        this(DEFAULT_THRESHOLD, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threshold minimum number of rows of a snapshot (and of each forked range) to aggregate in parallel
+     * @param poolSize  number of worker threads
+     */
+    public ParallelAggregation(int threshold, int poolSize) {
+        if (threshold < 64) {
+            throw new IllegalArgumentException("The threshold must be at least 64 rows, not " + threshold);
+        }
+        this.threshold = threshold;
+        this.pool = new ForkJoinPool(poolSize);
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public int getPoolSize() {
+        return pool.getParallelism();
+    }
+
+    public StatisticsAccumulator aggregate(CountrySnapshot snapshot) {
+        if (snapshot.size() < threshold) {
+            return snapshot.accumulate(new StatisticsAccumulator());
+        }
+        // ranges are counted in bitmap words of 64 rows each
+        int wordsPerTask = Math.max(1, threshold >>> 6);
+        return pool.invoke(new AggregationTask(snapshot, 0, snapshot.wordCount(), wordsPerTask));
+    }
+
+    public QuantileSketch sketch(CountrySnapshot snapshot, Indicator indicator, int k) {
+        if (snapshot.size() < threshold) {
+            return snapshot.sketch(new QuantileSketch(k), indicator, 0, snapshot.wordCount());
+        }
+        int wordsPerTask = Math.max(1, threshold >>> 6);
+        return pool.invoke(new SketchTask(snapshot, indicator, k, 0, snapshot.wordCount(), wordsPerTask));
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private static class AggregationTask extends RecursiveTask<StatisticsAccumulator> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final CountrySnapshot snapshot;
+        private final int fromWord;
+        private final int toWord;
+        private final int wordsPerTask;
+
+        private AggregationTask(CountrySnapshot snapshot, int fromWord, int toWord, int wordsPerTask) {
+            this.snapshot = snapshot;
+            this.fromWord = fromWord;
+            this.toWord = toWord;
+            this.wordsPerTask = wordsPerTask;
+        }
+
+        @Override
+        protected StatisticsAccumulator compute() {
+            if (toWord - fromWord <= wordsPerTask) {
+                return snapshot.accumulate(new StatisticsAccumulator(), fromWord, toWord);
+            }
+            int middle = (fromWord + toWord) >>> 1;
+            AggregationTask left = new AggregationTask(snapshot, fromWord, middle, wordsPerTask);
+            AggregationTask right = new AggregationTask(snapshot, middle, toWord, wordsPerTask);
+            right.fork();
+            // merge in row order, so ties are resolved like in the sequential scan
+            return left.compute().merge(right.join());
+        }
+
+    }
+
+    private static class SketchTask extends RecursiveTask<QuantileSketch> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final CountrySnapshot snapshot;
+        private final Indicator indicator;
+        private final int k;
+        private final int fromWord;
+        private final int toWord;
+        private final int wordsPerTask;
+
+        private SketchTask(CountrySnapshot snapshot, Indicator indicator, int k, int fromWord, int toWord,
+                           int wordsPerTask) {
+            this.snapshot = snapshot;
+            this.indicator = indicator;
+            this.k = k;
+            this.fromWord = fromWord;
+            this.toWord = toWord;
+            this.wordsPerTask = wordsPerTask;
+        }
+
+        @Override
+        protected QuantileSketch compute() {
+            if (toWord - fromWord <= wordsPerTask) {
+                return snapshot.sketch(new QuantileSketch(k), indicator, fromWord, toWord);
+            }
+            int middle = (fromWord + toWord) >>> 1;
+            SketchTask left = new SketchTask(snapshot, indicator, k, fromWord, middle, wordsPerTask);
+            SketchTask right = new SketchTask(snapshot, indicator, k, middle, toWord, wordsPerTask);
+            right.fork();
+            return left.compute().merge(right.join());
+        }
+
+    }
+
+}
@@ -0,0 +1,314 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.model.Histogram;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * KLL sketch of a stream of values, for approximate quantiles and ranks in memory that does not grow with the
+ * stream.
+ *
+ * The values are kept on levels of compactors, a value on level h standing for 2^h values of the stream. When
+ * a level is full it is sorted and every second value, starting at a random one of the first two, moves up a
+ * level; the others are dropped. The capacity of a level shrinks by 2/3 per level below the top, which holds
+ * {@code k} values, so the sketch keeps about 3k values. The rank of a quantile is off by less than 1% of the
+ * count for k = 200, and the error shrinks roughly like 1/k. Min, max and the count are exact.
+ *
+ * Sketches of disjoint parts of a stream are combined with {@link #merge}. Values cannot be taken back out,
+ * so a sketch of values that change has to be rebuilt.
+ */
+public class QuantileSketch {
+
+    public static final int DEFAULT_K = 200;
+
+    private static final int MIN_LEVEL_CAPACITY = 8;
+    private static final double CAPACITY_FACTOR = 2.0 / 3.0;
+    // a different coin per sketch, so merged partitions do not drop the same positions
+    private static final AtomicLong SEEDS = new AtomicLong(0x5DEECE66DL);
+
+    private final int k;
+    private double[][] levels = new double[1][];
+    private int[] sizes = new int[1];
+    private int levelCount = 1;
+    // number of values held and the number that triggers a compaction
+    private int held;
+    private int capacity;
+    private long count;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    private long random;
+    // all values sorted with their cumulative weights, built by the first query after a change
+    private double[] sortedValues;
+    private long[] cumulativeWeights;
+
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * @param k the capacity of the top level, which sets the accuracy; at least 8
+     */
+    public QuantileSketch(int k) {
+        if (k < MIN_LEVEL_CAPACITY) {
+            throw new IllegalArgumentException("k must be at least " + MIN_LEVEL_CAPACITY + ", not " + k);
+        }
+        this.k = k;
+        this.random = SEEDS.getAndAdd(0x9E3779B97F4A7C15L);
+        levels[0] = new double[levelCapacity(0)];
+        capacity = totalCapacity();
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public double min() {
+        return min;
+    }
+
+    public double max() {
+        return max;
+    }
+
+    public void add(double value) {
+        if (count == 0 || value < min) {
+            min = value;
+        }
+        if (count == 0 || value > max) {
+            max = value;
+        }
+        count++;
+        append(0, value);
+        held++;
+        if (held >= capacity) {
+            compress();
+        }
+        sortedValues = null;
+    }
+
+    /**
+     * Adds the values of another sketch, which is not changed.
+     */
+    public QuantileSketch merge(QuantileSketch other) {
+        if (other.count == 0) {
+            return this;
+        }
+        if (count == 0 || other.min < min) {
+            min = other.min;
+        }
+        if (count == 0 || other.max > max) {
+            max = other.max;
+        }
+        count += other.count;
+        while (levelCount < other.levelCount) {
+            grow();
+        }
+        for (int level = 0; level < other.levelCount; level++) {
+            for (int i = 0; i < other.sizes[level]; i++) {
+                append(level, other.levels[level][i]);
+            }
+        }
+        held += other.held;
+        while (held >= capacity) {
+            compress();
+        }
+        sortedValues = null;
+        return this;
+    }
+
+    /**
+     * The smallest value with at least {@code fraction} of the values at or below it, NaN if the sketch is
+     * empty. 0 is the min and 1 the max.
+     */
+    public double quantile(double fraction) {
+        if (!(fraction >= 0 && fraction <= 1)) {
+            throw new IllegalArgumentException("The fraction must be between 0 and 1, not " + fraction);
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (fraction == 0) {
+            return min;
+        }
+        if (fraction == 1) {
+            return max;
+        }
+        sort();
+        // the first value whose cumulative weight reaches the target
+        double target = fraction * count;
+        int low = 0;
+        int high = cumulativeWeights.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulativeWeights[middle] < target) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return sortedValues[low];
+    }
+
+    /**
+     * The number of values at or below {@code value}, estimated.
+     */
+    public long countAtMost(double value) {
+        if (count == 0 || value < min) {
+            return 0;
+        }
+        if (value >= max) {
+            return count;
+        }
+        sort();
+        int index = Arrays.binarySearch(sortedValues, value);
+        if (index >= 0) {
+            // the last of equal values
+            while (index + 1 < sortedValues.length && sortedValues[index + 1] == value) {
+                index++;
+            }
+        } else {
+            index = -index - 2;
+        }
+        return index < 0 ? 0 : cumulativeWeights[index];
+    }
+
+    /**
+     * Estimated counts of the values in {@code buckets} buckets of equal width between min and max. The counts
+     * add up to the exact count.
+     */
+    public Histogram histogram(int buckets) {
+        if (buckets < 1) {
+            throw new IllegalArgumentException("A histogram needs at least 1 bucket, not " + buckets);
+        }
+        double[] bounds = new double[buckets + 1];
+        long[] counts = new long[buckets];
+        if (count == 0) {
+            Arrays.fill(bounds, Double.NaN);
+            return new Histogram(bounds, counts);
+        }
+        double width = (max - min) / buckets;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            bounds[bucket] = min + bucket * width;
+        }
+        bounds[buckets] = max;
+        long below = 0;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            long atMost = countAtMost(bounds[bucket + 1]);
+            counts[bucket] = atMost - below;
+            below = atMost;
+        }
+        return new Histogram(bounds, counts);
+    }
+
+    private void append(int level, double value) {
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], Math.max(MIN_LEVEL_CAPACITY, sizes[level] * 2));
+        }
+        levels[level][sizes[level]++] = value;
+    }
+
+    /**
+     * Compacts the lowest level that is over its capacity, adding a level on top if needed.
+     */
+    private void compress() {
+        for (int level = 0; level < levelCount; level++) {
+            if (sizes[level] < levelCapacity(level)) {
+                continue;
+            }
+            if (level + 1 == levelCount) {
+                grow();
+            }
+            double[] values = levels[level];
+            int size = sizes[level];
+            Arrays.sort(values, 0, size);
+            // an odd value out stays on its level, so the total weight is kept exactly
+            int pairs = size >>> 1;
+            int offset = nextCoin();
+            for (int pair = 0; pair < pairs; pair++) {
+                append(level + 1, values[(pair << 1) + offset]);
+            }
+            if ((size & 1) != 0) {
+                values[0] = values[size - 1];
+            }
+            sizes[level] = size & 1;
+            held -= pairs;
+            return;
+        }
+    }
+
+    private void grow() {
+        if (levelCount == levels.length) {
+            levels = Arrays.copyOf(levels, levelCount * 2);
+            sizes = Arrays.copyOf(sizes, levelCount * 2);
+        }
+        levels[levelCount] = new double[MIN_LEVEL_CAPACITY];
+        sizes[levelCount] = 0;
+        levelCount++;
+        capacity = totalCapacity();
+    }
+
+    private int levelCapacity(int level) {
+        int depth = levelCount - 1 - level;
+        return Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_FACTOR, depth)));
+    }
+
+    private int totalCapacity() {
+        int total = 0;
+        for (int level = 0; level < levelCount; level++) {
+            total += levelCapacity(level);
+        }
+        return total;
+    }
+
+    private int nextCoin() {
+        // xorshift64
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return (int) (random >>> 63);
+    }
+
+    private void sort() {
+        if (sortedValues != null) {
+            return;
+        }
+        double[] values = new double[held];
+        long[] weights = new long[held];
+        int filled = 0;
+        for (int level = 0; level < levelCount; level++) {
+            int size = sizes[level];
+            double[] levelValues = Arrays.copyOf(levels[level], size);
+            Arrays.sort(levelValues);
+            // merge the sorted level into the sorted values so far, from the back
+            int i = filled - 1;
+            int j = size - 1;
+            for (int target = filled + size - 1; j >= 0; target--) {
+                if (i >= 0 && values[i] > levelValues[j]) {
+                    values[target] = values[i];
+                    weights[target] = weights[i];
+                    i--;
+                } else {
+                    values[target] = levelValues[j];
+                    weights[target] = 1L << level;
+                    j--;
+                }
+            }
+            filled += size;
+        }
+        for (int i = 1; i < filled; i++) {
+            weights[i] += weights[i - 1];
+        }
+        sortedValues = values;
+        cumulativeWeights = weights;
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.model.Indicator;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * {@link QuantileSketch}es of the indicators, kept up to date on mutations as far as a sketch allows.
+ *
+ * A new value is added to the sketch of its indicator right away. A sketch cannot take a value back, so an
+ * update or a delete of a value marks the sketch of its indicator as stale, and the next query rebuilds it from
+ * the {@link CountrySnapshot}, in parallel if enabled. The sketches are built by their first query. Like
+ * {@link RunningStatistics}, {@link #remove} has to be called before the snapshot changes and {@link #add}
+ * after.
+ */
+public class RunningQuantiles {
+
+    private final int k;
+    // no entry while the sketch of an indicator is stale
+    private final Map<Indicator, QuantileSketch> sketches = new EnumMap<>(Indicator.class);
+    private long rebuilds;
+
+    /**
+     * @param k the accuracy of the sketches, see {@link QuantileSketch#QuantileSketch(int)}
+     */
+    public RunningQuantiles(int k) {
+        // fail here rather than on the first query
+        new QuantileSketch(k);
+        this.k = k;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * How often a stale sketch was rebuilt.
+     */
+    public long getRebuilds() {
+        return rebuilds;
+    }
+
+    public void add(CountrySnapshot snapshot, String code) {
+        int row = snapshot.rowOf(code);
+        if (row < 0) {
+            return;
+        }
+        for (Map.Entry<Indicator, QuantileSketch> sketch : sketches.entrySet()) {
+            if (snapshot.hasValue(sketch.getKey(), row)) {
+                sketch.getValue().add(snapshot.value(sketch.getKey(), row));
+            }
+        }
+    }
+
+    public void remove(CountrySnapshot snapshot, String code) {
+        int row = snapshot.rowOf(code);
+        if (row < 0) {
+            return;
+        }
+        for (Indicator indicator : Indicator.values()) {
+            if (snapshot.hasValue(indicator, row)) {
+                sketches.remove(indicator);
+            }
+        }
+    }
+
+    /**
+     * The sketch of the indicator, rebuilt first if it is stale.
+     *
+     * @param parallelAggregation builds the sketch in parallel partitions, may be null
+     */
+    public QuantileSketch sketch(CountrySnapshot snapshot, Indicator indicator,
+                                 ParallelAggregation parallelAggregation) {
+        QuantileSketch sketch = sketches.get(indicator);
+        if (sketch == null) {
+            sketch = parallelAggregation != null ? parallelAggregation.sketch(snapshot, indicator, k)
+                    : snapshot.sketch(new QuantileSketch(k), indicator, 0, snapshot.wordCount());
+            sketches.put(indicator, sketch);
+            rebuilds++;
+        }
+        return sketch;
+    }
+
+}
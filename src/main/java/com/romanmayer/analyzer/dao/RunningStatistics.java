@@ -0,0 +1,148 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.model.Indicator;
+import com.romanmayer.analyzer.model.IndicatorSummary;
+import com.romanmayer.analyzer.model.IndicatorSummary.IndicatorSummaryBuilder;
+
+/**
+ * Statistics of the countries with values for both indicators, kept up to date on every mutation instead of
+ * being recomputed by a scan.
+ *
+ * Means, variances and the co-moment follow Welford's method, which can also take a row back out. Min and max
+ * come from sorted indexes, so deleting the current extreme simply moves on to the next country. The values of
+ * a row are read from the {@link CountrySnapshot}: {@link #remove} has to be called before the snapshot
+ * changes, {@link #add} after, because a country may already have been edited in place when the DAO hears
+ * about it. x is the internet users value and y the adult literacy rate.
+ *
+ * Taking a row back out subtracts from the moments, which loses a little precision every time. So once as many
+ * rows were taken out as there are complete rows, {@link #rebaselineIfDrifting} recomputes the moments with a
+ * scan, in parallel if enabled. That costs O(n) per n removals, so a mutation stays O(log n) on average.
+ */
+public class RunningStatistics {
+
+    // below this many removals the rounding errors cannot add up, whatever the number of rows
+    private static final long MIN_REBASELINE_REMOVALS = 1024;
+
+    private final SortedIndex internetUsers = new SortedIndex(Indicator.INTERNET_USERS, true);
+    private final SortedIndex adultLiteracyRate = new SortedIndex(Indicator.ADULT_LITERACY_RATE, true);
+    private long count;
+    private double meanX;
+    private double meanY;
+    private double m2X;
+    private double m2Y;
+    private double coMoment;
+    private long removals;
+    private long rebaselines;
+
+    public RunningStatistics(CountrySnapshot snapshot) {
+        for (int row = 0; row < snapshot.size(); row++) {
+            add(snapshot, row);
+        }
+    }
+
+    public void add(CountrySnapshot snapshot, String code) {
+        int row = snapshot.rowOf(code);
+        if (row >= 0) {
+            add(snapshot, row);
+        }
+    }
+
+    public void remove(CountrySnapshot snapshot, String code) {
+        int row = snapshot.rowOf(code);
+        if (row < 0) {
+            return;
+        }
+        internetUsers.remove(code);
+        adultLiteracyRate.remove(code);
+        if (isComplete(snapshot, row)) {
+            remove(snapshot.internetUsers(row), snapshot.adultLiteracyRate(row));
+        }
+    }
+
+    /**
+     * Recomputes the moments with a scan of the snapshot once enough rows were taken out since the last scan, see
+     * the class comment. To be called after the snapshot has changed.
+     *
+     * @param parallelAggregation scans in parallel partitions, may be null
+     */
+    public void rebaselineIfDrifting(CountrySnapshot snapshot, ParallelAggregation parallelAggregation) {
+        if (removals < Math.max(MIN_REBASELINE_REMOVALS, count)) {
+            return;
+        }
+        StatisticsAccumulator scan = parallelAggregation != null ? parallelAggregation.aggregate(snapshot)
+                : snapshot.accumulate(new StatisticsAccumulator());
+        count = scan.count();
+        meanX = scan.meanX();
+        meanY = scan.meanY();
+        m2X = scan.m2X();
+        m2Y = scan.m2Y();
+        coMoment = scan.coMoment();
+        removals = 0;
+        rebaselines++;
+    }
+
+    /**
+     * How often the moments were recomputed by a scan.
+     */
+    public long getRebaselines() {
+        return rebaselines;
+    }
+
+    public IndicatorSummary toSummary() {
+        IndicatorSummaryBuilder builder = new IndicatorSummaryBuilder(count);
+        if (count == 0) {
+            return builder.build();
+        }
+        // sample variance, like commons-math
+        double varianceX = count > 1 ? m2X / (count - 1) : Double.NaN;
+        double varianceY = count > 1 ? m2Y / (count - 1) : Double.NaN;
+        double correlation = count > 1 ? coMoment / Math.sqrt(m2X * m2Y) : Double.NaN;
+        return builder
+                .withInternetUsers(internetUsers.first(), internetUsers.last(), meanX, varianceX)
+                .withLiteracyRate(adultLiteracyRate.first(), adultLiteracyRate.last(), meanY, varianceY)
+                .withCorrelationCoefficient(correlation)
+                .build();
+    }
+
+    private void add(CountrySnapshot snapshot, int row) {
+        internetUsers.put(snapshot.country(row));
+        adultLiteracyRate.put(snapshot.country(row));
+        if (isComplete(snapshot, row)) {
+            add(snapshot.internetUsers(row), snapshot.adultLiteracyRate(row));
+        }
+    }
+
+    private void add(double x, double y) {
+        count++;
+        double dx = x - meanX;
+        double dy = y - meanY;
+        meanX += dx / count;
+        meanY += dy / count;
+        m2X += dx * (x - meanX);
+        m2Y += dy * (y - meanY);
+        coMoment += dx * (y - meanY);
+    }
+
+    private void remove(double x, double y) {
+        removals++;
+        if (count == 1) {
+            count = 0;
+            meanX = meanY = m2X = m2Y = coMoment = 0;
+            return;
+        }
+        // the steps of add() in reverse
+        double previousMeanX = meanX;
+        double previousMeanY = meanY;
+        count--;
+        meanX -= (x - previousMeanX) / count;
+        meanY -= (y - previousMeanY) / count;
+        m2X -= (x - meanX) * (x - previousMeanX);
+        m2Y -= (y - meanY) * (y - previousMeanY);
+        coMoment -= (x - meanX) * (y - previousMeanY);
+    }
+
+    private static boolean isComplete(CountrySnapshot snapshot, int row) {
+        return snapshot.hasInternetUsers(row) && snapshot.hasAdultLiteracyRate(row);
+    }
+
+}
@@ -0,0 +1,211 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.Country.CountryBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The countries in a compact binary file, to restore them at startup without Hibernate.
+ *
+ * The file is columnar: a header, the two indicators as {@code FixedPoint} longs, the UTF-8 lengths of the codes
+ * and the names (-1 for null) and then the bytes of all codes and of all names. It is read through a memory
+ * mapping, so every column is one bulk copy. The header records the {@link DatasetVersion} and the number of
+ * countries at the time of writing, which tell whether the database changed since.
+ *
+ * A new file is written next to the old one and then moved over it, so a crash while writing leaves the old one.
+ */
+public class SnapshotFile {
+
+    // "CNTR"
+    private static final int MAGIC = 0x434E5452;
+    public static final int FORMAT_VERSION = 1;
+    // magic, format version, rows, code bytes, name bytes, padding and the dataset version
+    private static final int HEADER_BYTES = 32;
+
+    private final Path path;
+
+    public SnapshotFile(Path path) {
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * The header, or null if there is no file.
+     *
+     * @throws IOException if the file cannot be read, is not a snapshot or has another format version
+     */
+    public Header readHeader() throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read until the header is complete or the file ends
+            }
+            header.flip();
+            return readHeader(header, channel.size());
+        }
+    }
+
+    public List<Country> readCountries() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            Header header = readHeader(buffer, channel.size());
+            int rows = header.rows;
+
+            long[] internetUsers = new long[rows];
+            long[] adultLiteracyRate = new long[rows];
+            int[] codeLengths = new int[rows];
+            int[] nameLengths = new int[rows];
+            byte[] codes = new byte[header.codeBytes];
+            byte[] names = new byte[header.nameBytes];
+            buffer.position(HEADER_BYTES);
+            buffer.asLongBuffer().get(internetUsers);
+            buffer.position(buffer.position() + rows * 8);
+            buffer.asLongBuffer().get(adultLiteracyRate);
+            buffer.position(buffer.position() + rows * 8);
+            buffer.asIntBuffer().get(codeLengths);
+            buffer.position(buffer.position() + rows * 4);
+            buffer.asIntBuffer().get(nameLengths);
+            buffer.position(buffer.position() + rows * 4);
+            buffer.get(codes);
+            buffer.get(names);
+
+            List<Country> countries = new ArrayList<>(rows);
+            int codeOffset = 0;
+            int nameOffset = 0;
+            for (int row = 0; row < rows; row++) {
+                String code = codeLengths[row] < 0 ? null
+                        : new String(codes, codeOffset, codeLengths[row], StandardCharsets.UTF_8);
+                String name = nameLengths[row] < 0 ? null
+                        : new String(names, nameOffset, nameLengths[row], StandardCharsets.UTF_8);
+                codeOffset += Math.max(0, codeLengths[row]);
+                nameOffset += Math.max(0, nameLengths[row]);
+                countries.add(new CountryBuilder(code, name)
+                        .withInternetUsersFixedPoint(internetUsers[row])
+                        .withLiteracyRateFixedPoint(adultLiteracyRate[row])
+                        .build());
+            }
+            return countries;
+        }
+    }
+
+    public void write(Collection<Country> countries, long datasetVersion) throws IOException {
+        int rows = countries.size();
+        byte[][] codes = new byte[rows][];
+        byte[][] names = new byte[rows][];
+        long codeBytes = 0;
+        long nameBytes = 0;
+        int row = 0;
+        for (Country country : countries) {
+            codes[row] = country.getCode() == null ? null : country.getCode().getBytes(StandardCharsets.UTF_8);
+            names[row] = country.getName() == null ? null : country.getName().getBytes(StandardCharsets.UTF_8);
+            codeBytes += codes[row] == null ? 0 : codes[row].length;
+            nameBytes += names[row] == null ? 0 : names[row].length;
+            row++;
+        }
+        long size = HEADER_BYTES + rows * 24L + codeBytes + nameBytes;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("The snapshot would take more than 2 GB: " + size + " bytes");
+        }
+
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path newFile = Files.createTempFile(directory, path.getFileName().toString(), ".new");
+        try {
+            try (FileChannel channel = FileChannel.open(newFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(rows)
+                        .putInt((int) codeBytes).putInt((int) nameBytes).putInt(0)
+                        .putLong(datasetVersion);
+                for (Country country : countries) {
+                    buffer.putLong(country.getInternetUsersFixedPoint());
+                }
+                for (Country country : countries) {
+                    buffer.putLong(country.getAdultLiteracyRateFixedPoint());
+                }
+                for (byte[] code : codes) {
+                    buffer.putInt(code == null ? -1 : code.length);
+                }
+                for (byte[] name : names) {
+                    buffer.putInt(name == null ? -1 : name.length);
+                }
+                for (byte[] code : codes) {
+                    if (code != null) {
+                        buffer.put(code);
+                    }
+                }
+                for (byte[] name : names) {
+                    if (name != null) {
+                        buffer.put(name);
+                    }
+                }
+                buffer.force();
+            }
+            Files.move(newFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(newFile);
+        }
+    }
+
+    private Header readHeader(ByteBuffer buffer, long fileSize) throws IOException {
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not a snapshot file");
+        }
+        int formatVersion = buffer.getInt(4);
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException(String.format("%s has format version %d, not %d",
+                    path, formatVersion, FORMAT_VERSION));
+        }
+        Header header = new Header(buffer.getInt(8), buffer.getInt(12), buffer.getInt(16), buffer.getLong(24));
+        if (header.rows < 0 || header.codeBytes < 0 || header.nameBytes < 0
+                || fileSize != HEADER_BYTES + header.rows * 24L + header.codeBytes + header.nameBytes) {
+            throw new IOException(path + " is truncated or damaged");
+        }
+        return header;
+    }
+
+    public static class Header {
+
+        private final int rows;
+        private final int codeBytes;
+        private final int nameBytes;
+        private final long datasetVersion;
+
+        private Header(int rows, int codeBytes, int nameBytes, long datasetVersion) {
+            this.rows = rows;
+            this.codeBytes = codeBytes;
+            this.nameBytes = nameBytes;
+            this.datasetVersion = datasetVersion;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public long getDatasetVersion() {
+            return datasetVersion;
+        }
+
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.FixedPoint;
+import com.romanmayer.analyzer.model.Indicator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Countries ordered by the value of one indicator. Countries without a value are not indexed, and neither are
+ * countries without a value for every indicator if the index only takes complete countries.
+ *
+ * The key of a country is remembered by its code, because {@code Prompter} edits a country in place before it
+ * calls {@code update()}: by then the country no longer knows the value it was indexed under.
+ */
+public class SortedIndex {
+
+    private final Indicator indicator;
+    private final boolean completeOnly;
+    private final TreeMap<Key, Country> entries = new TreeMap<>();
+    private final Map<String, Key> keysByCode = new HashMap<>();
+
+    public SortedIndex(Indicator indicator) {
+        this(indicator, false);
+    }
+
+    public SortedIndex(Indicator indicator, boolean completeOnly) {
+        this.indicator = indicator;
+        this.completeOnly = completeOnly;
+    }
+
+    public void put(Country country) {
+        remove(country.getCode());
+        long value = indicator.fixedPointOf(country);
+        if (FixedPoint.isNull(value) || (completeOnly && !isComplete(country))) {
+            return;
+        }
+        Key key = new Key(FixedPoint.toDouble(value), country.getCode());
+        entries.put(key, country);
+        keysByCode.put(country.getCode(), key);
+    }
+
+    public void remove(String code) {
+        Key key = keysByCode.remove(code);
+        if (key != null) {
+            entries.remove(key);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * The country with the lowest value, or null if the index is empty. Of equal values the lowest code wins.
+     */
+    public Country first() {
+        return entries.isEmpty() ? null : entries.firstEntry().getValue();
+    }
+
+    /**
+     * The country with the highest value, or null if the index is empty. Of equal values the lowest code wins.
+     */
+    public Country last() {
+        if (entries.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Key, Country> last = entries.lastEntry();
+        // the lowest code of the highest value
+        return entries.ceilingEntry(Key.lowest(last.getKey().value)).getValue();
+    }
+
+    /**
+     * Countries with a value between {@code from} and {@code to} (both inclusive), in ascending order.
+     */
+    public List<Country> range(double from, double to) {
+        if (from > to) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(entries.subMap(Key.lowest(from), true, Key.highest(to), true).values());
+    }
+
+    /**
+     * The {@code k} countries with the highest values, highest first.
+     */
+    public List<Country> top(int k) {
+        return first(entries.descendingMap(), k);
+    }
+
+    /**
+     * The {@code k} countries with the lowest values, lowest first.
+     */
+    public List<Country> bottom(int k) {
+        return first(entries, k);
+    }
+
+    private static boolean isComplete(Country country) {
+        for (Indicator other : Indicator.values()) {
+            if (FixedPoint.isNull(other.fixedPointOf(country))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Country> first(NavigableMap<Key, Country> map, int k) {
+        List<Country> result = new ArrayList<>(Math.min(Math.max(k, 0), map.size()));
+        Iterator<Country> iterator = map.values().iterator();
+        while (result.size() < k && iterator.hasNext()) {
+            result.add(iterator.next());
+        }
+        return result;
+    }
+
+    private static class Key implements Comparable<Key> {
+
+        private final double value;
+        // null sorts after every code, "" before every code
+        private final String code;
+
+        private Key(double value, String code) {
+            this.value = value;
+            this.code = code;
+        }
+
+        private static Key lowest(double value) {
+            return new Key(value, "");
+        }
+
+        private static Key highest(double value) {
+            return new Key(value, null);
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int result = Double.compare(value, other.value);
+            if (result != 0) {
+                return result;
+            }
+            if (code == null || other.code == null) {
+                return code == null ? (other.code == null ? 0 : 1) : -1;
+            }
+            return code.compareTo(other.code);
+        }
+
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.model.IndicatorSummary;
+import com.romanmayer.analyzer.model.IndicatorSummary.IndicatorSummaryBuilder;
+
+/**
+ * Streaming accumulator for the statistics of an {@link IndicatorSummary}.
+ *
+ * Means, variances and the co-moment are updated with Welford's method, so one pass is enough and no values
+ * have to be copied. Partial results of disjoint row ranges are combined with {@link #merge}, which uses the
+ * pairwise update of Chan et al. instead of raw sums of squares. x is the internet users value and y the adult
+ * literacy rate of a row.
+ */
+public class StatisticsAccumulator {
+
+    private long count;
+    private double meanX;
+    private double meanY;
+    private double m2X;
+    private double m2Y;
+    private double coMoment;
+    private int minXRow = -1;
+    private int maxXRow = -1;
+    private int minYRow = -1;
+    private int maxYRow = -1;
+    private double minX;
+    private double maxX;
+    private double minY;
+    private double maxY;
+
+    public void accept(int row, double x, double y) {
+        count++;
+        double dx = x - meanX;
+        double dy = y - meanY;
+        meanX += dx / count;
+        meanY += dy / count;
+        m2X += dx * (x - meanX);
+        m2Y += dy * (y - meanY);
+        coMoment += dx * (y - meanY);
+
+        if (minXRow < 0 || x < minX) {
+            minX = x;
+            minXRow = row;
+        }
+        if (maxXRow < 0 || x > maxX) {
+            maxX = x;
+            maxXRow = row;
+        }
+        if (minYRow < 0 || y < minY) {
+            minY = y;
+            minYRow = row;
+        }
+        if (maxYRow < 0 || y > maxY) {
+            maxY = y;
+            maxYRow = row;
+        }
+    }
+
+    /**
+     * Adds the rows seen by {@code other}. Ties on min/max keep the row of this accumulator, so merging the
+     * partial results in row order picks the same countries as one sequential pass.
+     */
+    public StatisticsAccumulator merge(StatisticsAccumulator other) {
+        if (other.count == 0) {
+            return this;
+        }
+        if (count == 0) {
+            copy(other);
+            return this;
+        }
+        long total = count + other.count;
+        double dx = other.meanX - meanX;
+        double dy = other.meanY - meanY;
+        double weight = (double) count * other.count / total;
+        m2X += other.m2X + dx * dx * weight;
+        m2Y += other.m2Y + dy * dy * weight;
+        coMoment += other.coMoment + dx * dy * weight;
+        meanX += dx * other.count / total;
+        meanY += dy * other.count / total;
+        count = total;
+
+        if (other.minX < minX) {
+            minX = other.minX;
+            minXRow = other.minXRow;
+        }
+        if (other.maxX > maxX) {
+            maxX = other.maxX;
+            maxXRow = other.maxXRow;
+        }
+        if (other.minY < minY) {
+            minY = other.minY;
+            minYRow = other.minYRow;
+        }
+        if (other.maxY > maxY) {
+            maxY = other.maxY;
+            maxYRow = other.maxYRow;
+        }
+        return this;
+    }
+
+    private void copy(StatisticsAccumulator other) {
+        count = other.count;
+        meanX = other.meanX;
+        meanY = other.meanY;
+        m2X = other.m2X;
+        m2Y = other.m2Y;
+        coMoment = other.coMoment;
+        minXRow = other.minXRow;
+        maxXRow = other.maxXRow;
+        minYRow = other.minYRow;
+        maxYRow = other.maxYRow;
+        minX = other.minX;
+        maxX = other.maxX;
+        minY = other.minY;
+        maxY = other.maxY;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    // the moments, for RunningStatistics to start over from a scan
+
+    double meanX() {
+        return meanX;
+    }
+
+    double meanY() {
+        return meanY;
+    }
+
+    double m2X() {
+        return m2X;
+    }
+
+    double m2Y() {
+        return m2Y;
+    }
+
+    double coMoment() {
+        return coMoment;
+    }
+
+    public IndicatorSummary toSummary(CountrySnapshot snapshot) {
+        IndicatorSummaryBuilder builder = new IndicatorSummaryBuilder(count);
+        if (count == 0) {
+            return builder.build();
+        }
+        // sample variance, like commons-math
+        double varianceX = count > 1 ? m2X / (count - 1) : Double.NaN;
+        double varianceY = count > 1 ? m2Y / (count - 1) : Double.NaN;
+        double correlation = count > 1 ? coMoment / Math.sqrt(m2X * m2Y) : Double.NaN;
+        return builder
+                .withInternetUsers(snapshot.country(minXRow), snapshot.country(maxXRow), meanX, varianceX)
+                .withLiteracyRate(snapshot.country(minYRow), snapshot.country(maxYRow), meanY, varianceY)
+                .withCorrelationCoefficient(correlation)
+                .build();
+    }
+
+}
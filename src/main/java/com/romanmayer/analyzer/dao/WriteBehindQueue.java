@@ -0,0 +1,325 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.importer.CountryImporter;
+import com.romanmayer.analyzer.model.Country;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.exception.DataException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Collects country mutations and writes them to the database later, in one transaction per flush.
+ *
+ * Mutations of the same code are coalesced: ten updates of a country become one update, and a country that is
+ * created and deleted again before the flush never reaches the database. A flush happens when the queue holds
+ * {@code maxPending} codes, every {@code maxDelayMillis}, on {@link #flush()} and on {@link #close()}.
+ *
+ * A mutation the database rejects, like the update of a row that was deleted by someone else, would fail every
+ * retry and hold back all later mutations. So a rejected flush is split in halves until the rejected mutations
+ * are found; these are reported and dropped, the others are written. The codes of the dropped mutations are
+ * handed to the rejection listener, so the owner of the countries in memory can undo the dropped changes.
+ *
+ * An all-or-nothing queue, e.g. for a batch of changes that belong together, does not split a rejected flush:
+ * none of its mutations is written, all of them are dropped and handed to the listener, and the flush throws.
+ */
+public class WriteBehindQueue {
+
+    private enum Operation {
+        CREATE, UPDATE, DELETE
+    }
+
+    private static class Mutation {
+
+        private final Operation operation;
+        private final Country country;
+
+        private Mutation(Operation operation, Country country) {
+            this.operation = operation;
+            this.country = country;
+        }
+
+    }
+
+    private final Supplier<SessionFactory> sessionFactory;
+    private final int maxPending;
+    private final boolean allOrNothing;
+    private final ScheduledExecutorService flusher;
+    // insertion ordered, so mutations of different codes are written in the order they were made
+    private Map<String, Mutation> pending = new LinkedHashMap<>();
+    // the codes of the flush that is writing, a newer mutation of them may still reach the database
+    private Set<String> writing = Collections.emptySet();
+    private long rejected;
+    private volatile Consumer<List<String>> rejectionListener;
+    // only one flush writes at a time, so an older mutation of a code cannot overtake a newer one
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    public WriteBehindQueue(Supplier<SessionFactory> sessionFactory, int maxPending, long maxDelayMillis) {
+        this(sessionFactory, maxPending, maxDelayMillis, false);
+    }
+
+    public WriteBehindQueue(Supplier<SessionFactory> sessionFactory, int maxPending, long maxDelayMillis,
+                            boolean allOrNothing) {
+        this.sessionFactory = sessionFactory;
+        this.maxPending = maxPending;
+        this.allOrNothing = allOrNothing;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "country-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, maxDelayMillis, maxDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void create(Country country) {
+        enqueue(new Mutation(Operation.CREATE, country));
+    }
+
+    public void update(Country country) {
+        enqueue(new Mutation(Operation.UPDATE, country));
+    }
+
+    public void delete(Country country) {
+        enqueue(new Mutation(Operation.DELETE, country));
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Whether a mutation of the code is queued or being written.
+     */
+    public synchronized boolean isQueued(String code) {
+        return pending.containsKey(code) || writing.contains(code);
+    }
+
+    /**
+     * Sets the listener that is handed the codes of the mutations a flush dropped. It is called once the flush
+     * has finished, so it may queue mutations and flush itself.
+     */
+    public void setRejectionListener(Consumer<List<String>> rejectionListener) {
+        this.rejectionListener = rejectionListener;
+    }
+
+    /**
+     * The number of mutations the database rejected, which were dropped.
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Writes all pending mutations in one transaction, see the class comment for mutations the database rejects.
+     *
+     * @throws IllegalStateException if the queue is all-or-nothing and the database rejected a mutation
+     * If the transaction fails for another reason, e.g. a lost connection, the unwritten mutations stay queued,
+     * unless a newer mutation of the same code was queued in the meantime.
+     */
+    public void flush() {
+        List<String> rejectedCodes = new ArrayList<>();
+        flushLock.lock();
+        try {
+            List<Mutation> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<>(pending.values());
+                writing = new HashSet<>(pending.keySet());
+                pending = new LinkedHashMap<>();
+            }
+            write(batch, 0, batch.size(), rejectedCodes);
+        } finally {
+            synchronized (this) {
+                writing = Collections.emptySet();
+            }
+            flushLock.unlock();
+            // not under the flush lock: the listener may wait for a lock whose holder waits for the next flush
+            Consumer<List<String>> listener = rejectionListener;
+            if (listener != null && !rejectedCodes.isEmpty()) {
+                listener.accept(rejectedCodes);
+            }
+        }
+    }
+
+    /**
+     * Flushes and stops the background flushes.
+     */
+    public void close() {
+        flusher.shutdown();
+        flush();
+    }
+
+    private void enqueue(Mutation mutation) {
+        boolean full;
+        synchronized (this) {
+            coalesce(pending, mutation);
+            full = pending.size() >= maxPending;
+        }
+        if (full) {
+            // the mutation is queued either way, a failed flush is retried by the next one
+            flushQuietly();
+        }
+    }
+
+    private static void coalesce(Map<String, Mutation> mutations, Mutation mutation) {
+        String code = mutation.country.getCode();
+        Mutation previous = mutations.get(code);
+        if (previous == null) {
+            mutations.put(code, mutation);
+            return;
+        }
+        switch (previous.operation) {
+            case CREATE:
+                if (mutation.operation == Operation.DELETE) {
+                    // never written, nothing to delete
+                    mutations.remove(code);
+                } else {
+                    mutations.put(code, new Mutation(Operation.CREATE, mutation.country));
+                }
+                break;
+            case UPDATE:
+                mutations.put(code, mutation.operation == Operation.CREATE
+                        ? new Mutation(Operation.UPDATE, mutation.country) : mutation);
+                break;
+            case DELETE:
+                // the row still exists in the database, so a new country with its code replaces it
+                mutations.put(code, mutation.operation == Operation.CREATE
+                        ? new Mutation(Operation.UPDATE, mutation.country) : mutation);
+                break;
+        }
+    }
+
+    private synchronized void requeue(List<Mutation> unwritten) {
+        Map<String, Mutation> newer = pending;
+        pending = new LinkedHashMap<>();
+        for (Mutation mutation : unwritten) {
+            pending.put(mutation.country.getCode(), mutation);
+        }
+        for (Mutation mutation : newer.values()) {
+            coalesce(pending, mutation);
+        }
+    }
+
+    /**
+     * Writes the mutations {@code from} (inclusive) to {@code to} (exclusive) of the batch in one transaction, or
+     * bisects them if the database rejects one, adding the codes of the rejected ones to {@code rejectedCodes}.
+     * The ranges are written in order, so on any other failure the mutations from {@code from} to the end of the
+     * batch are the unwritten ones.
+     */
+    private void write(List<Mutation> batch, int from, int to, List<String> rejectedCodes) {
+        try {
+            write(batch.subList(from, to));
+        } catch (RuntimeException e) {
+            if (!isRejection(e)) {
+                requeue(batch.subList(from, batch.size()));
+                throw e;
+            }
+            if (allOrNothing) {
+                synchronized (this) {
+                    rejected += batch.size();
+                }
+                for (Mutation mutation : batch) {
+                    rejectedCodes.add(mutation.country.getCode());
+                }
+                throw new IllegalStateException(String.format("The database rejected a queued change, none of the"
+                        + " %d changes is written: %s", batch.size(), rootMessage(e)), e);
+            }
+            if (to - from == 1) {
+                reject(batch.get(from), e);
+                rejectedCodes.add(batch.get(from).country.getCode());
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            write(batch, from, middle, rejectedCodes);
+            write(batch, middle, to, rejectedCodes);
+        }
+    }
+
+    private void reject(Mutation mutation, RuntimeException e) {
+        synchronized (this) {
+            rejected++;
+        }
+        System.err.printf("The database rejected the queued %s of %s, the change is dropped: %s%n",
+                mutation.operation.name().toLowerCase(), mutation.country.getCode(), rootMessage(e));
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable cause = e;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage();
+    }
+
+    // the same mutation would fail again on every retry, unlike e.g. a lost connection
+    private static boolean isRejection(RuntimeException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException || cause instanceof DataException
+                    || cause instanceof StaleStateException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void write(List<Mutation> batch) {
+        int jdbcBatchSize = CountryImporter.configuredBatchSize(sessionFactory.get());
+        Session session = sessionFactory.get().openSession();
+        try {
+            session.beginTransaction();
+            int written = 0;
+            for (Mutation mutation : batch) {
+                switch (mutation.operation) {
+                    case CREATE:
+                        session.save(mutation.country);
+                        break;
+                    case UPDATE:
+                        session.update(mutation.country);
+                        break;
+                    case DELETE:
+                        session.delete(mutation.country);
+                        break;
+                }
+                if (++written % jdbcBatchSize == 0) {
+                    // send a JDBC batch and keep the persistence context small
+                    session.flush();
+                    session.clear();
+                }
+            }
+            session.doWork(DatasetVersion::increment);
+            session.getTransaction().commit();
+        } catch (RuntimeException e) {
+            if (session.getTransaction().isActive()) {
+                session.getTransaction().rollback();
+            }
+            throw e;
+        } finally {
+            session.close();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            System.err.printf("Writing the queued country changes failed: %s%n", e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,320 @@
+package com.romanmayer.analyzer.feed;
+
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.utility.TableBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes the {@link CountryChange}s of the DAO to subscribers, which keep derived data like rankings,
+ * statistics or an export file up to date from the changes instead of scanning all countries again.
+ *
+ * The changes go through a ring buffer of a fixed capacity. A publisher claims the next sequence with a
+ * compare-and-set, writes the change to its slot and then the sequence of the slot, which makes it visible to
+ * the subscribers. No lock is taken on the way. Every subscriber has a thread that follows the sequences in
+ * order, so a slow subscriber does not hold up the others. It does hold up the publishers once it falls a whole
+ * ring behind: a publisher then waits until the slowest subscriber has made room. These waits are the
+ * backpressure, and they are counted, as are the lag and max lag of every subscriber.
+ */
+public class ChangeFeed {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    // an idle subscriber yields this often before it parks
+    private static final int IDLE_YIELDS = 100;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long BACKPRESSURE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final CountryChange[] slots;
+    // the sequence of the change in each slot; a subscriber reads a slot once it holds the sequence it expects
+    private final AtomicLongArray slotSequences;
+    private final int mask;
+    // the last sequence claimed by a publisher
+    private final AtomicLong claimed = new AtomicLong(-1);
+    // the last sequence handled by the slowest subscriber, as last seen by a publisher; only ever too low
+    private volatile long gatingSequence = -1;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final LongAdder backpressureWaits = new LongAdder();
+    private final LongAdder backpressureNanos = new LongAdder();
+
+    public ChangeFeed() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of changes a subscriber may lag behind, rounded up to a power of two
+     */
+    public ChangeFeed(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("The capacity must be between 1 and 2^30, not " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        size = size < capacity ? size << 1 : size;
+        slots = new CountryChange[size];
+        slotSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slotSequences.set(i, -1);
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Publishes a change and returns its sequence. Waits while the slowest subscriber is a whole ring behind.
+     */
+    public long publish(CountryChange change) {
+        long sequence;
+        long waitStart = 0;
+        while (true) {
+            long current = claimed.get();
+            sequence = current + 1;
+            long wrapPoint = sequence - slots.length;
+            if (wrapPoint > gatingSequence) {
+                long slowest = slowestSubscriber(current);
+                gatingSequence = slowest;
+                if (wrapPoint > slowest) {
+                    if (waitStart == 0) {
+                        waitStart = System.nanoTime();
+                        backpressureWaits.increment();
+                    }
+                    LockSupport.parkNanos(BACKPRESSURE_PARK_NANOS);
+                    continue;
+                }
+            }
+            if (claimed.compareAndSet(current, sequence)) {
+                break;
+            }
+        }
+        if (waitStart != 0) {
+            backpressureNanos.add(System.nanoTime() - waitStart);
+        }
+        change.setSequence(sequence);
+        int slot = (int) sequence & mask;
+        slots[slot] = change;
+        slotSequences.set(slot, sequence);
+        return sequence;
+    }
+
+    /**
+     * Hands the countries to the listener and starts a thread that passes it every change published from now
+     * on. No change may be published meanwhile, or the listener could miss it or see it twice: the DAO
+     * subscribes under its lock, see {@link com.romanmayer.analyzer.dao.CountryDaoImpl#subscribe}.
+     */
+    public Subscription subscribe(String name, ChangeListener listener, List<Country> countries) {
+        Subscription subscription = new Subscription(name, listener, claimed.get());
+        listener.reset(countries);
+        subscriptions.add(subscription);
+        subscription.thread.start();
+        return subscription;
+    }
+
+    /**
+     * Lets every subscriber handle the changes published so far, then stops them.
+     */
+    public void close() {
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    public long getPublished() {
+        return claimed.get() + 1;
+    }
+
+    public long getBackpressureWaits() {
+        return backpressureWaits.sum();
+    }
+
+    public double getBackpressureMillis() {
+        return backpressureNanos.sum() / 1e6;
+    }
+
+    public List<Subscription> getSubscriptions() {
+        return new ArrayList<>(subscriptions);
+    }
+
+    /**
+     * The lag of the subscriber that is furthest behind.
+     */
+    public long getMaxLag() {
+        long maxLag = 0;
+        for (Subscription subscription : subscriptions) {
+            maxLag = Math.max(maxLag, subscription.getLag());
+        }
+        return maxLag;
+    }
+
+    /**
+     * The publication counters and one row per subscriber.
+     */
+    public String getReport() {
+        TableBuilder tableBuilder = new TableBuilder();
+        tableBuilder.addRow("Change feed", "Handled", "Lag", "Max lag", "Errors");
+        tableBuilder.addRow("-------------------------", "--------", "--------", "--------", "--------");
+        for (Subscription subscription : subscriptions) {
+            tableBuilder.addRow(subscription.getName(),
+                    String.valueOf(subscription.getHandled()),
+                    String.valueOf(subscription.getLag()),
+                    String.valueOf(subscription.getMaxLag()),
+                    String.valueOf(subscription.getErrors()));
+        }
+        return String.format("Published %d changes through %d slots, %d waits for room (%.1f ms)%n%s",
+                getPublished(), getCapacity(), getBackpressureWaits(), getBackpressureMillis(), tableBuilder);
+    }
+
+    private long slowestSubscriber(long current) {
+        long slowest = current;
+        for (Subscription subscription : subscriptions) {
+            slowest = Math.min(slowest, subscription.handled.get());
+        }
+        return slowest;
+    }
+
+    /**
+     * A listener and the thread that feeds it.
+     */
+    public class Subscription {
+
+        private final String name;
+        private final ChangeListener listener;
+        private final Thread thread;
+        // the last sequence the listener has handled
+        private final AtomicLong handled;
+        private final long firstSequence;
+        private volatile long maxLag;
+        private volatile long errors;
+        private volatile boolean closing;
+
+        private Subscription(String name, ChangeListener listener, long lastSequence) {
+            this.name = name;
+            this.listener = listener;
+            this.handled = new AtomicLong(lastSequence);
+            this.firstSequence = lastSequence + 1;
+            this.thread = new Thread(this::run, "change-feed-" + name);
+            thread.setDaemon(true);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * The number of changes the listener has handled.
+         */
+        public long getHandled() {
+            return handled.get() + 1 - firstSequence;
+        }
+
+        /**
+         * The number of changes published but not handled by the listener yet.
+         */
+        public long getLag() {
+            return Math.max(0, claimed.get() - handled.get());
+        }
+
+        public long getMaxLag() {
+            return maxLag;
+        }
+
+        /**
+         * The number of changes the listener failed on. A failed change is skipped.
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * Waits until the listener has handled every change published so far, or the timeout has passed.
+         * Returns whether it has.
+         */
+        public boolean awaitCaughtUp(long timeout, TimeUnit unit) {
+            long target = claimed.get();
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (handled.get() < target) {
+                if (System.nanoTime() - deadline >= 0 || !thread.isAlive()) {
+                    return false;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            return true;
+        }
+
+        /**
+         * Lets the listener handle the changes published so far, then stops its thread and unsubscribes it.
+         */
+        public void close() {
+            closing = true;
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            subscriptions.remove(this);
+        }
+
+        private void run() {
+            long next = handled.get() + 1;
+            int idle = 0;
+            boolean handledSome = false;
+            while (true) {
+                int slot = (int) next & mask;
+                if (slotSequences.get(slot) == next) {
+                    maxLag = Math.max(maxLag, claimed.get() - next + 1);
+                    handle(slots[slot]);
+                    handled.set(next);
+                    next++;
+                    idle = 0;
+                    handledSome = true;
+                    continue;
+                }
+                if (handledSome) {
+                    caughtUp();
+                    handledSome = false;
+                }
+                if (closing && next > claimed.get()) {
+                    return;
+                }
+                if (++idle < IDLE_YIELDS) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+        }
+
+        private void handle(CountryChange change) {
+            try {
+                if (change.getType() == CountryChange.Type.RELOADED) {
+                    listener.reset(change.getCountries());
+                } else {
+                    listener.changed(change);
+                }
+            } catch (RuntimeException e) {
+                errors++;
+                System.err.printf("The subscriber %s failed on change %s: %s%n", name, change, e);
+            }
+        }
+
+        private void caughtUp() {
+            try {
+                listener.caughtUp();
+            } catch (RuntimeException e) {
+                errors++;
+                System.err.printf("The subscriber %s failed to catch up: %s%n", name, e);
+            }
+        }
+
+    }
+
+}
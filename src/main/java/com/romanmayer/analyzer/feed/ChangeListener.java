@@ -0,0 +1,28 @@
+package com.romanmayer.analyzer.feed;
+
+import com.romanmayer.analyzer.model.Country;
+
+import java.util.List;
+
+/**
+ * A subscriber of the {@link ChangeFeed}. Every listener is called from a thread of its own, one change at a
+ * time and in the order the changes were published.
+ */
+public interface ChangeListener {
+
+    /**
+     * The countries as they were when the listener subscribed, before any change. Also called for a
+     * {@link CountryChange.Type#RELOADED} change instead of {@link #changed}.
+     */
+    void reset(List<Country> countries);
+
+    void changed(CountryChange change);
+
+    /**
+     * Called when the listener has handled every change published so far, which is the time for work that is
+     * worth doing once per batch of changes, like writing a file.
+     */
+    default void caughtUp() {
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.romanmayer.analyzer.feed;
+
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.Country.CountryBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One mutation of the countries of the DAO, as published on the {@link ChangeFeed}.
+ *
+ * The countries of a change are copies taken when it was published, since the DAO's own instances are edited in
+ * place by the menu: a subscriber sees every change as it was made, however far it lags behind.
+ */
+public class CountryChange {
+
+    public enum Type {
+        CREATED, UPDATED, DELETED,
+        // the countries were replaced as a whole, e.g. by an import
+        RELOADED
+    }
+
+    private final Type type;
+    private final Country country;
+    private final List<Country> countries;
+    // set by the feed when the change is published
+    private long sequence = -1;
+
+    private CountryChange(Type type, Country country, List<Country> countries) {
+        this.type = type;
+        this.country = country;
+        this.countries = countries;
+    }
+
+    public static CountryChange created(Country country) {
+        return new CountryChange(Type.CREATED, copyOf(country), null);
+    }
+
+    public static CountryChange updated(Country country) {
+        return new CountryChange(Type.UPDATED, copyOf(country), null);
+    }
+
+    public static CountryChange deleted(Country country) {
+        return new CountryChange(Type.DELETED, copyOf(country), null);
+    }
+
+    public static CountryChange reloaded(Collection<Country> countries) {
+        return new CountryChange(Type.RELOADED, null, copiesOf(countries));
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * The country as it was created or updated, or as it was when it was deleted; null for a reload.
+     */
+    public Country getCountry() {
+        return country;
+    }
+
+    public String getCode() {
+        return country == null ? null : country.getCode();
+    }
+
+    /**
+     * All countries after a reload, null otherwise.
+     */
+    public List<Country> getCountries() {
+        return countries;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("#%d %s %s", sequence, type,
+                type == Type.RELOADED ? countries.size() + " countries" : country.getCode());
+    }
+
+    public static Country copyOf(Country country) {
+        return new CountryBuilder(country.getCode(), country.getName())
+                .withInternetUsersFixedPoint(country.getInternetUsersFixedPoint())
+                .withLiteracyRateFixedPoint(country.getAdultLiteracyRateFixedPoint())
+                .build();
+    }
+
+    public static List<Country> copiesOf(Collection<Country> countries) {
+        List<Country> copies = new ArrayList<>(countries.size());
+        for (Country country : countries) {
+            copies.add(copyOf(country));
+        }
+        return Collections.unmodifiableList(copies);
+    }
+
+}
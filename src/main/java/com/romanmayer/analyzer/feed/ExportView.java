@@ -0,0 +1,85 @@
+package com.romanmayer.analyzer.feed;
+
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.CountryCsv;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * A CSV export of the countries, ordered by code, kept up to date from the change feed.
+ *
+ * The changes only touch the countries the view holds; the file is written once the view has caught up with the
+ * feed, so a burst of changes costs one write. The slower the writes, the more changes pile up for the next one.
+ * Every write goes to a temporary file first, which then replaces the export, so a reader never sees half a file.
+ */
+public class ExportView implements ChangeListener {
+
+    private final Path file;
+    private final TreeMap<String, Country> countriesByCode = new TreeMap<>();
+    private boolean changed;
+    private long writes;
+
+    public ExportView(Path file) {
+        this.file = file.toAbsolutePath();
+    }
+
+    @Override
+    public synchronized void reset(List<Country> countries) {
+        countriesByCode.clear();
+        for (Country country : countries) {
+            countriesByCode.put(country.getCode(), country);
+        }
+        changed = true;
+        // the export is there right after the subscription, not only after the first change
+        caughtUp();
+    }
+
+    @Override
+    public synchronized void changed(CountryChange change) {
+        if (change.getType() == CountryChange.Type.DELETED) {
+            countriesByCode.remove(change.getCode());
+        } else {
+            countriesByCode.put(change.getCode(), change.getCountry());
+        }
+        changed = true;
+    }
+
+    @Override
+    public synchronized void caughtUp() {
+        if (!changed) {
+            return;
+        }
+        try {
+            Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                    CountryCsv.writeCountries(writer, countriesByCode.values());
+                }
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("The export " + file + " could not be written", ioe);
+        }
+        changed = false;
+        writes++;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public synchronized long getWrites() {
+        return writes;
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.romanmayer.analyzer.feed;
+
+import com.romanmayer.analyzer.dao.SortedIndex;
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.Indicator;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The countries sorted by every indicator, kept up to date from the change feed. A change moves one country in
+ * each {@link SortedIndex}, so a ranking costs O(log n) per change instead of a sort per query.
+ */
+public class RankingView implements ChangeListener {
+
+    private final Map<Indicator, SortedIndex> sortedIndexes = new EnumMap<>(Indicator.class);
+    private long sequence = -1;
+
+    public RankingView() {
+        clear();
+    }
+
+    @Override
+    public synchronized void reset(List<Country> countries) {
+        clear();
+        for (Country country : countries) {
+            put(country);
+        }
+    }
+
+    @Override
+    public synchronized void changed(CountryChange change) {
+        if (change.getType() == CountryChange.Type.DELETED) {
+            for (SortedIndex sortedIndex : sortedIndexes.values()) {
+                sortedIndex.remove(change.getCode());
+            }
+        } else {
+            put(change.getCountry());
+        }
+        sequence = change.getSequence();
+    }
+
+    public synchronized List<Country> top(Indicator indicator, int k) {
+        return sortedIndexes.get(indicator).top(k);
+    }
+
+    public synchronized List<Country> bottom(Indicator indicator, int k) {
+        return sortedIndexes.get(indicator).bottom(k);
+    }
+
+    /**
+     * The sequence of the last change in the rankings, -1 before the first.
+     */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    private void put(Country country) {
+        for (SortedIndex sortedIndex : sortedIndexes.values()) {
+            sortedIndex.put(country);
+        }
+    }
+
+    private void clear() {
+        for (Indicator indicator : Indicator.values()) {
+            sortedIndexes.put(indicator, new SortedIndex(indicator));
+        }
+    }
+
+}
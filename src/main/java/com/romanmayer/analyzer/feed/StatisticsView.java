@@ -0,0 +1,52 @@
+package com.romanmayer.analyzer.feed;
+
+import com.romanmayer.analyzer.dao.CountrySnapshot;
+import com.romanmayer.analyzer.dao.RunningStatistics;
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.IndicatorSummary;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The indicator summary, kept up to date from the change feed with a {@link RunningStatistics} over a snapshot
+ * of its own, the way the DAO keeps its own summary.
+ */
+public class StatisticsView implements ChangeListener {
+
+    private CountrySnapshot snapshot = new CountrySnapshot(Collections.emptyList());
+    private RunningStatistics statistics = new RunningStatistics(snapshot);
+    private long sequence = -1;
+
+    @Override
+    public synchronized void reset(List<Country> countries) {
+        snapshot = new CountrySnapshot(countries);
+        statistics = new RunningStatistics(snapshot);
+    }
+
+    @Override
+    public synchronized void changed(CountryChange change) {
+        // the old values leave the statistics before the snapshot changes, the new ones join after
+        statistics.remove(snapshot, change.getCode());
+        if (change.getType() == CountryChange.Type.DELETED) {
+            snapshot.remove(change.getCountry());
+        } else {
+            snapshot.update(change.getCountry());
+            statistics.add(snapshot, change.getCode());
+        }
+        statistics.rebaselineIfDrifting(snapshot, null);
+        sequence = change.getSequence();
+    }
+
+    public synchronized IndicatorSummary summarize() {
+        return statistics.toSummary();
+    }
+
+    /**
+     * The sequence of the last change in the summary, -1 before the first.
+     */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+}
@@ -0,0 +1,596 @@
+package com.romanmayer.analyzer.http;
+
+import com.romanmayer.analyzer.analytics.CorrelationMatrix;
+import com.romanmayer.analyzer.dao.CountryDao;
+import com.romanmayer.analyzer.dao.NameIndex;
+import com.romanmayer.analyzer.dao.ObservationCube;
+import com.romanmayer.analyzer.dao.ObservationDao;
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.Country.CountryBuilder;
+import com.romanmayer.analyzer.model.CountryJson;
+import com.romanmayer.analyzer.model.FixedPoint;
+import com.romanmayer.analyzer.model.Histogram;
+import com.romanmayer.analyzer.model.Indicator;
+import com.romanmayer.analyzer.model.LinearRegression;
+import com.romanmayer.analyzer.model.YearExtremes;
+import com.romanmayer.utility.JsonWriter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves the country DAO as JSON over HTTP, with the HTTP server of the JDK.
+ *
+ * <pre>
+ * GET    /countries?after=CODE&amp;limit=N                    one page, ordered by code
+ * GET    /countries/CODE                                  one country
+ * POST   /countries                                       create, form parameters code, name and the indicators
+ * PUT    /countries/CODE                                  update, form parameters name and the indicators
+ * DELETE /countries/CODE                                  delete
+ * GET    /statistics                                      the indicator summary
+ * GET    /rankings/INDICATOR?order=top|bottom&amp;k=N         the k highest or lowest countries
+ * GET    /ranges/INDICATOR?from=X&amp;to=Y                    the countries with a value in [X, Y]
+ * GET    /quantiles/INDICATOR?q=0.1,0.5,0.9               approximate quantiles, p10 to p99 by default
+ * GET    /histograms/INDICATOR?buckets=N                  approximate counts in N buckets of equal width
+ * GET    /search?q=TEXT&amp;limit=N                          countries by code or name, the best matches first
+ * GET    /correlations?method=pearson|spearman            the correlations of every pair of indicators
+ * GET    /regressions/INDICATOR?on=INDICATOR              the least-squares line of one indicator on another
+ * GET    /observations/countries/CODE                     the per-year values of one country
+ * GET    /observations/extremes/CODE?year=Y               the lowest and highest value of an indicator code
+ * GET    /observations/trends/CODE?from=Y&amp;to=Y            the slope per year of every country
+ * GET    /observations/correlation?x=CODE&amp;y=CODE&amp;year=Y  of two indicator codes, over every year without one
+ * </pre>
+ *
+ * Requests run on a bounded pool; when its queue is full the dispatcher thread runs the request itself, which
+ * stops it from accepting more connections for a moment. Connections are kept alive, since every response has a
+ * Content-Length, and responses above {@link #GZIP_THRESHOLD} bytes are gzipped for clients that accept it.
+ * The DAO is used by several threads at once, so it should be a
+ * {@link com.romanmayer.analyzer.dao.ConcurrentCountryDao}. The observations are only served with
+ * {@link #setObservationDao}; their cube is read by several threads at once, so nothing else may change them
+ * meanwhile.
+ */
+public class CountryHttpServer {
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final int GZIP_THRESHOLD = 1024;
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int QUEUED_REQUESTS = 1000;
+    private static final String DEFAULT_FRACTIONS = "0.1,0.25,0.5,0.75,0.9,0.99";
+    private static final int MAX_BUCKETS = 1000;
+
+    private final CountryDao countryDao;
+    private final HttpServer server;
+    private final ThreadPoolExecutor executor;
+    private volatile ObservationDao observationDao;
+
+    public CountryHttpServer(CountryDao countryDao, int port, int threads) throws IOException {
+        this.countryDao = countryDao;
+        // headers and body leave in separate writes, with Nagle on the body waits for the delayed ACK (~40 ms)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUED_REQUESTS), runnable -> {
+            Thread thread = new Thread(runnable, "country-http-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        server.setExecutor(executor);
+        server.createContext("/countries", this::handleCountries);
+        server.createContext("/statistics", this::handleStatistics);
+        server.createContext("/rankings", this::handleRankings);
+        server.createContext("/ranges", this::handleRanges);
+        server.createContext("/quantiles", this::handleQuantiles);
+        server.createContext("/histograms", this::handleHistograms);
+        server.createContext("/search", this::handleSearch);
+        server.createContext("/correlations", this::handleCorrelations);
+        server.createContext("/regressions", this::handleRegressions);
+        server.createContext("/observations", this::handleObservations);
+    }
+
+    /**
+     * Serves the per-year observations under /observations, which answers 404 without them.
+     */
+    public void setObservationDao(ObservationDao observationDao) {
+        this.observationDao = observationDao;
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    private void handleCountries(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            String code = pathParameter(exchange, "/countries");
+            String method = exchange.getRequestMethod();
+            if (code == null) {
+                if (method.equals("GET")) {
+                    return listCountries(exchange);
+                }
+                if (method.equals("POST")) {
+                    return createCountry(exchange);
+                }
+            } else {
+                switch (method) {
+                    case "GET":
+                        return getCountry(code);
+                    case "PUT":
+                        return updateCountry(exchange, code);
+                    case "DELETE":
+                        return deleteCountry(code);
+                }
+            }
+            return Response.error(405, "Method " + method + " is not allowed here");
+        });
+    }
+
+    private Response listCountries(HttpExchange exchange) {
+        Map<String, String> parameters = queryParameters(exchange);
+        int limit = countParameter(parameters, "limit", DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE);
+        List<Country> page = countryDao.page(parameters.get("after"), limit);
+        JsonWriter json = new JsonWriter().beginObject().name("countries");
+        CountryJson.writeCountries(json, page);
+        json.name("next").value(page.size() < limit ? null : page.get(page.size() - 1).getCode());
+        return Response.ok(json.endObject());
+    }
+
+    private Response getCountry(String code) {
+        Country country = countryDao.findByCode(code);
+        if (country == null) {
+            return Response.error(404, "No country with code " + code);
+        }
+        return Response.ok(CountryJson.writeCountry(new JsonWriter(), country));
+    }
+
+    private Response createCountry(HttpExchange exchange) throws IOException {
+        Map<String, String> form = formParameters(exchange);
+        String code = required(form, "code").toUpperCase();
+        if (code.length() != 3) {
+            return Response.error(400, "The code must have 3 letters");
+        }
+        Country country = new CountryBuilder(code, name(required(form, "name")))
+                .withInternetUsersFixedPoint(decimalParameter(form, "internetUsers"))
+                .withLiteracyRateFixedPoint(decimalParameter(form, "adultLiteracyRate"))
+                .build();
+        try {
+            // the DAO checks for the code and inserts under one lock, so two requests cannot both create it
+            countryDao.create(country);
+        } catch (IllegalArgumentException iae) {
+            return Response.error(409, iae.getMessage());
+        }
+        return new Response(201, CountryJson.writeCountry(new JsonWriter(), country).toString());
+    }
+
+    private Response updateCountry(HttpExchange exchange, String code) throws IOException {
+        Map<String, String> form = formParameters(exchange);
+        // parsed before the DAO takes its lock, a bad value is a 400 without a write
+        String name = form.containsKey("name") ? name(form.get("name")) : null;
+        long internetUsers = decimalParameter(form, "internetUsers");
+        long adultLiteracyRate = decimalParameter(form, "adultLiteracyRate");
+        // found and updated under one lock, a concurrent delete makes it a 404 rather than a failed write
+        Country country = countryDao.updateByCode(code, found -> {
+            if (name != null) {
+                found.setName(name);
+            }
+            if (form.containsKey("internetUsers")) {
+                found.setInternetUsersFixedPoint(internetUsers);
+            }
+            if (form.containsKey("adultLiteracyRate")) {
+                found.setAdultLiteracyRateFixedPoint(adultLiteracyRate);
+            }
+        });
+        return Response.ok(CountryJson.writeCountry(new JsonWriter(), country));
+    }
+
+    private Response deleteCountry(String code) {
+        countryDao.deleteByCode(code);
+        return new Response(204, null);
+    }
+
+    private void handleStatistics(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            return Response.ok(CountryJson.writeSummary(new JsonWriter(), countryDao.summarize()));
+        });
+    }
+
+    private void handleRankings(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            Indicator indicator = indicator(exchange, "/rankings");
+            Map<String, String> parameters = queryParameters(exchange);
+            int k = countParameter(parameters, "k", 10, MAX_PAGE_SIZE);
+            boolean bottom = "bottom".equals(parameters.get("order"));
+            List<Country> countries = bottom
+                    ? countryDao.bottomCountries(indicator, k) : countryDao.topCountries(indicator, k);
+            return Response.ok(CountryJson.writeCountries(new JsonWriter(), countries));
+        });
+    }
+
+    private void handleRanges(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            Indicator indicator = indicator(exchange, "/ranges");
+            Map<String, String> parameters = queryParameters(exchange);
+            double from = doubleParameter(parameters, "from", Double.NEGATIVE_INFINITY);
+            double to = doubleParameter(parameters, "to", Double.POSITIVE_INFINITY);
+            return Response.ok(CountryJson.writeCountries(new JsonWriter(), countryDao.countriesInRange(indicator, from, to)));
+        });
+    }
+
+    private void handleQuantiles(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            Indicator indicator = indicator(exchange, "/quantiles");
+            Map<String, String> parameters = queryParameters(exchange);
+            String fractions = parameters.getOrDefault("q", DEFAULT_FRACTIONS);
+            JsonWriter json = new JsonWriter().beginObject();
+            for (String fraction : fractions.split(",")) {
+                double value;
+                try {
+                    value = countryDao.quantile(indicator, Double.parseDouble(fraction.trim()));
+                } catch (NumberFormatException nfe) {
+                    throw new IllegalArgumentException("The parameter q is not a list of numbers: " + fractions);
+                }
+                json.name(fraction.trim()).value(value);
+            }
+            return Response.ok(json.endObject());
+        });
+    }
+
+    private void handleHistograms(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            Indicator indicator = indicator(exchange, "/histograms");
+            int buckets = countParameter(queryParameters(exchange), "buckets", 10, MAX_BUCKETS);
+            Histogram histogram = countryDao.histogram(indicator, buckets);
+            JsonWriter json = new JsonWriter().beginObject()
+                    .name("total").value(histogram.getTotal())
+                    .name("buckets").beginArray();
+            for (int bucket = 0; bucket < histogram.getBucketCount(); bucket++) {
+                json.beginObject()
+                        .name("from").value(histogram.getLowerBound(bucket))
+                        .name("to").value(histogram.getUpperBound(bucket))
+                        .name("count").value(histogram.getCount(bucket))
+                        .endObject();
+            }
+            return Response.ok(json.endArray().endObject());
+        });
+    }
+
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            Map<String, String> parameters = queryParameters(exchange);
+            String query = parameters.get("q");
+            if (query == null || query.trim().isEmpty()) {
+                throw new IllegalArgumentException("The parameter q is missing");
+            }
+            int limit = countParameter(parameters, "limit", NameIndex.DEFAULT_LIMIT, MAX_PAGE_SIZE);
+            return Response.ok(CountryJson.writeCountries(new JsonWriter(), countryDao.searchByName(query, limit)));
+        });
+    }
+
+    private void handleCorrelations(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            String method = queryParameters(exchange).getOrDefault("method", "pearson");
+            CorrelationMatrix matrix;
+            if (method.equals("pearson")) {
+                matrix = countryDao.correlations();
+            } else if (method.equals("spearman")) {
+                matrix = countryDao.rankCorrelations();
+            } else {
+                throw new IllegalArgumentException("The method must be pearson or spearman, not " + method);
+            }
+            return Response.ok(CountryJson.writeCorrelations(new JsonWriter(), matrix));
+        });
+    }
+
+    private void handleRegressions(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            Indicator y = indicator(exchange, "/regressions");
+            String on = queryParameters(exchange).get("on");
+            if (on == null) {
+                throw new IllegalArgumentException("The parameter on is missing");
+            }
+            Indicator x;
+            try {
+                x = indicatorNamed(on.toUpperCase());
+            } catch (NoSuchElementException nsee) {
+                throw new IllegalArgumentException(nsee.getMessage());
+            }
+            LinearRegression regression = countryDao.correlations().regression(x.getLabel(), y.getLabel());
+            if (regression == null) {
+                throw new NoSuchElementException("There is no line through the countries with both values");
+            }
+            return Response.ok(CountryJson.writeRegression(new JsonWriter(), regression));
+        });
+    }
+
+    private void handleObservations(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            ObservationDao observations = observationDao;
+            if (observations == null) {
+                throw new NoSuchElementException("No observations are served");
+            }
+            String path = pathParameter(exchange, "/observations");
+            String query = path == null ? "" : path;
+            int slash = query.indexOf('/');
+            String code = slash < 0 || slash == query.length() - 1 ? null : query.substring(slash + 1);
+            Map<String, String> parameters = queryParameters(exchange);
+            switch (slash < 0 ? query : query.substring(0, slash)) {
+                case "COUNTRIES":
+                    return Response.ok(CountryJson.writeObservations(new JsonWriter(),
+                            observations.findByCountry(pathCode(code, "a country"))));
+                case "EXTREMES":
+                    String indicatorCode = pathCode(code, "an indicator");
+                    YearExtremes extremes = observations.getCube().extremes(indicatorCode,
+                            requiredIntParameter(parameters, "year"));
+                    if (extremes == null) {
+                        throw new NoSuchElementException("No country has a value of " + indicatorCode + " then");
+                    }
+                    return Response.ok(CountryJson.writeExtremes(new JsonWriter(), extremes));
+                case "TRENDS":
+                    ObservationCube cube = observations.getCube();
+                    int from = intParameter(parameters, "from", cube.getFirstYear());
+                    int to = intParameter(parameters, "to", cube.getLastYear());
+                    return Response.ok(CountryJson.writeTrends(new JsonWriter(),
+                            cube.trends(pathCode(code, "an indicator"), from, to)));
+                case "CORRELATION":
+                    String x = required(parameters, "x").toUpperCase();
+                    String y = required(parameters, "y").toUpperCase();
+                    double correlation = parameters.containsKey("year")
+                            ? observations.getCube().correlation(x, y, requiredIntParameter(parameters, "year"))
+                            : observations.getCube().correlation(x, y);
+                    return Response.ok(new JsonWriter().beginObject()
+                            .name("x").value(x)
+                            .name("y").value(y)
+                            .name("correlation").value(correlation)
+                            .endObject());
+            }
+            throw new NoSuchElementException("Please ask for countries, extremes, trends or correlation");
+        });
+    }
+
+    private interface Handler {
+        Response handle() throws IOException;
+    }
+
+    private static class Response {
+
+        private final int status;
+        private final String body;
+
+        private Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        private static Response ok(JsonWriter json) {
+            return new Response(200, json.toString());
+        }
+
+        private static Response error(int status, String message) {
+            return new Response(status, new JsonWriter().beginObject().name("error").value(message).endObject()
+                    .toString());
+        }
+
+    }
+
+    private static void handle(HttpExchange exchange, Handler handler) throws IOException {
+        Response response;
+        try {
+            response = handler.handle();
+        } catch (IllegalArgumentException iae) {
+            response = Response.error(400, iae.getMessage());
+        } catch (NoSuchElementException nsee) {
+            response = Response.error(404, nsee.getMessage());
+        } catch (RuntimeException e) {
+            // the details are for the log, not for the client
+            System.err.printf("%s %s failed:%n", exchange.getRequestMethod(), exchange.getRequestURI());
+            e.printStackTrace();
+            response = Response.error(500, "Internal server error");
+        }
+        send(exchange, response);
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        try {
+            // the request body has to be consumed before the connection can be reused
+            drain(exchange.getRequestBody());
+            if (response.body == null) {
+                exchange.sendResponseHeaders(response.status, -1);
+                return;
+            }
+            byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+            Headers headers = exchange.getResponseHeaders();
+            headers.set("Content-Type", "application/json; charset=utf-8");
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (body.length > GZIP_THRESHOLD && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                body = gzip(body);
+                headers.set("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(response.status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(body);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[1024];
+        while (in.read(buffer) >= 0) {
+            // discard
+        }
+    }
+
+    private static Indicator indicator(HttpExchange exchange, String context) {
+        String name = pathParameter(exchange, context);
+        if (name == null) {
+            throw new NoSuchElementException("Please name an indicator: " + Arrays.toString(Indicator.values()));
+        }
+        return indicatorNamed(name);
+    }
+
+    private static Indicator indicatorNamed(String name) {
+        for (Indicator indicator : Indicator.values()) {
+            if (indicator.name().equalsIgnoreCase(name.replace('-', '_'))) {
+                return indicator;
+            }
+        }
+        throw new NoSuchElementException("Unknown indicator " + name);
+    }
+
+    private static String pathCode(String code, String what) {
+        if (code == null) {
+            throw new NoSuchElementException("Please name " + what + " code");
+        }
+        return code;
+    }
+
+    private static String pathParameter(HttpExchange exchange, String context) {
+        String path = exchange.getRequestURI().getPath();
+        String rest = path.length() > context.length() ? path.substring(context.length() + 1) : "";
+        return rest.isEmpty() ? null : rest.toUpperCase();
+    }
+
+    private static Map<String, String> queryParameters(HttpExchange exchange) {
+        return parse(exchange.getRequestURI().getRawQuery());
+    }
+
+    private static Map<String, String> formParameters(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        InputStream in = exchange.getRequestBody();
+        for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+            body.write(buffer, 0, read);
+        }
+        Map<String, String> parameters = queryParameters(exchange);
+        parameters.putAll(parse(new String(body.toByteArray(), StandardCharsets.UTF_8)));
+        return parameters;
+    }
+
+    private static Map<String, String> parse(String encoded) {
+        Map<String, String> parameters = new HashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : encoded.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.put(decode(name), decode(value));
+        }
+        return parameters;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException uee) {
+            throw new IllegalStateException(uee);
+        }
+    }
+
+    private static String required(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("The parameter " + name + " is missing");
+        }
+        return value.trim();
+    }
+
+    /**
+     * The trimmed name, which has to fit the name column like in the batch mode.
+     */
+    private static String name(String name) {
+        String trimmed = name.trim();
+        if (trimmed.isEmpty() || trimmed.length() > 32) {
+            throw new IllegalArgumentException("The name must have 1 to 32 characters");
+        }
+        return trimmed;
+    }
+
+    private static long decimalParameter(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null || value.trim().isEmpty() || value.trim().equals("null")) {
+            return FixedPoint.NULL;
+        }
+        try {
+            return FixedPoint.parse(value);
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("The parameter " + name + " is not a number: " + value);
+        }
+    }
+
+    private static int intParameter(Map<String, String> parameters, String name, int defaultValue) {
+        String value = parameters.get(name);
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value);
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("The parameter " + name + " is not a number: " + value);
+        }
+    }
+
+    private static int requiredIntParameter(Map<String, String> parameters, String name) {
+        required(parameters, name);
+        return intParameter(parameters, name, 0);
+    }
+
+    /**
+     * A count like a page size: at least 1, and capped at {@code max}.
+     */
+    private static int countParameter(Map<String, String> parameters, String name, int defaultValue, int max) {
+        int value = intParameter(parameters, name, defaultValue);
+        if (value < 1) {
+            throw new IllegalArgumentException("The parameter " + name + " must be at least 1, not " + value);
+        }
+        return Math.min(max, value);
+    }
+
+    private static double doubleParameter(Map<String, String> parameters, String name, double defaultValue) {
+        String value = parameters.get(name);
+        try {
+            return value == null ? defaultValue : Double.parseDouble(value);
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("The parameter " + name + " is not a number: " + value);
+        }
+    }
+
+}
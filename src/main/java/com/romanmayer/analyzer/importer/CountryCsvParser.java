@@ -0,0 +1,91 @@
+package com.romanmayer.analyzer.importer;
+
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.Country.CountryBuilder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses and validates one CSV line of the form {@code code,name,internetUsers,adultLiteracyRate}.
+ *
+ * Fields may be quoted with double quotes, like the World Bank names with commas in them. An empty value or
+ * the World Bank placeholder ".." stands for a missing indicator.
+ */
+public class CountryCsvParser {
+
+    private static final BigDecimal MAX_PERCENTAGE = BigDecimal.valueOf(100);
+
+    public boolean isHeader(String line) {
+        return line.trim().toLowerCase().startsWith("code");
+    }
+
+    /**
+     * @throws IllegalArgumentException with the reason if the line is not a valid country
+     */
+    public Country parse(String line) {
+        List<String> fields = split(line);
+        if (fields.size() != 4) {
+            throw new IllegalArgumentException("expected 4 fields but found " + fields.size());
+        }
+        String code = fields.get(0).trim().toUpperCase();
+        if (!code.matches("[A-Z]{3}")) {
+            throw new IllegalArgumentException("invalid country code '" + code + "'");
+        }
+        String name = fields.get(1).trim();
+        if (name.isEmpty() || name.length() > 32) {
+            throw new IllegalArgumentException("the name must have 1 to 32 characters");
+        }
+        return new CountryBuilder(code, name)
+                .withInternetUsers(percentage(fields.get(2), "internetUsers"))
+                .withLiteracyRate(percentage(fields.get(3), "adultLiteracyRate"))
+                .build();
+    }
+
+    private static BigDecimal percentage(String field, String column) {
+        String value = field.trim();
+        if (value.isEmpty() || value.equals("..")) {
+            return null;
+        }
+        BigDecimal percentage;
+        try {
+            percentage = new BigDecimal(value);
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException(column + " is not a number: '" + value + "'");
+        }
+        if (percentage.signum() < 0 || percentage.compareTo(MAX_PERCENTAGE) > 0) {
+            throw new IllegalArgumentException(column + " must be between 0 and 100, not " + value);
+        }
+        return percentage;
+    }
+
+    static List<String> split(String line) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+}
@@ -0,0 +1,189 @@
+package com.romanmayer.analyzer.importer;
+
+import com.romanmayer.analyzer.dao.DatasetVersion;
+import com.romanmayer.analyzer.model.Country;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Imports a CSV file of countries in batches, inserting new codes and updating existing ones.
+ *
+ * A parser thread reads, validates and converts the lines into batches of countries, while the calling thread
+ * writes the previous batches. The queue between them is bounded, so a fast parser waits for the database
+ * instead of filling the heap. Every batch is one JDBC batch of H2 MERGE statements in its own transaction.
+ */
+public class CountryImporter {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private static final int QUEUED_BATCHES = 4;
+    private static final int MAX_REPORTED_REJECTIONS = 20;
+    private static final String MERGE_SQL = "MERGE INTO Country (code, name, internetUsers, adultLiteracyRate) "
+            + "KEY (code) VALUES (?, ?, ?, ?)";
+    // marks the end of the input, compared by identity
+    private static final List<Country> END_OF_INPUT = new ArrayList<>();
+
+    private final SessionFactory sessionFactory;
+    private final int batchSize;
+    private final CountryCsvParser parser = new CountryCsvParser();
+
+    /**
+     * Uses the hibernate.jdbc.batch_size of the SessionFactory as the batch size.
+     */
+    public CountryImporter(SessionFactory sessionFactory) {
+        this(sessionFactory, configuredBatchSize(sessionFactory));
+    }
+
+    public CountryImporter(SessionFactory sessionFactory, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be positive, not " + batchSize);
+        }
+        this.sessionFactory = sessionFactory;
+        this.batchSize = batchSize;
+    }
+
+    public ImportResult importFrom(Path file) throws IOException {
+        long start = System.currentTimeMillis();
+        BlockingQueue<List<Country>> batches = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+        ParseStage parseStage = new ParseStage(file, batches);
+        Thread parserThread = new Thread(parseStage, "country-import-parser");
+        parserThread.setDaemon(true);
+        parserThread.start();
+
+        long importedRows = 0;
+        try {
+            for (List<Country> batch = batches.take(); batch != END_OF_INPUT; batch = batches.take()) {
+                write(batch);
+                importedRows += batch.size();
+            }
+            parserThread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The import was interrupted", ie);
+        } finally {
+            // stops the parser if writing failed
+            parserThread.interrupt();
+        }
+
+        if (parseStage.failure != null) {
+            throw parseStage.failure;
+        }
+        return new ImportResult(importedRows, parseStage.rejectedRows, parseStage.rejections,
+                System.currentTimeMillis() - start);
+    }
+
+    private void write(List<Country> batch) {
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            session.doWork(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(MERGE_SQL)) {
+                    for (Country country : batch) {
+                        statement.setString(1, country.getCode());
+                        statement.setString(2, country.getName());
+                        setDecimal(statement, 3, country.getInternetUsers());
+                        setDecimal(statement, 4, country.getAdultLiteracyRate());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+                DatasetVersion.increment(connection);
+            });
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+    }
+
+    private static void setDecimal(PreparedStatement statement, int index, BigDecimal value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.DECIMAL);
+        } else {
+            statement.setBigDecimal(index, value);
+        }
+    }
+
+    /**
+     * The hibernate.jdbc.batch_size of the SessionFactory, or {@link #DEFAULT_BATCH_SIZE} if it is not set.
+     */
+    public static int configuredBatchSize(SessionFactory sessionFactory) {
+        Object batchSize = sessionFactory.getProperties().get(AvailableSettings.STATEMENT_BATCH_SIZE);
+        return batchSize == null ? DEFAULT_BATCH_SIZE : Integer.parseInt(batchSize.toString());
+    }
+
+    private class ParseStage implements Runnable {
+
+        private final Path file;
+        private final BlockingQueue<List<Country>> batches;
+        private final List<String> rejections = new ArrayList<>();
+        private long rejectedRows;
+        private IOException failure;
+
+        private ParseStage(Path file, BlockingQueue<List<Country>> batches) {
+            this.file = file;
+            this.batches = batches;
+        }
+
+        @Override
+        public void run() {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                List<Country> batch = new ArrayList<>(batchSize);
+                long lineNumber = 0;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    if (line.trim().isEmpty() || (lineNumber == 1 && parser.isHeader(line))) {
+                        continue;
+                    }
+                    try {
+                        batch.add(parser.parse(line));
+                    } catch (IllegalArgumentException iae) {
+                        reject(lineNumber, iae.getMessage());
+                        continue;
+                    }
+                    if (batch.size() == batchSize) {
+                        batches.put(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    batches.put(batch);
+                }
+            } catch (IOException ioe) {
+                failure = ioe;
+            } catch (InterruptedException ie) {
+                // the writer gave up, nobody is waiting for the rest
+                return;
+            }
+            try {
+                batches.put(END_OF_INPUT);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void reject(long lineNumber, String reason) {
+            rejectedRows++;
+            if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+                rejections.add("line " + lineNumber + ": " + reason);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.romanmayer.analyzer.importer;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk import.
+ */
+public class ImportResult {
+
+    private final long importedRows;
+    private final long rejectedRows;
+    private final List<String> rejections;
+    private final long elapsedMillis;
+
+    public ImportResult(long importedRows, long rejectedRows, List<String> rejections, long elapsedMillis) {
+        this.importedRows = importedRows;
+        this.rejectedRows = rejectedRows;
+        this.rejections = Collections.unmodifiableList(rejections);
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getImportedRows() {
+        return importedRows;
+    }
+
+    public long getRejectedRows() {
+        return rejectedRows;
+    }
+
+    /**
+     * The reasons of the first rejected lines, prefixed with their line numbers.
+     */
+    public List<String> getRejections() {
+        return rejections;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedMillis == 0 ? importedRows * 1000.0 : importedRows * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Imported %s rows in %s ms (%.0f rows/s), rejected %s lines",
+                importedRows, elapsedMillis, getRowsPerSecond(), rejectedRows);
+    }
+
+}
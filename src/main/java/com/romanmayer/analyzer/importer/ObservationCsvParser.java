@@ -0,0 +1,61 @@
+package com.romanmayer.analyzer.importer;
+
+import com.romanmayer.analyzer.model.Observation;
+
+import java.util.List;
+
+/**
+ * Parses and validates one CSV line of the form {@code countryCode,indicatorCode,year,value}, the World Bank
+ * data in long form, e.g. {@code DEU,IT.NET.USER.ZS,2015,87.59}.
+ *
+ * Fields may be quoted like in {@link CountryCsvParser}. An empty value or the placeholder ".." is a missing
+ * value, which has no observation.
+ */
+public class ObservationCsvParser {
+
+    private static final int MAX_INDICATOR_CODE_LENGTH = 64;
+
+    public boolean isHeader(String line) {
+        return line.trim().toLowerCase().startsWith("country");
+    }
+
+    /**
+     * @return the observation, or null if the value is missing
+     * @throws IllegalArgumentException with the reason if the line is not a valid observation
+     */
+    public Observation parse(String line) {
+        List<String> fields = CountryCsvParser.split(line);
+        if (fields.size() != 4) {
+            throw new IllegalArgumentException("expected 4 fields but found " + fields.size());
+        }
+        String countryCode = fields.get(0).trim().toUpperCase();
+        if (!countryCode.matches("[A-Z]{3}")) {
+            throw new IllegalArgumentException("invalid country code '" + countryCode + "'");
+        }
+        String indicatorCode = fields.get(1).trim().toUpperCase();
+        if (indicatorCode.isEmpty() || indicatorCode.length() > MAX_INDICATOR_CODE_LENGTH) {
+            throw new IllegalArgumentException("the indicator code must have 1 to 64 characters");
+        }
+        int year;
+        try {
+            year = Integer.parseInt(fields.get(2).trim());
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("the year is not a number: '" + fields.get(2).trim() + "'");
+        }
+        String value = fields.get(3).trim();
+        if (value.isEmpty() || value.equals("..")) {
+            return null;
+        }
+        double parsed;
+        try {
+            parsed = Double.parseDouble(value);
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("the value is not a number: '" + value + "'");
+        }
+        if (Double.isNaN(parsed) || Double.isInfinite(parsed)) {
+            throw new IllegalArgumentException("the value is not a number: '" + value + "'");
+        }
+        return new Observation(countryCode, indicatorCode, year, parsed);
+    }
+
+}
@@ -0,0 +1,172 @@
+package com.romanmayer.analyzer.metrics;
+
+import com.romanmayer.analyzer.dao.CountryDaoImpl;
+import com.romanmayer.analyzer.feed.ChangeFeed;
+import com.romanmayer.utility.TableBuilder;
+import org.hibernate.stat.Statistics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The DAO latencies, the hit ratio of the country cache and the Hibernate statistics in one report, for the
+ * menu, for JMX and for a periodic dump.
+ */
+public class AnalyzerMetrics implements AnalyzerMetricsMBean {
+
+    public static final String OBJECT_NAME = "com.romanmayer.analyzer:type=Metrics";
+
+    private final DaoMetrics daoMetrics;
+    private final CountryDaoImpl countryDao;
+
+    public AnalyzerMetrics(DaoMetrics daoMetrics, CountryDaoImpl countryDao) {
+        this.daoMetrics = daoMetrics;
+        this.countryDao = countryDao;
+    }
+
+    /**
+     * Makes the metrics visible to JMX clients like jconsole.
+     */
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException jme) {
+            System.out.printf("The metrics are not available over JMX: %s%n", jme.getMessage());
+        }
+    }
+
+    /**
+     * Prints the report every {@code seconds} seconds, from a daemon thread.
+     */
+    public void dumpPeriodically(long seconds, PrintStream out) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(() -> out.print(getReport()), seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public String getReport() {
+        Statistics statistics = statistics();
+        TableBuilder tableBuilder = new TableBuilder();
+        tableBuilder.addRow("Hibernate", "");
+        tableBuilder.addRow("-------------------------", "---------");
+        tableBuilder.addRow("Sessions opened", String.valueOf(statistics.getSessionOpenCount()));
+        tableBuilder.addRow("Transactions", String.valueOf(statistics.getTransactionCount()));
+        tableBuilder.addRow("Statements prepared", String.valueOf(statistics.getPrepareStatementCount()));
+        tableBuilder.addRow("Queries executed", String.valueOf(statistics.getQueryExecutionCount()));
+        tableBuilder.addRow("Entities loaded", String.valueOf(statistics.getEntityLoadCount()));
+        tableBuilder.addRow("Entities inserted", String.valueOf(statistics.getEntityInsertCount()));
+        tableBuilder.addRow("Entities updated", String.valueOf(statistics.getEntityUpdateCount()));
+        tableBuilder.addRow("Entities deleted", String.valueOf(statistics.getEntityDeleteCount()));
+        tableBuilder.addRow("L2 cache hits", String.valueOf(statistics.getSecondLevelCacheHitCount()));
+        tableBuilder.addRow("L2 cache misses", String.valueOf(statistics.getSecondLevelCacheMissCount()));
+        tableBuilder.addRow("L2 cache hit ratio", ratio(getSecondLevelCacheHitRatio()));
+        tableBuilder.addRow("Query cache hits", String.valueOf(statistics.getQueryCacheHitCount()));
+        tableBuilder.addRow("Query cache misses", String.valueOf(statistics.getQueryCacheMissCount()));
+        tableBuilder.addRow("Country cache hit ratio", ratio(getCountryCacheHitRatio()));
+        ChangeFeed changeFeed = countryDao.getChangeFeed();
+        if (changeFeed == null) {
+            return String.format("%s%n%s", daoMetrics, tableBuilder);
+        }
+        return String.format("%s%n%s%n%s", daoMetrics, tableBuilder, changeFeed.getReport());
+    }
+
+    @Override
+    public long getDaoCalls() {
+        long calls = 0;
+        for (LatencyHistogram histogram : daoMetrics.getHistograms().values()) {
+            calls += histogram.getCount();
+        }
+        return calls;
+    }
+
+    /**
+     * Share of the lookups by code answered from memory instead of the database, NaN before the first lookup.
+     */
+    @Override
+    public double getCountryCacheHitRatio() {
+        return ratio(countryDao.getCacheHits(), countryDao.getCacheMisses());
+    }
+
+    @Override
+    public double getSecondLevelCacheHitRatio() {
+        Statistics statistics = statistics();
+        return ratio(statistics.getSecondLevelCacheHitCount(), statistics.getSecondLevelCacheMissCount());
+    }
+
+    @Override
+    public long getSessionsOpened() {
+        return statistics().getSessionOpenCount();
+    }
+
+    @Override
+    public long getStatementsPrepared() {
+        return statistics().getPrepareStatementCount();
+    }
+
+    @Override
+    public long getEntitiesLoaded() {
+        return statistics().getEntityLoadCount();
+    }
+
+    @Override
+    public long getQueriesExecuted() {
+        return statistics().getQueryExecutionCount();
+    }
+
+    /**
+     * The lag of the slowest subscriber of the change feed, 0 without one.
+     */
+    @Override
+    public long getChangeFeedMaxLag() {
+        ChangeFeed changeFeed = countryDao.getChangeFeed();
+        return changeFeed == null ? 0 : changeFeed.getMaxLag();
+    }
+
+    /**
+     * How often a mutation had to wait for a subscriber of the change feed to make room.
+     */
+    @Override
+    public long getChangeFeedBackpressureWaits() {
+        ChangeFeed changeFeed = countryDao.getChangeFeed();
+        return changeFeed == null ? 0 : changeFeed.getBackpressureWaits();
+    }
+
+    @Override
+    public boolean isSqlLogging() {
+        return SqlLogging.isEnabled();
+    }
+
+    @Override
+    public void setSqlLogging(boolean enabled) {
+        SqlLogging.setEnabled(enabled);
+    }
+
+    @Override
+    public void reset() {
+        daoMetrics.reset();
+        countryDao.resetCacheCounters();
+        statistics().clear();
+    }
+
+    private Statistics statistics() {
+        return countryDao.getSessionFactory().getStatistics();
+    }
+
+    private static double ratio(long hits, long misses) {
+        return hits + misses == 0 ? Double.NaN : (double) hits / (hits + misses);
+    }
+
+    private static String ratio(double ratio) {
+        return Double.isNaN(ratio) ? "n/a" : String.format("%.1f%%", ratio * 100);
+    }
+
+}
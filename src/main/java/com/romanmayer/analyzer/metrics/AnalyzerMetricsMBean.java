@@ -0,0 +1,34 @@
+package com.romanmayer.analyzer.metrics;
+
+/**
+ * JMX view of {@link AnalyzerMetrics}, registered as {@value AnalyzerMetrics#OBJECT_NAME}.
+ */
+public interface AnalyzerMetricsMBean {
+
+    String getReport();
+
+    long getDaoCalls();
+
+    double getCountryCacheHitRatio();
+
+    double getSecondLevelCacheHitRatio();
+
+    long getSessionsOpened();
+
+    long getStatementsPrepared();
+
+    long getEntitiesLoaded();
+
+    long getQueriesExecuted();
+
+    long getChangeFeedMaxLag();
+
+    long getChangeFeedBackpressureWaits();
+
+    boolean isSqlLogging();
+
+    void setSqlLogging(boolean enabled);
+
+    void reset();
+
+}
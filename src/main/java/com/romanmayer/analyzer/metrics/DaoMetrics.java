@@ -0,0 +1,61 @@
+package com.romanmayer.analyzer.metrics;
+
+import com.romanmayer.utility.TableBuilder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Call counts and latency histograms of the DAO methods, by method name.
+ */
+public class DaoMetrics {
+
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+
+    /**
+     * The histogram of the given method, created on first use. Callers keep the result instead of looking it
+     * up for every call.
+     */
+    public LatencyHistogram histogram(String method) {
+        return histograms.computeIfAbsent(method, name -> new LatencyHistogram());
+    }
+
+    public Map<String, LatencyHistogram> getHistograms() {
+        return histograms;
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * One row per method that was called, latencies in microseconds.
+     */
+    @Override
+    public String toString() {
+        TableBuilder tableBuilder = new TableBuilder();
+        tableBuilder.addRow("Method", "Calls", "Mean us", "p50 us", "p99 us", "Max us");
+        tableBuilder.addRow("-------------------------", "--------", "---------", "---------", "---------",
+                "---------");
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            tableBuilder.addRow(entry.getKey(),
+                    String.valueOf(histogram.getCount()),
+                    micros(histogram.getMean()),
+                    micros(histogram.getValueAtPercentile(50)),
+                    micros(histogram.getValueAtPercentile(99)),
+                    micros(histogram.getMax()));
+        }
+        return tableBuilder.toString();
+    }
+
+    private static String micros(double nanos) {
+        return String.format("%.1f", nanos / 1000);
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.romanmayer.analyzer.metrics;
+
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Switches the logging of the SQL statements of Hibernate on and off at runtime.
+ *
+ * Hibernate logs every statement at debug level on the org.hibernate.SQL category, which goes to
+ * java.util.logging here. The level is checked for every statement, so a switched off log costs nothing,
+ * unlike show_sql, which always prints.
+ */
+public class SqlLogging {
+
+    private static final String CATEGORY = "org.hibernate.SQL";
+    // keeps the logger and its settings alive, java.util.logging only holds loggers weakly
+    private static final Logger LOGGER = Logger.getLogger(CATEGORY);
+
+    static {
+        ConsoleHandler handler = new ConsoleHandler();
+        handler.setLevel(Level.ALL);
+        handler.setFormatter(new Formatter() {
+            @Override
+            public String format(LogRecord record) {
+                return "SQL: " + formatMessage(record) + System.lineSeparator();
+            }
+        });
+        LOGGER.addHandler(handler);
+        LOGGER.setUseParentHandlers(false);
+        LOGGER.setLevel(Level.INFO);
+    }
+
+    public static void setEnabled(boolean enabled) {
+        LOGGER.setLevel(enabled ? Level.FINE : Level.INFO);
+    }
+
+    public static boolean isEnabled() {
+        return LOGGER.isLoggable(Level.FINE);
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.romanmayer.analyzer.metrics;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Milestones of the application startup, measured from the start of the JVM.
+ */
+public class StartupMetrics {
+
+    private final long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private volatile long firstPromptMillis = -1;
+    private volatile long sessionFactoryReadyMillis = -1;
+    private volatile long cacheReadyMillis = -1;
+
+    public void markFirstPrompt() {
+        if (firstPromptMillis < 0) {
+            firstPromptMillis = sinceJvmStart();
+        }
+    }
+
+    public void markSessionFactoryReady() {
+        sessionFactoryReadyMillis = sinceJvmStart();
+    }
+
+    /**
+     * Marks the countries as loaded, unless they were already, e.g. from a snapshot file.
+     */
+    public void markCacheReady() {
+        if (cacheReadyMillis < 0) {
+            cacheReadyMillis = sinceJvmStart();
+        }
+    }
+
+    /**
+     * Milliseconds from the JVM start until the menu was shown, or -1 if it was not shown yet.
+     */
+    public long getTimeToFirstPrompt() {
+        return firstPromptMillis;
+    }
+
+    public long getTimeToSessionFactory() {
+        return sessionFactoryReadyMillis;
+    }
+
+    public long getTimeToCacheReady() {
+        return cacheReadyMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "StartupMetrics{" +
+                "timeToFirstPrompt=" + format(firstPromptMillis) +
+                ", timeToSessionFactory=" + format(sessionFactoryReadyMillis) +
+                ", timeToCacheReady=" + format(cacheReadyMillis) +
+                '}';
+    }
+
+    private long sinceJvmStart() {
+        return System.currentTimeMillis() - jvmStartMillis;
+    }
+
+    private static String format(long millis) {
+        return millis < 0 ? "pending" : millis + "ms";
+    }
+
+}
@@ -1,13 +1,23 @@
 package com.romanmayer.analyzer.model;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
+import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import java.math.BigDecimal;
 
 @Entity
+// read-mostly, so kept in the second-level cache, see ehcache.xml for the bounds of the region
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Country.CACHE_REGION)
 public class Country {
 
+    public static final String CACHE_REGION = "country";
+
     @Id
     @Column(length = 3)
     private String code;
@@ -15,11 +25,14 @@ public class Country {
     @Column(length = 32)
     private String name;
 
+    // fixed-point, so the statistics and the listings need no BigDecimal, see FixedPoint
     @Column(columnDefinition = "Decimal(11,8)")
-    private BigDecimal internetUsers;
+    @Convert(converter = FixedPointConverter.class)
+    private long internetUsers = FixedPoint.NULL;
 
     @Column(columnDefinition = "Decimal(11,8)") // "... default '100.00'"
-    private BigDecimal adultLiteracyRate;
+    @Convert(converter = FixedPointConverter.class)
+    private long adultLiteracyRate = FixedPoint.NULL;
 
     // Default constructor for JPA
     public Country() {
@@ -37,8 +50,8 @@ public class Country {
         return "Country{" +
                 "code='" + code + '\'' +
                 ", name='" + name + '\'' +
-                ", internetUsers=" + internetUsers +
-                ", adultLiteracyRate=" + adultLiteracyRate +
+                ", internetUsers=" + getInternetUsers() +
+                ", adultLiteracyRate=" + getAdultLiteracyRate() +
                 '}';
     }
 
@@ -59,18 +72,37 @@ public class Country {
     }
 
     public BigDecimal getInternetUsers() {
-        return internetUsers;
+        return FixedPoint.toBigDecimal(internetUsers);
     }
 
     public void setInternetUsers(BigDecimal internetUsers) {
+        this.internetUsers = FixedPoint.fromBigDecimal(internetUsers);
+    }
+
+    /**
+     * The internet users as a {@link FixedPoint} value, {@link FixedPoint#NULL} if unknown.
+     */
+    public long getInternetUsersFixedPoint() {
+        return internetUsers;
+    }
+
+    public void setInternetUsersFixedPoint(long internetUsers) {
         this.internetUsers = internetUsers;
     }
 
     public BigDecimal getAdultLiteracyRate() {
-        return adultLiteracyRate;
+        return FixedPoint.toBigDecimal(adultLiteracyRate);
     }
 
     public void setAdultLiteracyRate(BigDecimal adultLiteracyRate) {
+        this.adultLiteracyRate = FixedPoint.fromBigDecimal(adultLiteracyRate);
+    }
+
+    public long getAdultLiteracyRateFixedPoint() {
+        return adultLiteracyRate;
+    }
+
+    public void setAdultLiteracyRateFixedPoint(long adultLiteracyRate) {
         this.adultLiteracyRate = adultLiteracyRate;
     }
 
@@ -78,8 +110,8 @@ public class Country {
 
         private String code;
         private String name;
-        private BigDecimal internetUsers;
-        private BigDecimal adultLiteracyRate;
+        private long internetUsers = FixedPoint.NULL;
+        private long adultLiteracyRate = FixedPoint.NULL;
 
         public CountryBuilder(String code, String name) {
             this.code = code;
@@ -87,11 +119,21 @@ public class Country {
         }
 
         public CountryBuilder withInternetUsers(BigDecimal internetUsers) {
+            this.internetUsers = FixedPoint.fromBigDecimal(internetUsers);
+            return this;
+        }
+
+        public CountryBuilder withInternetUsersFixedPoint(long internetUsers) {
             this.internetUsers = internetUsers;
             return this;
         }
 
         public CountryBuilder withLiteracyRate(BigDecimal adultLiteracyRate) {
+            this.adultLiteracyRate = FixedPoint.fromBigDecimal(adultLiteracyRate);
+            return this;
+        }
+
+        public CountryBuilder withLiteracyRateFixedPoint(long adultLiteracyRate) {
             this.adultLiteracyRate = adultLiteracyRate;
             return this;
         }
@@ -0,0 +1,48 @@
+package com.romanmayer.analyzer.model;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.Collection;
+
+/**
+ * The CSV form of countries, in the format of the importer so an export can be imported again. Shared by the
+ * batch mode and the export view of the change feed.
+ */
+public final class CountryCsv {
+
+    public static final String HEADER = "code,name,internetUsers,adultLiteracyRate";
+
+    private CountryCsv() {
+    }
+
+    public static void writeCountries(Writer writer, Collection<Country> countries) throws IOException {
+        writer.write(HEADER);
+        writer.write('\n');
+        for (Country country : countries) {
+            writer.write(country.getCode());
+            writer.write(',');
+            writer.write(field(country.getName()));
+            writer.write(',');
+            writer.write(field(country.getInternetUsers()));
+            writer.write(',');
+            writer.write(field(country.getAdultLiteracyRate()));
+            writer.write('\n');
+        }
+    }
+
+    private static String field(BigDecimal value) {
+        return value == null ? "" : value.toPlainString();
+    }
+
+    private static String field(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+}
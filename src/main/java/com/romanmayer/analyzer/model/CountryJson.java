@@ -0,0 +1,143 @@
+package com.romanmayer.analyzer.model;
+
+import com.romanmayer.analyzer.analytics.CorrelationMatrix;
+import com.romanmayer.utility.JsonWriter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The JSON form of countries, the indicator summary, the correlations and the observations, shared by the HTTP
+ * server and the batch mode.
+ */
+public final class CountryJson {
+
+    private CountryJson() {
+    }
+
+    public static JsonWriter writeCountries(JsonWriter json, List<Country> countries) {
+        json.beginArray();
+        for (Country country : countries) {
+            writeCountry(json, country);
+        }
+        return json.endArray();
+    }
+
+    public static JsonWriter writeCountry(JsonWriter json, Country country) {
+        return json.beginObject()
+                .name("code").value(country.getCode())
+                .name("name").value(country.getName())
+                .name("internetUsers").value(country.getInternetUsers())
+                .name("adultLiteracyRate").value(country.getAdultLiteracyRate())
+                .endObject();
+    }
+
+    public static JsonWriter writeSummary(JsonWriter json, IndicatorSummary summary) {
+        json.beginObject()
+                .name("count").value(summary.getCount());
+        writeIndicator(json.name("internetUsers"), summary.getCountryWithMinInternetUsers(),
+                summary.getCountryWithMaxInternetUsers(), summary.getMeanInternetUsers(),
+                summary.getVarianceInternetUsers());
+        writeIndicator(json.name("adultLiteracyRate"), summary.getCountryWithMinLiteracyRate(),
+                summary.getCountryWithMaxLiteracyRate(), summary.getMeanLiteracyRate(),
+                summary.getVarianceLiteracyRate());
+        json.name("correlationCoefficient").value(summary.getCorrelationCoefficient());
+        return json.endObject();
+    }
+
+    /**
+     * The names of the indicators, then the correlations and the number of countries of every pair as matrices
+     * in the order of the names.
+     */
+    public static JsonWriter writeCorrelations(JsonWriter json, CorrelationMatrix matrix) {
+        json.beginObject().name("indicators").beginArray();
+        for (String name : matrix.names()) {
+            json.value(name);
+        }
+        json.endArray().name("correlations").beginArray();
+        for (int x = 0; x < matrix.size(); x++) {
+            json.beginArray();
+            for (int y = 0; y < matrix.size(); y++) {
+                json.value(matrix.correlation(x, y));
+            }
+            json.endArray();
+        }
+        json.endArray().name("counts").beginArray();
+        for (int x = 0; x < matrix.size(); x++) {
+            json.beginArray();
+            for (int y = 0; y < matrix.size(); y++) {
+                json.value(matrix.count(x, y));
+            }
+            json.endArray();
+        }
+        return json.endArray().endObject();
+    }
+
+    public static JsonWriter writeRegression(JsonWriter json, LinearRegression regression) {
+        return json.beginObject()
+                .name("x").value(regression.getX())
+                .name("y").value(regression.getY())
+                .name("count").value(regression.getCount())
+                .name("slope").value(regression.getSlope())
+                .name("intercept").value(regression.getIntercept())
+                .name("rSquared").value(regression.getRSquared())
+                .endObject();
+    }
+
+    public static JsonWriter writeObservations(JsonWriter json, List<Observation> observations) {
+        json.beginArray();
+        for (Observation observation : observations) {
+            json.beginObject()
+                    .name("indicator").value(observation.getIndicatorCode())
+                    .name("year").value(observation.getYear())
+                    .name("value").value(observation.getValue())
+                    .endObject();
+        }
+        return json.endArray();
+    }
+
+    public static JsonWriter writeExtremes(JsonWriter json, YearExtremes extremes) {
+        return json.beginObject()
+                .name("indicator").value(extremes.getIndicatorCode())
+                .name("year").value(extremes.getYear())
+                .name("min").beginObject()
+                .name("country").value(extremes.getMinCountryCode())
+                .name("value").value(extremes.getMinValue())
+                .endObject()
+                .name("max").beginObject()
+                .name("country").value(extremes.getMaxCountryCode())
+                .name("value").value(extremes.getMaxValue())
+                .endObject()
+                .endObject();
+    }
+
+    /**
+     * The slopes by country code, in units of the indicator per year.
+     */
+    public static JsonWriter writeTrends(JsonWriter json, Map<String, Double> trends) {
+        json.beginObject();
+        for (Map.Entry<String, Double> trend : trends.entrySet()) {
+            json.name(trend.getKey()).value(trend.getValue().doubleValue());
+        }
+        return json.endObject();
+    }
+
+    private static void writeIndicator(JsonWriter json, Country min, Country max, double mean, double variance) {
+        json.beginObject().name("min");
+        if (min == null) {
+            json.value((String) null);
+        } else {
+            writeCountry(json, min);
+        }
+        json.name("max");
+        if (max == null) {
+            json.value((String) null);
+        } else {
+            writeCountry(json, max);
+        }
+        json.name("mean").value(mean)
+                .name("variance").value(variance)
+                .endObject();
+    }
+
+}
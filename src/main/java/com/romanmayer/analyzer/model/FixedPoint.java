@@ -0,0 +1,154 @@
+package com.romanmayer.analyzer.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Decimal values of the Decimal(11,8) columns as a long with eight implied decimal places, so 84.2 is
+ * 8_420_000_000. Comparing, adding and converting to double needs no objects; {@link #NULL} stands for a
+ * missing value.
+ */
+public final class FixedPoint {
+
+    public static final int SCALE = 8;
+    public static final long ONE = 100_000_000L;
+    public static final long NULL = Long.MIN_VALUE;
+    // Decimal(11,8) leaves three digits before the point
+    public static final long MAX = 99_999_999_999L;
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L
+    };
+
+    private FixedPoint() {
+    }
+
+    public static boolean isNull(long value) {
+        return value == NULL;
+    }
+
+    /**
+     * Parses a plain decimal like "84.2", "-0.5" or "100" digit by digit, without the rounding errors of a
+     * double. More than eight decimal places are rounded half up.
+     *
+     * @throws NumberFormatException if the text is not a plain decimal or out of the range of Decimal(11,8)
+     */
+    public static long parse(String text) {
+        String value = text.trim();
+        int length = value.length();
+        int i = 0;
+        boolean negative = false;
+        if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+            negative = value.charAt(i) == '-';
+            i++;
+        }
+        long unscaled = 0;
+        int digits = 0;
+        int decimals = -1;
+        boolean roundUp = false;
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Not a decimal number: \"" + text + "\"");
+            }
+            digits++;
+            if (decimals >= SCALE) {
+                // the first digit after the eighth decimal place decides the rounding, the rest is dropped
+                if (decimals++ == SCALE) {
+                    roundUp = c >= '5';
+                }
+                continue;
+            }
+            unscaled = unscaled * 10 + (c - '0');
+            if (unscaled > MAX) {
+                throw new NumberFormatException("Out of range for Decimal(11,8): \"" + text + "\"");
+            }
+            if (decimals >= 0) {
+                decimals++;
+            }
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("Not a decimal number: \"" + text + "\"");
+        }
+        int scale = Math.max(0, Math.min(decimals, SCALE));
+        if (unscaled > MAX / POWERS_OF_TEN[SCALE - scale]) {
+            throw new NumberFormatException("Out of range for Decimal(11,8): \"" + text + "\"");
+        }
+        unscaled *= POWERS_OF_TEN[SCALE - scale];
+        if (roundUp) {
+            unscaled++;
+        }
+        if (unscaled > MAX) {
+            throw new NumberFormatException("Out of range for Decimal(11,8): \"" + text + "\"");
+        }
+        return negative ? -unscaled : unscaled;
+    }
+
+    /**
+     * Rounds the decimal to eight places, NULL for null.
+     *
+     * @throws ArithmeticException if it is out of the range of Decimal(11,8)
+     */
+    public static long fromBigDecimal(BigDecimal value) {
+        if (value == null) {
+            return NULL;
+        }
+        long unscaled = value.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        if (Math.abs(unscaled) > MAX) {
+            throw new ArithmeticException("Out of range for Decimal(11,8): " + value);
+        }
+        return unscaled;
+    }
+
+    /**
+     * The value with a scale of eight, null for NULL.
+     */
+    public static BigDecimal toBigDecimal(long value) {
+        return value == NULL ? null : BigDecimal.valueOf(value, SCALE);
+    }
+
+    /**
+     * The double closest to the value, the same as {@code toBigDecimal(value).doubleValue()}. NaN for NULL.
+     */
+    public static double toDouble(long value) {
+        // both operands are exact doubles and the division rounds correctly
+        return value == NULL ? Double.NaN : value / (double) ONE;
+    }
+
+    /**
+     * Formats the value with the given number of decimal places, rounded half up like
+     * {@code toBigDecimal(value).setScale(decimals, RoundingMode.HALF_UP)}.
+     */
+    public static String format(long value, int decimals) {
+        if (value == NULL) {
+            return "null";
+        }
+        long divisor = POWERS_OF_TEN[SCALE - decimals];
+        long rounded = (Math.abs(value) + divisor / 2) / divisor;
+        // like BigDecimal, a value that rounds to zero has no sign
+        boolean negative = value < 0 && rounded != 0;
+        // filled from the right: the decimals, the point, the integer digits and the sign
+        char[] text = new char[24];
+        int start = text.length;
+        for (int i = 0; i < decimals; i++) {
+            text[--start] = (char) ('0' + rounded % 10);
+            rounded /= 10;
+        }
+        if (decimals > 0) {
+            text[--start] = '.';
+        }
+        do {
+            text[--start] = (char) ('0' + rounded % 10);
+            rounded /= 10;
+        } while (rounded != 0);
+        if (negative) {
+            text[--start] = '-';
+        }
+        return new String(text, start, text.length - start);
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.romanmayer.analyzer.model;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+import java.math.BigDecimal;
+
+/**
+ * Maps a {@link FixedPoint} long to a Decimal(11,8) column, {@link FixedPoint#NULL} to SQL NULL.
+ */
+@Converter
+public class FixedPointConverter implements AttributeConverter<Long, BigDecimal> {
+
+    @Override
+    public BigDecimal convertToDatabaseColumn(Long value) {
+        return value == null ? null : FixedPoint.toBigDecimal(value);
+    }
+
+    @Override
+    public Long convertToEntityAttribute(BigDecimal column) {
+        return FixedPoint.fromBigDecimal(column);
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.romanmayer.analyzer.model;
+
+/**
+ * Counts of the values of an indicator in buckets of equal width between its min and max. The first bucket
+ * includes its lower bound, every bucket includes its upper bound.
+ */
+public class Histogram {
+
+    private final double[] bounds;
+    private final long[] counts;
+
+    /**
+     * @param bounds the bounds of the buckets in ascending order, one more than there are counts
+     */
+    public Histogram(double[] bounds, long[] counts) {
+        if (bounds.length != counts.length + 1) {
+            throw new IllegalArgumentException(String.format("%d buckets need %d bounds, not %d",
+                    counts.length, counts.length + 1, bounds.length));
+        }
+        this.bounds = bounds.clone();
+        this.counts = counts.clone();
+    }
+
+    public int getBucketCount() {
+        return counts.length;
+    }
+
+    public double getLowerBound(int bucket) {
+        return bounds[bucket];
+    }
+
+    public double getUpperBound(int bucket) {
+        return bounds[bucket + 1];
+    }
+
+    public long getCount(int bucket) {
+        return counts[bucket];
+    }
+
+    public long getTotal() {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder histogram = new StringBuilder();
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            histogram.append(String.format("%s%8.2f, %8.2f] %d%n", bucket == 0 ? "[" : "(",
+                    bounds[bucket], bounds[bucket + 1], counts[bucket]));
+        }
+        return histogram.toString();
+    }
+
+}
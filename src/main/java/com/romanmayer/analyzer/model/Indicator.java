@@ -0,0 +1,37 @@
+package com.romanmayer.analyzer.model;
+
+import java.math.BigDecimal;
+import java.util.function.ToLongFunction;
+
+/**
+ * The numeric indicators of a {@link Country}.
+ */
+public enum Indicator {
+
+    INTERNET_USERS("Internet Users", Country::getInternetUsersFixedPoint),
+    ADULT_LITERACY_RATE("Literacy Rate", Country::getAdultLiteracyRateFixedPoint);
+
+    private final String label;
+    private final ToLongFunction<Country> getter;
+
+    Indicator(String label, ToLongFunction<Country> getter) {
+        this.label = label;
+        this.getter = getter;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public BigDecimal valueOf(Country country) {
+        return FixedPoint.toBigDecimal(fixedPointOf(country));
+    }
+
+    /**
+     * The value as a {@link FixedPoint} long, {@link FixedPoint#NULL} if unknown.
+     */
+    public long fixedPointOf(Country country) {
+        return getter.applyAsLong(country);
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.romanmayer.analyzer.model;
+
+/**
+ * Immutable result of one pass over the countries that have values for both indicators.
+ */
+public class IndicatorSummary {
+
+    private final long count;
+    private final Country countryWithMinInternetUsers;
+    private final Country countryWithMaxInternetUsers;
+    private final Country countryWithMinLiteracyRate;
+    private final Country countryWithMaxLiteracyRate;
+    private final double meanInternetUsers;
+    private final double varianceInternetUsers;
+    private final double meanLiteracyRate;
+    private final double varianceLiteracyRate;
+    private final double correlationCoefficient;
+
+    public IndicatorSummary(IndicatorSummaryBuilder builder) {
+        this.count = builder.count;
+        this.countryWithMinInternetUsers = builder.countryWithMinInternetUsers;
+        this.countryWithMaxInternetUsers = builder.countryWithMaxInternetUsers;
+        this.countryWithMinLiteracyRate = builder.countryWithMinLiteracyRate;
+        this.countryWithMaxLiteracyRate = builder.countryWithMaxLiteracyRate;
+        this.meanInternetUsers = builder.meanInternetUsers;
+        this.varianceInternetUsers = builder.varianceInternetUsers;
+        this.meanLiteracyRate = builder.meanLiteracyRate;
+        this.varianceLiteracyRate = builder.varianceLiteracyRate;
+        this.correlationCoefficient = builder.correlationCoefficient;
+    }
+
+    @Override
+    public String toString() {
+        return "IndicatorSummary{" +
+                "count=" + count +
+                ", countryWithMinInternetUsers=" + countryWithMinInternetUsers +
+                ", countryWithMaxInternetUsers=" + countryWithMaxInternetUsers +
+                ", countryWithMinLiteracyRate=" + countryWithMinLiteracyRate +
+                ", countryWithMaxLiteracyRate=" + countryWithMaxLiteracyRate +
+                ", meanInternetUsers=" + meanInternetUsers +
+                ", varianceInternetUsers=" + varianceInternetUsers +
+                ", meanLiteracyRate=" + meanLiteracyRate +
+                ", varianceLiteracyRate=" + varianceLiteracyRate +
+                ", correlationCoefficient=" + correlationCoefficient +
+                '}';
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public Country getCountryWithMinInternetUsers() {
+        return countryWithMinInternetUsers;
+    }
+
+    public Country getCountryWithMaxInternetUsers() {
+        return countryWithMaxInternetUsers;
+    }
+
+    public Country getCountryWithMinLiteracyRate() {
+        return countryWithMinLiteracyRate;
+    }
+
+    public Country getCountryWithMaxLiteracyRate() {
+        return countryWithMaxLiteracyRate;
+    }
+
+    public double getMeanInternetUsers() {
+        return meanInternetUsers;
+    }
+
+    public double getVarianceInternetUsers() {
+        return varianceInternetUsers;
+    }
+
+    public double getMeanLiteracyRate() {
+        return meanLiteracyRate;
+    }
+
+    public double getVarianceLiteracyRate() {
+        return varianceLiteracyRate;
+    }
+
+    public double getCorrelationCoefficient() {
+        return correlationCoefficient;
+    }
+
+    public static class IndicatorSummaryBuilder {
+
+        private long count;
+        private Country countryWithMinInternetUsers;
+        private Country countryWithMaxInternetUsers;
+        private Country countryWithMinLiteracyRate;
+        private Country countryWithMaxLiteracyRate;
+        private double meanInternetUsers = Double.NaN;
+        private double varianceInternetUsers = Double.NaN;
+        private double meanLiteracyRate = Double.NaN;
+        private double varianceLiteracyRate = Double.NaN;
+        private double correlationCoefficient = Double.NaN;
+
+        public IndicatorSummaryBuilder(long count) {
+            this.count = count;
+        }
+
+        public IndicatorSummaryBuilder withInternetUsers(Country min, Country max, double mean, double variance) {
+            this.countryWithMinInternetUsers = min;
+            this.countryWithMaxInternetUsers = max;
+            this.meanInternetUsers = mean;
+            this.varianceInternetUsers = variance;
+            return this;
+        }
+
+        public IndicatorSummaryBuilder withLiteracyRate(Country min, Country max, double mean, double variance) {
+            this.countryWithMinLiteracyRate = min;
+            this.countryWithMaxLiteracyRate = max;
+            this.meanLiteracyRate = mean;
+            this.varianceLiteracyRate = variance;
+            return this;
+        }
+
+        public IndicatorSummaryBuilder withCorrelationCoefficient(double correlationCoefficient) {
+            this.correlationCoefficient = correlationCoefficient;
+            return this;
+        }
+
+        public IndicatorSummary build() {
+            return new IndicatorSummary(this);
+        }
+
+    }
+}
@@ -0,0 +1,64 @@
+package com.romanmayer.analyzer.model;
+
+/**
+ * The least-squares line {@code y = slope * x + intercept} through the rows that have both values.
+ */
+public class LinearRegression {
+
+    private final String x;
+    private final String y;
+    private final long count;
+    private final double slope;
+    private final double intercept;
+    private final double rSquared;
+
+    public LinearRegression(String x, String y, long count, double slope, double intercept, double rSquared) {
+        this.x = x;
+        this.y = y;
+        this.count = count;
+        this.slope = slope;
+        this.intercept = intercept;
+        this.rSquared = rSquared;
+    }
+
+    public String getX() {
+        return x;
+    }
+
+    public String getY() {
+        return y;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getSlope() {
+        return slope;
+    }
+
+    public double getIntercept() {
+        return intercept;
+    }
+
+    /**
+     * The share of the variance of y that the line explains, from 0 to 1.
+     */
+    public double getRSquared() {
+        return rSquared;
+    }
+
+    public double predict(double xValue) {
+        return slope * xValue + intercept;
+    }
+
+    @Override
+    public String toString() {
+        return "LinearRegression{" +
+                y + " = " + slope + " * " + x + " + " + intercept +
+                ", rSquared=" + rSquared +
+                ", count=" + count +
+                '}';
+    }
+
+}
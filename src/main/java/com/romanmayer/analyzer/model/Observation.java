@@ -0,0 +1,59 @@
+package com.romanmayer.analyzer.model;
+
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+
+/**
+ * The value of one indicator for one country in one year. Unlike the two indicators of {@link Country}, there
+ * may be any number of indicators and years; a missing value has no row.
+ */
+@Entity
+public class Observation {
+
+    @EmbeddedId
+    private ObservationKey key;
+
+    private double value;
+
+    // Default constructor for JPA
+    public Observation() {
+    }
+
+    public Observation(String countryCode, String indicatorCode, int year, double value) {
+        this.key = new ObservationKey(countryCode, indicatorCode, year);
+        this.value = value;
+    }
+
+    @Override
+    public String toString() {
+        return "Observation{" +
+                "key=" + key +
+                ", value=" + value +
+                '}';
+    }
+
+    public ObservationKey getKey() {
+        return key;
+    }
+
+    public String getCountryCode() {
+        return key.getCountryCode();
+    }
+
+    public String getIndicatorCode() {
+        return key.getIndicatorCode();
+    }
+
+    public int getYear() {
+        return key.getYear();
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    public void setValue(double value) {
+        this.value = value;
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.romanmayer.analyzer.model;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Identifies one value of a time series: a country, a World Bank indicator code like "IT.NET.USER.ZS" and a year.
+ */
+@Embeddable
+public class ObservationKey implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Column(length = 3)
+    private String countryCode;
+
+    @Column(length = 64)
+    private String indicatorCode;
+
+    @Column(name = "observationYear")
+    private int year;
+
+    // Default constructor for JPA
+    public ObservationKey() {
+    }
+
+    public ObservationKey(String countryCode, String indicatorCode, int year) {
+        this.countryCode = countryCode;
+        this.indicatorCode = indicatorCode;
+        this.year = year;
+    }
+
+    public String getCountryCode() {
+        return countryCode;
+    }
+
+    public String getIndicatorCode() {
+        return indicatorCode;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ObservationKey)) {
+            return false;
+        }
+        ObservationKey that = (ObservationKey) o;
+        return year == that.year &&
+                Objects.equals(countryCode, that.countryCode) &&
+                Objects.equals(indicatorCode, that.indicatorCode);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(countryCode, indicatorCode, year);
+    }
+
+    @Override
+    public String toString() {
+        return countryCode + "/" + indicatorCode + "/" + year;
+    }
+
+}
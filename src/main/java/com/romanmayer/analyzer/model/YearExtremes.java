@@ -0,0 +1,59 @@
+package com.romanmayer.analyzer.model;
+
+/**
+ * The countries with the lowest and the highest value of an indicator in one year.
+ */
+public class YearExtremes {
+
+    private final String indicatorCode;
+    private final int year;
+    private final String minCountryCode;
+    private final double minValue;
+    private final String maxCountryCode;
+    private final double maxValue;
+
+    public YearExtremes(String indicatorCode, int year, String minCountryCode, double minValue,
+                        String maxCountryCode, double maxValue) {
+        this.indicatorCode = indicatorCode;
+        this.year = year;
+        this.minCountryCode = minCountryCode;
+        this.minValue = minValue;
+        this.maxCountryCode = maxCountryCode;
+        this.maxValue = maxValue;
+    }
+
+    public String getIndicatorCode() {
+        return indicatorCode;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public String getMinCountryCode() {
+        return minCountryCode;
+    }
+
+    public double getMinValue() {
+        return minValue;
+    }
+
+    public String getMaxCountryCode() {
+        return maxCountryCode;
+    }
+
+    public double getMaxValue() {
+        return maxValue;
+    }
+
+    @Override
+    public String toString() {
+        return "YearExtremes{" +
+                "indicatorCode='" + indicatorCode + '\'' +
+                ", year=" + year +
+                ", min=" + minCountryCode + " " + minValue +
+                ", max=" + maxCountryCode + " " + maxValue +
+                '}';
+    }
+
+}
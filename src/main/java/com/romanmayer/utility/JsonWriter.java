@@ -0,0 +1,154 @@
+package com.romanmayer.utility;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Minimal streaming JSON writer, enough for flat objects and arrays of them.
+ */
+public class JsonWriter
+{
+    private final StringBuilder json = new StringBuilder();
+    // one entry per open object or array: does the next value need a comma?
+    private boolean[] needsComma = new boolean[8];
+    private int depth;
+    private boolean afterName;
+
+    public JsonWriter beginObject()
+    {
+        return open('{');
+    }
+
+    public JsonWriter endObject()
+    {
+        return close('}');
+    }
+
+    public JsonWriter beginArray()
+    {
+        return open('[');
+    }
+
+    public JsonWriter endArray()
+    {
+        return close(']');
+    }
+
+    public JsonWriter name(String name)
+    {
+        separate();
+        appendString(name);
+        json.append(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value)
+    {
+        separate();
+        if(value == null) {
+            json.append("null");
+        } else {
+            appendString(value);
+        }
+        return this;
+    }
+
+    public JsonWriter value(BigDecimal value)
+    {
+        separate();
+        json.append(value == null ? "null" : value.toPlainString());
+        return this;
+    }
+
+    public JsonWriter value(long value)
+    {
+        separate();
+        json.append(value);
+        return this;
+    }
+
+    public JsonWriter value(double value)
+    {
+        separate();
+        // JSON has no NaN or infinity
+        json.append(Double.isNaN(value) || Double.isInfinite(value) ? "null" : Double.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(boolean value)
+    {
+        separate();
+        json.append(value);
+        return this;
+    }
+
+    @Override
+    public String toString()
+    {
+        return json.toString();
+    }
+
+    private JsonWriter open(char bracket)
+    {
+        separate();
+        json.append(bracket);
+        if(++depth == needsComma.length) {
+            needsComma = Arrays.copyOf(needsComma, depth * 2);
+        }
+        needsComma[depth] = false;
+        return this;
+    }
+
+    private JsonWriter close(char bracket)
+    {
+        depth--;
+        json.append(bracket);
+        return this;
+    }
+
+    private void separate()
+    {
+        if(afterName) {
+            afterName = false;
+            return;
+        }
+        if(needsComma[depth]) {
+            json.append(',');
+        }
+        needsComma[depth] = true;
+    }
+
+    private void appendString(String value)
+    {
+        json.append('"');
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch(c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if(c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+}
@@ -2,6 +2,10 @@
 
 package com.romanmayer.utility;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -37,23 +41,28 @@ public class TableBuilder
         return widths;
     }
 
-    @Override
-    public String toString()
+    /**
+     * Writes the table to the writer, after a first pass over the rows to compute the column widths.
+     */
+    public void writeTo(Writer writer) throws IOException
     {
-        StringBuilder buf = new StringBuilder();
-
-        int[] colWidths = colWidths();
+        TableWriter tableWriter = new TableWriter(writer, colWidths());
 
         for(String[] row : rows) {
-            for(int colNum = 0; colNum < row.length; colNum++) {
-                buf.append(
-                        StringUtils.rightPad(
-                                StringUtils.defaultString(
-                                        row[colNum]), colWidths[colNum]));
-                buf.append(' ');
-            }
+            tableWriter.writeRow(row);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        StringWriter buf = new StringWriter();
 
-            buf.append('\n');
+        try {
+            writeTo(buf);
+        } catch(IOException ioe) {
+            // a StringWriter does not throw
+            throw new UncheckedIOException(ioe);
         }
 
         return buf.toString();
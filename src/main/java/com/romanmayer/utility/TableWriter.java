@@ -0,0 +1,58 @@
+package com.romanmayer.utility;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writes table rows straight to a Writer, with every cell padded to the declared width of its column.
+ *
+ * Unlike {@link TableBuilder} nothing is buffered, so the first row is written before the last one is known.
+ * A cell that is longer than its column is written in full, and columns without a declared width get none.
+ */
+public class TableWriter implements Flushable
+{
+    private static final char[] SPACES = new char[64];
+
+    static {
+        Arrays.fill(SPACES, ' ');
+    }
+
+    private final Writer writer;
+    private final int[] colWidths;
+
+    public TableWriter(Writer writer, int... colWidths)
+    {
+        this.writer = writer;
+        this.colWidths = colWidths;
+    }
+
+    public void writeRow(String... cols) throws IOException
+    {
+        for(int colNum = 0; colNum < cols.length; colNum++) {
+            String col = cols[colNum] == null ? "" : cols[colNum];
+            writer.write(col);
+            pad(colNum < colWidths.length ? colWidths[colNum] - col.length() : 0);
+            writer.write(' ');
+        }
+
+        writer.write('\n');
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        writer.flush();
+    }
+
+    private void pad(int count) throws IOException
+    {
+        while(count > 0) {
+            int chunk = Math.min(count, SPACES.length);
+            writer.write(SPACES, 0, chunk);
+            count -= chunk;
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.romanmayer.analyzer.analytics;
+
+import com.romanmayer.analyzer.benchmark.SyntheticColumns;
+import com.romanmayer.analyzer.benchmark.SyntheticCountries;
+import com.romanmayer.analyzer.model.LinearRegression;
+import org.apache.commons.math3.stat.correlation.PearsonsCorrelation;
+import org.apache.commons.math3.stat.correlation.SpearmansCorrelation;
+import org.apache.commons.math3.stat.regression.SimpleRegression;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Checks the matrices of the {@link CorrelationEngine} against commons-math, pair by pair over the rows that
+ * have both values, and the parallel engine against the sequential one.
+ */
+public class CorrelationEngineTest {
+
+    private static final double TOLERANCE = 1e-9;
+
+    private CorrelationEngine sequentialEngine;
+    private CorrelationEngine parallelEngine;
+
+    @Before
+    public void setUp() {
+        sequentialEngine = new CorrelationEngine(Integer.MAX_VALUE, 1);
+        // ranges of a few blocks, so a small column set is already summed in parallel
+        parallelEngine = new CorrelationEngine(4 * PairMoments.BLOCK_ROWS, 2);
+    }
+
+    @After
+    public void tearDown() {
+        sequentialEngine.shutdown();
+        parallelEngine.shutdown();
+    }
+
+    @Test
+    public void matchesCommonsMath() {
+        ColumnSet columns = SyntheticColumns.generate(20_000, 6, SyntheticCountries.DEFAULT_SEED);
+        for (CorrelationEngine engine : Arrays.asList(sequentialEngine, parallelEngine)) {
+            CorrelationMatrix pearson = engine.pearson(columns);
+            CorrelationMatrix spearman = engine.spearman(columns);
+            for (int x = 0; x < columns.size(); x++) {
+                for (int y = x + 1; y < columns.size(); y++) {
+                    String pair = columns.name(x) + " / " + columns.name(y);
+                    double[][] shared = sharedRows(columns.column(x), columns.column(y), columns.rows());
+                    SimpleRegression expectedRegression = new SimpleRegression();
+                    for (int row = 0; row < shared[0].length; row++) {
+                        expectedRegression.addData(shared[0][row], shared[1][row]);
+                    }
+                    LinearRegression regression = engine.regression(columns, columns.name(x), columns.name(y));
+
+                    Assert.assertEquals(pair, shared[0].length, pearson.count(x, y));
+                    assertClose(pair, new PearsonsCorrelation().correlation(shared[0], shared[1]),
+                            pearson.correlation(x, y));
+                    assertClose(pair, new SpearmansCorrelation().correlation(shared[0], shared[1]),
+                            spearman.correlation(x, y));
+                    assertClose(pair, expectedRegression.getSlope(), regression.getSlope());
+                    assertClose(pair, expectedRegression.getIntercept(), regression.getIntercept());
+                    assertClose(pair, expectedRegression.getRSquare(), regression.getRSquared());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void parallelMatchesSequential() {
+        ColumnSet columns = SyntheticColumns.generate(100_000, 10, SyntheticCountries.DEFAULT_SEED);
+        CorrelationMatrix sequential = sequentialEngine.pearson(columns);
+        CorrelationMatrix parallel = parallelEngine.pearson(columns);
+        for (int x = 0; x < columns.size(); x++) {
+            for (int y = 0; y < columns.size(); y++) {
+                String pair = columns.name(x) + " / " + columns.name(y);
+                Assert.assertEquals(pair, sequential.count(x, y), parallel.count(x, y));
+                assertClose(pair, sequential.correlation(x, y), parallel.correlation(x, y));
+            }
+        }
+    }
+
+    private static double[][] sharedRows(double[] x, double[] y, int rows) {
+        double[] sharedX = new double[rows];
+        double[] sharedY = new double[rows];
+        int count = 0;
+        for (int row = 0; row < rows; row++) {
+            if (!Double.isNaN(x[row]) && !Double.isNaN(y[row])) {
+                sharedX[count] = x[row];
+                sharedY[count] = y[row];
+                count++;
+            }
+        }
+        return new double[][]{Arrays.copyOf(sharedX, count), Arrays.copyOf(sharedY, count)};
+    }
+
+    private static void assertClose(String message, double expected, double actual) {
+        if (Double.isNaN(expected)) {
+            Assert.assertTrue(message + " should be NaN, was " + actual, Double.isNaN(actual));
+            return;
+        }
+        Assert.assertEquals(message, expected, actual, TOLERANCE * Math.max(1, Math.abs(expected)));
+    }
+
+}
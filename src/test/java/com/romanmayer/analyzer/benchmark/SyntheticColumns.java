@@ -0,0 +1,43 @@
+package com.romanmayer.analyzer.benchmark;
+
+import com.romanmayer.analyzer.analytics.ColumnSet;
+
+import java.util.Random;
+
+/**
+ * Synthetic indicator columns for the correlation engine, shared by its tests and benchmarks.
+ */
+public class SyntheticColumns {
+
+    private static final double NULL_PROBABILITY = 0.05;
+
+    /**
+     * Every column follows the first one with its own weight and noise. The second column misses the same rows
+     * as the first, the others miss 5% random rows, and the third one is rounded to whole numbers so it has ties.
+     */
+    public static ColumnSet generate(int rows, int indicators, long seed) {
+        Random random = new Random(seed);
+        double[] base = new double[rows];
+        for (int row = 0; row < rows; row++) {
+            base[row] = random.nextDouble() * 100;
+        }
+        ColumnSet columns = new ColumnSet(rows);
+        double[] first = null;
+        for (int indicator = 0; indicator < indicators; indicator++) {
+            double weight = random.nextGaussian();
+            double offset = random.nextDouble() * 1000;
+            double[] values = new double[rows];
+            for (int row = 0; row < rows; row++) {
+                boolean missing = indicator == 1 ? Double.isNaN(first[row]) : random.nextDouble() < NULL_PROBABILITY;
+                double value = offset + weight * base[row] + random.nextGaussian() * 10;
+                values[row] = missing ? Double.NaN : indicator == 2 ? Math.rint(value) : value;
+            }
+            if (indicator == 0) {
+                first = values;
+            }
+            columns.add("SYN.IND." + indicator, values);
+        }
+        return columns;
+    }
+
+}
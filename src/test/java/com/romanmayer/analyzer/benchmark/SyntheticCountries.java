@@ -0,0 +1,108 @@
+package com.romanmayer.analyzer.benchmark;
+
+import com.romanmayer.analyzer.feed.CountryChange;
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.Country.CountryBuilder;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Generates reproducible country data for tests and benchmarks. The same rows and seed always give the same countries.
+ *
+ * Codes are upper-case letters, three of them as long as that is enough and more after that. Both indicators
+ * are missing for a few percent of the countries, and the literacy rate is loosely correlated with the
+ * internet users, like in the real data.
+ */
+public class SyntheticCountries {
+
+    public static final long DEFAULT_SEED = 42L;
+
+    private static final double NULL_PROBABILITY = 0.05;
+
+    public static List<Country> generate(int rows) {
+        return generate(rows, DEFAULT_SEED);
+    }
+
+    public static List<Country> generate(int rows, long seed) {
+        Random random = new Random(seed);
+        int codeLength = codeLength(rows);
+        List<Country> countries = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            double internetUsers = random.nextDouble() * 100;
+            double adultLiteracyRate = Math.min(100, 40 + internetUsers * 0.5 + random.nextGaussian() * 10);
+            countries.add(new CountryBuilder(code(i, codeLength), "Country " + i)
+                    .withInternetUsers(random.nextDouble() < NULL_PROBABILITY ? null : decimal(internetUsers))
+                    .withLiteracyRate(random.nextDouble() < NULL_PROBABILITY ? null : decimal(adultLiteracyRate))
+                    .build());
+        }
+        return countries;
+    }
+
+    /**
+     * Applies random updates, deletes and creates to the countries and hands each change to the listener once the
+     * list has it. An update changes both indicators of a country in place, a delete moves the last country into
+     * the gap, and a created country has a code longer than the generated ones.
+     */
+    public static void mutate(Random random, List<Country> countries, int mutations,
+                              Consumer<CountryChange> listener) {
+        int rows = countries.size();
+        int codeLength = codeLength(rows + mutations) + 1;
+        for (int mutation = 0; mutation < mutations; mutation++) {
+            int operation = countries.isEmpty() ? 2 : random.nextInt(3);
+            if (operation == 0) {
+                Country country = countries.get(random.nextInt(countries.size()));
+                country.setInternetUsers(randomValue(random));
+                country.setAdultLiteracyRate(randomValue(random));
+                listener.accept(CountryChange.updated(country));
+            } else if (operation == 1) {
+                int index = random.nextInt(countries.size());
+                Country country = countries.get(index);
+                countries.set(index, countries.get(countries.size() - 1));
+                countries.remove(countries.size() - 1);
+                listener.accept(CountryChange.deleted(country));
+            } else {
+                Country country = new CountryBuilder(code(rows + mutation, codeLength), "Created " + mutation)
+                        .withInternetUsers(randomValue(random))
+                        .withLiteracyRate(randomValue(random))
+                        .build();
+                countries.add(country);
+                listener.accept(CountryChange.created(country));
+            }
+        }
+    }
+
+    public static String code(int i, int length) {
+        char[] code = new char[length];
+        for (int position = length - 1; position >= 0; position--) {
+            code[position] = (char) ('A' + i % 26);
+            i /= 26;
+        }
+        return new String(code);
+    }
+
+    public static int codeLength(int rows) {
+        int length = 3;
+        for (long capacity = 26 * 26 * 26; capacity < rows; capacity *= 26) {
+            length++;
+        }
+        return length;
+    }
+
+    // a value up to 100 with 5 decimals, missing for one in 20
+    private static BigDecimal randomValue(Random random) {
+        if (random.nextInt(20) == 0) {
+            return null;
+        }
+        return BigDecimal.valueOf(random.nextInt(10_000_000), 5);
+    }
+
+    private static BigDecimal decimal(double value) {
+        return BigDecimal.valueOf(Math.max(0, value)).setScale(8, RoundingMode.HALF_UP);
+    }
+
+}
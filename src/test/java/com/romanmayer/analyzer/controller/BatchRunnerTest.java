@@ -0,0 +1,76 @@
+package com.romanmayer.analyzer.controller;
+
+import com.romanmayer.analyzer.dao.CountryDaoImpl;
+import com.romanmayer.analyzer.dao.TestDatabase;
+import com.romanmayer.analyzer.model.Country.CountryBuilder;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+public class BatchRunnerTest {
+
+    private SessionFactory sessionFactory;
+    private CountryDaoImpl countryDao;
+    private StringWriter out;
+
+    @Before
+    public void setUp() {
+        sessionFactory = TestDatabase.inMemorySessionFactory();
+        countryDao = new CountryDaoImpl(sessionFactory);
+        countryDao.enableWriteBehind(Integer.MAX_VALUE, Long.MAX_VALUE, true);
+        out = new StringWriter();
+    }
+
+    @After
+    public void tearDown() {
+        countryDao.close();
+    }
+
+    @Test
+    public void aFailedExportIsTheErrorOfItsCommand() throws IOException {
+        boolean succeeded = run("add AAA name=First", "export csv /nonexistent/dir/out.csv", "get AAA");
+
+        Assert.assertFalse(succeeded);
+        String[] lines = out.toString().split("\n");
+        Assert.assertEquals(4, lines.length);
+        Assert.assertTrue(lines[1], lines[1].contains("\"error\":\"java.nio.file.NoSuchFileException"));
+        Assert.assertTrue(lines[2], lines[2].contains("\"First\""));
+        Assert.assertTrue(lines[3], lines[3].contains("\"errors\":1"));
+        Assert.assertTrue(lines[3], lines[3].contains("\"written\":true"));
+    }
+
+    @Test
+    public void aRejectedChangeWritesNoneOfTheBatch() throws IOException {
+        Assert.assertTrue(countryDao.getCountries().isEmpty());
+        // created behind the back of the DAO, so the batch takes AAA for a new code
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        session.save(new CountryBuilder("AAA", "Stored").build());
+        session.getTransaction().commit();
+        session.close();
+
+        boolean succeeded = run("add BBB name=Second", "add AAA name=Again");
+
+        Assert.assertFalse(succeeded);
+        String[] lines = out.toString().split("\n");
+        Assert.assertTrue(lines[2], lines[2].contains("\"errors\":0"));
+        Assert.assertTrue(lines[2], lines[2].contains("\"written\":false"));
+        Assert.assertNull(countryDao.findByCode("BBB"));
+        Assert.assertEquals("Stored", countryDao.findByCode("AAA").getName());
+        Assert.assertNull(new CountryDaoImpl(sessionFactory).findByCode("BBB"));
+    }
+
+    private boolean run(String... commands) throws IOException {
+        String batch = String.join("\n", commands);
+        return new BatchRunner(countryDao, out).run(new BufferedReader(new StringReader(batch)));
+    }
+
+}
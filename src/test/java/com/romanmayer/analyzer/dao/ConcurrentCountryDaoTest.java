@@ -0,0 +1,189 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.Country.CountryBuilder;
+import com.romanmayer.analyzer.model.Indicator;
+import com.romanmayer.analyzer.model.IndicatorSummary;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Writers mutate the countries while readers check that every answer is consistent in itself. The writers keep
+ * the number of complete countries constant: they update complete countries with complete values, and create
+ * and delete countries without a literacy rate.
+ */
+public class ConcurrentCountryDaoTest {
+
+    private static final int COMPLETE_COUNTRIES = 200;
+    private static final int WRITERS = 2;
+    private static final int READERS = 3;
+    private static final int MUTATIONS_PER_WRITER = 300;
+    private static final double TOLERANCE = SummaryAssert.TOLERANCE;
+
+    private SessionFactory sessionFactory;
+    private CountryDaoImpl delegate;
+    private ConcurrentCountryDao countryDao;
+
+    @Before
+    public void setUp() {
+        sessionFactory = TestDatabase.inMemorySessionFactory();
+        Random random = new Random(42);
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        for (int i = 0; i < COMPLETE_COUNTRIES; i++) {
+            session.save(new CountryBuilder(code(i), "Country " + i)
+                    .withInternetUsers(value(random))
+                    .withLiteracyRate(value(random))
+                    .build());
+        }
+        session.getTransaction().commit();
+        session.close();
+        delegate = new CountryDaoImpl(sessionFactory);
+        countryDao = new ConcurrentCountryDao(delegate);
+    }
+
+    @After
+    public void tearDown() {
+        delegate.close();
+    }
+
+    @Test
+    public void readersSeeConsistentCountriesWhileWritersMutate() throws InterruptedException {
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Thread> writers = new ArrayList<>();
+        for (int writer = 0; writer < WRITERS; writer++) {
+            writers.add(start("writer-" + writer, failures, new Writer(writer)));
+        }
+        List<Thread> readers = new ArrayList<>();
+        for (int reader = 0; reader < READERS; reader++) {
+            Random random = new Random(reader);
+            readers.add(start("reader-" + reader, failures, () -> {
+                while (writing.get()) {
+                    check(random);
+                }
+            }));
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        if (!failures.isEmpty()) {
+            AssertionError error = new AssertionError(failures.size() + " threads failed");
+            for (Throwable failure : failures) {
+                error.addSuppressed(failure);
+            }
+            throw error;
+        }
+        // the running statistics still match a scan of the countries, and the delegate agrees on them
+        CountrySnapshot snapshot = new CountrySnapshot(countryDao.getCountries());
+        IndicatorSummary scanned = snapshot.accumulate(new StatisticsAccumulator()).toSummary(snapshot);
+        SummaryAssert.assertMatches(scanned, countryDao.summarize());
+        SummaryAssert.assertMatches(delegate.summarize(), countryDao.summarize());
+        Assert.assertEquals(delegate.getCountries().size(), countryDao.getCountries().size());
+    }
+
+    private class Writer implements Runnable {
+
+        private final int number;
+        private final Random random;
+        private final Deque<String> created = new ArrayDeque<>();
+        private int nextCode;
+
+        private Writer(int number) {
+            this.number = number;
+            this.random = new Random(100 + number);
+        }
+
+        @Override
+        public void run() {
+            for (int mutation = 0; mutation < MUTATIONS_PER_WRITER; mutation++) {
+                int operation = random.nextInt(3);
+                if (operation == 0) {
+                    // every writer updates countries of its own, so no two writers race on one
+                    int row = number + WRITERS * random.nextInt(COMPLETE_COUNTRIES / WRITERS);
+                    Country country = countryDao.findByCode(code(row));
+                    country.setInternetUsers(value(random));
+                    country.setAdultLiteracyRate(value(random));
+                    countryDao.update(country);
+                } else if (operation == 1 || created.isEmpty()) {
+                    String code = "Z" + (char) ('A' + number) + (char) ('A' + nextCode++ % 26);
+                    if (countryDao.findByCode(code) == null) {
+                        countryDao.create(new CountryBuilder(code, "Incomplete " + code)
+                                .withInternetUsers(value(random))
+                                .build());
+                        created.add(code);
+                    }
+                } else {
+                    countryDao.delete(countryDao.findByCode(created.poll()));
+                }
+            }
+        }
+
+    }
+
+    private void check(Random random) {
+        IndicatorSummary summary = countryDao.summarize();
+        Assert.assertEquals(COMPLETE_COUNTRIES, summary.getCount());
+        double minimum = summary.getCountryWithMinInternetUsers().getInternetUsers().doubleValue();
+        double maximum = summary.getCountryWithMaxInternetUsers().getInternetUsers().doubleValue();
+        Assert.assertTrue(minimum <= summary.getMeanInternetUsers() + TOLERANCE);
+        Assert.assertTrue(summary.getMeanInternetUsers() <= maximum + TOLERANCE);
+        Assert.assertTrue(summary.getVarianceLiteracyRate() >= 0);
+        Assert.assertTrue(Math.abs(summary.getCorrelationCoefficient()) <= 1 + TOLERANCE);
+
+        List<Country> top = countryDao.topCountries(Indicator.INTERNET_USERS, 10);
+        Assert.assertEquals(10, top.size());
+        for (int i = 1; i < top.size(); i++) {
+            Assert.assertTrue(top.get(i - 1).getInternetUsers().compareTo(top.get(i).getInternetUsers()) >= 0);
+        }
+        for (Country country : countryDao.countriesInRange(Indicator.ADULT_LITERACY_RATE, 20, 40)) {
+            double value = country.getAdultLiteracyRate().doubleValue();
+            Assert.assertTrue(value >= 20 && value <= 40);
+        }
+        Country country = countryDao.findByCode(code(random.nextInt(COMPLETE_COUNTRIES)));
+        Assert.assertNotNull(country);
+        Assert.assertNotNull(country.getAdultLiteracyRate());
+        double median = countryDao.quantile(Indicator.INTERNET_USERS, 0.5);
+        Assert.assertTrue(median >= 0 && median <= 100);
+    }
+
+    private static Thread start(String name, Queue<Throwable> failures, Runnable task) {
+        Thread thread = new Thread(() -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                failures.add(t);
+            }
+        }, name);
+        thread.start();
+        return thread;
+    }
+
+    private static String code(int i) {
+        return "C" + (char) ('A' + i / 26 % 26) + (char) ('A' + i % 26);
+    }
+
+    private static BigDecimal value(Random random) {
+        return BigDecimal.valueOf(random.nextInt(10_000_000), 5);
+    }
+
+}
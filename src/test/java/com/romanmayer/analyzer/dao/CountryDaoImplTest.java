@@ -0,0 +1,146 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.analytics.CorrelationMatrix;
+import com.romanmayer.analyzer.feed.ChangeFeed;
+import com.romanmayer.analyzer.feed.ChangeListener;
+import com.romanmayer.analyzer.feed.CountryChange;
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.Country.CountryBuilder;
+import com.romanmayer.analyzer.model.Indicator;
+import com.romanmayer.analyzer.model.LinearRegression;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class CountryDaoImplTest {
+
+    private SessionFactory sessionFactory;
+    private CountryDaoImpl countryDao;
+
+    @Before
+    public void setUp() {
+        sessionFactory = TestDatabase.inMemorySessionFactory();
+        countryDao = new CountryDaoImpl(sessionFactory);
+    }
+
+    @After
+    public void tearDown() {
+        countryDao.close();
+    }
+
+    @Test
+    public void onlyChangesTheDatabaseAcceptedArePublished() {
+        List<String> published = Collections.synchronizedList(new ArrayList<>());
+        ChangeFeed.Subscription subscription = countryDao.subscribe("test", new ChangeListener() {
+            @Override
+            public void reset(List<Country> countries) {
+            }
+
+            @Override
+            public void changed(CountryChange change) {
+                published.add(change.getType() + " " + change.getCode());
+            }
+        });
+
+        countryDao.create(country("AAA", "First"));
+        try {
+            // longer than the name column
+            countryDao.create(country("BBB", "A name much too long for the name column"));
+            Assert.fail("The database accepted a name longer than its column");
+        } catch (RuntimeException expected) {
+            // refused
+        }
+        try {
+            countryDao.create(country("AAA", "Again"));
+            Assert.fail("A second country with code AAA was accepted");
+        } catch (IllegalArgumentException expected) {
+            // refused before the database
+        }
+        countryDao.delete(countryDao.findByCode("AAA"));
+
+        Assert.assertTrue(subscription.awaitCaughtUp(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("CREATED AAA", "DELETED AAA"), published);
+    }
+
+    @Test
+    public void aRefusedChangeLeavesNoTraceInMemory() {
+        Assert.assertTrue(countryDao.getCountries().isEmpty());
+        countryDao.create(country("AAA", "First"));
+        try {
+            countryDao.create(country("BBB", "A name much too long for the name column"));
+            Assert.fail("The database accepted a name longer than its column");
+        } catch (RuntimeException expected) {
+            // refused
+        }
+        Assert.assertNull(countryDao.findByCode("BBB"));
+        countryDao.create(country("BBB", "Second"));
+
+        // edited in place, like the Prompter does
+        Country first = countryDao.findByCode("AAA");
+        first.setName("A name much too long for the name column");
+        try {
+            countryDao.update(first);
+            Assert.fail("The database accepted a name longer than its column");
+        } catch (RuntimeException expected) {
+            // refused
+        }
+        Assert.assertEquals("First", countryDao.findByCode("AAA").getName());
+        Assert.assertEquals(2, countryDao.getCountries().size());
+    }
+
+    @Test
+    public void aCopyReplacesTheCountryInMemory() {
+        Assert.assertTrue(countryDao.getCountries().isEmpty());
+        countryDao.create(country("AAA", "First"));
+        countryDao.create(country("BBB", "Second"));
+        countryDao.create(country("CCC", "Third"));
+
+        Country copy = country("BBB", "Renamed");
+        countryDao.update(copy);
+        countryDao.delete(country("AAA", "First"));
+
+        List<Country> countries = countryDao.getCountries();
+        Assert.assertEquals(2, countries.size());
+        Assert.assertTrue(countries.contains(copy));
+        Assert.assertSame(copy, countryDao.findByCode("BBB"));
+        Assert.assertNull(countryDao.findByCode("AAA"));
+    }
+
+    @Test
+    public void correlationsAgreeWithTheSummary() {
+        countryDao.create(country("AAA", "First"));
+        countryDao.create(new CountryBuilder("BBB", "Second").withInternetUsers(BigDecimal.valueOf(10))
+                .withLiteracyRate(BigDecimal.valueOf(30)).build());
+        countryDao.create(new CountryBuilder("CCC", "Third").withInternetUsers(BigDecimal.valueOf(20))
+                .withLiteracyRate(BigDecimal.valueOf(50)).build());
+        countryDao.create(new CountryBuilder("DDD", "Fourth").withInternetUsers(BigDecimal.valueOf(40))
+                .withLiteracyRate(BigDecimal.valueOf(80)).build());
+
+        String internetUsers = Indicator.INTERNET_USERS.getLabel();
+        String literacyRate = Indicator.ADULT_LITERACY_RATE.getLabel();
+        CorrelationMatrix correlations = countryDao.correlations();
+        Assert.assertEquals(4, correlations.count(0, 0));
+        Assert.assertEquals(3, correlations.count(0, 1));
+        Assert.assertEquals(countryDao.summarize().getCorrelationCoefficient(),
+                correlations.correlation(internetUsers, literacyRate), SummaryAssert.TOLERANCE);
+        Assert.assertEquals(1, countryDao.rankCorrelations().correlation(internetUsers, literacyRate),
+                SummaryAssert.TOLERANCE);
+        LinearRegression regression = correlations.regression(internetUsers, literacyRate);
+        Assert.assertEquals(3, regression.getCount());
+        Assert.assertEquals(80, regression.predict(40), 5);
+    }
+
+    private static Country country(String code, String name) {
+        return new CountryBuilder(code, name).withInternetUsers(BigDecimal.ONE).build();
+    }
+
+}
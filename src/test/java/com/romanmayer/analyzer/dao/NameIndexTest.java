@@ -0,0 +1,129 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.Country.CountryBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+public class NameIndexTest {
+
+    private final NameIndex index = new NameIndex();
+
+    @Test
+    public void accentsAndPunctuationAreFolded() {
+        Assert.assertEquals("sao tome principe", NameIndex.normalize("São Tomé & Príncipe"));
+        Assert.assertEquals("cote d ivoire", NameIndex.normalize("  CÔTE D’IVOIRE "));
+        put("CIV", "Côte d'Ivoire");
+        put("CUW", "Curaçao");
+
+        Assert.assertEquals(codes("CIV"), search("cote"));
+        Assert.assertEquals(codes("CIV"), search("COTE D IVOIRE"));
+        Assert.assertEquals(codes("CIV"), search("ivoire"));
+        Assert.assertEquals(codes("CUW"), search("curacao"));
+    }
+
+    @Test
+    public void aRemovedNameIsNotFoundAnyMore() {
+        put("DEU", "Germany");
+        put("DZA", "Algeria");
+        index.remove("DEU");
+
+        Assert.assertEquals(1, index.size());
+        Assert.assertEquals(codes(), search("germ"));
+        Assert.assertEquals(codes(), search("erman"));
+        Assert.assertEquals(codes(), search("germny"));
+        // the branch of the removed name was pruned, a name that shares its start is found again
+        put("GEO", "Georgia");
+        Assert.assertEquals(codes("GEO"), search("ge"));
+        Assert.assertEquals(codes("DZA"), search("alg"));
+    }
+
+    @Test
+    public void aCountryIsReindexedUnderItsNewName() {
+        Country country = put("SWZ", "Swaziland");
+        country.setName("Eswatini");
+        index.put(country);
+
+        Assert.assertEquals(1, index.size());
+        Assert.assertEquals(codes(), search("swazi"));
+        Assert.assertEquals(codes("SWZ"), search("eswa"));
+        Assert.assertEquals(codes("SWZ"), search("wati"));
+    }
+
+    @Test
+    public void thePostingsAreRenumberedAfterManyRemovals() {
+        for (int i = 0; i < 2000; i++) {
+            put(String.format("C%04d", i), String.format("Land%04d", i));
+        }
+        // the postings are rebuilt at the 1025th removal, when more ids are removed than live
+        for (int i = 0; i < 1500; i++) {
+            index.remove(String.format("C%04d", i));
+        }
+        put("NEW", "Land9999");
+
+        Assert.assertEquals(501, index.size());
+        // substrings within a word, so only the postings find them
+        Assert.assertEquals(codes(), search("d0100"));
+        Assert.assertEquals(codes(), search("d1024"));
+        Assert.assertEquals(codes("C1600"), search("d1600"));
+        Assert.assertEquals(codes("C1999"), search("d1999"));
+        Assert.assertEquals(codes("NEW"), search("d9999"));
+        Assert.assertEquals(10, index.search("and1", 10).size());
+    }
+
+    @Test
+    public void longerQueriesAllowMoreTypos() {
+        put("TCD", "Chad");
+        put("DEU", "Germany");
+        put("ARG", "Argentina");
+
+        // no typos below 4 letters
+        Assert.assertEquals(codes(), search("chd"));
+        Assert.assertEquals(codes("TCD"), search("chda"));
+        // 1 below 8 letters
+        Assert.assertEquals(codes("DEU"), search("germny"));
+        Assert.assertEquals(codes(), search("grmny"));
+        // 2 from 8 letters on
+        Assert.assertEquals(codes("ARG"), search("arjentinna"));
+        Assert.assertEquals(codes(), search("arjentynna"));
+    }
+
+    @Test
+    public void codesAreFoundInAnyLocale() {
+        put("IDN", "Indonesia");
+        put("IRL", "Ireland");
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            Assert.assertEquals(codes("IDN"), search("idn"));
+            Assert.assertEquals(codes("IRL"), search("i r l"));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    private Country put(String code, String name) {
+        Country country = new CountryBuilder(code, name).build();
+        index.put(country);
+        return country;
+    }
+
+    private List<String> search(String query) {
+        List<String> codes = new ArrayList<>();
+        for (Country country : index.search(query, NameIndex.DEFAULT_LIMIT)) {
+            codes.add(country.getCode());
+        }
+        return codes;
+    }
+
+    private static List<String> codes(String... codes) {
+        return codes.length == 0 ? Collections.emptyList() : Arrays.asList(codes);
+    }
+
+}
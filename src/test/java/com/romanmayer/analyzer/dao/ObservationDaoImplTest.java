@@ -0,0 +1,86 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.importer.ImportResult;
+import com.romanmayer.analyzer.model.Observation;
+import com.romanmayer.analyzer.model.ObservationKey;
+import com.romanmayer.analyzer.model.YearExtremes;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+public class ObservationDaoImplTest {
+
+    private SessionFactory sessionFactory;
+    private ObservationDaoImpl observationDao;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        sessionFactory = TestDatabase.inMemorySessionFactory();
+        observationDao = new ObservationDaoImpl(sessionFactory);
+        file = Files.createTempFile("observations", ".csv");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        sessionFactory.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void importedObservationsAreQueried() throws IOException {
+        Files.write(file, Arrays.asList(
+                "countryCode,indicatorCode,year,value",
+                "deu,it.net.user.zs,2000,30",
+                "DEU,IT.NET.USER.ZS,2010,80",
+                "FRA,IT.NET.USER.ZS,2000,14",
+                "FRA,IT.NET.USER.ZS,2010,77",
+                "FRA,IT.NET.USER.ZS,2005,..",
+                "GERMANY,IT.NET.USER.ZS,2000,30",
+                "DEU,IT.NET.USER.ZS,two thousand,30",
+                "DEU,SE.ADT.LITR.ZS,2000,99"), StandardCharsets.UTF_8);
+
+        ImportResult result = observationDao.importObservations(file);
+        Assert.assertEquals(5, result.getImportedRows());
+        Assert.assertEquals(2, result.getRejectedRows());
+        Assert.assertTrue(result.getRejections().get(0), result.getRejections().get(0).startsWith("line 7: "));
+
+        ObservationCube cube = observationDao.getCube();
+        Assert.assertEquals(2000, cube.getFirstYear());
+        Assert.assertEquals(2010, cube.getLastYear());
+        YearExtremes extremes = cube.extremes("IT.NET.USER.ZS", 2000);
+        Assert.assertEquals("FRA", extremes.getMinCountryCode());
+        Assert.assertEquals("DEU", extremes.getMaxCountryCode());
+        Assert.assertEquals(6.3, cube.trend("FRA", "IT.NET.USER.ZS", 2000, 2010), 1e-9);
+        Assert.assertTrue(Double.isNaN(cube.value("FRA", "IT.NET.USER.ZS", 2005)));
+
+        List<Observation> germany = observationDao.findByCountry("DEU");
+        Assert.assertEquals(3, germany.size());
+        Assert.assertEquals("IT.NET.USER.ZS", germany.get(0).getIndicatorCode());
+        Assert.assertEquals(2000, germany.get(0).getYear());
+    }
+
+    @Test
+    public void theCubeFollowsSavesAndDeletes() {
+        observationDao.save(Arrays.asList(
+                new Observation("DEU", "IT.NET.USER.ZS", 2000, 30),
+                new Observation("FRA", "IT.NET.USER.ZS", 2000, 14)));
+        ObservationCube cube = observationDao.getCube();
+
+        observationDao.save(Arrays.asList(new Observation("FRA", "IT.NET.USER.ZS", 2000, 40)));
+        Assert.assertEquals("FRA", cube.extremes("IT.NET.USER.ZS", 2000).getMaxCountryCode());
+        observationDao.delete(new ObservationKey("FRA", "IT.NET.USER.ZS", 2000));
+        Assert.assertEquals("DEU", cube.extremes("IT.NET.USER.ZS", 2000).getMaxCountryCode());
+        Assert.assertEquals(1, new ObservationDaoImpl(sessionFactory).getCube().countryCount());
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.benchmark.SyntheticCountries;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The parallel statistics scan has to agree with the sequential one, whether the snapshot is split into many
+ * ranges or is too small to split at all.
+ */
+public class ParallelAggregationTest {
+
+    private ParallelAggregation parallelAggregation;
+
+    @Before
+    public void setUp() {
+        // ranges of two bitmap words, so a snapshot of a few thousand rows is split into many of them
+        parallelAggregation = new ParallelAggregation(128, 2);
+    }
+
+    @After
+    public void tearDown() {
+        parallelAggregation.shutdown();
+    }
+
+    @Test
+    public void parallelMatchesSequential() {
+        assertParallelMatchesSequential(new CountrySnapshot(SyntheticCountries.generate(100_000)));
+    }
+
+    @Test
+    public void smallSnapshotsMatchToo() {
+        // below the threshold, and ranges that do not end on a bitmap word
+        assertParallelMatchesSequential(new CountrySnapshot(SyntheticCountries.generate(100)));
+        assertParallelMatchesSequential(new CountrySnapshot(SyntheticCountries.generate(1_000)));
+    }
+
+    private void assertParallelMatchesSequential(CountrySnapshot snapshot) {
+        SummaryAssert.assertMatches(snapshot.accumulate(new StatisticsAccumulator()).toSummary(snapshot),
+                parallelAggregation.aggregate(snapshot).toSummary(snapshot));
+    }
+
+}
@@ -0,0 +1,124 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.benchmark.SyntheticCountries;
+import com.romanmayer.analyzer.feed.CountryChange;
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.Indicator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the quantiles of {@link QuantileSketch}es with the exact quantiles of a sorted copy of the values. The
+ * error of a quantile is the distance of the ranks, in percent of the count, between the value of the sketch and
+ * the exact one.
+ */
+public class QuantileSketchTest {
+
+    private static final double[] FRACTIONS = {0.01, 0.05, 0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99};
+    private static final int K = 200;
+    // the guarantee of a KLL sketch is about 2.5 / k, with a small chance of more
+    private static final double BOUND = 100 * 2.5 / K;
+
+    @Test
+    public void sequentialAndParallelSketchesStayWithinTheBound() {
+        CountrySnapshot snapshot = new CountrySnapshot(SyntheticCountries.generate(100_000));
+        double[] sorted = sortedValues(snapshot, Indicator.INTERNET_USERS);
+
+        QuantileSketch sequential = snapshot.sketch(new QuantileSketch(K), Indicator.INTERNET_USERS, 0,
+                snapshot.wordCount());
+        ParallelAggregation parallelAggregation = new ParallelAggregation(10_000, 2);
+        QuantileSketch parallel;
+        try {
+            parallel = parallelAggregation.sketch(snapshot, Indicator.INTERNET_USERS, K);
+        } finally {
+            parallelAggregation.shutdown();
+        }
+
+        assertWithinBound(sequential, sorted);
+        assertWithinBound(parallel, sorted);
+    }
+
+    /**
+     * Applies random updates, deletes and creates to a snapshot and its running quantiles, querying in between so
+     * that stale sketches are rebuilt, then compares the quantiles with exact ones.
+     */
+    @Test
+    public void runningQuantilesStayWithinTheBoundAfterRandomMutations() {
+        int rows = 20_000;
+        int mutations = 20_000;
+        List<Country> countries = SyntheticCountries.generate(rows);
+        CountrySnapshot snapshot = new CountrySnapshot(countries);
+        RunningQuantiles quantiles = new RunningQuantiles(K);
+        AtomicInteger applied = new AtomicInteger();
+
+        SyntheticCountries.mutate(new Random(SyntheticCountries.DEFAULT_SEED), countries, mutations, change -> {
+            // the old values leave the quantiles before the snapshot changes
+            quantiles.remove(snapshot, change.getCode());
+            if (change.getType() == CountryChange.Type.DELETED) {
+                snapshot.remove(change.getCountry());
+            } else {
+                snapshot.update(change.getCountry());
+                quantiles.add(snapshot, change.getCode());
+            }
+            if (applied.getAndIncrement() % 1000 == 0) {
+                quantiles.sketch(snapshot, Indicator.INTERNET_USERS, null);
+            }
+        });
+
+        Assert.assertTrue(quantiles.getRebuilds() > 0);
+        assertWithinBound(quantiles.sketch(snapshot, Indicator.INTERNET_USERS, null),
+                sortedValues(snapshot, Indicator.INTERNET_USERS));
+    }
+
+    /**
+     * Ties count as the closest rank of the run of equal values.
+     */
+    private static void assertWithinBound(QuantileSketch sketch, double[] sorted) {
+        Assert.assertEquals(sorted.length, sketch.count());
+        Assert.assertEquals(sorted[0], sketch.min(), 0);
+        Assert.assertEquals(sorted[sorted.length - 1], sketch.max(), 0);
+        for (double fraction : FRACTIONS) {
+            double estimate = sketch.quantile(fraction);
+            int target = Math.max(0, (int) Math.ceil(fraction * sorted.length) - 1);
+            int first = lowerBound(sorted, estimate);
+            int last = lowerBound(sorted, Math.nextUp(estimate)) - 1;
+            int distance = target < first ? first - target : target > last ? target - last : 0;
+            double error = 100.0 * distance / sorted.length;
+            Assert.assertTrue(String.format("p%s: %.3f%% rank error, exact %s, sketch %s", fraction * 100, error,
+                    sorted[target], estimate), error <= BOUND);
+        }
+    }
+
+    private static double[] sortedValues(CountrySnapshot snapshot, Indicator indicator) {
+        double[] values = new double[snapshot.size()];
+        int count = 0;
+        for (int row = 0; row < snapshot.size(); row++) {
+            if (snapshot.hasValue(indicator, row)) {
+                values[count++] = snapshot.value(indicator, row);
+            }
+        }
+        values = Arrays.copyOf(values, count);
+        Arrays.sort(values);
+        return values;
+    }
+
+    private static int lowerBound(double[] sorted, double value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.benchmark.SyntheticCountries;
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.Country.CountryBuilder;
+import com.romanmayer.analyzer.model.IndicatorSummary;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Applies random creates, updates and deletes to the countries of a DAO, including deletes of the countries with
+ * the min and max values, and compares the statistics kept up to date by {@link RunningStatistics} with a scan.
+ */
+public class RunningStatisticsTest {
+
+    private static final int ROWS = 500;
+    private static final int COMPARE_EVERY = 100;
+
+    private CountryDaoImpl countryDao;
+    private Random random;
+    private int created;
+
+    @Before
+    public void setUp() {
+        SessionFactory sessionFactory = TestDatabase.inMemorySessionFactory();
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        for (Country country : SyntheticCountries.generate(ROWS)) {
+            session.save(country);
+        }
+        session.getTransaction().commit();
+        session.close();
+        countryDao = new CountryDaoImpl(sessionFactory);
+        // the database is not what is tested here, so the mutations are only written on close
+        countryDao.enableWriteBehind(1000, 3_600_000);
+        random = new Random(SyntheticCountries.DEFAULT_SEED);
+    }
+
+    @After
+    public void tearDown() {
+        countryDao.close();
+    }
+
+    @Test
+    public void matchesAScanAfterRandomMutations() {
+        for (int mutation = 1; mutation <= 2000; mutation++) {
+            mutate();
+            if (mutation % COMPARE_EVERY == 0) {
+                SummaryAssert.assertMatches(countryDao.summarizeFromScratch(), countryDao.summarize());
+            }
+        }
+    }
+
+    @Test
+    public void deletingTheMinAndMaxMovesOnToTheNextCountries() {
+        IndicatorSummary before = countryDao.summarize();
+        countryDao.delete(before.getCountryWithMinInternetUsers());
+        countryDao.delete(countryDao.summarize().getCountryWithMaxLiteracyRate());
+
+        IndicatorSummary after = countryDao.summarize();
+        Assert.assertEquals(before.getCount() - 2, after.getCount());
+        SummaryAssert.assertMatches(countryDao.summarizeFromScratch(), after);
+    }
+
+    @Test
+    public void rebaselinesWithTheParallelScanOnceManyRowsWereTakenOut() {
+        // partitions of 64 rows, so the scan of a few hundred rows really runs in parallel
+        countryDao.setParallelAggregation(new ParallelAggregation(64, 2));
+        for (int mutation = 1; mutation <= 4000; mutation++) {
+            mutate();
+        }
+        Assert.assertTrue(countryDao.getStatisticsRebaselines() > 0);
+        SummaryAssert.assertMatches(countryDao.summarizeFromScratch(), countryDao.summarize());
+    }
+
+    private void mutate() {
+        List<Country> countries = countryDao.getCountries();
+        int operation = countries.isEmpty() ? 0 : random.nextInt(10);
+        if (operation < 3) {
+            // after the codes of the generated countries
+            String code = SyntheticCountries.code(ROWS + created++, 3);
+            countryDao.create(new CountryBuilder(code, "Created " + code)
+                    .withInternetUsers(value())
+                    .withLiteracyRate(value())
+                    .build());
+        } else if (operation < 7) {
+            Country country = countryDao.findByCode(countries.get(random.nextInt(countries.size())).getCode());
+            country.setInternetUsers(value());
+            country.setAdultLiteracyRate(value());
+            countryDao.update(country);
+        } else if (operation < 9) {
+            countryDao.delete(countries.get(random.nextInt(countries.size())));
+        } else {
+            IndicatorSummary summary = countryDao.summarize();
+            Country extreme = random.nextBoolean() ? summary.getCountryWithMinInternetUsers()
+                    : summary.getCountryWithMaxLiteracyRate();
+            if (extreme != null) {
+                countryDao.delete(extreme);
+            }
+        }
+    }
+
+    private BigDecimal value() {
+        if (random.nextInt(20) == 0) {
+            return null;
+        }
+        return BigDecimal.valueOf(random.nextInt(10_000_000), 5);
+    }
+
+}
@@ -0,0 +1,182 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.Country.CountryBuilder;
+import com.romanmayer.analyzer.model.FixedPoint;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+public class SnapshotFileTest {
+
+    private Path directory;
+    private SnapshotFile snapshotFile;
+    private String database;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("snapshot");
+        snapshotFile = new SnapshotFile(directory.resolve("countries.snapshot"));
+        database = UUID.randomUUID().toString();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(snapshotFile.getPath());
+        Files.delete(directory);
+    }
+
+    @Test
+    public void nullsSurviveTheRoundTrip() throws IOException {
+        List<Country> countries = Arrays.asList(
+                new CountryBuilder("AAA", "Ærø Ünïon")
+                        .withInternetUsersFixedPoint(FixedPoint.parse("12.5"))
+                        .withLiteracyRateFixedPoint(FixedPoint.NULL)
+                        .build(),
+                new CountryBuilder(null, null)
+                        .withInternetUsersFixedPoint(FixedPoint.NULL)
+                        .withLiteracyRateFixedPoint(FixedPoint.parse("99.25"))
+                        .build(),
+                new CountryBuilder("CCC", "").build());
+
+        snapshotFile.write(countries, 42);
+
+        SnapshotFile.Header header = snapshotFile.readHeader();
+        Assert.assertEquals(3, header.getRows());
+        Assert.assertEquals(42, header.getDatasetVersion());
+        List<Country> read = snapshotFile.readCountries();
+        Assert.assertEquals(countries.size(), read.size());
+        for (int row = 0; row < countries.size(); row++) {
+            Country expected = countries.get(row);
+            Country actual = read.get(row);
+            Assert.assertEquals(expected.getCode(), actual.getCode());
+            Assert.assertEquals(expected.getName(), actual.getName());
+            Assert.assertEquals(expected.getInternetUsersFixedPoint(), actual.getInternetUsersFixedPoint());
+            Assert.assertEquals(expected.getAdultLiteracyRateFixedPoint(), actual.getAdultLiteracyRateFixedPoint());
+        }
+    }
+
+    @Test
+    public void aMissingFileHasNoHeader() throws IOException {
+        Assert.assertNull(snapshotFile.readHeader());
+    }
+
+    @Test
+    public void truncatedAndDamagedFilesAreRefused() throws IOException {
+        snapshotFile.write(Arrays.asList(new CountryBuilder("AAA", "First").build()), 1);
+        try (FileChannel channel = FileChannel.open(snapshotFile.getPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        assertRefused("truncated or damaged");
+
+        try (FileChannel channel = FileChannel.open(snapshotFile.getPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(10);
+        }
+        assertRefused("not a snapshot file");
+
+        snapshotFile.write(Arrays.asList(new CountryBuilder("AAA", "First").build()), 1);
+        try (FileChannel channel = FileChannel.open(snapshotFile.getPath(), StandardOpenOption.WRITE)) {
+            // the format version
+            channel.write(ByteBuffer.wrap(new byte[] {99}), 4);
+        }
+        assertRefused("format version 99");
+
+        try (FileChannel channel = FileChannel.open(snapshotFile.getPath(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0}), 0);
+        }
+        assertRefused("not a snapshot file");
+    }
+
+    @Test
+    public void aSnapshotIsOnlyRestoredAtTheVersionItWasWrittenAt() {
+        CountryDaoImpl countryDao = new CountryDaoImpl(TestDatabase.inMemorySessionFactory(database, true));
+        Assert.assertFalse(countryDao.useSnapshot(snapshotFile.getPath()));
+        countryDao.create(new CountryBuilder("AAA", "First").build());
+        countryDao.getCountries();
+        countryDao.close();
+
+        // the counter moves with every write of the application
+        SessionFactory sessionFactory = TestDatabase.inMemorySessionFactory(database, false);
+        Assert.assertTrue(new CountryDaoImpl(sessionFactory).useSnapshot(snapshotFile.getPath()));
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        session.doWork(DatasetVersion::increment);
+        session.getTransaction().commit();
+        session.close();
+        Assert.assertFalse(new CountryDaoImpl(sessionFactory).useSnapshot(snapshotFile.getPath()));
+        sessionFactory.close();
+
+        // a write that bypasses the counter is noticed by the number of countries
+        countryDao = new CountryDaoImpl(TestDatabase.inMemorySessionFactory(database, false));
+        Assert.assertFalse(countryDao.useSnapshot(snapshotFile.getPath()));
+        countryDao.getCountries();
+        countryDao.close();
+        sessionFactory = TestDatabase.inMemorySessionFactory(database, false);
+        Assert.assertTrue(new CountryDaoImpl(sessionFactory).useSnapshot(snapshotFile.getPath()));
+        session = sessionFactory.openSession();
+        session.beginTransaction();
+        session.save(new CountryBuilder("BBB", "Second").build());
+        session.getTransaction().commit();
+        session.close();
+        Assert.assertFalse(new CountryDaoImpl(sessionFactory).useSnapshot(snapshotFile.getPath()));
+        sessionFactory.close();
+    }
+
+    @Test
+    public void aRefusedUpdateIsNotInTheSnapshot() {
+        CountryDaoImpl countryDao = new CountryDaoImpl(TestDatabase.inMemorySessionFactory(database, true));
+        Assert.assertFalse(countryDao.useSnapshot(snapshotFile.getPath()));
+        // in memory, the snapshot is written from there
+        Assert.assertTrue(countryDao.getCountries().isEmpty());
+        countryDao.create(new CountryBuilder("AAA", "First").build());
+        countryDao.create(new CountryBuilder("BBB", "Second").build());
+        Country first = countryDao.findByCode("AAA");
+        first.setName("A name much too long for the name column");
+        try {
+            countryDao.update(first);
+            Assert.fail("The database accepted a name longer than its column");
+        } catch (RuntimeException expected) {
+            // refused
+        }
+        countryDao.update(new CountryBuilder("BBB", "Renamed").build());
+        countryDao.close();
+
+        CountryDaoImpl restarted = new CountryDaoImpl(TestDatabase.inMemorySessionFactory(database, false));
+        try {
+            Assert.assertTrue(restarted.useSnapshot(snapshotFile.getPath()));
+            Assert.assertEquals("First", restarted.findByCode("AAA").getName());
+            Assert.assertEquals("Renamed", restarted.findByCode("BBB").getName());
+        } finally {
+            restarted.close();
+        }
+    }
+
+    private void assertRefused(String message) {
+        try {
+            snapshotFile.readHeader();
+            Assert.fail("The damaged snapshot was read");
+        } catch (IOException expected) {
+            Assert.assertTrue(expected.getMessage(), expected.getMessage().contains(message));
+        }
+        try {
+            snapshotFile.readCountries();
+            Assert.fail("The damaged snapshot was read");
+        } catch (IOException expected) {
+            Assert.assertTrue(expected.getMessage(), expected.getMessage().contains(message));
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.Indicator;
+import com.romanmayer.analyzer.model.IndicatorSummary;
+import org.junit.Assert;
+
+/**
+ * Compares statistics that were computed in different ways, e.g. kept up to date and scanned.
+ */
+public class SummaryAssert {
+
+    public static final double TOLERANCE = 1e-9;
+
+    /**
+     * The moments have to agree within {@link #TOLERANCE}, relative to their size. A min or max matches if its
+     * country has the same value, since tied countries may be reported differently.
+     */
+    public static void assertMatches(IndicatorSummary expected, IndicatorSummary actual) {
+        Assert.assertEquals("count", expected.getCount(), actual.getCount());
+        assertSameValue("min internet users", expected.getCountryWithMinInternetUsers(),
+                actual.getCountryWithMinInternetUsers(), Indicator.INTERNET_USERS);
+        assertSameValue("max internet users", expected.getCountryWithMaxInternetUsers(),
+                actual.getCountryWithMaxInternetUsers(), Indicator.INTERNET_USERS);
+        assertSameValue("min literacy rate", expected.getCountryWithMinLiteracyRate(),
+                actual.getCountryWithMinLiteracyRate(), Indicator.ADULT_LITERACY_RATE);
+        assertSameValue("max literacy rate", expected.getCountryWithMaxLiteracyRate(),
+                actual.getCountryWithMaxLiteracyRate(), Indicator.ADULT_LITERACY_RATE);
+        assertClose("mean internet users", expected.getMeanInternetUsers(), actual.getMeanInternetUsers());
+        assertClose("variance internet users", expected.getVarianceInternetUsers(),
+                actual.getVarianceInternetUsers());
+        assertClose("mean literacy rate", expected.getMeanLiteracyRate(), actual.getMeanLiteracyRate());
+        assertClose("variance literacy rate", expected.getVarianceLiteracyRate(), actual.getVarianceLiteracyRate());
+        assertClose("correlation", expected.getCorrelationCoefficient(), actual.getCorrelationCoefficient());
+    }
+
+    private static void assertSameValue(String message, Country expected, Country actual, Indicator indicator) {
+        if (expected == null || actual == null) {
+            Assert.assertSame(message, expected, actual);
+            return;
+        }
+        Assert.assertEquals(message, 0, indicator.valueOf(expected).compareTo(indicator.valueOf(actual)));
+    }
+
+    private static void assertClose(String message, double expected, double actual) {
+        if (Double.isNaN(expected)) {
+            Assert.assertTrue(message + " should be NaN, was " + actual, Double.isNaN(actual));
+            return;
+        }
+        Assert.assertEquals(message, expected, actual, TOLERANCE * Math.max(1, Math.abs(expected)));
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.romanmayer.analyzer.dao;
+
+import org.hibernate.SessionFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * SessionFactories for tests: a fresh in-memory H2 database per test, without the second-level cache, so the
+ * worldbank file is never touched and the tests do not see each other's rows.
+ */
+public class TestDatabase {
+
+    public static SessionFactory inMemorySessionFactory() {
+        return inMemorySessionFactory(UUID.randomUUID().toString(), true);
+    }
+
+    /**
+     * A SessionFactory of the in-memory database of the name, which outlives the SessionFactory, so a second one
+     * without {@code createTables} sees what the first one left, like a restart of the application.
+     */
+    public static SessionFactory inMemorySessionFactory(String name, boolean createTables) {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("hibernate.cache.use_second_level_cache", "false");
+        settings.put("hibernate.cache.use_query_cache", "false");
+        settings.put("hibernate.connection.url", "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        settings.put("hibernate.hbm2ddl.auto", createTables ? "create" : "none");
+        return CountryDaoImpl.buildSessionFactory(settings);
+    }
+
+}
@@ -0,0 +1,201 @@
+package com.romanmayer.analyzer.dao;
+
+import com.romanmayer.analyzer.feed.ChangeFeed;
+import com.romanmayer.analyzer.feed.ExportView;
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.Country.CountryBuilder;
+import com.romanmayer.analyzer.model.CountryCsv;
+import com.romanmayer.analyzer.model.Indicator;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class WriteBehindQueueTest {
+
+    private SessionFactory sessionFactory;
+    private WriteBehindQueue queue;
+
+    @Before
+    public void setUp() {
+        sessionFactory = TestDatabase.inMemorySessionFactory();
+        // no background flushes during a test
+        queue = new WriteBehindQueue(() -> sessionFactory, 1000, 3_600_000);
+    }
+
+    @After
+    public void tearDown() {
+        queue.close();
+        sessionFactory.close();
+    }
+
+    @Test
+    public void rejectedMutationsAreDroppedAndTheOthersWritten() {
+        save(country("AAA", 1));
+        queue.create(country("BBB", 2));
+        // a duplicate code and a row that does not exist, both fail every retry
+        queue.create(country("AAA", 3));
+        queue.create(country("CCC", 4));
+        queue.update(country("ZZZ", 5));
+        queue.update(country("BBB", 6));
+
+        queue.flush();
+
+        Assert.assertEquals(2, queue.getRejected());
+        Assert.assertEquals(0, queue.size());
+        Assert.assertEquals(new BigDecimal("1.00000000"), find("AAA").getInternetUsers());
+        Assert.assertEquals(new BigDecimal("6.00000000"), find("BBB").getInternetUsers());
+        Assert.assertNotNull(find("CCC"));
+        Assert.assertNull(find("ZZZ"));
+    }
+
+    @Test
+    public void laterFlushesAreNotBlockedByARejectedMutation() {
+        save(country("AAA", 1));
+        queue.create(country("AAA", 2));
+        queue.flush();
+
+        queue.create(country("BBB", 3));
+        queue.flush();
+
+        Assert.assertEquals(1, queue.getRejected());
+        Assert.assertNotNull(find("BBB"));
+    }
+
+    @Test
+    public void anAllOrNothingQueueWritesNoneOfARejectedFlush() {
+        WriteBehindQueue allOrNothing = new WriteBehindQueue(() -> sessionFactory, 1000, 3_600_000, true);
+        List<String> rejectedCodes = new ArrayList<>();
+        allOrNothing.setRejectionListener(rejectedCodes::addAll);
+        save(country("AAA", 1));
+        allOrNothing.create(country("BBB", 2));
+        allOrNothing.create(country("AAA", 3));
+        try {
+            allOrNothing.flush();
+            Assert.fail("A rejected flush did not fail");
+        } catch (IllegalStateException expected) {
+            // nothing was written
+        }
+
+        Assert.assertEquals(2, allOrNothing.getRejected());
+        Assert.assertEquals(Arrays.asList("BBB", "AAA"), rejectedCodes);
+        Assert.assertEquals(0, allOrNothing.size());
+        Assert.assertNull(find("BBB"));
+        Assert.assertEquals(new BigDecimal("1.00000000"), find("AAA").getInternetUsers());
+        allOrNothing.close();
+    }
+
+    @Test
+    public void daoRefusesToQueueADuplicateCreate() {
+        CountryDaoImpl countryDao = new CountryDaoImpl(sessionFactory);
+        countryDao.enableWriteBehind(1000, 3_600_000);
+        countryDao.create(country("AAA", 1));
+        try {
+            countryDao.create(country("AAA", 2));
+            Assert.fail("A second country with code AAA was accepted");
+        } catch (IllegalArgumentException expected) {
+            // the first one stays
+        }
+        countryDao.flush();
+
+        Assert.assertEquals(1, countryDao.getCountries().size());
+        Assert.assertEquals(new BigDecimal("1.00000000"), find("AAA").getInternetUsers());
+    }
+
+    @Test
+    public void rejectedMutationsAreUndoneInMemory() {
+        CountryDaoImpl countryDao = new CountryDaoImpl(sessionFactory);
+        countryDao.enableWriteBehind(1000, 3_600_000);
+        queueRejectedMutations(countryDao);
+        countryDao.flush();
+
+        Assert.assertEquals(new BigDecimal("1.00000000"), countryDao.findByCode("AAA").getInternetUsers());
+        Assert.assertNull(countryDao.findByCode("BBB"));
+        Assert.assertNotNull(countryDao.findByCode("CCC"));
+        Assert.assertEquals(2, countryDao.getCountries().size());
+        List<Country> top = countryDao.topCountries(Indicator.INTERNET_USERS, 3);
+        Assert.assertEquals(2, top.size());
+        Assert.assertEquals("CCC", top.get(0).getCode());
+        Assert.assertEquals("AAA", top.get(1).getCode());
+    }
+
+    @Test
+    public void rejectedMutationsAreRetractedFromTheExport() throws IOException {
+        Path exportFile = Files.createTempFile("countries", ".csv");
+        try {
+            CountryDaoImpl countryDao = new CountryDaoImpl(sessionFactory);
+            countryDao.enableWriteBehind(1000, 3_600_000);
+            ChangeFeed.Subscription export = countryDao.subscribe("export", new ExportView(exportFile));
+            queueRejectedMutations(countryDao);
+            countryDao.flush();
+            // waits for the export to write the file, too
+            export.close();
+
+            StringWriter expected = new StringWriter();
+            CountryCsv.writeCountries(expected, Arrays.asList(find("AAA"), find("CCC")));
+            Assert.assertEquals(expected.toString(),
+                    new String(Files.readAllBytes(exportFile), StandardCharsets.UTF_8));
+        } finally {
+            Files.deleteIfExists(exportFile);
+        }
+    }
+
+    /**
+     * Queues a create of AAA and an update of BBB, which the database rejects, since both were changed behind
+     * the back of the DAO, and a create of CCC, which it accepts.
+     */
+    private void queueRejectedMutations(CountryDaoImpl countryDao) {
+        countryDao.create(country("BBB", 2));
+        countryDao.flush();
+        save(country("AAA", 1));
+        delete("BBB");
+
+        countryDao.create(country("AAA", 3));
+        countryDao.update(country("BBB", 4));
+        countryDao.create(country("CCC", 5));
+    }
+
+    private static Country country(String code, int internetUsers) {
+        return new CountryBuilder(code, "Country " + code)
+                .withInternetUsers(BigDecimal.valueOf(internetUsers))
+                .build();
+    }
+
+    private void save(Country country) {
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        session.save(country);
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    private void delete(String code) {
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        session.delete(session.get(Country.class, code));
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    private Country find(String code) {
+        Session session = sessionFactory.openSession();
+        try {
+            return session.get(Country.class, code);
+        } finally {
+            session.close();
+        }
+    }
+
+}
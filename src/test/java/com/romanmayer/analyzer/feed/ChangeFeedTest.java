@@ -0,0 +1,115 @@
+package com.romanmayer.analyzer.feed;
+
+import com.romanmayer.analyzer.benchmark.SyntheticCountries;
+import com.romanmayer.analyzer.dao.CountrySnapshot;
+import com.romanmayer.analyzer.dao.StatisticsAccumulator;
+import com.romanmayer.analyzer.dao.SummaryAssert;
+import com.romanmayer.analyzer.model.Country;
+import com.romanmayer.analyzer.model.CountryCsv;
+import com.romanmayer.analyzer.model.FixedPoint;
+import com.romanmayer.analyzer.model.Indicator;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes random mutations of synthetic countries on a {@link ChangeFeed} with a ranking, a statistics and an
+ * export view subscribed, then compares the views with rankings, statistics and an export computed from
+ * scratch. The ring is small and the export view writes the whole file per batch, so the publisher runs into
+ * the backpressure.
+ */
+public class ChangeFeedTest {
+
+    private static final int ROWS = 2000;
+    private static final int MUTATIONS = 5000;
+    private static final int CAPACITY = 64;
+    private static final int RANKING_SIZE = 10;
+
+    private Path exportFile;
+
+    @Before
+    public void setUp() throws IOException {
+        exportFile = Files.createTempFile("countries", ".csv");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(exportFile);
+    }
+
+    @Test
+    public void viewsMatchTheRecomputedData() throws IOException {
+        List<Country> countries = SyntheticCountries.generate(ROWS);
+
+        ChangeFeed feed = new ChangeFeed(CAPACITY);
+        RankingView rankings = new RankingView();
+        StatisticsView statistics = new StatisticsView();
+        ExportView export = new ExportView(exportFile);
+        List<Country> copies = CountryChange.copiesOf(countries);
+        List<ChangeFeed.Subscription> subscriptions = new ArrayList<>();
+        subscriptions.add(feed.subscribe("rankings", rankings, copies));
+        subscriptions.add(feed.subscribe("statistics", statistics, copies));
+        subscriptions.add(feed.subscribe("export", export, copies));
+
+        SyntheticCountries.mutate(new Random(SyntheticCountries.DEFAULT_SEED), countries, MUTATIONS, feed::publish);
+
+        for (ChangeFeed.Subscription subscription : subscriptions) {
+            Assert.assertTrue(subscription.getName(), subscription.awaitCaughtUp(1, TimeUnit.MINUTES));
+            Assert.assertEquals(subscription.getName(), 0, subscription.getErrors());
+        }
+        feed.close();
+
+        CountrySnapshot snapshot = new CountrySnapshot(countries);
+        SummaryAssert.assertMatches(snapshot.accumulate(new StatisticsAccumulator()).toSummary(snapshot),
+                statistics.summarize());
+        assertRankingsMatch(countries, rankings);
+        List<Country> sorted = new ArrayList<>(countries);
+        sorted.sort(Comparator.comparing(Country::getCode));
+        StringWriter expected = new StringWriter();
+        CountryCsv.writeCountries(expected, sorted);
+        Assert.assertEquals(expected.toString(), new String(Files.readAllBytes(exportFile), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Compares the values of the top and bottom countries per indicator with a sort of all countries. Only the
+     * values, since tied countries may be ranked differently.
+     */
+    private static void assertRankingsMatch(List<Country> countries, RankingView rankings) {
+        for (Indicator indicator : Indicator.values()) {
+            List<Long> sorted = new ArrayList<>();
+            for (Country country : countries) {
+                long value = indicator.fixedPointOf(country);
+                if (!FixedPoint.isNull(value)) {
+                    sorted.add(value);
+                }
+            }
+            sorted.sort(Comparator.naturalOrder());
+            int k = Math.min(RANKING_SIZE, sorted.size());
+            List<Long> top = new ArrayList<>(sorted.subList(sorted.size() - k, sorted.size()));
+            top.sort(Comparator.reverseOrder());
+            Assert.assertEquals(sorted.subList(0, k), values(rankings.bottom(indicator, k), indicator));
+            Assert.assertEquals(top, values(rankings.top(indicator, k), indicator));
+        }
+    }
+
+    private static List<Long> values(List<Country> countries, Indicator indicator) {
+        List<Long> values = new ArrayList<>(countries.size());
+        for (Country country : countries) {
+            values.add(indicator.fixedPointOf(country));
+        }
+        return values;
+    }
+
+}
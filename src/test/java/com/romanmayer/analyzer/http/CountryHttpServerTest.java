@@ -0,0 +1,225 @@
+package com.romanmayer.analyzer.http;
+
+import com.romanmayer.analyzer.dao.ConcurrentCountryDao;
+import com.romanmayer.analyzer.dao.CountryDaoImpl;
+import com.romanmayer.analyzer.dao.ObservationDaoImpl;
+import com.romanmayer.analyzer.dao.TestDatabase;
+import com.romanmayer.analyzer.model.IndicatorSummary;
+import com.romanmayer.analyzer.model.Observation;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class CountryHttpServerTest {
+
+    private SessionFactory sessionFactory;
+    private CountryHttpServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        sessionFactory = TestDatabase.inMemorySessionFactory();
+        ConcurrentCountryDao countryDao = new ConcurrentCountryDao(new CountryDaoImpl(sessionFactory)) {
+            @Override
+            public IndicatorSummary summarize() {
+                throw new IllegalStateException("connection to jdbc:h2:secret lost");
+            }
+        };
+        server = new CountryHttpServer(countryDao, 0, 2);
+        server.start();
+        post("/countries", "code=AAA&name=First&internetUsers=10");
+        post("/countries", "code=BBB&name=Second&internetUsers=20");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        sessionFactory.close();
+    }
+
+    @Test
+    public void countsBelowOneAreRejected() throws IOException {
+        Assert.assertEquals(400, get("/countries?limit=0").status);
+        Assert.assertEquals(400, get("/countries?limit=-1").status);
+        Assert.assertEquals(400, get("/rankings/internet_users?k=0").status);
+        Assert.assertEquals(400, get("/search?q=first&limit=-5").status);
+        Assert.assertEquals(400, get("/histograms/internet_users?buckets=0").status);
+    }
+
+    @Test
+    public void largeCountsAreCapped() throws IOException {
+        Response page = get("/countries?limit=1000000");
+        Assert.assertEquals(200, page.status);
+        Assert.assertTrue(page.body, page.body.contains("\"next\":null"));
+    }
+
+    @Test
+    public void aCodeIsCreatedOnlyOnce() throws IOException {
+        Response duplicate = post("/countries", "code=aaa&name=Again");
+        Assert.assertEquals(409, duplicate.status);
+        Assert.assertTrue(duplicate.body, get("/countries/AAA").body.contains("First"));
+    }
+
+    @Test
+    public void namesMustFitTheColumn() throws IOException {
+        String tooLong = "A name much too long for the name column";
+        Assert.assertEquals(400, post("/countries", "code=CCC&name=" + tooLong.replace(' ', '+')).status);
+        Assert.assertEquals(404, get("/countries/CCC").status);
+        Assert.assertEquals(201, post("/countries", "code=CCC&name=Third").status);
+        Assert.assertEquals(400, put("/countries/CCC", "name=+").status);
+        Assert.assertTrue(get("/countries/CCC").body.contains("\"Third\""));
+    }
+
+    @Test
+    public void concurrentDeletesFindTheCountryOnce() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> statuses = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                statuses.add(executor.submit(() -> delete("/countries/AAA").status));
+            }
+            int deleted = 0;
+            for (Future<Integer> status : statuses) {
+                int code = status.get();
+                Assert.assertTrue("status " + code, code == 204 || code == 404);
+                deleted += code == 204 ? 1 : 0;
+            }
+            Assert.assertEquals(1, deleted);
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(404, put("/countries/AAA", "name=Back").status);
+        Assert.assertEquals(404, get("/countries/AAA").status);
+    }
+
+    @Test
+    public void correlationsAndRegressionsAreServed() throws IOException {
+        Response noLine = get("/regressions/adult_literacy_rate?on=internet_users");
+        Assert.assertEquals(noLine.body, 404, noLine.status);
+
+        post("/countries", "code=CCC&name=Third&internetUsers=10&adultLiteracyRate=30");
+        post("/countries", "code=DDD&name=Fourth&internetUsers=20&adultLiteracyRate=50");
+        post("/countries", "code=EEE&name=Fifth&internetUsers=30&adultLiteracyRate=70");
+        Response correlations = get("/correlations?method=spearman");
+        Assert.assertEquals(correlations.body, 200, correlations.status);
+        Assert.assertTrue(correlations.body, correlations.body.contains("\"counts\":[[5,3],[3,3]]"));
+        Assert.assertEquals(400, get("/correlations?method=kendall").status);
+
+        Response regression = get("/regressions/adult-literacy-rate?on=internet_users");
+        Assert.assertEquals(regression.body, 200, regression.status);
+        Assert.assertTrue(regression.body, regression.body.contains("\"count\":3"));
+        Matcher slope = Pattern.compile("\"slope\":([-0-9.E]+)").matcher(regression.body);
+        Assert.assertTrue(regression.body, slope.find());
+        Assert.assertEquals(2, Double.parseDouble(slope.group(1)), 1e-9);
+        Assert.assertEquals(400, get("/regressions/internet_users?on=gdp").status);
+    }
+
+    @Test
+    public void observationsAreServedOnceSet() throws IOException {
+        Assert.assertEquals(404, get("/observations/extremes/IT.NET.USER.ZS?year=2000").status);
+
+        ObservationDaoImpl observationDao = new ObservationDaoImpl(sessionFactory);
+        observationDao.save(Arrays.asList(
+                new Observation("AAA", "IT.NET.USER.ZS", 2000, 10),
+                new Observation("AAA", "IT.NET.USER.ZS", 2010, 60),
+                new Observation("BBB", "IT.NET.USER.ZS", 2000, 20)));
+        server.setObservationDao(observationDao);
+        Response extremes = get("/observations/extremes/it.net.user.zs?year=2000");
+        Assert.assertEquals(extremes.body, 200, extremes.status);
+        Assert.assertTrue(extremes.body, extremes.body.contains("\"min\":{\"country\":\"AAA\",\"value\":10.0}"));
+        Assert.assertEquals(404, get("/observations/extremes/IT.NET.USER.ZS?year=1990").status);
+        Assert.assertEquals(400, get("/observations/extremes/IT.NET.USER.ZS").status);
+
+        Response trends = get("/observations/trends/IT.NET.USER.ZS");
+        Assert.assertEquals("{\"AAA\":5.0}", trends.body);
+        Response country = get("/observations/countries/aaa");
+        Assert.assertTrue(country.body, country.body.contains("\"year\":2010,\"value\":60.0"));
+        Assert.assertEquals(404, get("/observations/indicators").status);
+    }
+
+    @Test
+    public void serverErrorsDoNotShowTheException() throws IOException {
+        Response error = get("/statistics");
+        Assert.assertEquals(500, error.status);
+        Assert.assertFalse(error.body, error.body.contains("secret"));
+        Assert.assertFalse(error.body, error.body.contains("IllegalStateException"));
+    }
+
+    private static class Response {
+
+        private final int status;
+        private final String body;
+
+        private Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+    }
+
+    private Response get(String path) throws IOException {
+        return exchange((HttpURLConnection) url(path).openConnection());
+    }
+
+    private Response post(String path, String form) throws IOException {
+        return send("POST", path, form);
+    }
+
+    private Response put(String path, String form) throws IOException {
+        return send("PUT", path, form);
+    }
+
+    private Response delete(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url(path).openConnection();
+        connection.setRequestMethod("DELETE");
+        return exchange(connection);
+    }
+
+    private Response send(String method, String path, String form) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url(path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(form.getBytes(StandardCharsets.UTF_8));
+        }
+        return exchange(connection);
+    }
+
+    private URL url(String path) throws IOException {
+        return new URL("http://localhost:" + server.getPort() + path);
+    }
+
+    private static Response exchange(HttpURLConnection connection) throws IOException {
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (in != null) {
+            try (InputStream stream = in) {
+                byte[] buffer = new byte[1024];
+                for (int read = stream.read(buffer); read >= 0; read = stream.read(buffer)) {
+                    body.write(buffer, 0, read);
+                }
+            }
+        }
+        return new Response(status, new String(body.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+}